@@ -0,0 +1,208 @@
+// BenchSeeder.java - Creates the Rydex schema and seeds a deterministic fixture for benchmarks
+//
+// Ids are assigned explicitly so every foreign key lines up without read-backs:
+//   riders  -> user_id 1..riders        (email rider<i>@bench.rydex, password pass<i>)
+//   drivers -> user_id riders+1..+drivers, vehicle_id 1..drivers, one all-day shift today,
+//              a current position within about 10 km of CENTER
+//   routes  -> route_id 1..routes, end points within the same area
+//   rides   -> random rider/driver/route, mostly Completed, spread over the last 180 days
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+public class BenchSeeder {
+
+    private static final String[] PLACES = {
+        "Main Campus", "Engineering Block", "Library", "Student Center", "Hostel A", "Hostel B",
+        "Science Building", "Sports Complex", "Medical Center", "Cafeteria", "Admin Block", "Main Gate"
+    };
+
+    // Coordinates are scattered SPREAD_DEG around CENTER, drawn from a separate RNG (places)
+    // that is independent of the id/fare sequence
+    private static final double[] CENTER = {31.52, 74.35};
+    private static final double SPREAD_DEG = 0.09;
+
+    final int riders;
+    final int drivers;
+    final int routes;
+    final int rides;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final SplittableRandom places = new SplittableRandom(7);
+
+    public BenchSeeder(int riders, int drivers, int routes, int rides) {
+        this.riders = riders;
+        this.drivers = drivers;
+        this.routes = routes;
+        this.rides = rides;
+    }
+
+    public int firstDriverId() { return riders + 1; }
+
+    public static String riderEmail(int i) { return "rider" + i + "@bench.rydex"; }
+    public static String riderPassword(int i) { return "pass" + i; }
+
+    // Migrate the schema (tables and indexes) and seed unless the fixture is already there
+    public void ensureSeeded(Connection conn) throws SQLException {
+        if (!SchemaMigrator.migrate(conn)) throw new SQLException("Schema migration failed");
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM Users WHERE email LIKE '%@bench.rydex'")) {
+            rs.next();
+            if (rs.getInt(1) >= riders + drivers) {
+                System.out.println("Benchmark fixture already present, skipping seed.");
+                return;
+            }
+        }
+        long t0 = System.nanoTime();
+        boolean auto = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            seedUsers(conn);
+            seedRoutes(conn);
+            seedRides(conn);
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(auto);
+        }
+        System.out.printf("Seeded %d riders, %d drivers, %d routes, %d rides in %.1f s%n",
+                riders, drivers, routes, rides, (System.nanoTime() - t0) / 1e9);
+    }
+
+    private void seedUsers(Connection conn) throws SQLException {
+        try (PreparedStatement u = conn.prepareStatement(
+                "INSERT INTO Users (user_id, name, email, password, user_type) VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement r = conn.prepareStatement("INSERT INTO Riders (rider_id, balance) VALUES (?, ?)")) {
+            for (int i = 1; i <= riders; i++) {
+                u.setInt(1, i);
+                u.setString(2, "Rider " + i);
+                u.setString(3, riderEmail(i));
+                u.setString(4, riderPassword(i));
+                u.setString(5, "Rider");
+                u.addBatch();
+                r.setInt(1, i);
+                r.setDouble(2, 5000);
+                r.addBatch();
+                if (i % 1000 == 0) { u.executeBatch(); r.executeBatch(); }
+            }
+            for (int i = 0; i < drivers; i++) {
+                int id = firstDriverId() + i;
+                u.setInt(1, id);
+                u.setString(2, "Driver " + id);
+                u.setString(3, "driver" + id + "@bench.rydex");
+                u.setString(4, "pass" + id);
+                u.setString(5, "Driver");
+                u.addBatch();
+            }
+            u.executeBatch();
+            r.executeBatch();
+        }
+
+        try (PreparedStatement v = conn.prepareStatement(
+                "INSERT INTO Vehicles (vehicle_id, model, plate_number, capacity, color) VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement d = conn.prepareStatement(
+                "INSERT INTO Drivers (driver_id, license_number, total_earnings, vehicle_id, last_lat, last_lng, position_at) " +
+                "VALUES (?, ?, 0, ?, ?, ?, CURRENT_TIMESTAMP)");
+             PreparedStatement s = conn.prepareStatement(
+                "INSERT INTO Driver_Shifts (driver_id, shift_date, start_time, end_time) VALUES (?, ?, ?, ?)")) {
+            Date today = Date.valueOf(LocalDate.now());
+            for (int i = 0; i < drivers; i++) {
+                int id = firstDriverId() + i;
+                v.setInt(1, i + 1);
+                v.setString(2, i % 3 == 0 ? "Toyota Corolla" : i % 3 == 1 ? "Suzuki Alto" : "Honda City");
+                v.setString(3, "BNC-" + (1000 + i));
+                v.setInt(4, 4);
+                v.setString(5, "White");
+                v.addBatch();
+                d.setInt(1, id);
+                d.setString(2, "LIC-" + id);
+                d.setInt(3, i + 1);
+                d.setDouble(4, coordinate(0));
+                d.setDouble(5, coordinate(1));
+                d.addBatch();
+                s.setInt(1, id);
+                s.setDate(2, today);
+                s.setTime(3, Time.valueOf("00:00:00"));
+                s.setTime(4, Time.valueOf("23:59:59"));
+                s.addBatch();
+            }
+            v.executeBatch();
+            d.executeBatch();
+            s.executeBatch();
+        }
+    }
+
+    private void seedRoutes(Connection conn) throws SQLException {
+        try (PreparedStatement p = conn.prepareStatement(
+                "INSERT INTO Routes (route_id, start_location, end_location, distance_km, start_lat, start_lng, end_lat, end_lng) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 1; i <= routes; i++) {
+                String a = PLACES[random.nextInt(PLACES.length)];
+                String b = PLACES[random.nextInt(PLACES.length)];
+                p.setInt(1, i);
+                p.setString(2, a + " " + i);
+                p.setString(3, b);
+                p.setDouble(4, 1 + random.nextInt(250) / 10.0);
+                for (int c = 0; c < 4; c++) p.setDouble(5 + c, coordinate(c % 2));
+                p.addBatch();
+            }
+            p.executeBatch();
+        }
+    }
+
+    // Latitude (axis 0) or longitude (axis 1) near CENTER, rounded to the column's 6 places
+    private double coordinate(int axis) {
+        double v = CENTER[axis] + (places.nextDouble() * 2 - 1) * SPREAD_DEG;
+        return Math.round(v * 1e6) / 1e6;
+    }
+
+    private void seedRides(Connection conn) throws SQLException {
+        String[] statuses = {"Completed", "Completed", "Completed", "Completed", "Cancelled", "Pending", "Confirmed"};
+        long now = System.currentTimeMillis();
+        try (PreparedStatement p = conn.prepareStatement(
+                "INSERT INTO Rides (rider_id, driver_id, route_id, fare, status, ride_time) VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int i = 1; i <= rides; i++) {
+                p.setInt(1, 1 + random.nextInt(riders));
+                p.setInt(2, firstDriverId() + random.nextInt(drivers));
+                p.setInt(3, 1 + random.nextInt(routes));
+                p.setDouble(4, 100 + random.nextInt(1200));
+                p.setString(5, statuses[random.nextInt(statuses.length)]);
+                p.setTimestamp(6, new Timestamp(now - random.nextLong(180L * 24 * 3600 * 1000)));
+                p.addBatch();
+                if (i % 2000 == 0) p.executeBatch();
+            }
+            p.executeBatch();
+        }
+    }
+
+    // Insert rides already In Progress (used to feed completeRideTransaction); returns their ids
+    public int[] createInProgressRides(Connection conn, int count) throws SQLException {
+        int[] ids = new int[count];
+        try (PreparedStatement p = conn.prepareStatement(
+                "INSERT INTO Rides (rider_id, driver_id, route_id, fare, status) VALUES (?, ?, ?, ?, 'In Progress')",
+                Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < count; i++) {
+                p.setInt(1, 1 + random.nextInt(riders));
+                p.setInt(2, firstDriverId() + (i % drivers));
+                p.setInt(3, 1 + random.nextInt(routes));
+                p.setDouble(4, 350);
+                p.executeUpdate();
+                try (ResultSet rs = p.getGeneratedKeys()) {
+                    rs.next();
+                    ids[i] = rs.getInt(1);
+                }
+            }
+        }
+        return ids;
+    }
+
+    public int driverForInProgressRide(int index) {
+        return firstDriverId() + (index % drivers);
+    }
+}
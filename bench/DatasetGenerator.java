@@ -0,0 +1,381 @@
+// DatasetGenerator.java - Bulk loader for production-sized, referentially consistent fixtures
+//
+// Fills every table from documents/sql.md (created by SchemaMigrator, indexes included). All primary keys are assigned up front from the
+// requested sizes, so the load splits into independent partitions (rider id ranges, driver
+// id ranges, ride id ranges) that run in parallel on separate connections:
+//   Users/Riders             rider ids 1..riders
+//   Users/Vehicles/Drivers   driver ids riders+1..riders+drivers (vehicle id = driver index)
+//   Driver_Shifts            one shift per driver per day for the last --shift-days days
+//   Routes                   route ids 1..routes
+//   Rides                    ride ids 1..rides, fare from FareCalculator and the route distance
+//   Payments                 one per ride that got past booking (payment id = ride id)
+//   Feedback                 ~60% of completed rides
+//   Ride_Assistants          ~5% of rides
+// Rows go out as multi-row INSERT statements, with foreign key and unique checks switched
+// off for each loading session. Driver earnings are rolled up from the completed rides at
+// the end, so totals match the ride history.
+//
+// Usage:
+//   java -Drydex.db.url="jdbc:mysql://localhost:3306/rydex_scale" DatasetGenerator
+//       [--riders 500000] [--drivers 25000] [--routes 2000] [--rides 10000000]
+//       [--shift-days 30] [--threads 8] [--rows-per-insert 1000] [--seed 7]
+// The target tables must be empty.
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DatasetGenerator {
+
+    private static final String[] FIRST = {"Ali", "Sara", "Ahmed", "Ayesha", "Usman", "Fatima", "Bilal", "Hina",
+        "Omar", "Zainab", "Hamza", "Maryam", "Hassan", "Noor", "Imran", "Sana"};
+    private static final String[] LAST = {"Khan", "Ahmed", "Malik", "Hussain", "Raza", "Sheikh", "Qureshi",
+        "Butt", "Chaudhry", "Siddiqui", "Iqbal", "Javed"};
+    private static final String[] PLACES = {"Main Campus", "Engineering Block", "Library", "Student Center",
+        "Hostel A", "Hostel B", "Science Building", "Sports Complex", "Medical Center", "Cafeteria",
+        "Admin Block", "Main Gate", "City Mall", "Railway Station", "Airport", "Bus Terminal"};
+    private static final String[] MODELS = {"Toyota Corolla", "Suzuki Alto", "Honda City", "Suzuki Cultus",
+        "Toyota Yaris", "Honda Civic", "Kia Picanto", "Suzuki Wagon R"};
+    private static final String[] COLORS = {"White", "Black", "Silver", "Grey", "Red", "Blue"};
+    private static final String[] COMMENTS = {"Great ride", "On time", "Friendly driver", "Clean car",
+        "A bit late", "Smooth drive", ""};
+
+    private final int riders;
+    private final int drivers;
+    private final int routes;
+    private final long rides;
+    private final int shiftDays;
+    private final int threads;
+    private final int rowsPerInsert;
+    private final long seed;
+
+    private final double[] routeKm;   // needed by every ride partition for the fare
+    private final AtomicLong rowsWritten = new AtomicLong();
+
+    public DatasetGenerator(int riders, int drivers, int routes, long rides, int shiftDays,
+                            int threads, int rowsPerInsert, long seed) {
+        this.riders = riders;
+        this.drivers = drivers;
+        this.routes = routes;
+        this.rides = rides;
+        this.shiftDays = shiftDays;
+        this.threads = threads;
+        this.rowsPerInsert = rowsPerInsert;
+        this.seed = seed;
+        this.routeKm = new double[routes + 1];
+        SplittableRandom r = new SplittableRandom(seed);
+        for (int i = 1; i <= routes; i++) routeKm[i] = 1 + r.nextInt(300) / 10.0;
+    }
+
+    // ===================== MULTI-ROW INSERT =====================
+    // Buffers rows and sends them as INSERT ... VALUES (...), (...), ... statements
+    static class MultiRowInsert implements AutoCloseable {
+        private final Connection conn;
+        private final String prefix;
+        private final int columns;
+        private final int rowsPerStatement;
+        private final Object[] buffer;
+        private final AtomicLong counter;
+        private PreparedStatement full;
+        private int rows;
+
+        MultiRowInsert(Connection conn, String table, String columnList, int rowsPerStatement, AtomicLong counter) {
+            this.conn = conn;
+            this.prefix = "INSERT INTO " + table + " (" + columnList + ") VALUES ";
+            this.columns = columnList.split(",").length;
+            this.rowsPerStatement = rowsPerStatement;
+            this.buffer = new Object[columns * rowsPerStatement];
+            this.counter = counter;
+        }
+
+        void add(Object... values) throws SQLException {
+            System.arraycopy(values, 0, buffer, rows * columns, columns);
+            if (++rows == rowsPerStatement) {
+                if (full == null) full = conn.prepareStatement(sql(rowsPerStatement));
+                execute(full, rows);
+            }
+        }
+
+        void flush() throws SQLException {
+            if (rows == 0) return;
+            try (PreparedStatement tail = conn.prepareStatement(sql(rows))) {
+                execute(tail, rows);
+            }
+        }
+
+        private void execute(PreparedStatement stmt, int n) throws SQLException {
+            for (int i = 0; i < n * columns; i++) stmt.setObject(i + 1, buffer[i]);
+            stmt.executeUpdate();
+            counter.addAndGet(n);
+            rows = 0;
+        }
+
+        private String sql(int n) {
+            StringBuilder row = new StringBuilder("(");
+            for (int c = 0; c < columns; c++) row.append(c == 0 ? "?" : ", ?");
+            row.append(')');
+            StringBuilder sb = new StringBuilder(prefix.length() + n * (row.length() + 2));
+            sb.append(prefix);
+            for (int i = 0; i < n; i++) sb.append(i == 0 ? "" : ", ").append(row);
+            return sb.toString();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                flush();
+            } finally {
+                if (full != null) full.close();
+            }
+        }
+    }
+
+    // ===================== PARTITIONS =====================
+    private interface Partition {
+        void load(Connection conn) throws SQLException;
+    }
+
+    private void loadRiders(Connection conn, int from, int to) throws SQLException {
+        SplittableRandom r = new SplittableRandom(seed * 31 + from);
+        try (MultiRowInsert users = insert(conn, "Users", "user_id, name, email, password, user_type");
+             MultiRowInsert rs = insert(conn, "Riders", "rider_id, balance")) {
+            for (int id = from; id < to; id++) {
+                users.add(id, name(r), "rider" + id + "@scale.rydex", "pass" + id, "Rider");
+                rs.add(id, r.nextInt(20) * 250.0);
+            }
+        }
+    }
+
+    private void loadDrivers(Connection conn, int fromIndex, int toIndex) throws SQLException {
+        SplittableRandom r = new SplittableRandom(seed * 37 + fromIndex);
+        LocalDate today = LocalDate.now();
+        try (MultiRowInsert users = insert(conn, "Users", "user_id, name, email, password, user_type");
+             MultiRowInsert vehicles = insert(conn, "Vehicles", "vehicle_id, model, plate_number, capacity, color");
+             MultiRowInsert ds = insert(conn, "Drivers", "driver_id, license_number, total_earnings, vehicle_id");
+             MultiRowInsert shifts = insert(conn, "Driver_Shifts",
+                     "shift_id, driver_id, shift_date, start_time, end_time, early_end_used")) {
+            for (int i = fromIndex; i < toIndex; i++) {
+                int id = riders + 1 + i;
+                users.add(id, name(r), "driver" + id + "@scale.rydex", "pass" + id, "Driver");
+                vehicles.add(i + 1, MODELS[r.nextInt(MODELS.length)], "PLT-" + (100000 + i),
+                        r.nextInt(10) == 0 ? 6 : 4, COLORS[r.nextInt(COLORS.length)]);
+                ds.add(id, "LIC-" + id, 0.0, i + 1);
+                int startHour = 6 + r.nextInt(10);
+                for (int d = 0; d < shiftDays; d++) {
+                    long shiftId = (long) i * shiftDays + d + 1;
+                    shifts.add(shiftId, id, Date.valueOf(today.minusDays(d)),
+                            String.format("%02d:00:00", startHour), String.format("%02d:00:00", startHour + 8),
+                            r.nextInt(20) == 0);
+                }
+            }
+        }
+    }
+
+    private void loadRoutes(Connection conn) throws SQLException {
+        SplittableRandom r = new SplittableRandom(seed * 41);
+        try (MultiRowInsert rs = insert(conn, "Routes", "route_id, start_location, end_location, distance_km")) {
+            for (int id = 1; id <= routes; id++) {
+                String a = PLACES[r.nextInt(PLACES.length)];
+                String b = PLACES[r.nextInt(PLACES.length)];
+                rs.add(id, a + " Stop " + id, b.equals(a) ? b + " North" : b, routeKm[id]);
+            }
+        }
+    }
+
+    private void loadRides(Connection conn, long from, long to) throws SQLException {
+        SplittableRandom r = new SplittableRandom(seed * 43 + from);
+        long now = System.currentTimeMillis();
+        long year = 365L * 24 * 3600 * 1000;
+        try (MultiRowInsert rs = insert(conn, "Rides", "ride_id, rider_id, driver_id, route_id, fare, status, ride_time");
+             MultiRowInsert pays = insert(conn, "Payments", "payment_id, ride_id, amount, payment_method, payment_status");
+             MultiRowInsert fb = insert(conn, "Feedback", "feedback_id, ride_id, rating, comments");
+             MultiRowInsert assist = insert(conn, "Ride_Assistants", "ride_id, rider_id, assistant_name")) {
+            for (long id = from; id < to; id++) {
+                int riderId = 1 + r.nextInt(riders);
+                int routeId = 1 + r.nextInt(routes);
+                double fare = FareCalculator.calculateFare(routeKm[routeId]);
+                String status = rideStatus(r);
+                // Busier in the morning and evening peaks
+                long day = now - r.nextLong(year);
+                int hour = r.nextInt(3) == 0 ? 8 + r.nextInt(2) : r.nextInt(3) == 0 ? 17 + r.nextInt(3) : 6 + r.nextInt(17);
+                long time = day - Math.floorMod(day, 86_400_000L) + hour * 3_600_000L + r.nextInt(3_600_000);
+                rs.add(id, riderId, riders + 1 + r.nextInt(drivers), routeId, fare, status,
+                        new Timestamp(Math.min(time, now)));
+
+                String method = r.nextInt(10) < 5 ? "Cash" : r.nextInt(2) == 0 ? "Card" : "Wallet";
+                switch (status) {
+                    case "Completed":
+                        pays.add(id, id, fare, method, "Completed");
+                        if (r.nextInt(10) < 6) {
+                            fb.add(id, id, 1 + Math.min(4, r.nextInt(6)), COMMENTS[r.nextInt(COMMENTS.length)]);
+                        }
+                        break;
+                    case "Cancelled":
+                        if (!method.equals("Cash")) pays.add(id, id, fare, method, "Refunded");
+                        break;
+                    default:
+                        pays.add(id, id, fare, method, method.equals("Cash") ? "Pending" : "Completed");
+                }
+                if (r.nextInt(20) == 0) assist.add(id, riderId, name(r));
+            }
+        }
+    }
+
+    private static String rideStatus(SplittableRandom r) {
+        int p = r.nextInt(100);
+        if (p < 82) return "Completed";
+        if (p < 92) return "Cancelled";
+        if (p < 96) return "Pending";
+        if (p < 99) return "Confirmed";
+        return "In Progress";
+    }
+
+    private static String name(SplittableRandom r) {
+        return FIRST[r.nextInt(FIRST.length)] + " " + LAST[r.nextInt(LAST.length)];
+    }
+
+    private MultiRowInsert insert(Connection conn, String table, String columns) {
+        return new MultiRowInsert(conn, table, columns, rowsPerInsert, rowsWritten);
+    }
+
+    // ===================== RUNNING =====================
+    public void generate() throws Exception {
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) throw new SQLException("Could not connect to the target database");
+            if (!SchemaMigrator.migrate(conn)) throw new SQLException("Schema migration failed");
+            try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM Users")) {
+                rs.next();
+                if (rs.getLong(1) > 0) throw new IllegalStateException("Users is not empty; load into an empty database.");
+            }
+        }
+
+        List<Partition> parts = new ArrayList<>();
+        parts.add(this::loadRoutes);
+        int riderChunk = Math.max(1, riders / (threads * 2));
+        for (int from = 1; from <= riders; from += riderChunk) {
+            int f = from, t = Math.min(riders + 1, from + riderChunk);
+            parts.add(c -> loadRiders(c, f, t));
+        }
+        int driverChunk = Math.max(1, drivers / threads);
+        for (int from = 0; from < drivers; from += driverChunk) {
+            int f = from, t = Math.min(drivers, from + driverChunk);
+            parts.add(c -> loadDrivers(c, f, t));
+        }
+        long rideChunk = Math.max(1, rides / (threads * 8));
+        for (long from = 1; from <= rides; from += rideChunk) {
+            long f = from, t = Math.min(rides + 1, from + rideChunk);
+            parts.add(c -> loadRides(c, f, t));
+        }
+
+        long t0 = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Thread progress = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(5000);
+                    double secs = (System.nanoTime() - t0) / 1e9;
+                    System.out.printf("  %,d rows (%,.0f rows/s)%n", rowsWritten.get(), rowsWritten.get() / secs);
+                }
+            } catch (InterruptedException e) {
+                // load finished
+            }
+        }, "rydex-datagen-progress");
+        progress.setDaemon(true);
+        progress.start();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Partition p : parts) futures.add(pool.submit(() -> { runPartition(p); return null; }));
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdownNow();
+            progress.interrupt();
+        }
+        double loadSecs = (System.nanoTime() - t0) / 1e9;
+        System.out.printf("Loaded %,d rows in %.1f s (%,.0f rows/s) across %d partitions%n",
+                rowsWritten.get(), loadSecs, rowsWritten.get() / loadSecs, parts.size());
+
+        finish();
+        System.out.printf("Done in %.1f s%n", (System.nanoTime() - t0) / 1e9);
+    }
+
+    private void runPartition(Partition p) throws SQLException {
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) throw new SQLException("Could not open a loader connection");
+            disableChecks(conn);
+            conn.setAutoCommit(false);
+            p.load(conn);
+            conn.commit();
+        }
+    }
+
+    // Session-level switches; databases without them just load with checks on
+    private static void disableChecks(Connection conn) {
+        String[] mysql = {"SET foreign_key_checks = 0", "SET unique_checks = 0"};
+        try (Statement st = conn.createStatement()) {
+            for (String s : mysql) st.execute(s);
+        } catch (SQLException e) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("SET REFERENTIAL_INTEGRITY FALSE");   // H2
+            } catch (SQLException ignored) {
+                System.err.println("Constraint checks stay on: " + e.getMessage());
+            }
+        }
+    }
+
+    // Roll driver earnings up from the rides and refresh optimizer statistics
+    private void finish() throws SQLException {
+        try (Connection conn = DatabaseConfig.getNewConnection(); Statement st = conn.createStatement()) {
+            long t0 = System.nanoTime();
+            st.executeUpdate("UPDATE Drivers d SET total_earnings = (SELECT COALESCE(SUM(r.fare), 0) FROM Rides r " +
+                    "WHERE r.driver_id = d.driver_id AND r.status = 'Completed')");
+            System.out.printf("Driver earnings rolled up in %.1f s%n", (System.nanoTime() - t0) / 1e9);
+            try {
+                st.execute("SET REFERENTIAL_INTEGRITY TRUE");
+            } catch (SQLException ignored) {
+                // MySQL: checks were session-scoped and ended with the loader connections
+            }
+            try {
+                st.execute("ANALYZE TABLE Users, Riders, Drivers, Vehicles, Routes, Rides, Payments, Feedback, " +
+                        "Driver_Shifts, Ride_Assistants");
+            } catch (SQLException e) {
+                System.err.println("Skipping ANALYZE TABLE: " + e.getMessage());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int riders = 500_000, drivers = 25_000, routes = 2_000, shiftDays = 30, threads = 8, rowsPerInsert = 1000;
+        long rides = 10_000_000L, seed = 7;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "--riders": riders = Integer.parseInt(v); break;
+                case "--drivers": drivers = Integer.parseInt(v); break;
+                case "--routes": routes = Integer.parseInt(v); break;
+                case "--rides": rides = Long.parseLong(v); break;
+                case "--shift-days": shiftDays = Integer.parseInt(v); break;
+                case "--threads": threads = Integer.parseInt(v); break;
+                case "--rows-per-insert": rowsPerInsert = Integer.parseInt(v); break;
+                case "--seed": seed = Long.parseLong(v); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (rides > Integer.MAX_VALUE) throw new IllegalArgumentException("Ride ids are INT; at most " + Integer.MAX_VALUE + " rides");
+
+        System.out.printf("Generating %,d riders, %,d drivers, %,d routes, %,d rides on %d threads%n",
+                riders, drivers, routes, rides, threads);
+        new DatasetGenerator(riders, drivers, routes, rides, shiftDays, threads, rowsPerInsert, seed).generate();
+    }
+}
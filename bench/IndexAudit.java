@@ -0,0 +1,524 @@
+// IndexAudit.java - EXPLAINs every statement the DAOs issue and flags poor access paths
+//
+// 1. Seeds the benchmark fixture (BenchSeeder) so the optimizer sees realistic table sizes.
+// 2. Runs every public DAO method once with InstrumentedConnection's listener attached,
+//    keeping one SQL sample (with its bound parameters) per statement shape.
+// 3. EXPLAINs each non-INSERT shape with those parameters and flags full table scans,
+//    full index scans, filesorts and temporary tables.
+// 4. Prints a report plus proposed CREATE INDEX statements built from the flagged
+//    statements' WHERE/ORDER BY columns, skipping any an existing index already covers.
+//
+// Regression mode: --baseline <file> lists accepted flagged shapes (one normalized SQL per
+// line, written by --write-baseline; # lines are comments). Any flagged shape not in it
+// makes the audit exit 1. Databases flag different things (H2 only reports table scans,
+// MySQL also index scans, filesorts and temporary tables), so {db} in either file name is
+// replaced by the database of the JDBC URL (mysql, h2): bench/index-audit-baseline-{db}.txt
+// keeps one accepted set per database. When the chosen baseline does not exist yet it is
+// written from this run instead, to be reviewed and committed; regenerate it when a
+// change adds or fixes a flagged statement.
+//
+// Usage:
+//   java -Drydex.db.url=jdbc:mysql://localhost:3306/rydex_bench IndexAudit
+//       [--report audit.txt] [--baseline bench/index-audit-baseline-{db}.txt | --write-baseline <file>]
+//       [--min-rows 100]
+// Scans of tables the optimizer estimates below --min-rows rows are not flagged.
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class IndexAudit {
+
+    // One captured statement shape and what EXPLAIN said about it
+    static class Finding {
+        final String shape;
+        final String sql;
+        final Map<Integer, Object> params;
+        final List<String> problems = new ArrayList<>();
+        final Set<String> scannedTables = new LinkedHashSet<>();
+        String plan = "";
+
+        Finding(String shape, String sql, Map<Integer, Object> params) {
+            this.shape = shape;
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+
+    private static final Pattern TABLE_REF = Pattern.compile(
+            "(?i)\\b(?:FROM|JOIN|UPDATE|INTO)\\s+(\\w+)(?:\\s+(?:AS\\s+)?(?!(?:ON|WHERE|JOIN|LEFT|RIGHT|INNER|ORDER|GROUP|LIMIT|SET|VALUES|FOR)\\b)(\\w+))?");
+    private static final Pattern COMPARISON = Pattern.compile(
+            "(?i)(?:(\\w+)\\.)?(\\w+)\\s*(=|>=|<=|<|>|\\bLIKE\\b)\\s*(?:\\?|'[^']*'|-?\\d)");
+    private static final Pattern IN_PREDICATE = Pattern.compile("(?i)(?:(\\w+)\\.)?(\\w+)\\s+IN\\s*\\(");
+    private static final Pattern ORDER_BY = Pattern.compile("(?i)\\bORDER\\s+BY\\s+(.+?)(?:\\bLIMIT\\b|\\bFOR\\s+UPDATE\\b|$)");
+    private static final Pattern H2_SCAN = Pattern.compile("(?i)/\\*\\s*\\w+\\.(\\w+)\\.tableScan");
+
+    private static final String AUDIT_RELAY = "index-audit";
+
+    private final Map<String, Finding> captured = new LinkedHashMap<>();
+    private final int minRows;
+
+    public IndexAudit(int minRows) {
+        this.minRows = minRows;
+    }
+
+    // ===================== CAPTURE =====================
+    private synchronized void capture(String sql, Map<Integer, Object> params) {
+        if (sql == null) return;
+        String shape = QueryStats.normalize(sql);
+        if (!captured.containsKey(shape)) {
+            captured.put(shape, new Finding(shape, sql, params == null ? null : new TreeMap<>(params)));
+        }
+    }
+
+    // Call every DAO method so each statement shape is seen at least once
+    private void exercise(BenchSeeder seeder) {
+        UserDAO users = new UserDAO();
+        RideDAO rides = new RideDAO();
+        RouteDAO routes = new RouteDAO();
+        VehicleDAO vehicles = new VehicleDAO();
+        PaymentDAO payments = new PaymentDAO();
+        FeedbackDAO feedback = new FeedbackDAO();
+        DriverShiftDAO shifts = new DriverShiftDAO();
+        RideAssistantDAO assistants = new RideAssistantDAO();
+        EarningsDAO earnings = new EarningsDAO();
+        TripDAO trips = new TripDAO();
+
+        int rider = 1;
+        int driver = seeder.firstDriverId();
+        String tag = Long.toString(System.currentTimeMillis(), 36);
+
+        users.loginRider(BenchSeeder.riderEmail(rider), BenchSeeder.riderPassword(rider));
+        users.loginDriver("driver" + driver + "@bench.rydex", "pass" + driver);
+        users.getRiderById(rider);
+        users.getDriverById(driver);
+        users.addRiderBalance(rider, 100);
+        users.deductRiderBalance(rider, 100);
+        Rider r = users.getRiderById(rider);
+        if (r != null) users.updateRiderBalance(rider, r.getBalance());
+        Driver d = users.getDriverById(driver);
+        if (d != null) users.updateDriverEarnings(driver, d.getTotalEarnings());
+
+        routes.getAllRoutes();
+        routes.getRouteById(1);
+        int routeId = routes.addRoute("Audit Start " + tag, "Audit End", 3.5);
+        vehicles.getAllDriversWithVehicles();
+        Vehicle v = vehicles.getVehicleByDriverId(driver);
+        if (v != null) vehicles.updateVehicle(v.getVehicleId(), v.getModel(), v.getPlateNumber(), v.getCapacity(), v.getColor());
+
+        rides.getRidesByRider(rider);
+        rides.getRidesByDriver(driver);
+        rides.hasInProgressRideForDriver(driver);
+        rides.getPendingOrConfirmedRidesForDriver(driver);
+        rides.getInProgressRidesForDriver(driver);
+        Timestamp monthAgo = Timestamp.valueOf(LocalDateTime.now().minusDays(30));
+        for (RideSearch s : List.of(
+                new RideSearch().forRider(rider),
+                new RideSearch().forDriver(driver),
+                new RideSearch().forRider(rider).withStatuses("Completed", "Cancelled"),
+                new RideSearch().forDriver(driver).withStatuses("Completed").between(monthAgo, null),
+                new RideSearch().forRider(rider).fareBetween(200.0, 800.0).sortBy(RideSearch.SortKey.FARE, false),
+                new RideSearch().forDriver(driver).onRoute(1).sortBy(RideSearch.SortKey.STATUS, true))) {
+            rides.searchRides(s);
+            rides.countRides(s);
+        }
+        RideDAO.invalidateStatusCounts();
+        rides.countRidesByStatus();
+
+        earnings.getTotalEarnings(driver);
+        earnings.getEarningsBetween(driver, LocalDateTime.now().minusDays(30), LocalDateTime.now());
+        earnings.getDailyEarnings(driver, LocalDate.now().minusDays(30), LocalDate.now());
+        earnings.reconcileCompletedRides(monthAgo);
+        earnings.rollUp(100);
+        if (d != null) earnings.adjustTotalEarnings(driver, earnings.getTotalEarnings(driver));
+
+        // Background components, driven once by hand instead of by their threads
+        new DispatchEngine(DispatchEngine.Policy.BALANCED, DriverGrid.get()).refresh();
+        LocationIngest ingest = new LocationIngest(DriverGrid.get(), 0, 1000, LocationIngest.Overflow.DROP_OLDEST);
+        ingest.offer(driver, 31.52, 74.35, System.currentTimeMillis());
+        ingest.flush();
+        try {
+            OutboxRelay relay = new OutboxRelay(AUDIT_RELAY, 1000);
+            for (int i = 0; i < 100 && relay.pollOnce() > 0; i++) { }
+        } catch (SQLException e) {
+            System.err.println("Outbox poll failed: " + e.getMessage());
+        }
+
+        shifts.getShiftsByDriver(driver);
+        shifts.addShift(driver, Date.valueOf(LocalDate.now().plusDays(1)), Time.valueOf("09:00:00"), Time.valueOf("17:00:00"));
+        List<DriverShift> list = shifts.getShiftsByDriver(driver);
+        if (!list.isEmpty()) shifts.endShift(list.get(0).getShiftId(), list.get(0).getEndTime());
+
+        // A full ride lifecycle on a throwaway rider, which is then deleted
+        String email = "audit-" + tag + "@bench.rydex";
+        users.registerRider("Audit Rider", email, "audit");
+        Rider temp = users.loginRider(email, "audit");
+        if (temp == null) return;
+        int tempId = temp.getUserId();
+        int ride = rides.createRide(tempId, driver, routeId > 0 ? routeId : 1, 275);
+        if (ride > 0) {
+            rides.getFareByRideId(ride);
+            rides.getDriverIdByRideId(ride);
+            rides.getRiderIdByRideId(ride);
+            rides.getRideStatus(ride);
+            rides.confirmRide(ride);
+            rides.startRideTransaction(ride, driver);
+            rides.completeRideTransaction(ride, driver, 275);
+            int pay = payments.createPayment(ride, 275, "Card", "Pending");
+            if (pay > 0) {
+                payments.updatePaymentStatus(pay, "Completed");
+                payments.updatePaymentAndRideStatus(pay, "Completed", "Completed");
+            }
+            payments.updatePaymentAndRideStatusByRideId(ride, "Completed", null);
+            feedback.createFeedback(ride, 5, "audit");
+            feedback.getFeedbacksByRide(ride);
+            assistants.addAssistant(ride, tempId, "Audit Helper");
+            assistants.getAssistantsByRide(ride);
+            rides.updateRideStatus(ride, "Completed");
+            RideTraces.load(ride);
+        }
+        int second = rides.createRide(tempId, driver, 1, 275);
+        if (second > 0) rides.cancelRide(second);
+        int[] batch = rides.createRides(List.of(new RideDAO.NewRide(tempId, driver, 1, 275, 1),
+                new RideDAO.NewRide(tempId, driver, 1, 300, 1)));
+        if (batch != null) for (int id : batch) rides.cancelRide(id);
+        int trip = trips.openTrip(driver, 1, 4);
+        if (trip > 0) {
+            int pooled = rides.createPooledRide(trip, tempId, driver, 1, 165, 1);
+            if (pooled > 0) rides.cancelRide(pooled);
+            trips.releaseSeats(trip, 1);
+            trips.closeTrip(trip);
+        }
+        trips.closeOpenTrips();
+        users.deleteUser(tempId);
+        DatabaseConfig.releaseThreadConnections();
+    }
+
+    // ===================== EXPLAIN =====================
+    private void explainAll(Connection conn) throws SQLException {
+        boolean mysql = isMySql(conn);
+        for (Finding f : captured.values()) {
+            String verb = f.sql.trim().toUpperCase(Locale.ROOT);
+            if (!(verb.startsWith("SELECT") || verb.startsWith("UPDATE") || verb.startsWith("DELETE"))) continue;
+            try {
+                if (mysql) explainMySql(conn, f);
+                else explainGeneric(conn, f);
+            } catch (SQLException e) {
+                f.plan = "(EXPLAIN failed: " + e.getMessage() + ")";
+            }
+        }
+    }
+
+    // Traditional tabular EXPLAIN: one row per table access
+    private void explainMySql(Connection conn, Finding f) throws SQLException {
+        try (PreparedStatement ps = prepare(conn, "EXPLAIN " + f.sql, f.params); ResultSet rs = ps.executeQuery()) {
+            StringBuilder plan = new StringBuilder();
+            while (rs.next()) {
+                String table = rs.getString("table");
+                String type = rs.getString("type");
+                long rows = rs.getLong("rows");
+                String key = rs.getString("key");
+                String extra = rs.getString("Extra");
+                plan.append(String.format("%s type=%s key=%s rows=%d extra=%s%n", table, type, key, rows, extra));
+                if (table == null || table.startsWith("<")) continue;
+                if (rows >= minRows && "ALL".equalsIgnoreCase(type)) {
+                    f.problems.add("full table scan of " + table + " (~" + rows + " rows)");
+                    f.scannedTables.add(table);
+                } else if (rows >= minRows && "index".equalsIgnoreCase(type)) {
+                    f.problems.add("full index scan of " + table + " via " + key + " (~" + rows + " rows)");
+                    f.scannedTables.add(table);
+                }
+                if (extra != null && extra.contains("Using filesort")) {
+                    f.problems.add("filesort on " + table);
+                    f.scannedTables.add(table);
+                }
+                if (extra != null && extra.contains("Using temporary")) f.problems.add("temporary table for " + table);
+            }
+            f.plan = plan.toString().trim();
+        }
+    }
+
+    // Databases with a text plan (H2 and friends): only table scans can be recognised
+    private void explainGeneric(Connection conn, Finding f) throws SQLException {
+        try (PreparedStatement ps = prepare(conn, "EXPLAIN " + f.sql, f.params); ResultSet rs = ps.executeQuery()) {
+            StringBuilder plan = new StringBuilder();
+            ResultSetMetaData md = rs.getMetaData();
+            while (rs.next()) {
+                for (int c = 1; c <= md.getColumnCount(); c++) plan.append(rs.getString(c)).append(' ');
+            }
+            f.plan = plan.toString().trim();
+            Matcher m = H2_SCAN.matcher(f.plan);
+            while (m.find()) {
+                f.problems.add("full table scan of " + m.group(1));
+                f.scannedTables.add(m.group(1));
+            }
+        }
+    }
+
+    private static PreparedStatement prepare(Connection conn, String sql, Map<Integer, Object> params) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(sql);
+        if (params != null) for (Map.Entry<Integer, Object> p : params.entrySet()) ps.setObject(p.getKey(), p.getValue());
+        return ps;
+    }
+
+    // Database name from the JDBC URL (jdbc:<db>:...), used to pick the baseline
+    private static String dialect(Connection conn) throws SQLException {
+        Matcher m = Pattern.compile("(?i)^jdbc:(\\w+):").matcher(conn.getMetaData().getURL());
+        return m.find() ? m.group(1).toLowerCase(Locale.ROOT) : "unknown";
+    }
+
+    private static boolean isMySql(Connection conn) throws SQLException {
+        String product = conn.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+        return product.contains("mysql") || product.contains("mariadb");
+    }
+
+    // ===================== PROPOSED INDEXES =====================
+    // Equality columns first, then IN columns, then one range or ORDER BY column
+    static List<List<String>> proposeColumns(String sql, String flaggedTable) {
+        Map<String, String> aliases = new HashMap<>();
+        Matcher t = TABLE_REF.matcher(sql);
+        while (t.find()) {
+            aliases.put(t.group(1).toLowerCase(Locale.ROOT), t.group(1));
+            if (t.group(2) != null) aliases.put(t.group(2).toLowerCase(Locale.ROOT), t.group(1));
+        }
+        String table = aliases.getOrDefault(flaggedTable.toLowerCase(Locale.ROOT), flaggedTable);
+        boolean single = aliases.values().stream().distinct().count() == 1;
+
+        String upper = sql.toUpperCase(Locale.ROOT);
+        int where = upper.indexOf(" WHERE ");
+        String whereClause = where < 0 ? "" : sql.substring(where + 7).split("(?i)\\b(ORDER\\s+BY|GROUP\\s+BY|LIMIT|FOR\\s+UPDATE)\\b")[0];
+
+        List<String> eq = new ArrayList<>();
+        List<String> in = new ArrayList<>();
+        List<String> range = new ArrayList<>();
+        Matcher c = COMPARISON.matcher(whereClause);
+        while (c.find()) {
+            if (!belongs(c.group(1), table, aliases, single)) continue;
+            String col = c.group(2);
+            if (c.group(3).equals("=")) addOnce(eq, col);
+            else addOnce(range, col);
+        }
+        Matcher i = IN_PREDICATE.matcher(whereClause);
+        while (i.find()) {
+            if (belongs(i.group(1), table, aliases, single)) addOnce(in, i.group(2));
+        }
+
+        List<List<String>> result = new ArrayList<>();
+        if (whereClause.matches("(?is).*\\bOR\\b.*")) {
+            // "a = ? OR b = ?" needs one index per branch (index merge)
+            for (String col : eq) result.add(List.of(col));
+            return result;
+        }
+        List<String> cols = new ArrayList<>(eq);
+        for (String col : in) addOnce(cols, col);
+        if (!range.isEmpty()) {
+            addOnce(cols, range.get(0));
+        } else {
+            Matcher o = ORDER_BY.matcher(sql);
+            if (o.find()) {
+                String first = o.group(1).split(",")[0].trim().split("\\s+")[0];
+                String[] parts = first.split("\\.");
+                String alias = parts.length == 2 ? parts[0] : null;
+                if (belongs(alias, table, aliases, single)) addOnce(cols, parts[parts.length - 1]);
+            }
+        }
+        if (!cols.isEmpty()) result.add(cols);
+        return result;
+    }
+
+    private static boolean belongs(String qualifier, String table, Map<String, String> aliases, boolean single) {
+        if (qualifier == null) return single;
+        return table.equalsIgnoreCase(aliases.getOrDefault(qualifier.toLowerCase(Locale.ROOT), qualifier));
+    }
+
+    private static void addOnce(List<String> list, String col) {
+        for (String c : list) if (c.equalsIgnoreCase(col)) return;
+        list.add(col);
+    }
+
+    // Existing indexes per table, as ordered column lists (primary key included)
+    private static List<List<String>> existingIndexes(Connection conn, String table) throws SQLException {
+        DatabaseMetaData md = conn.getMetaData();
+        Map<String, TreeMap<Short, String>> byName = new LinkedHashMap<>();
+        for (String name : new String[]{table, table.toUpperCase(Locale.ROOT)}) {
+            try (ResultSet rs = md.getIndexInfo(conn.getCatalog(), null, name, false, true)) {
+                while (rs.next()) {
+                    String idx = rs.getString("INDEX_NAME");
+                    String col = rs.getString("COLUMN_NAME");
+                    if (idx == null || col == null) continue;
+                    byName.computeIfAbsent(idx, k -> new TreeMap<>()).put(rs.getShort("ORDINAL_POSITION"), col);
+                }
+            }
+            if (!byName.isEmpty()) break;
+        }
+        List<List<String>> result = new ArrayList<>();
+        for (TreeMap<Short, String> cols : byName.values()) result.add(new ArrayList<>(cols.values()));
+        return result;
+    }
+
+    private static boolean covered(List<String> wanted, List<List<String>> existing) {
+        for (List<String> idx : existing) {
+            if (idx.size() < wanted.size()) continue;
+            boolean prefix = true;
+            for (int i = 0; i < wanted.size(); i++) {
+                if (!idx.get(i).equalsIgnoreCase(wanted.get(i))) { prefix = false; break; }
+            }
+            if (prefix) return true;
+        }
+        return false;
+    }
+
+    private Set<String> proposals(Connection conn) throws SQLException {
+        Set<String> ddl = new LinkedHashSet<>();
+        Map<String, List<List<String>>> indexCache = new HashMap<>();
+        for (Finding f : captured.values()) {
+            for (String flagged : f.scannedTables) {
+                for (List<String> cols : proposeColumns(f.sql, flagged)) {
+                    String table = tableFor(f.sql, flagged);
+                    List<List<String>> existing = indexCache.get(table);
+                    if (existing == null) {
+                        existing = existingIndexes(conn, table);
+                        indexCache.put(table, existing);
+                    }
+                    if (covered(cols, existing)) continue;
+                    ddl.add("CREATE INDEX idx_" + table.toLowerCase(Locale.ROOT) + "_" + String.join("_", cols).toLowerCase(Locale.ROOT)
+                            + " ON " + table + " (" + String.join(", ", cols) + ");");
+                }
+            }
+        }
+        return ddl;
+    }
+
+    private static String tableFor(String sql, String aliasOrTable) {
+        Matcher t = TABLE_REF.matcher(sql);
+        while (t.find()) {
+            if (t.group(1).equalsIgnoreCase(aliasOrTable) || aliasOrTable.equalsIgnoreCase(t.group(2))) return t.group(1);
+        }
+        return aliasOrTable;
+    }
+
+    // ===================== REPORT =====================
+    private String report(Set<String> ddl) {
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        int flagged = 0;
+        for (Finding f : captured.values()) if (!f.problems.isEmpty()) flagged++;
+        sb.append("========== INDEX AUDIT ==========").append(nl);
+        sb.append(captured.size()).append(" statement shapes captured, ").append(flagged).append(" flagged").append(nl).append(nl);
+        for (Finding f : captured.values()) {
+            if (f.problems.isEmpty()) continue;
+            sb.append("FLAGGED: ").append(f.shape).append(nl);
+            for (String p : f.problems) sb.append("  - ").append(p).append(nl);
+            for (String line : f.plan.split("\\R")) sb.append("    ").append(line).append(nl);
+        }
+        sb.append(nl).append("OK:").append(nl);
+        for (Finding f : captured.values()) {
+            if (f.problems.isEmpty()) sb.append("  ").append(f.shape).append(nl);
+        }
+        sb.append(nl).append("Proposed indexes:").append(nl);
+        if (ddl.isEmpty()) sb.append("  (none)").append(nl);
+        for (String s : ddl) sb.append("  ").append(s).append(nl);
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path reportFile = null, baseline = null, writeBaseline = null;
+        int minRows = 100;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--report": reportFile = Path.of(args[i + 1]); break;
+                case "--baseline": baseline = Path.of(args[i + 1]); break;
+                case "--write-baseline": writeBaseline = Path.of(args[i + 1]); break;
+                case "--min-rows": minRows = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        BenchSeeder seeder = new BenchSeeder(5000, 500, 50, 50000);
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            seeder.ensureSeeded(conn);
+        }
+
+        IndexAudit audit = new IndexAudit(minRows);
+        DatabaseConfig.enableQueryStats(0, null);
+        InstrumentedConnection.setListener(audit::capture);
+        try {
+            audit.exercise(seeder);
+        } finally {
+            InstrumentedConnection.setListener(null);
+        }
+
+        String text;
+        String db;
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            audit.explainAll(conn);
+            text = audit.report(audit.proposals(conn));
+            db = dialect(conn);
+            // The relay row exercise() created would pin MIN(last_id) and stop the outbox purge
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM Outbox_Offsets WHERE relay = ?")) {
+                ps.setString(1, AUDIT_RELAY);
+                ps.executeUpdate();
+            }
+        } finally {
+            DatabaseConfig.closeConnection();
+        }
+        if (baseline != null) baseline = Path.of(baseline.toString().replace("{db}", db));
+        if (writeBaseline != null) writeBaseline = Path.of(writeBaseline.toString().replace("{db}", db));
+        if (baseline != null && !Files.exists(baseline)) {
+            System.out.println("No baseline for " + db + " at " + baseline + "; recording this run as the baseline");
+            writeBaseline = baseline;
+            baseline = null;
+        }
+        System.out.print(text);
+        if (reportFile != null) Files.writeString(reportFile, text, StandardCharsets.UTF_8);
+
+        List<String> flagged = new ArrayList<>();
+        for (Finding f : audit.captured.values()) if (!f.problems.isEmpty()) flagged.add(f.shape);
+        if (writeBaseline != null) {
+            Files.write(writeBaseline, flagged, StandardCharsets.UTF_8);
+            System.out.println("Baseline written to " + writeBaseline + " (" + flagged.size() + " accepted shapes)");
+        }
+        if (baseline != null) {
+            Set<String> accepted = new LinkedHashSet<>(readLines(baseline));
+            List<String> fresh = new ArrayList<>();
+            for (String s : flagged) if (!accepted.contains(s)) fresh.add(s);
+            if (!fresh.isEmpty()) {
+                System.out.println("\nNEW SCANNING STATEMENTS (not in " + baseline + "):");
+                for (String s : fresh) System.out.println("  " + s);
+                System.exit(1);
+            }
+            System.out.println("\nNo new scanning statements.");
+        }
+    }
+
+    private static List<String> readLines(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isBlank() && !line.startsWith("#")) lines.add(line.trim());
+        }
+        return lines;
+    }
+}
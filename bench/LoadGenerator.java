@@ -0,0 +1,308 @@
+// LoadGenerator.java - Simulated riders and drivers hammering the service/DAO layer at once
+//
+// Every rider and every driver is an agent on its own virtual thread:
+//   rider  - books rides at a Poisson arrival rate, then pays and rates each ride once its
+//            driver reports it completed
+//   driver - works through its queue of booked rides: confirm -> start -> complete
+// Conflicts are injected on purpose so their cost shows up in the numbers: a share of
+// completions race a duplicate completion, and a share are attempted by the wrong driver.
+// Rejected completions are classified (double complete / driver mismatch) by re-reading the ride.
+//
+// The run can be split into stages with increasing rider arrival rates (--stages 1,2,4,8 are
+// multipliers of --rate) to find where throughput stops scaling and latency takes off.
+//
+// Usage (JDK 21+):
+//   java -Drydex.db.url=... LoadGenerator [--riders 5000] [--drivers 500] [--rate 0.05]
+//       [--stages 1,2,4] [--duration 30] [--pool 64] [--race-pct 2] [--mismatch-pct 1]
+//       [--check-availability] [--verbose]
+// --rate is bookings per second per rider.
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+public class LoadGenerator {
+
+    // Per-operation counters for one stage
+    static class OpStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder ok = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    static class Stage {
+        final double ratePerRider;
+        final Map<String, OpStats> ops = new ConcurrentHashMap<>();
+        final LongAdder doubleCompletes = new LongAdder();
+        final LongAdder driverMismatches = new LongAdder();
+        final LongAdder otherCompleteRejects = new LongAdder();
+        final LongAdder ridesFinished = new LongAdder();
+        long elapsedNanos;
+
+        Stage(double ratePerRider) {
+            this.ratePerRider = ratePerRider;
+        }
+
+        OpStats op(String name) {
+            return ops.computeIfAbsent(name, k -> new OpStats());
+        }
+    }
+
+    // A booked ride travelling from rider to driver and back
+    static class Job {
+        final int rideId;
+        final int riderId;
+        final int driverId;
+        final double fare;
+
+        Job(int rideId, int riderId, int driverId, double fare) {
+            this.rideId = rideId;
+            this.riderId = riderId;
+            this.driverId = driverId;
+            this.fare = fare;
+        }
+    }
+
+    private static final String[] METHODS = {"Cash", "Card", "Wallet"};
+
+    private final BenchSeeder seeder;
+    private final double racePct;
+    private final double mismatchPct;
+    private final boolean checkAvailability;
+
+    private final BookingService bookingService = new BookingService();
+    private final RideDAO rideDAO = new RideDAO();
+    private final PaymentDAO paymentDAO = new PaymentDAO();
+    private final FeedbackDAO feedbackDAO = new FeedbackDAO();
+
+    // Work queues: booked rides per driver, completed rides per rider
+    private final Map<Integer, BlockingQueue<Job>> driverQueues = new ConcurrentHashMap<>();
+    private final Map<Integer, BlockingQueue<Job>> riderInbox = new ConcurrentHashMap<>();
+
+    private volatile Stage stage;
+    private volatile long stageDeadline;
+
+    public LoadGenerator(BenchSeeder seeder, double racePct, double mismatchPct, boolean checkAvailability) {
+        this.seeder = seeder;
+        this.racePct = racePct;
+        this.mismatchPct = mismatchPct;
+        this.checkAvailability = checkAvailability;
+        for (int i = 0; i < seeder.drivers; i++) driverQueues.put(seeder.firstDriverId() + i, new LinkedBlockingQueue<>());
+        for (int i = 1; i <= seeder.riders; i++) riderInbox.put(i, new LinkedBlockingQueue<>());
+    }
+
+    // ===================== AGENTS =====================
+    private void riderAgent(int riderId) {
+        SplittableRandom random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+        Stage s = stage;
+        long nextBooking = System.nanoTime() + nextArrival(random, s.ratePerRider);
+        while (System.nanoTime() < stageDeadline) {
+            // Settle anything that finished since the last wake-up
+            Job done;
+            while ((done = riderInbox.get(riderId).poll()) != null) {
+                Job j = done;
+                timed(s, "pay", () -> paymentDAO.updatePaymentAndRideStatusByRideId(j.rideId, "Completed", null));
+                timed(s, "feedback", () -> feedbackDAO.createFeedback(j.rideId, 3 + random.nextInt(3), "") > 0);
+                s.ridesFinished.increment();
+            }
+            long now = System.nanoTime();
+            if (now >= nextBooking) {
+                int driverId = seeder.firstDriverId() + random.nextInt(seeder.drivers);
+                int routeId = 1 + random.nextInt(seeder.routes);
+                String method = METHODS[random.nextInt(METHODS.length)];
+                BookingService.BookingResult[] result = new BookingService.BookingResult[1];
+                timed(s, "book", () -> {
+                    result[0] = bookingService.book(riderId, driverId, routeId, method, null, checkAvailability);
+                    return result[0].isSuccess();
+                });
+                if (result[0] != null && result[0].isSuccess()) {
+                    driverQueues.get(driverId).add(new Job(result[0].getRideId(), riderId, driverId, result[0].getFare()));
+                }
+                nextBooking = now + nextArrival(random, s.ratePerRider);
+            }
+            sleepNanos(Math.min(nextBooking - System.nanoTime(), 50_000_000L));
+        }
+    }
+
+    private void driverAgent(int driverId) {
+        SplittableRandom random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+        Stage s = stage;
+        BlockingQueue<Job> queue = driverQueues.get(driverId);
+        while (System.nanoTime() < stageDeadline) {
+            Job job;
+            try {
+                job = queue.poll(50, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (job == null) continue;
+            if (!timed(s, "confirm", () -> rideDAO.confirmRide(job.rideId))) continue;
+            if (!timed(s, "start", () -> rideDAO.startRideTransaction(job.rideId, driverId))) continue;
+
+            if (random.nextDouble() * 100 < mismatchPct) {
+                int other = seeder.firstDriverId() + Math.floorMod(driverId - seeder.firstDriverId() + 1, seeder.drivers);
+                complete(s, job, other);
+            }
+            if (random.nextDouble() * 100 < racePct) {
+                // Fire a concurrent duplicate; exactly one of the two should win
+                Thread.ofVirtual().start(() -> {
+                    if (complete(s, job, driverId)) riderInbox.get(job.riderId).add(job);
+                    DatabaseConfig.releaseThreadConnections();
+                });
+            }
+            if (complete(s, job, driverId)) riderInbox.get(job.riderId).add(job);
+        }
+    }
+
+    private boolean complete(Stage s, Job job, int driverId) {
+        boolean ok = timed(s, "complete", () -> rideDAO.completeRideTransaction(job.rideId, driverId, job.fare));
+        if (!ok) {
+            // Work out why it was refused
+            if (rideDAO.getDriverIdByRideId(job.rideId) != driverId) {
+                s.driverMismatches.increment();
+            } else if ("Completed".equals(rideDAO.getRideStatus(job.rideId))) {
+                s.doubleCompletes.increment();
+            } else {
+                s.otherCompleteRejects.increment();
+            }
+            DatabaseConfig.releaseThreadConnections();
+        }
+        return ok;
+    }
+
+    // Time one call; false results count as rejections, exceptions as errors
+    private boolean timed(Stage s, String name, BooleanSupplier call) {
+        OpStats st = s.op(name);
+        long t0 = System.nanoTime();
+        try {
+            boolean ok = call.getAsBoolean();
+            (ok ? st.ok : st.rejected).increment();
+            return ok;
+        } catch (RuntimeException e) {
+            st.errors.increment();
+            return false;
+        } finally {
+            st.latency.recordNanos(System.nanoTime() - t0);
+            DatabaseConfig.releaseThreadConnections();
+        }
+    }
+
+    private static long nextArrival(SplittableRandom random, double ratePerSecond) {
+        // Exponential inter-arrival time for a Poisson process
+        return (long) (-Math.log(1 - random.nextDouble()) / ratePerSecond * 1e9);
+    }
+
+    private static void sleepNanos(long nanos) {
+        if (nanos <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ===================== RUNNING =====================
+    public Stage runStage(double ratePerRider, int seconds) throws InterruptedException {
+        Stage s = new Stage(ratePerRider);
+        stage = s;
+        driverQueues.values().forEach(BlockingQueue::clear);
+        riderInbox.values().forEach(BlockingQueue::clear);
+        long start = System.nanoTime();
+        stageDeadline = start + seconds * 1_000_000_000L;
+        try (ExecutorService agents = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int d : driverQueues.keySet()) agents.submit(() -> driverAgent(d));
+            for (int r : riderInbox.keySet()) agents.submit(() -> riderAgent(r));
+        }   // close() waits for every agent to reach the deadline
+        s.elapsedNanos = System.nanoTime() - start;
+        return s;
+    }
+
+    // ===================== REPORT =====================
+    static void printStage(Stage s, int riders) {
+        double secs = s.elapsedNanos / 1e9;
+        System.out.printf("%n--- offered load %.1f bookings/s (%.3f per rider) over %.1f s ---%n",
+                s.ratePerRider * riders, s.ratePerRider, secs);
+        System.out.printf("%-9s %9s %9s %8s %7s %9s %9s %9s %9s %9s%n",
+                "op", "ok", "rejected", "errors", "err %", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<String, OpStats> e : new TreeMap<>(s.ops).entrySet()) {
+            OpStats st = e.getValue();
+            long n = st.latency.getCount();
+            System.out.printf("%-9s %9d %9d %8d %7.2f %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    e.getKey(), st.ok.sum(), st.rejected.sum(), st.errors.sum(),
+                    n == 0 ? 0 : 100.0 * (st.rejected.sum() + st.errors.sum()) / n, n / secs,
+                    st.latency.percentileMillis(50), st.latency.percentileMillis(99),
+                    st.latency.percentileMillis(99.9), st.latency.getMaxMicros() / 1000.0);
+        }
+        long completes = s.op("complete").latency.getCount();
+        System.out.printf("rides finished: %d (%.1f/s)%n", s.ridesFinished.sum(), s.ridesFinished.sum() / secs);
+        System.out.printf("complete conflicts: double=%d mismatch=%d other=%d (%.2f%% of attempts)%n",
+                s.doubleCompletes.sum(), s.driverMismatches.sum(), s.otherCompleteRejects.sum(),
+                completes == 0 ? 0 : 100.0 * (s.doubleCompletes.sum() + s.driverMismatches.sum()
+                        + s.otherCompleteRejects.sum()) / completes);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int riders = 5000, drivers = 500, routes = 50, duration = 30, pool = 64;
+        double rate = 0.05, racePct = 2, mismatchPct = 1;
+        boolean checkAvailability = false, verbose = false;
+        List<Double> stages = new ArrayList<>(List.of(1.0));
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--riders": riders = Integer.parseInt(args[++i]); break;
+                case "--drivers": drivers = Integer.parseInt(args[++i]); break;
+                case "--routes": routes = Integer.parseInt(args[++i]); break;
+                case "--rate": rate = Double.parseDouble(args[++i]); break;
+                case "--duration": duration = Integer.parseInt(args[++i]); break;
+                case "--pool": pool = Integer.parseInt(args[++i]); break;
+                case "--race-pct": racePct = Double.parseDouble(args[++i]); break;
+                case "--mismatch-pct": mismatchPct = Double.parseDouble(args[++i]); break;
+                case "--check-availability": checkAvailability = true; break;
+                case "--verbose": verbose = true; break;
+                case "--stages":
+                    stages.clear();
+                    for (String m : args[++i].split(",")) stages.add(Double.parseDouble(m));
+                    break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        BenchSeeder seeder = new BenchSeeder(riders, drivers, routes, 0);
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            seeder.ensureSeeded(conn);
+        }
+        DatabaseConfig.enablePooling(pool, 30000);
+
+        LoadGenerator gen = new LoadGenerator(seeder, racePct, mismatchPct, checkAvailability);
+        Log.Level level = Log.getLevel();
+        try {
+            for (double m : stages) {
+                System.out.printf("Running stage x%.1f for %d s...%n", m, duration);
+                // DAOs log every insert and every refused transaction; that would dominate the run
+                if (!verbose) Log.setLevel(Log.Level.OFF);
+                Stage s;
+                try {
+                    s = gen.runStage(rate * m, duration);
+                } finally {
+                    Log.flush();
+                    Log.setLevel(level);
+                }
+                printStage(s, riders);
+            }
+        } finally {
+            DatabaseConfig.closeConnection();
+        }
+    }
+}
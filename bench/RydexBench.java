@@ -0,0 +1,307 @@
+// RydexBench.java - Microbenchmark harness for the DAO hot paths
+//
+// Each benchmark runs a number of timed warmup iterations (discarded) followed by measured
+// iterations, and reports ops/s (mean +- stddev across iterations), mean time per op and
+// bytes allocated per op on the calling thread. Results are consumed into a sink so the JIT
+// cannot drop the calls. The database is created and seeded by BenchSeeder on first run,
+// so numbers are comparable across runs of the same fixture.
+//
+// Usage (from the compiled classes directory, JDBC driver on the classpath):
+//   java -Drydex.db.url=jdbc:mysql://localhost:3306/rydex_bench RydexBench
+//       [--warmup 3] [--iterations 5] [--time 2] [--threads 1] [--only loginRider,searchRides]
+//       [--riders 5000] [--drivers 500] [--rides 50000]
+// With --threads > 1 the connection pool is enabled and each benchmark is run concurrently.
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class RydexBench {
+
+    // One benchmarked operation; invoke() returns something for the sink
+    interface Operation {
+        Object invoke(SplittableRandom random) throws Exception;
+    }
+
+    static class Benchmark {
+        final String name;
+        final Operation op;
+
+        Benchmark(String name, Operation op) {
+            this.name = name;
+            this.op = op;
+        }
+    }
+
+    static class Result {
+        final String name;
+        final double[] opsPerSec;
+        final double nanosPerOp;
+        final double bytesPerOp;
+
+        Result(String name, double[] opsPerSec, double nanosPerOp, double bytesPerOp) {
+            this.name = name;
+            this.opsPerSec = opsPerSec;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        double mean() {
+            return Arrays.stream(opsPerSec).average().orElse(0);
+        }
+
+        double stddev() {
+            double m = mean();
+            double v = 0;
+            for (double x : opsPerSec) v += (x - m) * (x - m);
+            return opsPerSec.length > 1 ? Math.sqrt(v / (opsPerSec.length - 1)) : 0;
+        }
+    }
+
+    // Consumed results end up here so no call is dead code
+    private static volatile int sink;
+
+    private static void consume(Object o) {
+        sink += o == null ? 1 : o.hashCode();
+    }
+
+    private final int warmup;
+    private final int iterations;
+    private final long iterationNanos;
+    private final int threads;
+    private final BenchSeeder seeder;
+
+    private final UserDAO userDAO = new UserDAO();
+    private final RideDAO rideDAO = new RideDAO();
+    private final RouteDAO routeDAO = new RouteDAO();
+    private final VehicleDAO vehicleDAO = new VehicleDAO();
+    private final BookingService bookingService = new BookingService();
+
+    public RydexBench(int warmup, int iterations, int seconds, int threads, BenchSeeder seeder) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.iterationNanos = seconds * 1_000_000_000L;
+        this.threads = threads;
+        this.seeder = seeder;
+    }
+
+    // ===================== BENCHMARKS =====================
+    private List<Benchmark> benchmarks() {
+        List<Benchmark> list = new ArrayList<>();
+        int riders = seeder.riders;
+        int drivers = seeder.drivers;
+        int routes = seeder.routes;
+        int firstDriver = seeder.firstDriverId();
+
+        list.add(new Benchmark("calculateFare", r -> FareCalculator.calculateFare(r.nextInt(250) / 10.0)));
+        list.add(new Benchmark("loginRider", r -> {
+            int i = 1 + r.nextInt(riders);
+            return userDAO.loginRider(BenchSeeder.riderEmail(i), BenchSeeder.riderPassword(i));
+        }));
+        list.add(new Benchmark("getAllRoutes", r -> routeDAO.getAllRoutes()));
+        list.add(new Benchmark("getAllDriversWithVehicles", r -> vehicleDAO.getAllDriversWithVehicles()));
+        list.add(new Benchmark("getRidesByRider", r -> rideDAO.getRidesByRider(1 + r.nextInt(riders))));
+        list.add(new Benchmark("getRidesByDriver", r -> rideDAO.getRidesByDriver(firstDriver + r.nextInt(drivers))));
+        list.add(new Benchmark("searchRides", r -> rideDAO.searchRides(new RideSearch()
+                .forRider(1 + r.nextInt(riders)).withStatuses("Completed")
+                .sortBy(RideSearch.SortKey.RIDE_TIME, false).page(50, 0))));
+        list.add(new Benchmark("isDriverAvailableNow", r -> bookingService.isDriverAvailableNow(firstDriver + r.nextInt(drivers))));
+        list.add(new Benchmark("createRide", r -> rideDAO.createRide(1 + r.nextInt(riders),
+                firstDriver + r.nextInt(drivers), 1 + r.nextInt(routes), 250)));
+        // Every call consumes an In Progress ride; see runCompleteRide()
+        list.add(new Benchmark("completeRideTransaction", null));
+        return list;
+    }
+
+    // ===================== RUNNING =====================
+    public List<Result> run(Set<String> only) throws Exception {
+        List<Result> results = new ArrayList<>();
+        for (Benchmark b : benchmarks()) {
+            if (!only.isEmpty() && !only.contains(b.name)) continue;
+            System.out.println("# " + b.name);
+            results.add(b.op == null ? runCompleteRide() : runTimed(b.name, b.op));
+        }
+        return results;
+    }
+
+    private Result runTimed(String name, Operation op) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            double ops = iteration(op, iterationNanos, null);
+            System.out.printf("  warmup %d: %,.1f ops/s%n", i + 1, ops);
+        }
+        double[] opsPerSec = new double[iterations];
+        long[] alloc = new long[2];   // {ops, bytes}
+        for (int i = 0; i < iterations; i++) {
+            opsPerSec[i] = iteration(op, iterationNanos, alloc);
+            System.out.printf("  iteration %d: %,.1f ops/s%n", i + 1, opsPerSec[i]);
+        }
+        double mean = Arrays.stream(opsPerSec).average().orElse(0);
+        return new Result(name, opsPerSec, mean == 0 ? 0 : threads * 1e9 / mean,
+                alloc[0] == 0 ? 0 : (double) alloc[1] / alloc[0]);
+    }
+
+    private Result runCompleteRide() throws Exception {
+        // A fresh batch of rides is inserted (untimed) before each iteration, which ends when they run out
+        int perIteration = 500;
+        double[] opsPerSec = new double[iterations];
+        long[] alloc = new long[2];
+        for (int i = -warmup; i < iterations; i++) {
+            int[] ids;
+            try (Connection conn = DatabaseConfig.getNewConnection()) {
+                ids = seeder.createInProgressRides(conn, perIteration);
+            }
+            AtomicInteger next = new AtomicInteger();
+            Operation op = r -> {
+                int k = next.getAndIncrement();
+                if (k >= ids.length) throw new IterationExhausted();
+                return rideDAO.completeRideTransaction(ids[k], seeder.driverForInProgressRide(k), 350);
+            };
+            double ops = iteration(op, Long.MAX_VALUE, i < 0 ? null : alloc);
+            if (i < 0) {
+                System.out.printf("  warmup %d: %,.1f ops/s%n", i + warmup + 1, ops);
+            } else {
+                opsPerSec[i] = ops;
+                System.out.printf("  iteration %d: %,.1f ops/s%n", i + 1, ops);
+            }
+        }
+        double mean = Arrays.stream(opsPerSec).average().orElse(0);
+        return new Result("completeRideTransaction", opsPerSec, mean == 0 ? 0 : threads * 1e9 / mean,
+                alloc[0] == 0 ? 0 : (double) alloc[1] / alloc[0]);
+    }
+
+    // Thrown by exhaustible operations to end an iteration early
+    static class IterationExhausted extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        IterationExhausted() { super(null, null, false, false); }
+    }
+
+    // Run op on all threads until the deadline; returns aggregate ops/s
+    private double iteration(Operation op, long durationNanos, long[] alloc) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        LongAdder bytes = new LongAdder();
+        LongAdder errors = new LongAdder();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long[] window = new long[2];
+
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+                long count = 0;
+                try {
+                    ready.countDown();
+                    go.await();
+                    long start = System.nanoTime();
+                    long deadline = durationNanos == Long.MAX_VALUE ? Long.MAX_VALUE : start + durationNanos;
+                    long allocStart = allocatedBytes();
+                    while (System.nanoTime() < deadline) {
+                        try {
+                            consume(op.invoke(random));
+                            count++;
+                        } catch (IterationExhausted e) {
+                            break;
+                        } catch (Exception e) {
+                            errors.increment();
+                        } finally {
+                            if (threads > 1) DatabaseConfig.releaseThreadConnections();
+                        }
+                    }
+                    bytes.add(allocatedBytes() - allocStart);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    ops.add(count);
+                    done.countDown();
+                }
+            }, "rydex-bench-" + t);
+            worker.start();
+        }
+        ready.await();
+        Log.Level level = Log.getLevel();
+        Log.setLevel(Log.Level.WARN);   // DAOs log on success; keep that off the timed path
+        try {
+            window[0] = System.nanoTime();
+            go.countDown();
+            done.await();
+            window[1] = System.nanoTime();
+        } finally {
+            Log.setLevel(level);
+        }
+        if (errors.sum() > 0) System.out.println("  (" + errors.sum() + " operations threw)");
+        if (alloc != null) {
+            alloc[0] += ops.sum();
+            alloc[1] += bytes.sum();
+        }
+        return ops.sum() * 1e9 / (window[1] - window[0]);
+    }
+
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    // ===================== REPORT =====================
+    private void printReport(List<Result> results) {
+        System.out.println("\n========== BENCHMARK RESULTS ==========");
+        System.out.printf("threads=%d warmup=%d iterations=%d x %ds%n", threads, warmup, iterations, iterationNanos / 1_000_000_000L);
+        System.out.printf("%-26s %14s %12s %12s %12s%n", "benchmark", "ops/s", "+-", "us/op", "B/op");
+        for (Result r : results) {
+            System.out.printf("%-26s %,14.1f %,12.1f %,12.2f %,12.0f%n",
+                    r.name, r.mean(), r.stddev(), r.nanosPerOp / 1000.0, r.bytesPerOp);
+        }
+        System.out.println("=======================================");
+    }
+
+    public static void main(String[] args) throws Exception {
+        int warmup = 3, iterations = 5, seconds = 2, threads = 1;
+        int riders = 5000, drivers = 500, routes = 50, rides = 50000;
+        Set<String> only = new HashSet<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "--warmup": warmup = Integer.parseInt(v); break;
+                case "--iterations": iterations = Integer.parseInt(v); break;
+                case "--time": seconds = Integer.parseInt(v); break;
+                case "--threads": threads = Integer.parseInt(v); break;
+                case "--riders": riders = Integer.parseInt(v); break;
+                case "--drivers": drivers = Integer.parseInt(v); break;
+                case "--routes": routes = Integer.parseInt(v); break;
+                case "--rides": rides = Integer.parseInt(v); break;
+                case "--only": only.addAll(Arrays.asList(v.split(","))); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        BenchSeeder seeder = new BenchSeeder(riders, drivers, routes, rides);
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            seeder.ensureSeeded(conn);
+        } catch (SQLException e) {
+            System.err.println("Error preparing benchmark database: " + e.getMessage());
+            return;
+        }
+        if (threads > 1) DatabaseConfig.enablePooling(threads, 30000);
+
+        RydexBench bench = new RydexBench(warmup, iterations, seconds, threads, seeder);
+        try {
+            bench.printReport(bench.run(only));
+        } finally {
+            DatabaseConfig.closeConnection();
+        }
+    }
+}
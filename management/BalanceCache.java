@@ -0,0 +1,451 @@
+// BalanceCache.java - Write-behind cache for rider wallet balances
+//
+// Top-ups and wallet charges change an in-memory account (a LongAdder of changes in
+// hundredths, so concurrent top-ups never contend) and return; a flusher thread writes
+// the net change of every touched rider as one JDBC batch of relative UPDATEs, every
+// interval or sooner once enough changes are waiting. A burst of top-ups and charges
+// therefore costs one UPDATE per rider per flush instead of one per change. Charges check
+// the cached balance under the account's write lock, so two charges cannot both spend
+// the same money; top-ups only take the read lock.
+//
+// Each change is first appended to a local journal (fixed-size records with a sequence
+// number, fsync'd before the call returns). A flush records the last sequence it covered
+// in Balance_Checkpoints in the same transaction as the UPDATEs, and deletes the journal
+// files it covered; at startup anything in the journal after the checkpoint is applied,
+// so a crash loses no acknowledged change and replays none twice.
+//
+// The cache assumes this process is the only writer of Riders.balance (e.g. RydexServer);
+// another process would see balances up to one interval old and could overspend. Idle,
+// fully flushed accounts are dropped after a minute and re-read from the database.
+//
+// Off unless -Drydex.writebehind.ms=<flush interval> is set; -Drydex.writebehind.batch=500
+// (changes that trigger an early flush), -Drydex.writebehind.journal=<dir> (default
+// rydex-balance-journal, "off" to run without one).
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+public final class BalanceCache {
+
+    private static final long IDLE_EVICT_MS = 60_000;
+    private static final Metrics.Counter FLUSHES = Metrics.counter("rydex_writebehind_flushes_total",
+            "Write-behind flushes that wrote at least one balance");
+    private static final Metrics.Counter ROWS = Metrics.counter("rydex_writebehind_rows_total",
+            "Rider balance rows updated by write-behind flushes");
+
+    private static volatile BalanceCache instance;
+    private static volatile boolean initialized;
+
+    private final Map<Integer, Account> accounts = new ConcurrentHashMap<>();
+    private final AtomicInteger unflushed = new AtomicInteger();
+    private final Object flushLock = new Object();
+    private final long intervalMillis;
+    private final int batchSize;
+    private final Journal journal;
+    private final Thread flusher;
+
+    private static final class Account {
+        final int riderId;
+        final long baseCents;                          // Riders.balance when loaded
+        final LongAdder changes = new LongAdder();     // every change since loaded
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        long flushedCents;                             // part of changes already in the database (flusher only)
+        boolean retired;                               // evicted; guarded by the write lock
+        volatile long lastUsed = System.currentTimeMillis();
+
+        Account(int riderId, long baseCents) {
+            this.riderId = riderId;
+            this.baseCents = baseCents;
+        }
+
+        long balanceCents() {
+            return baseCents + changes.sum();
+        }
+    }
+
+    // ===================== STATIC ACCESS =====================
+    // The process-wide cache, started on first use; null when write-behind is off
+    public static BalanceCache get() {
+        if (!initialized) init();
+        return instance;
+    }
+
+    private static synchronized void init() {
+        if (initialized) return;
+        long interval = Long.getLong("rydex.writebehind.ms", 0);
+        if (interval > 0) {
+            String dir = System.getProperty("rydex.writebehind.journal", "rydex-balance-journal");
+            try {
+                Journal journal = "off".equalsIgnoreCase(dir) ? null : new Journal(Path.of(dir).toAbsolutePath());
+                instance = new BalanceCache(interval, Integer.getInteger("rydex.writebehind.batch", 500), journal);
+            } catch (IOException | SQLException e) {
+                Log.error("Cannot start write-behind balance cache, writing balances directly", "error", e.getMessage());
+            }
+        }
+        initialized = true;
+    }
+
+    // Balance to show for a rider read from the database: the cached one while it is newer
+    static double currentBalance(int riderId, double databaseBalance) {
+        BalanceCache cache = instance;
+        Account a = cache == null ? null : cache.accounts.get(riderId);
+        return a == null ? databaseBalance : a.balanceCents() / 100.0;
+    }
+
+    // ===================== INSTANCE =====================
+    private BalanceCache(long intervalMillis, int batchSize, Journal journal) throws SQLException, IOException {
+        this.intervalMillis = intervalMillis;
+        this.batchSize = batchSize;
+        this.journal = journal;
+        if (journal != null) journal.recover();
+        this.flusher = new Thread(this::runFlusher, "rydex-balance-writebehind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+        Metrics.gauge("rydex_writebehind_accounts", "Rider balances held by the write-behind cache", () -> accounts.size());
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "rydex-balance-writebehind-flush"));
+        Log.info("Write-behind balance cache started", "intervalMs", intervalMillis,
+                "journal", journal == null ? "off" : journal.dir);
+    }
+
+    public boolean credit(int riderId, double amount) {
+        long cents = Math.round(amount * 100);
+        if (cents <= 0) return false;
+        while (true) {
+            Account a = account(riderId);
+            if (a == null) return false;
+            a.lock.readLock().lock();
+            try {
+                if (!a.retired) return apply(a, cents);
+            } finally {
+                a.lock.readLock().unlock();
+            }
+        }
+    }
+
+    // Deduct only if the balance covers it
+    public boolean debit(int riderId, double amount) {
+        long cents = Math.round(amount * 100);
+        if (cents <= 0) return false;
+        while (true) {
+            Account a = account(riderId);
+            if (a == null) return false;
+            a.lock.writeLock().lock();
+            try {
+                if (a.retired) continue;
+                if (a.balanceCents() < cents) return false;
+                return apply(a, -cents);
+            } finally {
+                a.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Set an absolute balance (recorded as the difference from the cached one)
+    public boolean setBalance(int riderId, double balance) {
+        long target = Math.round(balance * 100);
+        while (true) {
+            Account a = account(riderId);
+            if (a == null) return false;
+            a.lock.writeLock().lock();
+            try {
+                if (a.retired) continue;
+                long delta = target - a.balanceCents();
+                return delta == 0 || apply(a, delta);
+            } finally {
+                a.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // -1 if the rider does not exist
+    public double getBalance(int riderId) {
+        Account a = account(riderId);
+        return a == null ? -1 : a.balanceCents() / 100.0;
+    }
+
+    private boolean apply(Account a, long cents) {
+        if (journal != null) {
+            if (!journal.append(a.riderId, cents, () -> a.changes.add(cents))) return false;
+        } else {
+            a.changes.add(cents);
+        }
+        a.lastUsed = System.currentTimeMillis();
+        if (unflushed.incrementAndGet() >= batchSize) LockSupport.unpark(flusher);
+        return true;
+    }
+
+    private Account account(int riderId) {
+        Account a = accounts.get(riderId);
+        if (a != null) return a;
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT balance FROM Riders WHERE rider_id = ?")) {
+            ps.setInt(1, riderId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                Account loaded = new Account(riderId, Math.round(rs.getDouble(1) * 100));
+                Account raced = accounts.putIfAbsent(riderId, loaded);
+                return raced != null ? raced : loaded;
+            }
+        } catch (SQLException e) {
+            Log.error("Error loading rider balance", "riderId", riderId, "error", e.getMessage());
+            return null;
+        }
+    }
+
+    // ===================== FLUSH =====================
+    private void runFlusher() {
+        while (!Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(intervalMillis));
+            flush();
+        }
+    }
+
+    // Write every rider's unflushed change in one batch; returns the number of rows written
+    public int flush() {
+        synchronized (flushLock) {
+            List<Account> dirty = new ArrayList<>();
+            List<Long> deltas = new ArrayList<>();
+            Runnable snapshot = () -> {
+                for (Account a : accounts.values()) {
+                    long d = a.changes.sum() - a.flushedCents;
+                    if (d != 0) {
+                        dirty.add(a);
+                        deltas.add(d);
+                    }
+                }
+                unflushed.set(0);
+            };
+            long seq = 0;
+            try {
+                if (journal != null) seq = journal.rotate(snapshot);
+                else snapshot.run();
+            } catch (IOException e) {
+                Log.error("Error rotating balance journal", "error", e.getMessage());
+                return 0;
+            }
+
+            if (!dirty.isEmpty()) {
+                if (!write(dirty, deltas, seq)) return 0;
+                for (int i = 0; i < dirty.size(); i++) dirty.get(i).flushedCents += deltas.get(i);
+                FLUSHES.increment();
+                ROWS.add(dirty.size());
+            }
+            if (journal != null) journal.deleteRotated();
+            evictIdle();
+            return dirty.size();
+        }
+    }
+
+    private boolean write(List<Account> dirty, List<Long> deltas, long seq) {
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) return false;
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = conn.prepareStatement("UPDATE Riders SET balance = balance + ? WHERE rider_id = ?")) {
+                    for (int i = 0; i < dirty.size(); i++) {
+                        ps.setDouble(1, deltas.get(i) / 100.0);
+                        ps.setInt(2, dirty.get(i).riderId);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                if (journal != null) journal.checkpoint(conn, seq);
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            Log.error("Error flushing rider balances, will retry", "riders", dirty.size(), "error", e.getMessage());
+            return false;
+        } finally {
+            DatabaseConfig.releaseThreadConnections();
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - IDLE_EVICT_MS;
+        for (Account a : accounts.values()) {
+            if (a.lastUsed > cutoff) continue;
+            a.lock.writeLock().lock();
+            try {
+                if (a.changes.sum() == a.flushedCents) {
+                    a.retired = true;
+                    accounts.remove(a.riderId, a);
+                }
+            } finally {
+                a.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // ===================== JOURNAL =====================
+    // Files journal-<first seq>.log of records: seq(8) riderId(4) cents(8) check(4)
+    private static final class Journal {
+        private static final int RECORD_BYTES = 24;
+
+        final Path dir;
+        private final String name;
+        private final ByteBuffer buf = ByteBuffer.allocate(RECORD_BYTES);
+        private final List<Path> rotated = new ArrayList<>();
+        private FileChannel channel;
+        private Path current;
+        private long lastSeq;
+
+        Journal(Path dir) throws IOException {
+            this.dir = dir;
+            String n = dir.toString();
+            this.name = n.length() > 100 ? n.substring(n.length() - 100) : n;
+            Files.createDirectories(dir);
+        }
+
+        private static int check(long seq, int riderId, long cents) {
+            return Long.hashCode(seq * 31 + riderId) ^ Long.hashCode(cents) ^ 0x5A17C0DE;
+        }
+
+        // Append a change and make it durable; the in-memory update runs under the same lock
+        // so a flush snapshot always matches the sequence it records
+        boolean append(int riderId, long cents, Runnable update) {
+            FileChannel ch;
+            synchronized (this) {
+                long seq = lastSeq + 1;
+                buf.clear();
+                buf.putLong(seq).putInt(riderId).putLong(cents).putInt(check(seq, riderId, cents)).flip();
+                try {
+                    while (buf.hasRemaining()) channel.write(buf);
+                } catch (IOException e) {
+                    Log.error("Error writing balance journal", "riderId", riderId, "error", e.getMessage());
+                    return false;
+                }
+                lastSeq = seq;
+                update.run();
+                ch = channel;
+            }
+            try {
+                ch.force(false);            // outside the lock, so concurrent appends share fsyncs
+            } catch (ClosedChannelException e) {
+                // rotated meanwhile; rotate() forced it before closing
+            } catch (IOException e) {
+                Log.error("Error syncing balance journal", "error", e.getMessage());
+            }
+            return true;
+        }
+
+        // Start a new file; returns the last sequence written before it. The snapshot runs
+        // under the journal lock, so it sees exactly the changes up to that sequence.
+        synchronized long rotate(Runnable snapshot) throws IOException {
+            snapshot.run();
+            channel.force(false);
+            channel.close();
+            rotated.add(current);
+            open(lastSeq + 1);
+            return lastSeq;
+        }
+
+        // The rotated files are covered by a committed checkpoint
+        synchronized void deleteRotated() {
+            for (Path p : rotated) {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    Log.warn("Cannot delete balance journal file", "file", p, "error", e.getMessage());
+                }
+            }
+            rotated.clear();
+        }
+
+        void checkpoint(Connection conn, long seq) throws SQLException {
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE Balance_Checkpoints SET last_seq = ? WHERE journal = ?")) {
+                ps.setLong(1, seq);
+                ps.setString(2, name);
+                if (ps.executeUpdate() > 0) return;
+            }
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO Balance_Checkpoints (journal, last_seq) VALUES (?, ?)")) {
+                ps.setString(1, name);
+                ps.setLong(2, seq);
+                ps.executeUpdate();
+            }
+        }
+
+        private void open(long firstSeq) throws IOException {
+            current = dir.resolve(String.format("journal-%020d.log", firstSeq));
+            channel = FileChannel.open(current, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        // Apply whatever a previous run acknowledged but did not flush, then start empty
+        void recover() throws IOException, SQLException {
+            List<Path> files;
+            try (Stream<Path> s = Files.list(dir)) {
+                files = s.filter(p -> p.getFileName().toString().matches("journal-\\d+\\.log")).sorted().toList();
+            }
+            try (Connection conn = DatabaseConfig.getNewConnection()) {
+                if (conn == null) throw new SQLException("No database connection");
+                conn.setAutoCommit(false);
+                long checkpoint = 0;
+                try (PreparedStatement ps = conn.prepareStatement("SELECT last_seq FROM Balance_Checkpoints WHERE journal = ?")) {
+                    ps.setString(1, name);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) checkpoint = rs.getLong(1);
+                    }
+                }
+
+                Map<Integer, Long> byRider = new HashMap<>();
+                long maxSeq = checkpoint;
+                int records = 0;
+                for (Path f : files) {
+                    ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(f));
+                    while (data.remaining() >= RECORD_BYTES) {
+                        long seq = data.getLong();
+                        int riderId = data.getInt();
+                        long cents = data.getLong();
+                        if (data.getInt() != check(seq, riderId, cents)) break;     // torn tail
+                        maxSeq = Math.max(maxSeq, seq);
+                        if (seq <= checkpoint) continue;
+                        byRider.merge(riderId, cents, Long::sum);
+                        records++;
+                    }
+                }
+
+                if (!byRider.isEmpty()) {
+                    try (PreparedStatement ps = conn.prepareStatement("UPDATE Riders SET balance = balance + ? WHERE rider_id = ?")) {
+                        for (Map.Entry<Integer, Long> e : byRider.entrySet()) {
+                            ps.setDouble(1, e.getValue() / 100.0);
+                            ps.setInt(2, e.getKey());
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                checkpoint(conn, maxSeq);
+                conn.commit();
+                if (records > 0) Log.info("Recovered rider balance changes from journal", "records", records, "riders", byRider.size());
+                lastSeq = maxSeq;
+            } finally {
+                DatabaseConfig.releaseThreadConnections();
+            }
+            for (Path f : files) Files.deleteIfExists(f);
+            open(lastSeq + 1);
+        }
+    }
+}
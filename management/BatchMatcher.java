@@ -0,0 +1,198 @@
+// BatchMatcher.java - Matches auto-dispatched ride requests in short batches
+//
+// With -Drydex.matcher.window.ms set (e.g. 500), BookingService.bookAuto hands its request
+// to the matcher instead of taking the next driver straight away. One thread collects the
+// requests that arrive within the window (or until rydex.matcher.batch, default 256),
+// matches them all at once with DispatchEngine.assignAll, and creates every matched ride
+// with one batched RideDAO.createRides transaction. Callers then record their own payment,
+// so a request waits at most one window plus one batch of work for its driver. A caller that
+// gave up first cancels its future; the ride made for it is then cancelled and the driver
+// released.
+//
+// Batching pays off at peak, when many requests compete for the same drivers; off peak the
+// window is pure delay, which is why it is off by default.
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public final class BatchMatcher {
+
+    // What a request got: a created ride, or why not
+    public static final class Match {
+        private final int rideId;
+        private final int driverId;
+        private final double fare;
+        private final String failure;
+
+        private Match(int rideId, int driverId, double fare, String failure) {
+            this.rideId = rideId;
+            this.driverId = driverId;
+            this.fare = fare;
+            this.failure = failure;
+        }
+
+        static Match failed(String failure) {
+            return new Match(-1, -1, 0, failure);
+        }
+
+        public boolean isMatched() { return failure == null; }
+        public int getRideId() { return rideId; }
+        public int getDriverId() { return driverId; }
+        public double getFare() { return fare; }
+        public String getFailure() { return failure; }
+    }
+
+    private static final class Pending {
+        final int riderId;
+        final int routeId;
+        final int partySize;
+        final LocalDateTime time = LocalDateTime.now();
+        final CompletableFuture<Match> result = new CompletableFuture<>();
+
+        Pending(int riderId, int routeId, int partySize) {
+            this.riderId = riderId;
+            this.routeId = routeId;
+            this.partySize = partySize;
+        }
+    }
+
+    private static final Metrics.Counter BATCHES = Metrics.counter("rydex_matcher_batches_total",
+            "Batches of ride requests matched together");
+
+    private static volatile BatchMatcher instance;
+    private static volatile boolean initialized;
+
+    private final long windowMillis;
+    private final int maxBatch;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final RouteDAO routeDAO = new RouteDAO();
+    private final RideDAO rideDAO = new RideDAO();
+
+    // ===================== DEFAULT MATCHER =====================
+    // The process-wide matcher, started on first call; null when batching is off
+    public static BatchMatcher get() {
+        if (!initialized) init();
+        return instance;
+    }
+
+    private static synchronized void init() {
+        if (initialized) return;
+        long window = Long.getLong("rydex.matcher.window.ms", 0);
+        if (window > 0) {
+            BatchMatcher matcher = new BatchMatcher(window, Integer.getInteger("rydex.matcher.batch", 256));
+            matcher.start();
+            instance = matcher;
+        }
+        initialized = true;
+    }
+
+    BatchMatcher(long windowMillis, int maxBatch) {
+        this.windowMillis = windowMillis;
+        this.maxBatch = Math.max(1, maxBatch);
+        Metrics.gauge("rydex_matcher_queue", "Ride requests waiting for the next matching batch", queue::size);
+    }
+
+    private void start() {
+        Thread t = new Thread(this::run, "rydex-batch-matcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // Queue a request for the next batch; completes once its ride exists (or it failed).
+    // Cancel the future to withdraw the request.
+    public CompletableFuture<Match> submit(int riderId, int routeId, int partySize) {
+        Pending p = new Pending(riderId, routeId, partySize);
+        queue.add(p);
+        return p.result;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+                while (batch.size() < maxBatch) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) break;
+                    Pending p = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (p == null) break;
+                    batch.add(p);
+                }
+                match(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                Log.error("Batch matching failed", "requests", batch.size(), "error", e.getMessage());
+                for (Pending p : batch) p.result.complete(Match.failed("Matching failed, please try again"));
+            } finally {
+                batch.clear();
+                DatabaseConfig.releaseThreadConnections();
+            }
+        }
+    }
+
+    private void match(List<Pending> batch) {
+        BATCHES.increment();
+
+        // Routes are read once per batch, not once per request
+        SurgePricing pricing = SurgePricing.get();
+        Map<Integer, Route> routes = new HashMap<>();
+        List<Pending> valid = new ArrayList<>(batch.size());
+        List<DispatchEngine.Request> requests = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            Route route = routes.computeIfAbsent(p.routeId, routeDAO::getRouteById);
+            if (route == null) {
+                complete(p, Match.failed("Route not found"), "invalid");
+            } else {
+                pricing.recordRequest(route);
+                valid.add(p);
+                requests.add(DispatchEngine.Request.forRoute(p.riderId, route, p.time, p.partySize));
+            }
+        }
+
+        DispatchEngine engine = DispatchEngine.get();
+        int[] drivers = engine.assignAll(requests);
+
+        List<Pending> matched = new ArrayList<>(valid.size());
+        List<RideDAO.NewRide> rides = new ArrayList<>(valid.size());
+        for (int i = 0; i < valid.size(); i++) {
+            Pending p = valid.get(i);
+            if (drivers[i] <= 0) {
+                complete(p, Match.failed("No driver is available for a party of " + p.partySize), "no_driver");
+                continue;
+            }
+            matched.add(p);
+            rides.add(new RideDAO.NewRide(p.riderId, drivers[i], p.routeId, pricing.fare(routes.get(p.routeId)), p.partySize));
+        }
+        if (matched.isEmpty()) return;
+
+        int[] rideIds = rideDAO.createRides(rides);
+        for (int i = 0; i < matched.size(); i++) {
+            RideDAO.NewRide ride = rides.get(i);
+            if (rideIds == null) {
+                engine.release(ride.driverId);
+                complete(matched.get(i), Match.failed("Failed to create ride"), "error");
+            } else if (!complete(matched.get(i), new Match(rideIds[i], ride.driverId, ride.fare, null), "matched")) {
+                // The caller timed out and withdrew; nobody will pay for this ride
+                rideDAO.cancelRide(rideIds[i]);
+                engine.release(ride.driverId);
+            }
+        }
+    }
+
+    // False when the caller had already withdrawn the request
+    private static boolean complete(Pending p, Match match, String outcome) {
+        boolean delivered = p.result.complete(match);
+        Metrics.counter("rydex_matcher_requests_total", "Batched ride requests by outcome",
+                "result", delivered ? outcome : "withdrawn").increment();
+        return delivered;
+    }
+}
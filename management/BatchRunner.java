@@ -0,0 +1,306 @@
+// BatchRunner.java - Scripted, non-interactive replay of RydexApp operations
+//
+// Input is one operation per line, either JSON or "op key=value ..." form:
+//   {"op":"book","session":"s1","riderId":"$rider","driverId":5,"routeId":1,"method":"Wallet"}
+//   complete session=s1 rideId=$ride driverId=5
+// Command-form values cannot contain spaces (use the JSON form for those).
+// Blank lines and lines starting with # are ignored.
+//
+// Operations: register, login, topup, book, confirm, start, complete, pay, feedback, cancel, history.
+// Lines that share a "session" run in file order on the same worker, and values written as
+// $rider / $driver / $ride refer to the ids produced earlier in that session (by login and
+// book). Lines without a session are spread round-robin across the workers.
+//
+// Every operation calls the same DAO methods the interactive RydexApp menus call, and its
+// latency is recorded per operation type for the final throughput/percentile report.
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BatchRunner {
+
+    private final UserDAO userDAO = new UserDAO();
+    private final RideDAO rideDAO = new RideDAO();
+    private final PaymentDAO paymentDAO = new PaymentDAO();
+    private final FeedbackDAO feedbackDAO = new FeedbackDAO();
+    private final BookingService bookingService = new BookingService();
+
+    private final int threads;
+    private final Map<String, OpStats> stats = new ConcurrentHashMap<>();
+
+    // One parsed line of the script
+    static class Op {
+        final int line;
+        final String name;
+        final String session;
+        final Map<String, Object> args;
+
+        Op(int line, String name, String session, Map<String, Object> args) {
+            this.line = line;
+            this.name = name;
+            this.session = session;
+            this.args = args;
+        }
+    }
+
+    // Per-operation counters
+    static class OpStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder failures = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    public BatchRunner(int threads) {
+        if (threads <= 0) throw new IllegalArgumentException("Thread count must be positive.");
+        this.threads = threads;
+    }
+
+    // ===================== PARSING =====================
+    public static List<Op> load(Path file) throws IOException {
+        List<Op> ops = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            Map<String, Object> args;
+            try {
+                args = line.startsWith("{") ? Json.parseObject(line) : parseCommand(line);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage());
+            }
+            String name = Json.getString(args, "op");
+            if (name == null) throw new IllegalArgumentException("Line " + (i + 1) + ": missing op");
+            ops.add(new Op(i + 1, name.toLowerCase(), Json.getString(args, "session"), args));
+        }
+        return ops;
+    }
+
+    // "book riderId=3 driverId=5 method=Wallet" -> {op=book, riderId=3, ...}
+    private static Map<String, Object> parseCommand(String line) {
+        Map<String, Object> args = new LinkedHashMap<>();
+        String[] tokens = line.split("\\s+");
+        args.put("op", tokens[0]);
+        for (int i = 1; i < tokens.length; i++) {
+            int eq = tokens[i].indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Expected key=value but got '" + tokens[i] + "'");
+            args.put(tokens[i].substring(0, eq), tokens[i].substring(eq + 1));
+        }
+        return args;
+    }
+
+    // ===================== RUNNING =====================
+    public void run(List<Op> ops) throws InterruptedException {
+        // Partition: sessions stick to one worker so their steps stay ordered
+        List<List<Op>> queues = new ArrayList<>();
+        for (int i = 0; i < threads; i++) queues.add(new ArrayList<>());
+        int rr = 0;
+        for (Op op : ops) {
+            int w = op.session != null ? Math.floorMod(op.session.hashCode(), threads) : (rr++ % threads);
+            queues.get(w).add(op);
+        }
+
+        CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            List<Op> queue = queues.get(i);
+            Thread t = new Thread(() -> {
+                try {
+                    runQueue(queue);
+                } finally {
+                    done.countDown();
+                }
+            }, "rydex-batch-" + i);
+            t.start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        printReport(ops.size(), elapsed);
+    }
+
+    private void runQueue(List<Op> queue) {
+        Map<String, Map<String, Object>> sessionVars = new HashMap<>();
+        for (Op op : queue) {
+            Map<String, Object> vars = sessionVars.computeIfAbsent(op.session == null ? "" : op.session, k -> new HashMap<>());
+            OpStats st = stats.computeIfAbsent(op.name, k -> new OpStats());
+            long t0 = System.nanoTime();
+            try {
+                if (!execute(op, vars)) st.failures.increment();
+            } catch (Exception e) {
+                st.errors.increment();
+                Log.error("Batch line failed", "line", op.line, "op", op.name, "error", e.getMessage());
+            } finally {
+                DatabaseConfig.releaseThreadConnections();
+                st.latency.recordNanos(System.nanoTime() - t0);
+            }
+        }
+    }
+
+    // Returns false when the operation ran but was rejected (bad login, illegal transition...)
+    private boolean execute(Op op, Map<String, Object> vars) {
+        switch (op.name) {
+            case "register": {
+                String role = str(op, vars, "role");
+                if ("driver".equalsIgnoreCase(role)) {
+                    return userDAO.registerDriver(str(op, vars, "name"), str(op, vars, "email"),
+                            str(op, vars, "password"), str(op, vars, "license"));
+                }
+                return userDAO.registerRider(str(op, vars, "name"), str(op, vars, "email"), str(op, vars, "password"));
+            }
+            case "login": {
+                String role = str(op, vars, "role");
+                if ("driver".equalsIgnoreCase(role)) {
+                    Driver d = userDAO.loginDriver(str(op, vars, "email"), str(op, vars, "password"));
+                    if (d == null) return false;
+                    vars.put("driver", d.getUserId());
+                } else {
+                    Rider r = userDAO.loginRider(str(op, vars, "email"), str(op, vars, "password"));
+                    if (r == null) return false;
+                    vars.put("rider", r.getUserId());
+                }
+                return true;
+            }
+            case "topup":
+                return userDAO.addRiderBalance(num(op, vars, "riderId"), dbl(op, vars, "amount"));
+            case "book": {
+                String check = opt(op, vars, "checkAvailability");
+                BookingService.BookingResult r = bookingService.book(num(op, vars, "riderId"), num(op, vars, "driverId"),
+                        num(op, vars, "routeId"), str(op, vars, "method"), opt(op, vars, "assistant"),
+                        !"false".equalsIgnoreCase(check));
+                if (!r.isSuccess()) return false;
+                vars.put("ride", r.getRideId());
+                return true;
+            }
+            case "confirm":
+                return rideDAO.confirmRide(num(op, vars, "rideId"));
+            case "start":
+                return rideDAO.startRideTransaction(num(op, vars, "rideId"), num(op, vars, "driverId"));
+            case "complete": {
+                int rideId = num(op, vars, "rideId");
+                double fare = rideDAO.getFareByRideId(rideId);
+                if (fare < 0) return false;
+                return rideDAO.completeRideTransaction(rideId, num(op, vars, "driverId"), fare);
+            }
+            case "pay": {
+                int rideId = num(op, vars, "rideId");
+                double amt = opt(op, vars, "amount") == null ? rideDAO.getFareByRideId(rideId) : dbl(op, vars, "amount");
+                String status = opt(op, vars, "status");
+                return paymentDAO.createPayment(rideId, amt, str(op, vars, "method"), status == null ? "Completed" : status) > 0;
+            }
+            case "feedback": {
+                String comments = opt(op, vars, "comments");
+                return feedbackDAO.createFeedback(num(op, vars, "rideId"), num(op, vars, "rating"), comments == null ? "" : comments) > 0;
+            }
+            case "cancel":
+                return rideDAO.cancelRide(num(op, vars, "rideId"));
+            case "history": {
+                RideSearch search = opt(op, vars, "driverId") != null
+                        ? new RideSearch().forDriver(num(op, vars, "driverId"))
+                        : new RideSearch().forRider(num(op, vars, "riderId"));
+                rideDAO.searchRides(search);
+                return true;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown op '" + op.name + "'");
+        }
+    }
+
+    // Look up an argument, substituting $name from the session variables
+    private Object resolve(Op op, Map<String, Object> vars, String key) {
+        Object v = op.args.get(key);
+        if (v instanceof String && ((String) v).startsWith("$")) {
+            String name = ((String) v).substring(1);
+            Object value = vars.get(name);
+            if (value == null) throw new IllegalArgumentException("$" + name + " is not set in this session");
+            return value;
+        }
+        return v;
+    }
+
+    // Optional argument as a string (null when absent)
+    private String opt(Op op, Map<String, Object> vars, String key) {
+        Object v = resolve(op, vars, key);
+        return v == null ? null : v.toString();
+    }
+
+    private String str(Op op, Map<String, Object> vars, String key) {
+        String v = opt(op, vars, key);
+        if (v == null) throw new IllegalArgumentException(key + " is required");
+        return v;
+    }
+
+    private int num(Op op, Map<String, Object> vars, String key) {
+        String v = str(op, vars, key);
+        try {
+            return Integer.parseInt(v.endsWith(".0") ? v.substring(0, v.length() - 2) : v);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be an integer");
+        }
+    }
+
+    private double dbl(Op op, Map<String, Object> vars, String key) {
+        try {
+            return Double.parseDouble(str(op, vars, key));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a number");
+        }
+    }
+
+    // ===================== REPORT =====================
+    private void printReport(int opCount, long elapsedNanos) {
+        double secs = elapsedNanos / 1e9;
+        System.out.println("\n========== BATCH REPORT ==========");
+        System.out.printf("%d operations on %d threads in %.2f s (%.1f ops/s)%n", opCount, threads, secs, opCount / secs);
+        System.out.printf("%-10s %8s %8s %8s %10s %9s %9s %9s %9s%n",
+                "op", "count", "failed", "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, OpStats> e : new TreeMap<>(stats).entrySet()) {
+            OpStats s = e.getValue();
+            long n = s.latency.getCount();
+            System.out.printf("%-10s %8d %8d %8d %10.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    e.getKey(), n, s.failures.sum(), s.errors.sum(), n / secs,
+                    s.latency.percentileMillis(50), s.latency.percentileMillis(90),
+                    s.latency.percentileMillis(99), s.latency.getMaxMicros() / 1000.0);
+        }
+        System.out.println("==================================");
+    }
+
+    public Map<String, OpStats> getStats() {
+        return stats;
+    }
+
+    // Entry point used by RydexApp --batch <file> [--threads N]
+    public static void runFromArgs(String[] args) throws IOException, InterruptedException {
+        Path file = null;
+        int threads = 4;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--batch") && i + 1 < args.length) file = Path.of(args[++i]);
+            else if (args[i].equals("--threads") && i + 1 < args.length) threads = Integer.parseInt(args[++i]);
+        }
+        if (file == null) {
+            System.out.println("Usage: RydexApp --batch <script.jsonl|script.txt> [--threads N]");
+            return;
+        }
+
+        List<Op> ops = load(file);
+        DatabaseConfig.enablePooling(threads, 30000);
+        try {
+            if (!SchemaMigrator.migrate()) {
+                Log.error("Batch run aborted: the database schema could not be brought up to date");
+                return;
+            }
+            new BatchRunner(threads).run(ops);
+        } finally {
+            DatabaseConfig.closeConnection();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+// BookingService.java - Non-interactive booking flow shared by the headless entry points
+// Mirrors what the booking wizards do (availability check -> ride -> payment -> assistant)
+// without any prompts, so RydexServer and the batch/load tools run the same DAO calls.
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class BookingService {
+
+    private static final Metrics.Timer BOOKING_TIME = Metrics.timer("rydex_booking_seconds",
+            "End-to-end time of BookingService.book (checks, ride, payment, assistant)");
+
+    private final UserDAO userDAO = new UserDAO();
+    private final RideDAO rideDAO = new RideDAO();
+    private final RouteDAO routeDAO = new RouteDAO();
+    private final VehicleDAO vehicleDAO = new VehicleDAO();
+    private final PaymentDAO paymentDAO = new PaymentDAO();
+    private final DriverShiftDAO shiftDAO = new DriverShiftDAO();
+    private final RideAssistantDAO assistantDAO = new RideAssistantDAO();
+    private final TripDAO tripDAO = new TripDAO();
+
+    // Outcome of a booking attempt
+    public static class BookingResult {
+        private final boolean success;
+        private final int rideId;
+        private final int driverId;
+        private final int paymentId;
+        private final String paymentStatus;
+        private final double fare;
+        private final String message;
+
+        BookingResult(boolean success, int rideId, int driverId, int paymentId, String paymentStatus, double fare, String message) {
+            this.success = success;
+            this.rideId = rideId;
+            this.driverId = driverId;
+            this.paymentId = paymentId;
+            this.paymentStatus = paymentStatus;
+            this.fare = fare;
+            this.message = message;
+        }
+
+        static BookingResult failed(String message) {
+            return new BookingResult(false, -1, -1, -1, null, 0, message);
+        }
+
+        public boolean isSuccess() { return success; }
+        public int getRideId() { return rideId; }
+        public int getDriverId() { return driverId; }
+        public int getPaymentId() { return paymentId; }
+        public String getPaymentStatus() { return paymentStatus; }
+        public double getFare() { return fare; }
+        public String getMessage() { return message; }
+    }
+
+    // Fare for a route at the current surge multiplier, or -1 if the route does not exist
+    public double quote(int routeId) {
+        Route route = routeDAO.getRouteById(routeId);
+        return route == null ? -1 : SurgePricing.get().fare(route);
+    }
+
+    // Same three checks as the wizards: vehicle, shift covering now, no ride in progress
+    public boolean isDriverAvailableNow(int driverId) {
+        if (vehicleDAO.getVehicleByDriverId(driverId) == null) return false;
+        if (!hasActiveShiftNow(driverId)) return false;
+        return !rideDAO.hasInProgressRideForDriver(driverId);
+    }
+
+    private boolean hasActiveShiftNow(int driverId) {
+        List<DriverShift> shifts = shiftDAO.getShiftsByDriver(driverId);
+        LocalDate today = LocalDate.now();
+        LocalTime now = LocalTime.now();
+        for (DriverShift s : shifts) {
+            if (s.getShiftDate() == null || s.getStartTime() == null || s.getEndTime() == null) continue;
+            if (today.equals(s.getShiftDate().toLocalDate())
+                    && !now.isBefore(s.getStartTime().toLocalTime())
+                    && !now.isAfter(s.getEndTime().toLocalTime())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Book a ride and record its payment. Wallet payments are deducted atomically in SQL.
+    public BookingResult book(int riderId, int driverId, int routeId, String method, String assistantName) {
+        return book(riderId, driverId, routeId, method, assistantName, true);
+    }
+
+    // Scripted/load runs may skip the availability check when fixtures have no live shifts
+    public BookingResult book(int riderId, int driverId, int routeId, String method, String assistantName,
+                              boolean checkAvailability) {
+        long t0 = System.nanoTime();
+        BookingResult result = bookRide(riderId, driverId, routeId, method, assistantName, checkAvailability);
+        record(result, t0);
+        return result;
+    }
+
+    // Book with the driver DispatchEngine picks for the party (rider plus assistants). The
+    // engine only offers drivers it saw free, so the per-driver availability queries are
+    // skipped; if the booking fails the driver goes back into the queue. With BatchMatcher
+    // on, the request waits for the next batch and the ride is created there.
+    public BookingResult bookAuto(int riderId, int routeId, String method, String assistantName, int partySize) {
+        long t0 = System.nanoTime();
+        BookingResult result;
+        BatchMatcher matcher = BatchMatcher.get();
+        if (!isPaymentMethod(method)) {
+            result = BookingResult.failed("Payment method must be Cash, Card or Wallet");
+        } else if (matcher != null) {
+            result = bookMatched(matcher, riderId, routeId, method, assistantName, partySize);
+        } else {
+            result = bookNearest(riderId, routeId, method, assistantName, partySize);
+        }
+        record(result, t0);
+        return result;
+    }
+
+    // Book a seat on a pooled trip along the route: join an open trip with room for the party,
+    // or open a new one with the driver DispatchEngine picks. The rider pays the pooled share
+    // of the current fare.
+    public BookingResult bookPooled(int riderId, int routeId, String method, String assistantName, int partySize) {
+        long t0 = System.nanoTime();
+        BookingResult result;
+        if (!isPaymentMethod(method)) {
+            result = BookingResult.failed("Payment method must be Cash, Card or Wallet");
+        } else {
+            result = bookOnTrip(riderId, routeId, method, assistantName, partySize);
+        }
+        record(result, t0);
+        return result;
+    }
+
+    private BookingResult bookOnTrip(int riderId, int routeId, String method, String assistantName, int partySize) {
+        Route route = routeDAO.getRouteById(routeId);
+        if (route == null) return BookingResult.failed("Route not found");
+        SurgePricing pricing = SurgePricing.get();
+        pricing.recordRequest(route);
+        double fare = FareCalculator.pooledFare(pricing.fare(route));
+        RidePool pool = RidePool.get();
+
+        RidePool.Trip trip = pool.reserve(route, partySize);
+        if (trip != null) {
+            int rideId = rideDAO.createPooledRide(trip.getTripId(), riderId, trip.getDriverId(), routeId, fare, partySize);
+            if (rideId > 0) {
+                pool.joined(trip, rideId, partySize);
+                return settle(riderId, trip.getDriverId(), rideId, fare, method, assistantName);
+            }
+            pool.unreserve(trip, partySize);     // closed under us; open a trip of our own
+        }
+
+        DispatchEngine engine = DispatchEngine.get();
+        int driverId = engine.assign(DispatchEngine.Request.forRoute(riderId, route, LocalDateTime.now(), partySize));
+        if (driverId <= 0) return BookingResult.failed("No driver is available for a party of " + partySize);
+        Vehicle vehicle = vehicleDAO.getVehicleByDriverId(driverId);
+        int capacity = vehicle == null ? partySize : Math.max(partySize, vehicle.getCapacity());
+        int tripId = tripDAO.openTrip(driverId, routeId, capacity);
+        int rideId = tripId > 0 ? rideDAO.createPooledRide(tripId, riderId, driverId, routeId, fare, partySize) : -1;
+        if (rideId <= 0) {
+            if (tripId > 0) tripDAO.closeTrip(tripId);
+            engine.release(driverId);
+            return BookingResult.failed("Failed to create ride");
+        }
+        pool.opened(tripId, driverId, route, capacity, rideId, partySize);
+        return settle(riderId, driverId, rideId, fare, method, assistantName);
+    }
+
+    private BookingResult bookNearest(int riderId, int routeId, String method, String assistantName, int partySize) {
+        Route route = routeDAO.getRouteById(routeId);
+        if (route == null) return BookingResult.failed("Route not found");
+        SurgePricing pricing = SurgePricing.get();
+        pricing.recordRequest(route);
+        DispatchEngine engine = DispatchEngine.get();
+        int driverId = engine.assign(DispatchEngine.Request.forRoute(riderId, route, LocalDateTime.now(), partySize));
+        if (driverId <= 0) return BookingResult.failed("No driver is available for a party of " + partySize);
+        BookingResult result = createAndSettle(riderId, driverId, routeId, pricing.fare(route), method, assistantName,
+                partySize);
+        if (!result.isSuccess()) engine.release(driverId);
+        return result;
+    }
+
+    private BookingResult bookMatched(BatchMatcher matcher, int riderId, int routeId, String method, String assistantName,
+                                      int partySize) {
+        CompletableFuture<BatchMatcher.Match> pending = matcher.submit(riderId, routeId, partySize);
+        BatchMatcher.Match match;
+        try {
+            match = pending.get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (pending.cancel(false)) return BookingResult.failed("Booking interrupted");
+            match = pending.join();
+        } catch (TimeoutException e) {
+            // Withdraw the request so the matcher cancels any ride it still makes for it; if it
+            // finished in the meantime, that ride is ours
+            if (pending.cancel(false)) return BookingResult.failed("Matching did not finish, please try again");
+            match = pending.join();
+        } catch (ExecutionException e) {
+            return BookingResult.failed("Matching did not finish, please try again");
+        }
+        if (!match.isMatched()) return BookingResult.failed(match.getFailure());
+        return settle(riderId, match.getDriverId(), match.getRideId(), match.getFare(), method, assistantName);
+    }
+
+    static boolean isPaymentMethod(String method) {
+        return "Cash".equals(method) || "Card".equals(method) || "Wallet".equals(method);
+    }
+
+    static void record(BookingResult result, long startNanos) {
+        String outcome = !result.isSuccess() ? "failed" : "Failed".equals(result.getPaymentStatus()) ? "payment_failed" : "ok";
+        BOOKING_TIME.recordSince(startNanos);
+        Metrics.counter("rydex_bookings_total", "Booking attempts by outcome", "result", outcome).increment();
+    }
+
+    private BookingResult bookRide(int riderId, int driverId, int routeId, String method, String assistantName,
+                                   boolean checkAvailability) {
+        if (!isPaymentMethod(method)) {
+            return BookingResult.failed("Payment method must be Cash, Card or Wallet");
+        }
+        Route route = routeDAO.getRouteById(routeId);
+        if (route == null) return BookingResult.failed("Route not found");
+        SurgePricing pricing = SurgePricing.get();
+        pricing.recordRequest(route);
+        double fare = pricing.fare(route);
+        if (checkAvailability && !isDriverAvailableNow(driverId)) return BookingResult.failed("Driver is not available at the moment");
+
+        return createAndSettle(riderId, driverId, routeId, fare, method, assistantName, 1);
+    }
+
+    private BookingResult createAndSettle(int riderId, int driverId, int routeId, double fare, String method,
+                                          String assistantName, int partySize) {
+        int rideId = rideDAO.createRide(riderId, driverId, routeId, fare, partySize);
+        if (rideId <= 0) return BookingResult.failed("Failed to create ride");
+        return settle(riderId, driverId, rideId, fare, method, assistantName);
+    }
+
+    // Payment and assistant for a ride that has just been created
+    BookingResult settle(int riderId, int driverId, int rideId, double fare, String method, String assistantName) {
+        boolean paymentSuccess = true; // cash on pickup, card simulated
+        if (method.equals("Wallet")) {
+            paymentSuccess = userDAO.deductRiderBalance(riderId, fare);
+        }
+
+        String payStatus = paymentSuccess ? "Completed" : "Failed";
+        int payId = paymentDAO.createPayment(rideId, fare, method, payStatus);
+
+        if (assistantName != null && !assistantName.isBlank()) {
+            assistantDAO.addAssistant(rideId, riderId, assistantName.trim());
+        }
+
+        String msg = paymentSuccess ? "Ride booked" : "Ride booked but wallet payment failed (insufficient balance)";
+        return new BookingResult(true, rideId, driverId, payId, payStatus, fare, msg);
+    }
+}
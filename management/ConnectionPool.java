@@ -0,0 +1,187 @@
+// ConnectionPool.java - Small bounded JDBC connection pool for multi-threaded entry points
+//
+// The desktop apps share one Connection from DatabaseConfig, which is fine for a single
+// user but breaks as soon as two threads run DAOs at once (one DAO's try-with-resources
+// closes the connection under the other). When pooling is enabled every getConnection()
+// hands out a lease: a proxy whose close() returns the physical connection to the pool.
+//
+// Some DAOs never close the connection they get (they expect the old shared one), so
+// leases are also tracked per thread and handed back by releaseThreadLeases() at the end
+// of a request or batch operation.
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConnectionPool {
+
+    private static final Metrics.Counter ACQUIRE_WAITS = Metrics.counter("rydex_db_pool_waits_total",
+            "Connection borrows that had to wait for another thread to return one");
+    private static final Metrics.Counter ACQUIRE_TIMEOUTS = Metrics.counter("rydex_db_pool_timeouts_total",
+            "Connection borrows that gave up waiting");
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long acquireTimeoutMs;
+
+    private final BlockingQueue<Connection> idle;
+    private final AtomicInteger created = new AtomicInteger();
+    private final ThreadLocal<Deque<Lease>> threadLeases = ThreadLocal.withInitial(ArrayDeque::new);
+    private volatile boolean closed = false;
+
+    public ConnectionPool(String url, String user, String password, int maxSize, long acquireTimeoutMs) {
+        if (maxSize <= 0) throw new IllegalArgumentException("Pool size must be positive.");
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    // Borrow a connection, opening a new one while under maxSize, otherwise waiting
+    public Connection acquire() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+
+        RydexEvents.ConnectionAcquire event = RydexEvents.ConnectionAcquire.start(maxSize);
+        boolean opened = false;
+        boolean waited = false;
+        Connection physical = idle.poll();
+        while (physical == null) {
+            int n = created.get();
+            if (n < maxSize && created.compareAndSet(n, n + 1)) {
+                try {
+                    physical = DriverManager.getConnection(url, user, password);
+                } catch (SQLException e) {
+                    created.decrementAndGet();
+                    throw e;
+                }
+                opened = true;
+                break;
+            }
+            waited = true;
+            try {
+                physical = idle.poll(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a database connection");
+            }
+            if (physical == null) {
+                ACQUIRE_TIMEOUTS.increment();
+                event.done(false, true, true, created.get(), idle.size());
+                throw new SQLException("Timed out after " + acquireTimeoutMs + " ms waiting for a database connection");
+            }
+        }
+
+        if (!isUsable(physical)) {
+            discard(physical);
+            return acquire();
+        }
+
+        Lease lease = new Lease(physical);
+        threadLeases.get().push(lease);
+        if (waited) ACQUIRE_WAITS.increment();
+        event.done(opened, waited, false, created.get(), idle.size());
+        return lease.proxy;
+    }
+
+    // Return every lease the current thread still holds (for DAOs that never close)
+    public void releaseThreadLeases() {
+        Deque<Lease> leases = threadLeases.get();
+        while (!leases.isEmpty()) leases.pop().release();
+        threadLeases.remove();
+    }
+
+    public int getCreatedCount() { return created.get(); }
+    public int getIdleCount() { return idle.size(); }
+    public int getMaxSize() { return maxSize; }
+
+    public void close() {
+        closed = true;
+        Connection c;
+        while ((c = idle.poll()) != null) discard(c);
+    }
+
+    private boolean isUsable(Connection c) {
+        try {
+            return !c.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(Connection c) {
+        created.decrementAndGet();
+        try { c.close(); } catch (SQLException ignored) {}
+    }
+
+    private void giveBack(Connection c) {
+        if (closed || !isUsable(c)) {
+            discard(c);
+            return;
+        }
+        try {
+            // Transactional DAOs turn autocommit off and do not always restore it
+            if (!c.getAutoCommit()) {
+                c.rollback();
+                c.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            discard(c);
+            return;
+        }
+        if (!idle.offer(c)) discard(c);
+    }
+
+    // One borrow of a physical connection
+    private class Lease implements InvocationHandler {
+        private final Connection physical;
+        private final Connection proxy;
+        private boolean released = false;
+
+        Lease(Connection physical) {
+            this.physical = physical;
+            this.proxy = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+        }
+
+        synchronized void release() {
+            if (released) return;
+            released = true;
+            giveBack(physical);
+        }
+
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                release();
+                threadLeases.get().remove(this);
+                return null;
+            }
+            if (name.equals("isClosed")) {
+                return released || physical.isClosed();
+            }
+            if (released) {
+                throw new SQLException("Connection already returned to the pool");
+            }
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
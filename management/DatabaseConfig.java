@@ -2,48 +2,148 @@
 import java.sql.*;
 
 public class DatabaseConfig {
-    private static final String URL = "jdbc:mysql://localhost:3306/ridesharedb";
-    private static final String USER = "root";
-    private static final String PASSWORD = "Pakistan@2025";
+    // Defaults can be overridden with -Drydex.db.url=... -Drydex.db.user=... -Drydex.db.password=...
+    // (used by the benchmark and load tools to point at a seeded or in-process database)
+    private static final String URL = System.getProperty("rydex.db.url", "jdbc:mysql://localhost:3306/ridesharedb");
+    private static final String USER = System.getProperty("rydex.db.user", "root");
+    private static final String PASSWORD = System.getProperty("rydex.db.password", "Pakistan@2025");
     
     private static Connection connection = null;
-    
+
+    // Set by multi-threaded entry points (RydexServer, batch mode); null for the desktop apps
+    private static volatile ConnectionPool pool = null;
+
+    // Switch every getConnection()/getNewConnection() call over to a bounded pool
+    public static synchronized void enablePooling(int maxSize, long acquireTimeoutMs) {
+        if (pool != null) return;
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            Log.error("MySQL JDBC Driver not found", "error", e.getMessage());
+        }
+        ConnectionPool p = new ConnectionPool(URL, USER, PASSWORD, maxSize, acquireTimeoutMs);
+        pool = p;
+        Metrics.gauge("rydex_db_pool_connections", "Connections in the pool by state", p::getCreatedCount, "state", "open");
+        Metrics.gauge("rydex_db_pool_connections", "Connections in the pool by state", p::getIdleCount, "state", "idle");
+        Metrics.gauge("rydex_db_pool_max_connections", "Pool size limit", p::getMaxSize);
+        Log.info("Database connection pool enabled", "maxConnections", maxSize);
+    }
+
+    // Per-statement timings (see QueryStats); also switched on with -Drydex.jdbc.stats=<dump seconds>
+    private static volatile boolean instrumented = false;
+
+    static {
+        String stats = System.getProperty("rydex.jdbc.stats");
+        if (stats != null) {
+            String file = System.getProperty("rydex.jdbc.stats.file");
+            enableQueryStats(stats.isEmpty() ? 0 : Integer.parseInt(stats), file == null ? null : java.nio.file.Paths.get(file));
+        }
+        String slowMs = System.getProperty("rydex.slowlog.ms");
+        if (slowMs != null) {
+            enableSlowQueryLog(Long.parseLong(slowMs),
+                    java.nio.file.Paths.get(System.getProperty("rydex.slowlog.file", "slow-queries.log")));
+        }
+    }
+
+    // Record every statement in QueryStats; dumps every intervalSeconds (0 = JMX only) to dumpFile or stdout
+    public static synchronized void enableQueryStats(int dumpIntervalSeconds, java.nio.file.Path dumpFile) {
+        instrumented = true;
+        QueryStats.startPeriodicDump(dumpIntervalSeconds, dumpFile);
+    }
+
+    // Log statements taking at least thresholdMs, with parameters and EXPLAIN plans (see SlowQueryLog)
+    public static synchronized void enableSlowQueryLog(long thresholdMs, java.nio.file.Path logFile) {
+        instrumented = true;
+        SlowQueryLog.enable(thresholdMs, logFile);
+    }
+
+    // Also wrapped while a JFR recording has rydex.DaoCall enabled, so statements show up in it
+    private static Connection instrument(Connection conn) {
+        return instrumented || RydexEvents.DaoCall.isRecording() ? InstrumentedConnection.wrap(conn) : conn;
+    }
+
+    public static ConnectionPool getPool() {
+        return pool;
+    }
+
+    // Return connections borrowed by this thread that the DAO did not close itself
+    public static void releaseThreadConnections() {
+        ConnectionPool p = pool;
+        if (p != null) p.releaseThreadLeases();
+    }
+
     public static Connection getConnection() {
+        ConnectionPool p = pool;
+        if (p != null) {
+            try {
+                return instrument(p.acquire());
+            } catch (SQLException e) {
+                Log.error("Database connection failed", "error", e.getMessage());
+                return null;
+            }
+        }
         try {
             if (connection == null || connection.isClosed()) {
                 Class.forName("com.mysql.cj.jdbc.Driver");
                 connection = DriverManager.getConnection(URL, USER, PASSWORD);
-                System.out.println("Database connected successfully!");
+                Log.info("Database connected successfully!");
             }
         } catch (ClassNotFoundException e) {
-            System.err.println("MySQL JDBC Driver not found: " + e.getMessage());
+            Log.error("MySQL JDBC Driver not found", "error", e.getMessage());
         } catch (SQLException e) {
-            System.err.println("Database connection failed: " + e.getMessage());
+            Log.error("Database connection failed", "error", e.getMessage());
         }
-        return connection;
+        return instrument(connection);
+    }
+
+    // Startup check used by the desktop apps: connect, bring the schema up to date, open the event log
+    // and start the outbox relay and earnings rollup; false if connecting or migrating failed
+    public static boolean testConnection() {
+        if (getConnection() == null) return false;
+        if (!SchemaMigrator.migrate()) return false;   // refuse to run on a partly migrated schema
+        RideEventLog.get();     // replay the ride event log now, not on the first booking
+        OutboxRelay.get();      // start delivering outbox events
+        EarningsRollup.start();
+        BalanceCache.get();     // replays the write-behind journal when enabled
+        return true;
     }
 
     // Return a new independent Connection (useful for per-transaction work)
     public static Connection getNewConnection() {
+        ConnectionPool p = pool;
+        if (p != null) {
+            try {
+                return instrument(p.acquire());
+            } catch (SQLException e) {
+                Log.error("Database connection failed", "error", e.getMessage());
+                return null;
+            }
+        }
         try {
             Class.forName("com.mysql.cj.jdbc.Driver");
-            return DriverManager.getConnection(URL, USER, PASSWORD);
+            return instrument(DriverManager.getConnection(URL, USER, PASSWORD));
         } catch (ClassNotFoundException e) {
-            System.err.println("MySQL JDBC Driver not found: " + e.getMessage());
+            Log.error("MySQL JDBC Driver not found", "error", e.getMessage());
         } catch (SQLException e) {
-            System.err.println("Database connection failed: " + e.getMessage());
+            Log.error("Database connection failed", "error", e.getMessage());
         }
         return null;
     }
     
     public static void closeConnection() {
+        ConnectionPool p = pool;
+        if (p != null) {
+            pool = null;
+            p.close();
+            Log.info("Database connection pool closed.");
+        }
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
-                System.out.println("Database connection closed.");
+                Log.info("Database connection closed.");
             }
         } catch (SQLException e) {
-            System.err.println("Error closing connection: " + e.getMessage());
+            Log.error("Error closing connection", "error", e.getMessage());
         }
     }
 }
\ No newline at end of file
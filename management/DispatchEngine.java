@@ -0,0 +1,545 @@
+// DispatchEngine.java - Picks the best available driver for a ride request
+//
+// Available drivers (a vehicle, a shift today, no open ride) are kept in memory in one
+// priority queue per vehicle capacity, ordered by the active Policy. A request for a party
+// of n looks only at the heads of the queues with capacity >= n, so choosing a driver is a
+// few heap operations under one lock - no queries. The chosen driver leaves the queues
+// until a refresh sees their ride in the database or the booking calls release(); a hold
+// that ends neither way within rydex.dispatch.hold.ms (120000) is given up. assignAll()
+// matches a whole batch of requests at once for BatchMatcher.
+//
+// Requests with a pickup point (routes with coordinates) first look at the NEAREST_K free
+// drivers around it in DriverGrid, within rydex.dispatch.max.pickup.km (10), and weigh
+// pickup distance against policy order; drivers without a known position are still
+// reachable through the queues.
+//
+// refresh() rebuilds the queues from the database (every rydex.dispatch.refresh.ms, 2000
+// by default): vehicles, today's shifts and drivers with an open ride in a few bulk
+// queries; ratings and last-ride times are reloaded less often (STATS_TTL_MS).
+//
+// Policy: -Drydex.dispatch.policy=balanced (default) | longest_idle | best_rated, or
+// setPolicy(). BALANCED counts each star of average rating as RATING_MINUTES of extra
+// idle time, so a well-rated driver can overtake one who has waited slightly longer.
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public final class DispatchEngine {
+
+    private static final long STATS_TTL_MS = 60_000;
+    private static final long RATING_MINUTES = 10;
+    private static final double DEFAULT_RATING = 4.0;       // drivers with no feedback yet
+    private static final double EMPTY_SEAT_COST = 2.0;      // an empty seat weighs as much as two places in policy order
+    private static final double PLACES_PER_KM = 1.0;        // a km of pickup distance weighs as much as one place
+    private static final int NEAREST_K = 8;
+    private static final double MAX_PICKUP_KM = Double.parseDouble(System.getProperty("rydex.dispatch.max.pickup.km", "10"));
+    private static final long HOLD_MS = Long.getLong("rydex.dispatch.hold.ms", 120_000);
+    private static final Metrics.Timer SELECT_TIME = Metrics.timer("rydex_dispatch_select_seconds",
+            "Time to choose a driver for a ride request");
+    private static final Metrics.Timer BATCH_TIME = Metrics.timer("rydex_dispatch_batch_seconds",
+            "Time to match a batch of ride requests to drivers");
+
+    public enum Policy {
+        BALANCED(Comparator.comparingLong(c -> c.idleSinceMillis - Math.round(c.rating * RATING_MINUTES * 60_000))),
+        LONGEST_IDLE(Comparator.comparingLong((Candidate c) -> c.idleSinceMillis).thenComparing(c -> -c.rating)),
+        BEST_RATED(Comparator.comparingDouble((Candidate c) -> -c.rating).thenComparingLong(c -> c.idleSinceMillis));
+
+        private final Comparator<Candidate> preference;   // ties are equally good
+        private final Comparator<Candidate> order;        // ties broken by driver id
+
+        Policy(Comparator<Candidate> preference) {
+            this.preference = preference;
+            this.order = preference.thenComparingInt(c -> c.driverId);
+        }
+
+        // Place of each driver in preference order, equal for ties (sorts the list)
+        int[] places(List<Candidate> candidates) {
+            candidates.sort(order);
+            int[] places = new int[candidates.size()];
+            for (int i = 1; i < places.length; i++) {
+                boolean tie = preference.compare(candidates.get(i - 1), candidates.get(i)) == 0;
+                places[i] = tie ? places[i - 1] : places[i - 1] + 1;
+            }
+            return places;
+        }
+    }
+
+    // What the rider asked for; partySize counts the rider and any assistants
+    public static final class Request {
+        private final int riderId;
+        private final int routeId;
+        private final LocalDateTime time;
+        private final int partySize;
+        private final double pickupLat;
+        private final double pickupLng;
+
+        public Request(int riderId, int routeId, LocalDateTime time, int partySize) {
+            this(riderId, routeId, time, partySize, Double.NaN, Double.NaN);
+        }
+
+        // With the pickup point (the route's start), drivers near it are preferred
+        public Request(int riderId, int routeId, LocalDateTime time, int partySize, double pickupLat, double pickupLng) {
+            this.riderId = riderId;
+            this.routeId = routeId;
+            this.time = time == null ? LocalDateTime.now() : time;
+            this.partySize = Math.max(1, partySize);
+            this.pickupLat = pickupLat;
+            this.pickupLng = pickupLng;
+        }
+
+        // For a route: its start point when the route has coordinates
+        public static Request forRoute(int riderId, Route route, LocalDateTime time, int partySize) {
+            return new Request(riderId, route.getRouteId(), time, partySize, route.getStartLat(), route.getStartLng());
+        }
+
+        public int getRiderId() { return riderId; }
+        public int getRouteId() { return routeId; }
+        public LocalDateTime getTime() { return time; }
+        public int getPartySize() { return partySize; }
+        public boolean hasPickup() { return !Double.isNaN(pickupLat) && !Double.isNaN(pickupLng); }
+    }
+
+    // An available driver as the queues see them
+    static final class Candidate {
+        final int driverId;
+        final int capacity;
+        final double rating;
+        final long idleSinceMillis;
+        final List<LocalTime[]> shifts;         // today's shift windows
+
+        Candidate(int driverId, int capacity, double rating, long idleSinceMillis, List<LocalTime[]> shifts) {
+            this.driverId = driverId;
+            this.capacity = capacity;
+            this.rating = rating;
+            this.idleSinceMillis = idleSinceMillis;
+            this.shifts = shifts;
+        }
+
+        boolean onShiftAt(LocalDateTime t) {
+            if (!t.toLocalDate().equals(LocalDate.now())) return false;
+            LocalTime time = t.toLocalTime();
+            for (LocalTime[] s : shifts) {
+                if (!time.isBefore(s[0]) && !time.isAfter(s[1])) return true;
+            }
+            return false;
+        }
+    }
+
+    private static volatile DispatchEngine instance;
+
+    private final DriverGrid grid;
+    private volatile Policy policy;
+    private TreeMap<Integer, PriorityQueue<Candidate>> byCapacity = new TreeMap<>();   // guarded by this
+    private Map<Integer, Candidate> free = new HashMap<>();                            // same drivers, by id
+    private final Map<Integer, Long> lastAssigned = new HashMap<>();                   // guarded by this
+    private final Map<Integer, Candidate> held = new HashMap<>();                      // assigned, not yet booked
+
+    // Cached slow-changing stats
+    private volatile Map<Integer, Double> ratings = Map.of();
+    private volatile Map<Integer, Long> lastRide = Map.of();
+    private volatile long statsLoadedAt;
+
+    // ===================== STATIC ACCESS =====================
+    // The process-wide engine; loads the queues and starts refreshing on first use
+    public static DispatchEngine get() {
+        DispatchEngine e = instance;
+        if (e != null) return e;
+        synchronized (DispatchEngine.class) {
+            if (instance == null) {
+                DispatchEngine engine = new DispatchEngine(parsePolicy(System.getProperty("rydex.dispatch.policy", "balanced")),
+                        DriverGrid.get());
+                engine.refresh();
+                engine.startRefreshing(Long.getLong("rydex.dispatch.refresh.ms", 2000));
+                instance = engine;
+            }
+            return instance;
+        }
+    }
+
+    // The engine if something already started it, else null (pricing reads supply from it
+    // but should not be what starts dispatching)
+    public static DispatchEngine current() {
+        return instance;
+    }
+
+    static Policy parsePolicy(String name) {
+        try {
+            return Policy.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            Log.warn("Unknown dispatch policy, using BALANCED", "policy", name);
+            return Policy.BALANCED;
+        }
+    }
+
+    DispatchEngine(Policy policy, DriverGrid grid) {
+        this.policy = policy;
+        this.grid = grid;
+        Metrics.gauge("rydex_dispatch_available_drivers", "Drivers waiting in the dispatch queues", this::getAvailableCount);
+    }
+
+    private void startRefreshing(long intervalMillis) {
+        if (intervalMillis <= 0) return;
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rydex-dispatch-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } finally {
+                DatabaseConfig.releaseThreadConnections();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public Policy getPolicy() { return policy; }
+
+    // Re-order the queues under a different policy
+    public synchronized void setPolicy(Policy newPolicy) {
+        policy = newPolicy;
+        install(new ArrayList<>(free.values()));
+    }
+
+    public synchronized int getAvailableCount() {
+        return free.size();
+    }
+
+    // Free drivers with a recent position within maxKm of a point, counting at most limit
+    public synchronized int countFreeNear(double lat, double lng, double maxKm, int limit) {
+        int[] ids = new int[limit];
+        double[] km = new double[limit];
+        return grid.nearest(lat, lng, limit, maxKm, free::containsKey, ids, km);
+    }
+
+    // ===================== SELECTION =====================
+    // Take the best driver for the request off the queues; -1 if none fits
+    public int assign(Request request) {
+        long t0 = System.nanoTime();
+        try {
+            synchronized (this) {
+                Candidate c = pick(request, true);
+                if (c == null) return -1;
+                lastAssigned.put(c.driverId, System.currentTimeMillis());
+                held.put(c.driverId, c);
+                return c.driverId;
+            }
+        } finally {
+            SELECT_TIME.recordSince(t0);
+        }
+    }
+
+    // Match a batch of requests together (BatchMatcher); returns the driver for each request,
+    // -1 where none fits. Unlike calling assign() in arrival order, a small party cannot take
+    // the only car a later large party fits in, and the batch as a whole gets the best-ranked
+    // drivers: the cost of a pair is the driver's place in policy order plus EMPTY_SEAT_COST
+    // per seat left empty plus PLACES_PER_KM per km to the pickup, minimised over the batch
+    // by MinCostAssignment.
+    public int[] assignAll(List<Request> requests) {
+        long t0 = System.nanoTime();
+        int[] drivers = new int[requests.size()];
+        Arrays.fill(drivers, -1);
+        if (requests.isEmpty()) return drivers;
+        try {
+            synchronized (this) {
+                // Within one capacity the queue order is the cost order, so only as many
+                // drivers as there are requests that fit can end up matched
+                List<Candidate> pool = new ArrayList<>();
+                for (Map.Entry<Integer, PriorityQueue<Candidate>> e : byCapacity.entrySet()) {
+                    int fits = 0;
+                    for (Request r : requests) if (r.getPartySize() <= e.getKey()) fits++;
+                    PriorityQueue<Candidate> q = e.getValue();
+                    List<Candidate> offShift = new ArrayList<>();
+                    int taken = 0;
+                    while (taken < fits && !q.isEmpty()) {
+                        Candidate c = q.poll();
+                        if (coversAny(c, requests)) {
+                            pool.add(c);
+                            free.remove(c.driverId);
+                            taken++;
+                        } else {
+                            offShift.add(c);
+                        }
+                    }
+                    q.addAll(offShift);
+                }
+                // Plus the drivers nearest to each pickup, whatever their place in the queues
+                int[] ids = new int[NEAREST_K];
+                double[] km = new double[NEAREST_K];
+                for (Request r : requests) {
+                    if (!r.hasPickup()) continue;
+                    int n = grid.nearest(r.pickupLat, r.pickupLng, NEAREST_K, MAX_PICKUP_KM,
+                            id -> fits(free.get(id), r), ids, km);
+                    for (int i = 0; i < n; i++) {
+                        Candidate c = free.get(ids[i]);
+                        take(c);
+                        pool.add(c);
+                    }
+                }
+                int[] places = policy.places(pool);
+
+                // Drivers without a known position count as MAX_PICKUP_KM away
+                double[][] position = new double[pool.size()][];
+                for (int j = 0; j < pool.size(); j++) {
+                    double[] p = new double[2];
+                    if (grid.locate(pool.get(j).driverId, p)) position[j] = p;
+                }
+
+                double[][] cost = new double[requests.size()][pool.size()];
+                for (int i = 0; i < requests.size(); i++) {
+                    Request r = requests.get(i);
+                    for (int j = 0; j < pool.size(); j++) {
+                        Candidate c = pool.get(j);
+                        if (c.capacity < r.getPartySize() || !c.onShiftAt(r.getTime())) {
+                            cost[i][j] = MinCostAssignment.UNMATCHABLE;
+                            continue;
+                        }
+                        double pickupKm = !r.hasPickup() ? 0
+                                : position[j] == null ? MAX_PICKUP_KM
+                                : DriverGrid.distanceKm(r.pickupLat, r.pickupLng, position[j][0], position[j][1]);
+                        cost[i][j] = places[j] + EMPTY_SEAT_COST * (c.capacity - r.getPartySize()) + PLACES_PER_KM * pickupKm;
+                    }
+                }
+                int[] match = MinCostAssignment.solve(cost);
+
+                boolean[] matched = new boolean[pool.size()];
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < match.length; i++) {
+                    if (match[i] < 0) continue;
+                    Candidate c = pool.get(match[i]);
+                    matched[match[i]] = true;
+                    drivers[i] = c.driverId;
+                    lastAssigned.put(c.driverId, now);
+                    held.put(c.driverId, c);
+                }
+                for (int j = 0; j < pool.size(); j++) {
+                    if (!matched[j]) putBack(pool.get(j));
+                }
+            }
+        } finally {
+            BATCH_TIME.recordSince(t0);
+        }
+        return drivers;
+    }
+
+    private static boolean coversAny(Candidate c, List<Request> requests) {
+        for (Request r : requests) {
+            if (c.onShiftAt(r.getTime())) return true;
+        }
+        return false;
+    }
+
+    // The driver assign() would choose, without taking them; -1 if none fits
+    public synchronized int suggest(Request request) {
+        Candidate c = pick(request, false);
+        return c == null ? -1 : c.driverId;
+    }
+
+    // Put back a driver whose booking did not go through
+    public synchronized void release(int driverId) {
+        Candidate c = held.remove(driverId);
+        if (c == null) return;
+        lastAssigned.remove(driverId);
+        putBack(c);
+    }
+
+    // With a pickup point: the cheapest of the nearest drivers that fit, where cost is their
+    // place in policy order among them plus pickup distance and empty seats. Otherwise (or
+    // when nobody with a known position is near): the best head among the queues that can
+    // seat the party; candidates off shift at the requested time are skipped (and kept).
+    private Candidate pick(Request request, boolean remove) {
+        if (request.hasPickup()) {
+            Candidate near = pickNearby(request);
+            if (near != null) {
+                if (remove) take(near);
+                return near;
+            }
+        }
+        Candidate best = null;
+        PriorityQueue<Candidate> bestQueue = null;
+        for (PriorityQueue<Candidate> q : byCapacity.tailMap(request.getPartySize(), true).values()) {
+            Candidate head = firstOnShift(q, request.getTime());
+            if (head != null && (best == null || policy.order.compare(head, best) < 0)) {
+                best = head;
+                bestQueue = q;
+            }
+        }
+        if (best != null && remove) {
+            bestQueue.remove(best);
+            free.remove(best.driverId);
+        }
+        return best;
+    }
+
+    private Candidate pickNearby(Request request) {
+        int[] ids = new int[NEAREST_K];
+        double[] km = new double[NEAREST_K];
+        int n = grid.nearest(request.pickupLat, request.pickupLng, NEAREST_K, MAX_PICKUP_KM,
+                id -> fits(free.get(id), request), ids, km);
+        if (n == 0) return null;
+        Map<Integer, Double> kmById = new HashMap<>();
+        List<Candidate> near = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            near.add(free.get(ids[i]));
+            kmById.put(ids[i], km[i]);
+        }
+        int[] places = policy.places(near);
+        Candidate best = null;
+        double bestCost = Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            Candidate c = near.get(i);
+            double cost = places[i] + PLACES_PER_KM * kmById.get(c.driverId)
+                    + EMPTY_SEAT_COST * (c.capacity - request.getPartySize());
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static boolean fits(Candidate c, Request request) {
+        return c != null && c.capacity >= request.getPartySize() && c.onShiftAt(request.getTime());
+    }
+
+    private void take(Candidate c) {
+        byCapacity.get(c.capacity).remove(c);
+        free.remove(c.driverId);
+    }
+
+    private void putBack(Candidate c) {
+        byCapacity.computeIfAbsent(c.capacity, k -> new PriorityQueue<>(policy.order)).add(c);
+        free.put(c.driverId, c);
+    }
+
+    private static Candidate firstOnShift(PriorityQueue<Candidate> q, LocalDateTime time) {
+        Candidate head = q.peek();
+        if (head == null || head.onShiftAt(time)) return head;
+        // Rare (request for later today): look past drivers whose shift does not cover it
+        Candidate best = null;
+        for (Candidate c : q) {
+            if (c.onShiftAt(time) && (best == null || q.comparator().compare(c, best) < 0)) best = c;
+        }
+        return best;
+    }
+
+    // ===================== REFRESH =====================
+    // Rebuild the queues from the database
+    public void refresh() {
+        long started = System.currentTimeMillis();
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) return;
+            if (started - statsLoadedAt > STATS_TTL_MS) loadStats(conn);
+
+            Map<Integer, Integer> capacity = new HashMap<>();
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT d.driver_id, v.capacity FROM Drivers d JOIN Vehicles v ON v.vehicle_id = d.vehicle_id");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) capacity.put(rs.getInt(1), rs.getInt(2));
+            }
+
+            Map<Integer, List<LocalTime[]>> shifts = new HashMap<>();
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT driver_id, start_time, end_time FROM Driver_Shifts WHERE shift_date = ?")) {
+                ps.setDate(1, Date.valueOf(LocalDate.now()));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Time start = rs.getTime(2);
+                        Time end = rs.getTime(3);
+                        if (start == null || end == null) continue;
+                        shifts.computeIfAbsent(rs.getInt(1), k -> new ArrayList<>())
+                              .add(new LocalTime[]{start.toLocalTime(), end.toLocalTime()});
+                    }
+                }
+            }
+
+            Set<Integer> busy = new HashSet<>();
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT DISTINCT driver_id FROM Rides WHERE status IN ('Pending', 'Confirmed', 'In Progress')");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) busy.add(rs.getInt(1));
+            }
+
+            List<Candidate> all = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            for (Map.Entry<Integer, List<LocalTime[]>> e : shifts.entrySet()) {
+                int driverId = e.getKey();
+                Integer cap = capacity.get(driverId);
+                if (cap == null || busy.contains(driverId)) continue;
+                all.add(new Candidate(driverId, cap, ratings.getOrDefault(driverId, DEFAULT_RATING),
+                        lastRide.getOrDefault(driverId, now - STATS_TTL_MS), e.getValue()));
+            }
+
+            synchronized (this) {
+                List<Candidate> available = new ArrayList<>(all.size());
+                // A held driver stays out until their ride shows up in the database (or the
+                // booking releases them); only a hold that outlived HOLD_MS is given up
+                long oldest = System.currentTimeMillis() - HOLD_MS;
+                held.keySet().removeIf(id -> busy.contains(id) || lastAssigned.getOrDefault(id, 0L) < oldest);
+                for (Candidate c : all) {
+                    if (held.containsKey(c.driverId)) continue;
+                    long assigned = lastAssigned.getOrDefault(c.driverId, 0L);
+                    available.add(assigned > c.idleSinceMillis
+                            ? new Candidate(c.driverId, c.capacity, c.rating, assigned, c.shifts) : c);
+                }
+                install(available);
+            }
+        } catch (SQLException e) {
+            Log.error("Error refreshing dispatch queues", "error", e.getMessage());
+        }
+    }
+
+    // Replace the queues with these drivers (caller holds the lock)
+    private void install(List<Candidate> all) {
+        TreeMap<Integer, PriorityQueue<Candidate>> queues = new TreeMap<>();
+        Map<Integer, Candidate> byId = new HashMap<>();
+        for (Candidate c : all) {
+            queues.computeIfAbsent(c.capacity, k -> new PriorityQueue<>(policy.order)).add(c);
+            byId.put(c.driverId, c);
+        }
+        byCapacity = queues;
+        free = byId;
+    }
+
+    // Average rating and last ride time per driver
+    private void loadStats(Connection conn) throws SQLException {
+        Map<Integer, Double> r = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT r.driver_id, AVG(f.rating) FROM Feedback f JOIN Rides r ON r.ride_id = f.ride_id GROUP BY r.driver_id");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) r.put(rs.getInt(1), rs.getDouble(2));
+        }
+        Map<Integer, Long> last = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT driver_id, MAX(ride_time) FROM Rides GROUP BY driver_id");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                Timestamp t = rs.getTimestamp(2);
+                if (t != null) last.put(rs.getInt(1), t.getTime());
+            }
+        }
+        ratings = r;
+        lastRide = last;
+        statsLoadedAt = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,172 @@
+// DomainEvents.java - Process-wide event bus for work that follows a ride completion
+//
+// RideDAO.completeRide commits only the ride's status change and publishes a COMPLETED
+// event here; everything that depends on it is done afterwards, in batches, by these
+// consumers (each on its own thread, see EventBus):
+//   earnings       - records the fares in the earnings ledger, one insert batch per batch
+//   payments       - settles Pending (cash) payments of the completed rides through PaymentDAO
+//   metrics        - completed fares and completion-to-credit lag
+// Notifications and other fan-out that must survive a crash go through the outbox instead
+// (RideOutbox, OutboxRelay), which the completion writes in the same transaction.
+//
+// Events live only in memory: a shutdown drains the ring (up to 5 s), but a crash can lose
+// the events of rides completed in the last moments. When the bus starts, a background pass
+// credits every Completed ride booked in the last -Drydex.earnings.reconcile.hours (48) that
+// has no ledger row (EarningsDAO.reconcileCompletedRides) and settles its payment if still
+// Pending (PaymentDAO.reconcileCashPayments); the ledger's unique ride_id and the Pending
+// check keep either from happening twice. Callers that need both in the same transaction
+// as the status change use RideDAO.completeRideTransaction instead.
+//
+// On by default; -Drydex.eventbus=off makes completeRide fall back to the single
+// transaction. Ring size: -Drydex.eventbus.size=8192 (a power of two).
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public final class DomainEvents {
+
+    private static final Metrics.Amount COMPLETED_FARES = Metrics.amount("rydex_completed_fares_pkr_total",
+            "Fares of completed rides handled by the event bus");
+    private static final Metrics.Timer CREDIT_LAG = Metrics.timer("rydex_earnings_credit_lag_seconds",
+            "Time from a ride's completion to its fare being credited to the driver");
+
+    private static volatile EventBus<RideEvent> bus;
+    private static volatile boolean initialized;
+
+    private DomainEvents() {}
+
+    // ===================== STATIC ACCESS =====================
+    // The running bus, started on first use; null when turned off
+    public static EventBus<RideEvent> bus() {
+        if (!initialized) init();
+        return bus;
+    }
+
+    public static boolean isEnabled() {
+        return bus() != null;
+    }
+
+    // Hand an event to the consumers; false (nothing done) when the bus is off
+    public static boolean publish(RideEvent event) {
+        EventBus<RideEvent> b = bus();
+        if (b == null) return false;
+        b.publish(event);
+        return true;
+    }
+
+    // Wait until every published event has been handled (used at shutdown and by tools)
+    public static boolean flush() {
+        EventBus<RideEvent> b = bus;
+        return b == null || b.flush(5, TimeUnit.SECONDS);
+    }
+
+    private static synchronized void init() {
+        if (initialized) return;
+        if (!"off".equalsIgnoreCase(System.getProperty("rydex.eventbus", "on"))) {
+            EventBus<RideEvent> b = new EventBus<>("rides", Integer.getInteger("rydex.eventbus.size", 8192));
+            b.addConsumer("earnings", DomainEvents::creditEarnings);
+            b.addConsumer("payments", DomainEvents::settlePayments);
+            b.addConsumer("metrics", DomainEvents::recordMetrics);
+            b.start();
+            for (String consumer : b.getConsumerNames()) {
+                Metrics.gauge("rydex_event_bus_backlog", "Events published but not yet handled, per consumer",
+                        () -> b.getBacklog(consumer), "consumer", consumer);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> b.flush(5, TimeUnit.SECONDS), "rydex-event-bus-flush"));
+            bus = b;
+            Thread reconcile = new Thread(DomainEvents::reconcileCompletions, "rydex-completion-reconcile");
+            reconcile.setDaemon(true);
+            reconcile.start();
+        }
+        initialized = true;
+    }
+
+    // Credit and settle completions whose events a previous run lost
+    private static void reconcileCompletions() {
+        long hours = Long.getLong("rydex.earnings.reconcile.hours", 48);
+        if (hours <= 0) return;
+        try {
+            Timestamp since = new Timestamp(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(hours));
+            int added = new EarningsDAO().reconcileCompletedRides(since);
+            if (added > 0) Log.warn("Credited completed rides missing from the earnings ledger", "rides", added);
+            int settled = new PaymentDAO().reconcileCashPayments(since);
+            if (settled > 0) Log.warn("Settled cash payments of completed rides left Pending", "payments", settled);
+        } finally {
+            DatabaseConfig.releaseThreadConnections();
+        }
+    }
+
+    // ===================== CONSUMERS =====================
+    // One ledger insert batch per event batch, in one transaction; retried until it succeeds,
+    // since dropping the batch would lose money (the ring backs up meanwhile). Rides already
+    // in the ledger are skipped, so a retry never pays twice.
+    private static void creditEarnings(List<RideEvent> batch) throws InterruptedException {
+        List<RideEvent> completions = new ArrayList<>();
+        for (RideEvent e : batch) {
+            if (e.getType() == RideEvent.Type.COMPLETED && e.getDriverId() > 0) completions.add(e);
+        }
+        if (completions.isEmpty()) return;
+
+        long backoff = 100;
+        while (!writeEarnings(completions)) {
+            Thread.sleep(backoff);
+            backoff = Math.min(backoff * 2, 5000);
+        }
+        long now = System.currentTimeMillis();
+        for (RideEvent e : completions) CREDIT_LAG.recordNanos(TimeUnit.MILLISECONDS.toNanos(now - e.getTimeMillis()));
+    }
+
+    private static boolean writeEarnings(List<RideEvent> completions) {
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) return false;
+            conn.setAutoCommit(false);
+            try {
+                EarningsDAO.insertRideEarnings(conn, completions);
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            Log.error("Error crediting driver earnings, will retry", "rides", completions.size(), "error", e.getMessage());
+            return false;
+        } finally {
+            DatabaseConfig.releaseThreadConnections();
+        }
+    }
+
+    // Cash is collected at drop-off, so a Pending payment is settled when its ride completes.
+    // Retried like the earnings until it succeeds; rides whose payment is no longer Pending
+    // are skipped, so a retry never settles twice.
+    private static void settlePayments(List<RideEvent> batch) throws InterruptedException {
+        List<Integer> rideIds = new ArrayList<>();
+        for (RideEvent e : batch) {
+            if (e.getType() == RideEvent.Type.COMPLETED) rideIds.add(e.getRideId());
+        }
+        if (rideIds.isEmpty()) return;
+
+        PaymentDAO payments = new PaymentDAO();
+        long backoff = 100;
+        try {
+            List<Integer> settled;
+            while ((settled = payments.settleCashPayments(rideIds)) == null) {
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, 5000);
+            }
+            if (!settled.isEmpty()) Log.info("Settled cash payments for completed rides", "payments", settled.size());
+        } finally {
+            DatabaseConfig.releaseThreadConnections();
+        }
+    }
+
+    private static void recordMetrics(List<RideEvent> batch) {
+        for (RideEvent e : batch) {
+            if (e.getType() == RideEvent.Type.COMPLETED) COMPLETED_FARES.add(e.getAmount());
+        }
+    }
+}
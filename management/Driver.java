@@ -70,7 +70,7 @@ public class Driver extends User {
     public void updateProfile(String name, String email) {
         setName(name);
         setEmail(email);
-        System.out.println("Driver profile updated successfully!");
+        Log.info("Driver profile updated", "driverId", getUserId());
     }
 
     @Override
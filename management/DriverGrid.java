@@ -0,0 +1,247 @@
+// DriverGrid.java - In-memory uniform grid of live driver positions
+//
+// The map is cut into cells of CELL_DEG degrees (about 1 km). Each cell keeps its drivers
+// in parallel primitive arrays (id, lat, lng, time), so a position update is a hash lookup
+// plus a few array writes, and moving to another cell is a swap-remove and an append.
+// nearest() searches rings of cells outward from the query point and stops as soon as no
+// unvisited ring can hold anything closer than the k-th driver found, so dispatch looks at
+// the drivers around a pickup instead of every driver.
+//
+// The process-wide grid (get()) starts from the positions saved in Drivers.last_lat/last_lng;
+// positions older than rydex.grid.stale.ms (120000) are ignored by queries.
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+public final class DriverGrid {
+
+    static final double CELL_DEG = 0.01;
+    private static final double KM_PER_DEG = 111.32;
+    private static final int MAX_RINGS = 50;
+
+    // Drivers in one cell; slots [0, size) are in use
+    private static final class Cell {
+        int[] drivers = new int[4];
+        double[] lat = new double[4];
+        double[] lng = new double[4];
+        long[] seenAt = new long[4];
+        int size;
+
+        int add(int driverId, double la, double ln, long at) {
+            if (size == drivers.length) {
+                int n = size * 2;
+                drivers = Arrays.copyOf(drivers, n);
+                lat = Arrays.copyOf(lat, n);
+                lng = Arrays.copyOf(lng, n);
+                seenAt = Arrays.copyOf(seenAt, n);
+            }
+            drivers[size] = driverId;
+            lat[size] = la;
+            lng[size] = ln;
+            seenAt[size] = at;
+            return size++;
+        }
+
+        // Remove a slot by moving the last one into it; returns the moved driver (or -1)
+        int removeAt(int slot) {
+            int last = --size;
+            if (slot == last) return -1;
+            drivers[slot] = drivers[last];
+            lat[slot] = lat[last];
+            lng[slot] = lng[last];
+            seenAt[slot] = seenAt[last];
+            return drivers[slot];
+        }
+    }
+
+    // Where a driver is stored
+    private static final class Slot {
+        long cell;
+        int index;
+    }
+
+    private static volatile DriverGrid instance;
+
+    private final long staleMillis;
+    private final Map<Long, Cell> cells = new HashMap<>();
+    private final Map<Integer, Slot> slots = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // ===================== STATIC ACCESS =====================
+    // The process-wide grid, loaded from the last saved positions on first use
+    public static DriverGrid get() {
+        DriverGrid g = instance;
+        if (g != null) return g;
+        synchronized (DriverGrid.class) {
+            if (instance == null) {
+                DriverGrid grid = new DriverGrid(Long.getLong("rydex.grid.stale.ms", 120_000));
+                grid.loadSavedPositions();
+                instance = grid;
+            }
+            return instance;
+        }
+    }
+
+    DriverGrid(long staleMillis) {
+        this.staleMillis = staleMillis;
+        Metrics.gauge("rydex_grid_drivers", "Drivers with a position in the dispatch grid", this::size);
+    }
+
+    private void loadSavedPositions() {
+        String sql = "SELECT driver_id, last_lat, last_lng, position_at FROM Drivers WHERE last_lat IS NOT NULL AND last_lng IS NOT NULL";
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) return;
+            try (PreparedStatement ps = conn.prepareStatement(sql);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Timestamp at = rs.getTimestamp(4);
+                    update(rs.getInt(1), rs.getDouble(2), rs.getDouble(3), at == null ? 0 : at.getTime());
+                }
+            }
+        } catch (SQLException e) {
+            Log.error("Error loading driver positions", "error", e.getMessage());
+        }
+    }
+
+    // ===================== UPDATES =====================
+    public void update(int driverId, double lat, double lng) {
+        update(driverId, lat, lng, System.currentTimeMillis());
+    }
+
+    public void update(int driverId, double lat, double lng, long atMillis) {
+        long key = cellKey(lat, lng);
+        lock.writeLock().lock();
+        try {
+            Slot slot = slots.get(driverId);
+            if (slot != null && slot.cell == key) {
+                Cell cell = cells.get(key);
+                cell.lat[slot.index] = lat;
+                cell.lng[slot.index] = lng;
+                cell.seenAt[slot.index] = atMillis;
+                return;
+            }
+            if (slot != null) {
+                detach(slot);
+            } else {
+                slot = new Slot();
+                slots.put(driverId, slot);
+            }
+            slot.cell = key;
+            slot.index = cells.computeIfAbsent(key, k -> new Cell()).add(driverId, lat, lng, atMillis);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int driverId) {
+        lock.writeLock().lock();
+        try {
+            Slot slot = slots.remove(driverId);
+            if (slot != null) detach(slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void detach(Slot slot) {
+        Cell cell = cells.get(slot.cell);
+        int moved = cell.removeAt(slot.index);
+        if (moved >= 0) slots.get(moved).index = slot.index;
+        if (cell.size == 0) cells.remove(slot.cell);
+    }
+
+    // ===================== QUERIES =====================
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Last known position of a driver into out[0..1]; false if unknown or stale
+    public boolean locate(int driverId, double[] out) {
+        long oldest = System.currentTimeMillis() - staleMillis;
+        lock.readLock().lock();
+        try {
+            Slot slot = slots.get(driverId);
+            if (slot == null) return false;
+            Cell cell = cells.get(slot.cell);
+            if (cell.seenAt[slot.index] < oldest) return false;
+            out[0] = cell.lat[slot.index];
+            out[1] = cell.lng[slot.index];
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Up to k drivers accepted by the filter within maxKm, nearest first, written to ids and
+    // km (each at least k long); returns how many were found
+    public int nearest(double lat, double lng, int k, double maxKm, IntPredicate accept, int[] ids, double[] km) {
+        if (k <= 0) return 0;
+        long oldest = System.currentTimeMillis() - staleMillis;
+        int row0 = (int) Math.floor(lat / CELL_DEG);
+        int col0 = (int) Math.floor(lng / CELL_DEG);
+        double cellKm = CELL_DEG * KM_PER_DEG * Math.min(1.0, Math.cos(Math.toRadians(lat)));
+        int found = 0;
+
+        lock.readLock().lock();
+        try {
+            for (int ring = 0; ring <= MAX_RINGS; ring++) {
+                // Anything in this ring or beyond is at least (ring - 1) cells away
+                double bound = Math.max(0, ring - 1) * cellKm;
+                if (bound > maxKm || (found == k && bound > km[k - 1])) break;
+                for (int dr = -ring; dr <= ring; dr++) {
+                    for (int dc = -ring; dc <= ring; dc++) {
+                        if (Math.abs(dr) != ring && Math.abs(dc) != ring) continue;    // inner rings done
+                        Cell cell = cells.get(key(row0 + dr, col0 + dc));
+                        if (cell == null) continue;
+                        for (int i = 0; i < cell.size; i++) {
+                            if (cell.seenAt[i] < oldest) continue;
+                            double d = distanceKm(lat, lng, cell.lat[i], cell.lng[i]);
+                            if (d > maxKm || (found == k && d >= km[k - 1])) continue;
+                            if (!accept.test(cell.drivers[i])) continue;
+                            // Insertion into the sorted top-k
+                            int pos = found < k ? found++ : k - 1;
+                            while (pos > 0 && km[pos - 1] > d) {
+                                km[pos] = km[pos - 1];
+                                ids[pos] = ids[pos - 1];
+                                pos--;
+                            }
+                            km[pos] = d;
+                            ids[pos] = cell.drivers[i];
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return found;
+    }
+
+    // Equirectangular approximation; well under 1% off at city distances
+    public static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double x = Math.toRadians(lng2 - lng1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * 6371.0;
+    }
+
+    private static long cellKey(double lat, double lng) {
+        return key((int) Math.floor(lat / CELL_DEG), (int) Math.floor(lng / CELL_DEG));
+    }
+
+    private static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+}
@@ -17,7 +17,7 @@ public class DriverShiftDAO {
         // Check if the requested shift is in the past
         if (requestedDate.isBefore(currentDate) ||
                 (requestedDate.equals(currentDate) && requestedStartTime.isBefore(currentTime))) {
-            System.out.println("✗ Shift not allowed: Cannot add shifts for past times. Please select a future time.");
+            Log.warn("Shift not allowed: cannot add shifts for past times", "driverId", driverId, "date", requestedDate, "start", requestedStartTime);
             return false;
         }
 
@@ -33,13 +33,13 @@ public class DriverShiftDAO {
                 try (ResultSet keys = insertStmt.getGeneratedKeys()) {
                     if (keys.next()) {
                         int newId = keys.getInt(1);
-                        System.out.println("✓ Shift inserted with shift_id=" + newId);
+                        Log.info("Shift inserted", "shiftId", newId, "driverId", driverId);
                     }
                 }
                 return true;
             }
         } catch (SQLException e) {
-            System.err.println("Error adding shift: " + e.getMessage());
+            Log.error("Error adding shift", "error", e.getMessage());
         }
         return false;
     }
@@ -62,7 +62,7 @@ public class DriverShiftDAO {
                 }
             }
         } catch (SQLException e) {
-            System.err.println("Error reading shifts: " + e.getMessage());
+            Log.error("Error reading shifts", "error", e.getMessage());
         }
         return list;
     }
@@ -82,14 +82,14 @@ public class DriverShiftDAO {
                     // If we want to track "early end" only once, we check if end_time has been
                     // modified
                     // For simplicity, we'll allow one update per shift
-                    System.out.println("✓ Updating shift end time.");
+                    Log.info("Updating shift end time", "shiftId", shiftId);
                 } else {
-                    System.out.println("✗ Shift not found.");
+                    Log.warn("Shift not found", "shiftId", shiftId);
                     return false;
                 }
             }
         } catch (SQLException e) {
-            System.err.println("Error checking shift: " + e.getMessage());
+            Log.error("Error checking shift", "error", e.getMessage());
             return false;
         }
 
@@ -101,11 +101,11 @@ public class DriverShiftDAO {
             updateStmt.setInt(2, shiftId);
             boolean success = updateStmt.executeUpdate() > 0;
             if (success) {
-                System.out.println("✓ Shift ended early successfully.");
+                Log.info("Shift ended early", "shiftId", shiftId);
             }
             return success;
         } catch (SQLException e) {
-            System.err.println("Error ending shift: " + e.getMessage());
+            Log.error("Error ending shift", "error", e.getMessage());
         }
         return false;
     }
@@ -0,0 +1,240 @@
+// EarningsDAO.java - Handles the driver earnings ledger (Driver_Earnings)
+//
+// Ride completions insert one ledger row instead of updating Drivers.total_earnings, so
+// concurrent completions for the same driver never wait on that driver's row. rollUp()
+// (run by EarningsRollup) periodically moves rows into total_earnings in batches; until
+// then a driver's total is total_earnings plus their rows not yet rolled up, which is
+// what TOTAL_EARNINGS computes in one consistent read.
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class EarningsDAO {
+
+    // Column expression for a driver's up-to-date total; use with Drivers aliased as d
+    static final String TOTAL_EARNINGS = "d.total_earnings + COALESCE((SELECT SUM(e.amount) FROM Driver_Earnings e " +
+            "WHERE e.driver_id = d.driver_id AND e.rolled_up = FALSE), 0)";
+
+    private static final String INSERT = "INSERT INTO Driver_Earnings (driver_id, ride_id, amount, entry_type) VALUES (?, ?, ?, ?)";
+
+    // Record a ride's fare on the caller's connection, inside its completion transaction
+    static void insertRideEarning(Connection conn, int driverId, int rideId, double amount) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(INSERT)) {
+            ps.setInt(1, driverId);
+            ps.setInt(2, rideId);
+            ps.setDouble(3, amount);
+            ps.setString(4, "Ride");
+            ps.executeUpdate();
+        }
+    }
+
+    // Record many completions in one batch; rides already in the ledger are skipped, so a
+    // batch that is retried after an unclear failure does not pay twice
+    static void insertRideEarnings(Connection conn, List<RideEvent> completions) throws SQLException {
+        String sql = "INSERT IGNORE INTO Driver_Earnings (driver_id, ride_id, amount, entry_type) VALUES (?, ?, ?, 'Ride')";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (RideEvent e : completions) {
+                ps.setInt(1, e.getDriverId());
+                ps.setInt(2, e.getRideId());
+                ps.setDouble(3, e.getAmount());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    // Credit Completed rides booked since `since` that have no ledger row, e.g. because the
+    // process crashed while their completion events were still in DomainEvents' ring. Only
+    // rides booked after the ledger migration (V5) count, since older ones were credited to
+    // Drivers.total_earnings directly. Idempotent; returns the rows added (-1 on error).
+    public int reconcileCompletedRides(Timestamp since) {
+        String sql = "INSERT IGNORE INTO Driver_Earnings (driver_id, ride_id, amount, entry_type) " +
+                     "SELECT r.driver_id, r.ride_id, r.fare, 'Ride' FROM Rides r " +
+                     "LEFT JOIN Driver_Earnings e ON e.ride_id = r.ride_id " +
+                     "WHERE r.status = 'Completed' AND e.entry_id IS NULL AND r.ride_time >= ? " +
+                     "AND r.ride_time >= (SELECT h.installed_at FROM schema_history h WHERE h.version = 5 AND h.success = TRUE)";
+        try (Connection conn = DatabaseConfig.getNewConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, since);
+            return stmt.executeUpdate();
+        } catch (SQLException e) {
+            Log.error("Error reconciling driver earnings", "error", e.getMessage());
+            return -1;
+        }
+    }
+
+    // A driver's total including entries not yet rolled up (-1 if the driver does not exist)
+    public double getTotalEarnings(int driverId) {
+        String sql = "SELECT " + TOTAL_EARNINGS + " FROM Drivers d WHERE d.driver_id = ?";
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, driverId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) return rs.getDouble(1);
+            }
+        } catch (SQLException e) {
+            Log.error("Error reading driver earnings", "error", e.getMessage());
+        }
+        return -1;
+    }
+
+    // Set a driver's total to an absolute value by recording the difference as an adjustment
+    // (completions recorded meanwhile are separate entries and still count). The driver row is
+    // locked while the total is read and the delta written, so concurrent adjustments and
+    // roll-ups cannot compute their change from the same stale total.
+    public boolean adjustTotalEarnings(int driverId, double newTotal) {
+        String select = "SELECT " + TOTAL_EARNINGS + " FROM Drivers d WHERE d.driver_id = ? FOR UPDATE";
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) return false;
+            conn.setAutoCommit(false);
+            try {
+                double current;
+                try (PreparedStatement ps = conn.prepareStatement(select)) {
+                    ps.setInt(1, driverId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) {
+                            conn.rollback();
+                            return false;
+                        }
+                        current = rs.getDouble(1);
+                    }
+                }
+                double delta = Math.round((newTotal - current) * 100) / 100.0;
+                if (delta != 0) {
+                    try (PreparedStatement ps = conn.prepareStatement(INSERT)) {
+                        ps.setInt(1, driverId);
+                        ps.setNull(2, java.sql.Types.INTEGER);
+                        ps.setDouble(3, delta);
+                        ps.setString(4, "Adjustment");
+                        ps.executeUpdate();
+                    }
+                }
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            Log.error("Error adjusting driver earnings", "error", e.getMessage());
+        }
+        return false;
+    }
+
+    // Earnings in [from, to) (range scan on driver_id, earned_at)
+    public double getEarningsBetween(int driverId, LocalDateTime from, LocalDateTime to) {
+        String sql = "SELECT COALESCE(SUM(amount), 0) FROM Driver_Earnings WHERE driver_id = ? AND earned_at >= ? AND earned_at < ?";
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, driverId);
+            stmt.setTimestamp(2, Timestamp.valueOf(from));
+            stmt.setTimestamp(3, Timestamp.valueOf(to));
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) return rs.getDouble(1);
+            }
+        } catch (SQLException e) {
+            Log.error("Error reading driver period earnings", "error", e.getMessage());
+        }
+        return -1;
+    }
+
+    // Earnings per day for the days in [from, to] that have any
+    public Map<LocalDate, Double> getDailyEarnings(int driverId, LocalDate from, LocalDate to) {
+        String sql = "SELECT CAST(earned_at AS DATE) AS earned_day, SUM(amount) FROM Driver_Earnings " +
+                     "WHERE driver_id = ? AND earned_at >= ? AND earned_at < ? GROUP BY CAST(earned_at AS DATE)";
+        Map<LocalDate, Double> days = new TreeMap<>();
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, driverId);
+            stmt.setTimestamp(2, Timestamp.valueOf(from.atStartOfDay()));
+            stmt.setTimestamp(3, Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Date day = rs.getDate(1);
+                    days.put(day.toLocalDate(), rs.getDouble(2));
+                }
+            }
+        } catch (SQLException e) {
+            Log.error("Error reading driver daily earnings", "error", e.getMessage());
+        }
+        return days;
+    }
+
+    // Fold up to maxEntries pending rows into Drivers.total_earnings in one transaction;
+    // returns how many were rolled up (-1 on error). Only the rows it locked are marked, so
+    // entries committed meanwhile wait for the next run.
+    public int rollUp(int maxEntries) {
+        String select = "SELECT entry_id, driver_id, amount FROM Driver_Earnings WHERE rolled_up = FALSE " +
+                        "ORDER BY entry_id LIMIT " + maxEntries + " FOR UPDATE";
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) return -1;
+            conn.setAutoCommit(false);
+            try {
+                List<Long> ids = new ArrayList<>();
+                Map<Integer, Double> byDriver = new TreeMap<>();      // driver order avoids lock-order deadlocks
+                try (PreparedStatement ps = conn.prepareStatement(select);
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getLong(1));
+                        byDriver.merge(rs.getInt(2), rs.getDouble(3), Double::sum);
+                    }
+                }
+                if (ids.isEmpty()) {
+                    conn.commit();
+                    return 0;
+                }
+
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "UPDATE Drivers SET total_earnings = total_earnings + ? WHERE driver_id = ?")) {
+                    for (Map.Entry<Integer, Double> e : byDriver.entrySet()) {
+                        ps.setDouble(1, e.getValue());
+                        ps.setInt(2, e.getKey());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                markRolledUp(conn, ids);
+                conn.commit();
+                return ids.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            Log.error("Error rolling up driver earnings", "error", e.getMessage());
+            return -1;
+        }
+    }
+
+    private static void markRolledUp(Connection conn, List<Long> ids) throws SQLException {
+        final int chunk = 500;
+        for (int from = 0; from < ids.size(); from += chunk) {
+            List<Long> part = ids.subList(from, Math.min(ids.size(), from + chunk));
+            StringBuilder sql = new StringBuilder("UPDATE Driver_Earnings SET rolled_up = TRUE WHERE entry_id IN (");
+            for (int i = 0; i < part.size(); i++) sql.append(i == 0 ? "?" : ", ?");
+            sql.append(')');
+            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                for (int i = 0; i < part.size(); i++) ps.setLong(i + 1, part.get(i));
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    // Remove a driver's ledger (the driver is being deleted)
+    static void deleteForDriver(Connection conn, int driverId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM Driver_Earnings WHERE driver_id = ?")) {
+            ps.setInt(1, driverId);
+            ps.executeUpdate();
+        }
+    }
+}
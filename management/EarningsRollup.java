@@ -0,0 +1,56 @@
+// EarningsRollup.java - Background job that folds the earnings ledger into Drivers.total_earnings
+//
+// Every interval it calls EarningsDAO.rollUp until the backlog is empty, so each driver
+// row is updated once per run however many rides they completed. Totals read through
+// EarningsDAO.TOTAL_EARNINGS are right whether or not the job has caught up; it only keeps
+// the pending part small. Started by the desktop apps and the server unless
+// -Drydex.earnings.rollup.ms=0 (default every 1000 ms).
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public final class EarningsRollup {
+
+    private static final int BATCH = 5000;
+    private static final Metrics.Counter ROLLED_UP = Metrics.counter("rydex_earnings_rolled_up_total",
+            "Ledger entries folded into Drivers.total_earnings");
+
+    private static ScheduledExecutorService scheduler;
+
+    private EarningsRollup() {}
+
+    public static synchronized void start() {
+        long interval = Long.getLong("rydex.earnings.rollup.ms", 1000);
+        if (scheduler != null || interval <= 0) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rydex-earnings-rollup");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(EarningsRollup::runOnce, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    // Roll up everything pending now; returns the number of entries
+    public static int runOnce() {
+        EarningsDAO dao = new EarningsDAO();
+        int total = 0;
+        try {
+            int n;
+            do {
+                n = dao.rollUp(BATCH);
+                if (n > 0) total += n;
+            } while (n == BATCH);
+        } finally {
+            DatabaseConfig.releaseThreadConnections();
+        }
+        ROLLED_UP.add(total);
+        return total;
+    }
+}
@@ -0,0 +1,165 @@
+// EventBus.java - In-process ring buffer that hands events to batched consumer threads
+//
+// Built the way the LMAX Disruptor is: a preallocated ring of slots, a shared cursor that
+// producers advance with a CAS to claim a slot, and a per-slot "published" sequence so a
+// consumer knows the slot is fully written. Every consumer runs on its own thread and owns
+// its sequence (the last event it has handled) - nothing else ever writes it - and it takes
+// everything published since then in one batch, so a burst of events costs one call (one
+// SQL batch, one commit) instead of one per event.
+//
+// A producer never drops an event: when the ring is full (the slowest consumer is a whole
+// ring behind) publish() waits for it to catch up. Consumers that have nothing to do park
+// and are woken by the next publish.
+//
+//   EventBus<RideEvent> bus = new EventBus<>("rides", 8192);
+//   bus.addConsumer("earnings", batch -> ...);
+//   bus.start();
+//   bus.publish(event);
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+public final class EventBus<E> {
+
+    public interface Consumer<E> {
+        // Called on the consumer's thread with every event published since the last call
+        // (at most maxBatch); an exception is logged and the batch is not redelivered
+        void onBatch(List<E> batch) throws Exception;
+    }
+
+    private final String name;
+    private final Object[] slots;
+    private final AtomicLongArray published;            // sequence last written to each slot
+    private final int mask;
+    private final int maxBatch;
+    private final AtomicLong cursor = new AtomicLong(-1);   // last claimed sequence
+    private final List<Worker> workers = new CopyOnWriteArrayList<>();
+    private volatile boolean started;
+
+    public EventBus(String name, int size) {
+        this(name, size, 256);
+    }
+
+    public EventBus(String name, int size, int maxBatch) {
+        if (size < 2 || Integer.bitCount(size) != 1) throw new IllegalArgumentException("Ring size must be a power of two");
+        this.name = name;
+        this.slots = new Object[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) published.set(i, -1);
+        this.mask = size - 1;
+        this.maxBatch = maxBatch;
+    }
+
+    // ===================== SETUP =====================
+    public synchronized void addConsumer(String consumerName, Consumer<E> consumer) {
+        if (started) throw new IllegalStateException("Consumers must be added before start()");
+        workers.add(new Worker(consumerName, consumer));
+    }
+
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        for (Worker w : workers) w.thread.start();
+    }
+
+    public String getName() { return name; }
+    public int getSize() { return slots.length; }
+
+    // Events published but not yet handled by the named consumer (0 for an unknown name)
+    public long getBacklog(String consumerName) {
+        for (Worker w : workers) {
+            if (w.name.equals(consumerName)) return cursor.get() - w.sequence;
+        }
+        return 0;
+    }
+
+    public List<String> getConsumerNames() {
+        List<String> names = new ArrayList<>();
+        for (Worker w : workers) names.add(w.name);
+        return names;
+    }
+
+    // ===================== PRODUCER =====================
+    public void publish(E event) {
+        long seq = cursor.incrementAndGet();
+        long wrapPoint = seq - slots.length;
+        while (wrapPoint > slowestSequence()) {
+            LockSupport.parkNanos(50_000);          // ring full: wait for the slowest consumer
+        }
+        int index = (int) (seq & mask);
+        slots[index] = event;
+        published.set(index, seq);                  // volatile write makes the slot visible
+        for (Worker w : workers) {
+            if (w.parked) LockSupport.unpark(w.thread);
+        }
+    }
+
+    private long slowestSequence() {
+        long min = Long.MAX_VALUE;
+        for (Worker w : workers) min = Math.min(min, w.sequence);
+        return min == Long.MAX_VALUE ? cursor.get() : min;
+    }
+
+    // Wait (up to timeout) until every consumer has handled everything published so far
+    public boolean flush(long timeout, TimeUnit unit) {
+        long target = cursor.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (slowestSequence() < target) {
+            if (System.nanoTime() > deadline) return false;
+            LockSupport.parkNanos(100_000);
+            if (Thread.currentThread().isInterrupted()) return false;
+        }
+        return true;
+    }
+
+    // ===================== CONSUMERS =====================
+    private final class Worker implements Runnable {
+        final String name;
+        final Consumer<E> consumer;
+        final Thread thread;
+        volatile long sequence = -1;                // written only by this worker's thread
+        volatile boolean parked;
+
+        Worker(String name, Consumer<E> consumer) {
+            this.name = name;
+            this.consumer = consumer;
+            this.thread = new Thread(this, "rydex-bus-" + EventBus.this.name + "-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            List<E> batch = new ArrayList<>(maxBatch);
+            while (!Thread.currentThread().isInterrupted()) {
+                long next = sequence + 1;
+                while (batch.size() < maxBatch) {
+                    long seq = next + batch.size();
+                    int index = (int) (seq & mask);
+                    if (published.get(index) != seq) break;
+                    batch.add((E) slots[index]);
+                }
+                if (batch.isEmpty()) {
+                    parked = true;
+                    // Re-check after announcing the park so a publish in between is not missed
+                    if (published.get((int) (next & mask)) != next) LockSupport.parkNanos(10_000_000);
+                    parked = false;
+                    continue;
+                }
+                try {
+                    consumer.onBatch(batch);
+                } catch (Exception e) {
+                    Log.error("Event bus consumer failed", "bus", EventBus.this.name, "consumer", name,
+                            "events", batch.size(), "error", e.getMessage());
+                }
+                sequence = next + batch.size() - 1;
+                batch.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+// FareCalculator.java - Single home for the PKR fare formula used by every entry point
+
+public class FareCalculator {
+
+    public static final double BASE_FARE = 100;   // PKR flag-down
+    public static final double PER_KM = 50;       // PKR per km
+    public static final double POOL_SHARE = 0.6;  // part of the solo fare each pooled rider pays
+
+    private FareCalculator() {}
+
+    public static double calculateFare(double km) {
+        return BASE_FARE + km * PER_KM;
+    }
+
+    // Fare under a surge multiplier (SurgePricing), rounded to the paisa
+    public static double calculateFare(double km, double multiplier) {
+        return Math.round(calculateFare(km) * multiplier * 100) / 100.0;
+    }
+
+    // What one rider (with their assistants) pays on a pooled trip for a given solo fare
+    public static double pooledFare(double soloFare) {
+        return Math.round(soloFare * POOL_SHARE * 100) / 100.0;
+    }
+}
@@ -28,7 +28,7 @@ public class Feedback {
         if (rating >= 1 && rating <= 5) {
             this.rating = rating;
         } else {
-            System.out.println("Invalid rating! Must be between 1 and 5. Default set to 3");
+            Log.warn("Invalid rating, must be between 1 and 5; defaulting to 3", "rideId", rideId, "rating", rating);
             this.rating = 3;  // default value
         }
     }
@@ -16,12 +16,15 @@ public class FeedbackDAO {
             int rows = stmt.executeUpdate();
             if (rows > 0) {
                 try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) return rs.getInt(1);
+                    if (rs.next()) {
+                        RideEventLog.record(RideEvent.Type.RATED, rideId, 0, 0, rating);
+                        return rs.getInt(1);
+                    }
                 }
             }
 
         } catch (SQLException e) {
-            System.err.println("Error creating feedback: " + e.getMessage());
+            Log.error("Error creating feedback", "error", e.getMessage());
         }
         return -1;
     }
@@ -44,7 +47,7 @@ public class FeedbackDAO {
                 }
             }
         } catch (SQLException e) {
-            System.err.println("Error reading feedbacks: " + e.getMessage());
+            Log.error("Error reading feedbacks", "error", e.getMessage());
         }
         return list;
     }
@@ -0,0 +1,116 @@
+// GpsTrace.java - Compact binary encoding of a GPS trace (time, lat, lng per point)
+//
+// Coordinates are stored as integer micro-degrees (the precision of the DECIMAL(9,6)
+// columns) and times as epoch milliseconds. Each of the three values is written as the
+// change in its delta from the previous point (delta of delta), zigzag-mapped so small
+// negative numbers stay small, as a base-128 varint. A driver pinging at a steady rate at
+// a steady speed produces values near zero, so a point usually takes 3-5 bytes instead of
+// the ~50 a Driver_Positions row costs.
+//
+// Encoder appends points one at a time; Decoder walks a trace without allocating, so a
+// trace of a few thousand points is replayed in microseconds.
+
+import java.util.Arrays;
+
+public final class GpsTrace {
+
+    private static final double SCALE = 1e6;
+
+    private GpsTrace() {}
+
+    // ===================== ENCODE =====================
+    public static final class Encoder {
+        private byte[] buf = new byte[128];
+        private int size;
+        private int count;
+        private final long[] prev = new long[3];
+        private final long[] prevDelta = new long[3];
+
+        // Append a point; false (and nothing written) if it is older than the last one
+        public boolean add(double lat, double lng, long atMillis) {
+            if (count > 0 && atMillis < prev[0]) return false;
+            put(0, atMillis);
+            put(1, Math.round(lat * SCALE));
+            put(2, Math.round(lng * SCALE));
+            count++;
+            return true;
+        }
+
+        private void put(int channel, long value) {
+            long delta = value - prev[channel];
+            long v = delta - prevDelta[channel];
+            long zigzag = (v << 1) ^ (v >> 63);
+            if (size + 10 > buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            while ((zigzag & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buf[size++] = (byte) zigzag;
+            prev[channel] = value;
+            prevDelta[channel] = count == 0 ? 0 : delta;     // the first point is absolute
+        }
+
+        public int getCount() { return count; }
+        public int getSize() { return size; }
+        public long getLastMillis() { return prev[0]; }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+    }
+
+    // ===================== DECODE =====================
+    // Usage: while (d.next()) { d.lat(); d.lng(); d.at(); }
+    public static final class Decoder {
+        private final byte[] buf;
+        private int pos;
+        private int count;
+        private final long[] prev = new long[3];
+        private final long[] prevDelta = new long[3];
+
+        public Decoder(byte[] trace) {
+            this.buf = trace;
+        }
+
+        // Move to the next point; false at the end of the trace
+        public boolean next() {
+            if (pos >= buf.length) return false;
+            for (int channel = 0; channel < 3; channel++) {
+                long zigzag = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    if (pos >= buf.length || shift > 63) throw new IllegalArgumentException("Truncated GPS trace");
+                    b = buf[pos++];
+                    zigzag |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                long v = (zigzag >>> 1) ^ -(zigzag & 1);
+                long delta = v + prevDelta[channel];
+                prev[channel] += delta;
+                prevDelta[channel] = count == 0 ? 0 : delta;
+            }
+            count++;
+            return true;
+        }
+
+        public long at() { return prev[0]; }
+        public double lat() { return prev[1] / SCALE; }
+        public double lng() { return prev[2] / SCALE; }
+    }
+
+    // Length of the path through every point of an encoded trace
+    public static double distanceKm(byte[] trace) {
+        Decoder d = new Decoder(trace);
+        if (!d.next()) return 0;
+        double km = 0;
+        double lat = d.lat();
+        double lng = d.lng();
+        while (d.next()) {
+            km += DriverGrid.distanceKm(lat, lng, d.lat(), d.lng());
+            lat = d.lat();
+            lng = d.lng();
+        }
+        return km;
+    }
+}
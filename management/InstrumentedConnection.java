@@ -0,0 +1,204 @@
+// InstrumentedConnection.java - JDBC proxies that feed QueryStats
+//
+// wrap(conn) returns a Connection whose statements time every execute*, count the rows
+// read from their ResultSets (or the update count for writes) and record failures, all
+// against the normalized SQL in QueryStats. Everything else is passed straight through,
+// so DAOs cannot tell the difference. DatabaseConfig applies the wrapper to every
+// connection it hands out once instrumentation is enabled. Prepared statements also keep
+// their bound parameters so executions over the SlowQueryLog threshold can be logged with them.
+// Each execution is also a RydexEvents.DaoCall JFR event; for queries it ends when the
+// result set is read to the end or closed, so the event covers the time spent fetching rows.
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+public class InstrumentedConnection implements InvocationHandler {
+
+    // Optional hook told about every execution (SQL and bound parameters); used by IndexAudit
+    private static volatile BiConsumer<String, Map<Integer, Object>> listener;
+
+    private final Connection target;
+
+    public static void setListener(BiConsumer<String, Map<Integer, Object>> l) {
+        listener = l;
+    }
+
+    private InstrumentedConnection(Connection target) {
+        this.target = target;
+    }
+
+    public static Connection wrap(Connection conn) {
+        if (conn == null || Proxy.isProxyClass(conn.getClass())
+                && Proxy.getInvocationHandler(conn) instanceof InstrumentedConnection) {
+            return conn;
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new InstrumentedConnection(conn));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Object result = call(target, method, args);
+        String name = method.getName();
+        if (name.equals("prepareStatement") || name.equals("prepareCall")) {
+            Class<?> type = name.equals("prepareCall") ? CallableStatement.class : PreparedStatement.class;
+            return proxy(type, new StatementHandler((Statement) result, (String) args[0]));
+        }
+        if (name.equals("createStatement")) {
+            return proxy(Statement.class, new StatementHandler((Statement) result, null));
+        }
+        return result;
+    }
+
+    // Times executions; prepared statements carry their SQL, plain statements get it per call
+    static class StatementHandler implements InvocationHandler {
+        final Statement target;
+        final String preparedSql;
+        private String batchSql;
+        private Map<Integer, Object> params;
+        private ResultSetHandler openResults;
+
+        StatementHandler(Statement target, String preparedSql) {
+            this.target = target;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("addBatch") && args != null && args.length == 1 && batchSql == null) {
+                batchSql = (String) args[0];
+            }
+            if (preparedSql != null && name.startsWith("set") && args != null && args.length >= 2
+                    && args[0] instanceof Integer) {
+                if (params == null) params = new HashMap<>();
+                params.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters") && params != null) {
+                params.clear();
+            }
+            if (!name.startsWith("execute")) {
+                if (name.equals("close")) finishResults();
+                Object result = call(target, method, args);
+                if (name.equals("getResultSet") && result != null) {
+                    return wrapResultSet((ResultSet) result, entry(args, false), null);
+                }
+                return result;
+            }
+
+            boolean batch = name.startsWith("executeBatch") || name.startsWith("executeLargeBatch");
+            QueryStats.Entry entry = entry(args, batch);
+            finishResults();
+            RydexEvents.DaoCall event = RydexEvents.DaoCall.start(sqlFor(args, batch));
+            long rows = 0;
+            long t0 = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = call(target, method, args);
+                failed = false;
+                if (result instanceof ResultSet) {
+                    ResultSet rs = wrapResultSet((ResultSet) result, entry, event);
+                    openResults = (ResultSetHandler) Proxy.getInvocationHandler(rs);
+                    event = null;
+                    return rs;
+                }
+                if (result instanceof Integer) rows = (Integer) result;
+                else if (result instanceof Long) rows = (Long) result;
+                else if (result instanceof int[]) for (int n : (int[]) result) rows += Math.max(n, 0);
+                else if (result instanceof long[]) for (long n : (long[]) result) rows += Math.max(n, 0);
+                entry.addRows(rows);
+                return result;
+            } finally {
+                long nanos = System.nanoTime() - t0;
+                entry.record(nanos, failed);
+                if (event != null) event.done(rows, failed);
+                if (SlowQueryLog.isSlow(nanos)) {
+                    SlowQueryLog.report(sqlFor(args, batch), preparedSql != null ? params : null, nanos, failed);
+                }
+                BiConsumer<String, Map<Integer, Object>> l = listener;
+                if (l != null) l.accept(sqlFor(args, batch), preparedSql != null ? params : null);
+                if (batch) batchSql = null;
+            }
+        }
+
+        // A statement's previous result set is implicitly closed by its next execute or close()
+        private void finishResults() {
+            if (openResults != null) {
+                openResults.finish();
+                openResults = null;
+            }
+        }
+
+        QueryStats.Entry entry(Object[] args, boolean batch) {
+            return QueryStats.forSql(sqlFor(args, batch));
+        }
+
+        String sqlFor(Object[] args, boolean batch) {
+            if (preparedSql != null) return preparedSql;
+            if (batch) return batchSql;
+            return args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+        }
+    }
+
+    // Counts rows as the caller reads them and ends the query's JFR event when reading stops
+    static class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final QueryStats.Entry entry;
+        private RydexEvents.DaoCall event;
+        private long rows;
+
+        ResultSetHandler(ResultSet target, QueryStats.Entry entry, RydexEvents.DaoCall event) {
+            this.target = target;
+            this.entry = entry;
+            this.event = event;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) finish();
+            Object result = call(target, method, args);
+            if (name.equals("next")) {
+                if (Boolean.TRUE.equals(result)) {
+                    entry.addRows(1);
+                    rows++;
+                } else {
+                    finish();
+                }
+            }
+            return result;
+        }
+
+        void finish() {
+            if (event != null) {
+                event.done(rows, false);
+                event = null;
+            }
+        }
+    }
+
+    static ResultSet wrapResultSet(ResultSet rs, QueryStats.Entry entry, RydexEvents.DaoCall event) {
+        return (ResultSet) proxy(ResultSet.class, new ResultSetHandler(rs, entry, event));
+    }
+
+    private static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+// LatencyHistogram.java - Lock-free log-linear latency histogram (HdrHistogram-style)
+//
+// Values are recorded in microseconds: exactly below 128 us, and above that in 64 buckets
+// per power of two, each 1/64 of its octave wide. A percentile is reported as the top of
+// its bucket, so it is exact below 128 us and at most ~1.6% above the true value beyond
+// (1 us to days) using a fixed array of 2,688 counters. Recording is a single atomic
+// increment, so many threads can share one instance.
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;      // 128 exact buckets for 0..127 us
+    private static final int HALF = SUB_COUNT >> 1;           // 64 buckets per power of two above that
+    private static final int MAX_SHIFT = 40;                  // covers values up to ~2^47 us
+    private static final int BUCKETS = SUB_COUNT + MAX_SHIFT * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordMicros(long micros) {
+        if (micros < 0) micros = 0;
+        counts.incrementAndGet(indexOf(micros));
+        total.increment();
+        sum.add(micros);
+        long m = max.get();
+        while (micros > m && !max.compareAndSet(m, micros)) m = max.get();
+    }
+
+    public long getCount() {
+        return total.sum();
+    }
+
+    public long getMaxMicros() {
+        return max.get();
+    }
+
+    public double getMeanMicros() {
+        long n = total.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    // Value (in microseconds) at or below which the given percentage of samples fall
+    public long percentileMicros(double percentile) {
+        long n = total.sum();
+        if (n == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) return Math.min(highestValueIn(i), max.get());
+        }
+        return max.get();
+    }
+
+    public double percentileMillis(double percentile) {
+        return percentileMicros(percentile) / 1000.0;
+    }
+
+    // Add another histogram's samples into this one
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) counts.addAndGet(i, c);
+        }
+        total.add(other.total.sum());
+        sum.add(other.sum.sum());
+        long m = max.get();
+        long om = other.max.get();
+        while (om > m && !max.compareAndSet(m, om)) m = max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        total.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    // One-line summary in milliseconds
+    public String summary() {
+        return String.format("n=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms",
+                getCount(), getMeanMicros() / 1000.0, percentileMillis(50), percentileMillis(90),
+                percentileMillis(99), percentileMillis(99.9), max.get() / 1000.0);
+    }
+
+    private static int indexOf(long v) {
+        if (v < SUB_COUNT) return (int) v;
+        int shift = (63 - Long.numberOfLeadingZeros(v)) - (SUB_BITS - 1);   // v >> shift is in [64, 127]
+        if (shift > MAX_SHIFT) return BUCKETS - 1;
+        return SUB_COUNT + (shift - 1) * HALF + (int) ((v >> shift) - HALF);
+    }
+
+    private static long highestValueIn(int index) {
+        if (index < SUB_COUNT) return index;
+        int shift = (index - SUB_COUNT) / HALF + 1;
+        long mantissa = (index - SUB_COUNT) % HALF + HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,299 @@
+// LocationIngest.java - Accepts driver location pings at high rate and persists them in batches
+//
+// A ping updates DriverGrid straight away (the latest position is what matching needs) and is
+// appended to that driver's ring of the last RING pings. Every rydex.ingest.flush.ms (1000) a
+// single thread drains the rings of drivers that sent anything, keeps one point per
+// rydex.ingest.sample.ms (5000) that moved at least MIN_MOVE_KM (plus one per STATIONARY_MS
+// while parked), and writes them to Driver_Positions with batched inserts. Drivers.last_* is
+// only read to seed DriverGrid after a restart, so a driver's row there is updated at most
+// once per rydex.ingest.save.ms (30000), inside the grid's stale limit, instead of on every
+// flush. No ping touches the database on the caller's thread.
+// Pings of a driver on a ride also go, at full rate, to that ride's trace (RideTraces).
+//
+// Overload: a ring that fills before it is drained overwrites its oldest ping. Across all
+// rings at most rydex.ingest.max.pending (200000) pings wait for the flusher; beyond that
+// rydex.ingest.overflow=drop_oldest (default) makes each new ping push out the oldest one of
+// the same driver (a driver's only waiting ping is never dropped), while reject refuses the
+// ping (offer returns false, the server answers 429) so clients slow down. Dropped and
+// rejected pings are counted in rydex_ingest_*.
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class LocationIngest {
+
+    private static final int RING = 64;
+    private static final int INSERT_CHUNK = 1000;
+    private static final double MIN_MOVE_KM = 0.01;
+    private static final long STATIONARY_MS = 60_000;
+    private static final long SAVE_POSITION_MS = Long.getLong("rydex.ingest.save.ms", 30_000);
+
+    private static final Metrics.Counter ACCEPTED = Metrics.counter("rydex_ingest_points_total",
+            "Location pings received, by outcome", "result", "accepted");
+    private static final Metrics.Counter REJECTED = Metrics.counter("rydex_ingest_points_total",
+            "Location pings received, by outcome", "result", "rejected");
+    private static final Metrics.Counter DROPPED_RING = Metrics.counter("rydex_ingest_dropped_total",
+            "Location pings discarded before being persisted, by reason", "reason", "ring_full");
+    private static final Metrics.Counter DROPPED_OVERLOAD = Metrics.counter("rydex_ingest_dropped_total",
+            "Location pings discarded before being persisted, by reason", "reason", "overload");
+    private static final Metrics.Counter DROPPED_WRITE = Metrics.counter("rydex_ingest_dropped_total",
+            "Location pings discarded before being persisted, by reason", "reason", "write_failed");
+    private static final Metrics.Counter PERSISTED = Metrics.counter("rydex_ingest_persisted_total",
+            "Downsampled positions written to Driver_Positions");
+
+    public enum Overflow { DROP_OLDEST, REJECT }
+
+    // The last RING pings of one driver not yet drained, oldest at (head - count)
+    private static final class Track {
+        final int driverId;
+        final double[] lat = new double[RING];
+        final double[] lng = new double[RING];
+        final long[] at = new long[RING];
+        int head;
+        int count;
+        long latestAt;
+        boolean queued;
+
+        // Downsampling state, flusher thread only
+        long keptAt;
+        double keptLat;
+        double keptLng;
+        long savedAt;           // position_at last written to Drivers
+
+        Track(int driverId) {
+            this.driverId = driverId;
+        }
+
+        // Append, overwriting the oldest ping when full; true if one was overwritten
+        boolean append(double la, double ln, long t) {
+            lat[head] = la;
+            lng[head] = ln;
+            at[head] = t;
+            head = (head + 1) % RING;
+            if (count == RING) return true;
+            count++;
+            return false;
+        }
+
+        void dropOldest() {
+            if (count > 0) count--;
+        }
+    }
+
+    private static volatile LocationIngest instance;
+
+    private final DriverGrid grid;
+    private final long sampleMillis;
+    private final int maxPending;
+    private final Overflow overflow;
+    private final Map<Integer, Track> tracks = new ConcurrentHashMap<>();
+    private final Queue<Track> dirty = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private ScheduledExecutorService scheduler;
+
+    // ===================== STATIC ACCESS =====================
+    // The process-wide pipeline, flushing in the background once created
+    public static LocationIngest get() {
+        LocationIngest i = instance;
+        if (i != null) return i;
+        synchronized (LocationIngest.class) {
+            if (instance == null) {
+                Overflow overflow = "reject".equalsIgnoreCase(System.getProperty("rydex.ingest.overflow", "drop_oldest"))
+                        ? Overflow.REJECT : Overflow.DROP_OLDEST;
+                LocationIngest ingest = new LocationIngest(DriverGrid.get(), Long.getLong("rydex.ingest.sample.ms", 5000),
+                        Integer.getInteger("rydex.ingest.max.pending", 200_000), overflow);
+                ingest.start(Long.getLong("rydex.ingest.flush.ms", 1000));
+                instance = ingest;
+            }
+            return instance;
+        }
+    }
+
+    LocationIngest(DriverGrid grid, long sampleMillis, int maxPending, Overflow overflow) {
+        this.grid = grid;
+        this.sampleMillis = sampleMillis;
+        this.maxPending = maxPending;
+        this.overflow = overflow;
+        Metrics.gauge("rydex_ingest_pending", "Location pings waiting to be drained", pending::get);
+    }
+
+    private synchronized void start(long flushMillis) {
+        if (scheduler != null || flushMillis <= 0) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rydex-location-ingest");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                Log.error("Location flush failed", "error", e.getMessage());
+            } finally {
+                DatabaseConfig.releaseThreadConnections();
+            }
+        }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    public int getPending() { return pending.get(); }
+
+    // ===================== INGEST =====================
+    // Record a ping; false if it was refused because the pipeline is overloaded (REJECT)
+    public boolean offer(int driverId, double lat, double lng, long atMillis) {
+        boolean overloaded = pending.get() >= maxPending;
+        if (overloaded && overflow == Overflow.REJECT) {
+            REJECTED.increment();
+            return false;
+        }
+        Track t = tracks.computeIfAbsent(driverId, Track::new);
+        boolean latest;
+        boolean enqueue;
+        synchronized (t) {
+            if (overloaded && t.count > 0) {
+                t.dropOldest();
+                pending.decrementAndGet();
+                DROPPED_OVERLOAD.increment();
+            }
+            if (t.append(lat, lng, atMillis)) {
+                DROPPED_RING.increment();
+            } else {
+                pending.incrementAndGet();
+            }
+            latest = atMillis >= t.latestAt;
+            if (latest) t.latestAt = atMillis;
+            enqueue = !t.queued;
+            t.queued = true;
+        }
+        if (latest) grid.update(driverId, lat, lng, atMillis);
+        RideTraces.record(driverId, lat, lng, atMillis);
+        if (enqueue) dirty.add(t);
+        ACCEPTED.increment();
+        return true;
+    }
+
+    // ===================== FLUSH =====================
+    // Drain every ring that has pings and persist the downsampled points; returns how many
+    // rows were written. Synchronized so a manual flush never overlaps the scheduled one
+    public synchronized int flush() {
+        List<long[]> times = new ArrayList<>();         // [driverId, at] per kept point
+        List<double[]> coords = new ArrayList<>();      // [lat, lng] per kept point
+        List<Track> saved = new ArrayList<>();          // drivers whose Drivers.last_* is due
+        List<double[]> latest = new ArrayList<>();      // [lat, lng, at] per saved driver
+
+        Track t;
+        while ((t = dirty.poll()) != null) {
+            double[] la;
+            double[] ln;
+            long[] at;
+            synchronized (t) {
+                int n = t.count;
+                la = new double[n];
+                ln = new double[n];
+                at = new long[n];
+                int start = Math.floorMod(t.head - n, RING);
+                for (int i = 0; i < n; i++) {
+                    int k = (start + i) % RING;
+                    la[i] = t.lat[k];
+                    ln[i] = t.lng[k];
+                    at[i] = t.at[k];
+                }
+                t.count = 0;
+                t.queued = false;
+                pending.addAndGet(-n);
+            }
+            if (at.length == 0) continue;
+            int newest = 0;
+            for (int i = 0; i < at.length; i++) {
+                if (at[i] >= at[newest]) newest = i;
+                if (keep(t, la[i], ln[i], at[i])) {
+                    times.add(new long[]{t.driverId, at[i]});
+                    coords.add(new double[]{la[i], ln[i]});
+                }
+            }
+            if (at[newest] - t.savedAt >= SAVE_POSITION_MS) {
+                saved.add(t);
+                latest.add(new double[]{la[newest], ln[newest], at[newest]});
+            }
+        }
+        if (times.isEmpty() && saved.isEmpty()) return 0;
+        return write(times, coords, saved, latest);
+    }
+
+    private boolean keep(Track t, double lat, double lng, long at) {
+        long dt = at - t.keptAt;
+        if (dt < 0) return false;                                  // older than a point already kept
+        boolean moved = DriverGrid.distanceKm(t.keptLat, t.keptLng, lat, lng) >= MIN_MOVE_KM;
+        if ((dt >= sampleMillis && moved) || dt >= STATIONARY_MS) {
+            t.keptAt = at;
+            t.keptLat = lat;
+            t.keptLng = lng;
+            return true;
+        }
+        return false;
+    }
+
+    private int write(List<long[]> times, List<double[]> coords, List<Track> saved, List<double[]> latest) {
+        String insert = "INSERT INTO Driver_Positions (driver_id, recorded_at, lat, lng) VALUES (?, ?, ?, ?)";
+        String position = "UPDATE Drivers SET last_lat = ?, last_lng = ?, position_at = ? WHERE driver_id = ?";
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) {
+                DROPPED_WRITE.add(times.size());
+                return 0;
+            }
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = conn.prepareStatement(insert)) {
+                    for (int i = 0; i < times.size(); i++) {
+                        ps.setInt(1, (int) times.get(i)[0]);
+                        ps.setTimestamp(2, new Timestamp(times.get(i)[1]));
+                        ps.setDouble(3, coords.get(i)[0]);
+                        ps.setDouble(4, coords.get(i)[1]);
+                        ps.addBatch();
+                        if ((i + 1) % INSERT_CHUNK == 0) ps.executeBatch();
+                    }
+                    ps.executeBatch();
+                }
+                try (PreparedStatement ps = conn.prepareStatement(position)) {
+                    for (int i = 0; i < saved.size(); i++) {
+                        double[] p = latest.get(i);
+                        ps.setDouble(1, p[0]);
+                        ps.setDouble(2, p[1]);
+                        ps.setTimestamp(3, new Timestamp((long) p[2]));
+                        ps.setInt(4, saved.get(i).driverId);
+                        ps.addBatch();
+                    }
+                    if (!saved.isEmpty()) ps.executeBatch();
+                }
+                conn.commit();
+                for (int i = 0; i < saved.size(); i++) saved.get(i).savedAt = (long) latest.get(i)[2];
+                PERSISTED.add(times.size());
+                return times.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            Log.error("Error writing driver positions", "points", times.size(), "error", e.getMessage());
+            DROPPED_WRITE.add(times.size());
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+// Log.java - Asynchronous structured logging for DAOs, domain objects and services
+//
+// Log.info("Ride created", "rideId", rideId, "driverId", driverId) costs the caller a level
+// check, one CAS to claim a slot in a preallocated ring buffer and a few field writes.
+// Formatting and I/O happen on a background writer thread, which drains the ring in
+// batches, so a request thread never waits on the console or the disk. Fields are given
+// as alternating key/value arguments and rendered logfmt-style (key=value).
+//
+// When the ring is full (writer far behind) new entries are dropped and counted rather
+// than blocking; the writer reports the count once it catches up.
+//
+//   -Drydex.log.level=DEBUG|INFO|WARN|ERROR|OFF  minimum level (default, and unknown values: INFO)
+//   -Drydex.log.file=rydex.log                 append to this file through a FileChannel,
+//                                              with timestamp, level and thread on each line
+//   -Drydex.log.buffer=8192                    ring size (rounded up to a power of two)
+// Without a file, INFO/DEBUG lines go to System.out and WARN/ERROR to System.err, as the
+// println calls this replaces did. Pending lines are flushed at JVM shutdown, or on flush().
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public final class Log {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final int BATCH = 256;
+
+    // One preallocated entry; seq is the sequence last published into it
+    private static final class Slot {
+        volatile long seq = -1;
+        long time;
+        Level level;
+        String thread;
+        String message;
+        Object[] fields;
+    }
+
+    private static volatile Level threshold = Level.INFO;
+    private static final Slot[] ring;
+    private static final int mask;
+    private static final AtomicLong head = new AtomicLong();   // next sequence to claim
+    private static volatile long tail;                          // next sequence the writer reads
+    private static final LongAdder dropped = new LongAdder();
+    private static volatile boolean writerParked;
+    private static final Thread writer;
+    private static FileChannel channel;
+
+    static {
+        String level = System.getProperty("rydex.log.level");
+        if (level != null) {
+            try {
+                threshold = Level.valueOf(level.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown log level " + level + ", using INFO");
+            }
+        }
+        int size = Integer.highestOneBit(Math.max(64, Integer.getInteger("rydex.log.buffer", 8192)) * 2 - 1);
+        ring = new Slot[size];
+        for (int i = 0; i < size; i++) ring[i] = new Slot();
+        mask = size - 1;
+        String file = System.getProperty("rydex.log.file");
+        if (file != null) {
+            try {
+                channel = FileChannel.open(Path.of(file), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Cannot open log file " + file + ", logging to the console: " + e.getMessage());
+            }
+        }
+        writer = new Thread(Log::drain, "rydex-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "rydex-log-flush"));
+    }
+
+    private Log() {}
+
+    public static Level getLevel() { return threshold; }
+    public static void setLevel(Level level) { threshold = level; }
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= threshold.ordinal();
+    }
+
+    public static void debug(String message, Object... fields) { log(Level.DEBUG, message, fields); }
+    public static void info(String message, Object... fields) { log(Level.INFO, message, fields); }
+    public static void warn(String message, Object... fields) { log(Level.WARN, message, fields); }
+    public static void error(String message, Object... fields) { log(Level.ERROR, message, fields); }
+
+    public static long getDroppedCount() { return dropped.sum(); }
+
+    public static void log(Level level, String message, Object... fields) {
+        if (level.ordinal() < threshold.ordinal()) return;
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - tail >= ring.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+
+        Slot s = ring[(int) seq & mask];
+        s.time = System.currentTimeMillis();
+        s.level = level;
+        s.thread = Thread.currentThread().getName();
+        s.message = message;
+        s.fields = fields;
+        s.seq = seq;
+        if (writerParked) LockSupport.unpark(writer);
+    }
+
+    // Wait (up to 5 s) until everything logged before this call has been written
+    public static void flush() {
+        long target = head.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (tail < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    // ===================== BACKGROUND WRITER =====================
+    private static void drain() {
+        StringBuilder out = new StringBuilder(8192);
+        StringBuilder err = new StringBuilder(1024);
+        long lastDropped = 0;
+        while (true) {
+            long t = tail;
+            int n = 0;
+            Slot s = ring[(int) t & mask];
+            while (n < BATCH && s.seq == t) {
+                format(s, channel != null || s.level.ordinal() < Level.WARN.ordinal() ? out : err);
+                s.message = null;
+                s.fields = null;
+                s.thread = null;
+                t++;
+                n++;
+                s = ring[(int) t & mask];
+            }
+            long lost = dropped.sum();
+            if (lost != lastDropped) {
+                err.append("(").append(lost - lastDropped).append(" log entries dropped, buffer full)").append(System.lineSeparator());
+                lastDropped = lost;
+                if (n == 0) write(out, err);
+            }
+            if (n > 0) {
+                write(out, err);
+                tail = t;   // after the write, so flush() returning means the lines are out
+                continue;
+            }
+            writerParked = true;
+            if (s.seq != t) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            writerParked = false;
+        }
+    }
+
+    private static void format(Slot s, StringBuilder sb) {
+        if (channel != null) {
+            sb.append(LocalDateTime.ofInstant(Instant.ofEpochMilli(s.time), ZoneId.systemDefault()))
+              .append(' ').append(s.level).append(" [").append(s.thread).append("] ");
+        }
+        sb.append(s.message);
+        Object[] f = s.fields;
+        if (f != null) {
+            for (int i = 0; i < f.length; i += 2) {
+                sb.append(' ').append(f[i]);
+                if (i + 1 < f.length) sb.append('=').append(value(f[i + 1]));
+            }
+        }
+        sb.append(System.lineSeparator());
+    }
+
+    private static String value(Object v) {
+        if (v == null) return "null";
+        String s = v instanceof Double || v instanceof Float ? String.format("%.2f", v) : v.toString();
+        if (s.isEmpty() || s.indexOf(' ') >= 0 || s.indexOf('"') >= 0 || s.indexOf('=') >= 0) {
+            return '"' + s.replace("\"", "\\\"") + '"';
+        }
+        return s;
+    }
+
+    private static void write(StringBuilder out, StringBuilder err) {
+        FileChannel ch = channel;
+        if (ch != null) {
+            out.append(err);
+            err.setLength(0);
+            try {
+                ByteBuffer buf = StandardCharsets.UTF_8.encode(CharBuffer.wrap(out));
+                while (buf.hasRemaining()) ch.write(buf);
+            } catch (IOException e) {
+                System.err.print(out);
+            }
+            out.setLength(0);
+            return;
+        }
+        print(System.out, out);
+        print(System.err, err);
+    }
+
+    private static void print(PrintStream stream, StringBuilder sb) {
+        if (sb.length() == 0) return;
+        stream.print(sb);
+        stream.flush();
+        sb.setLength(0);
+    }
+}
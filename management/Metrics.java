@@ -0,0 +1,295 @@
+// Metrics.java - Process-wide registry of domain counters, gauges and timers
+//
+// Counters are LongAdders (cheap under contention), timers are a LatencyHistogram plus a
+// running sum, and gauges are read from a supplier only when someone looks. A series is
+// identified by its name plus optional label pairs:
+//   Metrics.counter("rydex_logins_total", "Login attempts", "role", "rider", "result", "ok").increment();
+// The same name/labels always return the same instance, so hot paths may cache it in a
+// static field or look it up per call.
+//
+// Snapshots are published three ways:
+//   - JMX: rydex.metrics:type=Metrics, one read-only attribute per series, plus scrape()
+//   - Prometheus text format: scrape(), served by RydexServer at GET /metrics
+//   - a text file rewritten every N seconds: -Drydex.metrics.file=metrics.prom
+//     (-Drydex.metrics.interval=15), for node_exporter's textfile collector or tail -f
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+
+public final class Metrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    // name -> family (help, type, series by label string), sorted for stable output
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+    private static volatile ScheduledExecutorService writer;
+
+    static {
+        registerMBean();
+        String file = System.getProperty("rydex.metrics.file");
+        if (file != null) startFileExport(Path.of(file), Integer.getInteger("rydex.metrics.interval", 15));
+    }
+
+    private Metrics() {}
+
+    // ===================== SERIES TYPES =====================
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() { value.increment(); }
+        public void add(long n) { value.add(n); }
+        public long get() { return value.sum(); }
+    }
+
+    // Counter for non-integral totals (money); stored as hundredths to stay on a LongAdder
+    public static final class Amount {
+        private final LongAdder cents = new LongAdder();
+
+        public void add(double amount) { cents.add(Math.round(amount * 100)); }
+        public double get() { return cents.sum() / 100.0; }
+    }
+
+    public static final class Timer {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder totalNanos = new LongAdder();
+
+        public void recordNanos(long nanos) {
+            histogram.recordNanos(nanos);
+            totalNanos.add(nanos);
+        }
+
+        // Record the time since a System.nanoTime() taken at the start of the operation
+        public void recordSince(long startNanos) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() { return histogram.getCount(); }
+        public double getSumSeconds() { return totalNanos.sum() / 1e9; }
+        public double quantileSeconds(double q) { return histogram.percentileMicros(q * 100) / 1e6; }
+    }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final String type;
+        final Map<String, Object> series = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    // ===================== REGISTRATION =====================
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) series(name, help, "counter", labels, Counter::new);
+    }
+
+    public static Amount amount(String name, String help, String... labels) {
+        return (Amount) series(name, help, "counter", labels, Amount::new);
+    }
+
+    public static Timer timer(String name, String help, String... labels) {
+        return (Timer) series(name, help, "summary", labels, Timer::new);
+    }
+
+    // Value read at scrape time; a later registration under the same name/labels replaces it
+    public static void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").series.put(labelString(labels), value);
+    }
+
+    private static Object series(String name, String help, String type, String[] labels,
+                                 java.util.function.Supplier<Object> create) {
+        Family f = family(name, help, type);
+        String key = labelString(labels);
+        Object s = f.series.get(key);
+        return s != null ? s : f.series.computeIfAbsent(key, k -> create.get());
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family f = families.get(name);
+        if (f == null) f = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (!f.type.equals(type)) throw new IllegalArgumentException(name + " is already registered as a " + f.type);
+        return f;
+    }
+
+    private static String labelString(String[] labels) {
+        if (labels.length == 0) return "";
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("Labels must be name/value pairs");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) sb.append(',');
+            String v = labels[i + 1] == null ? "" : labels[i + 1];
+            sb.append(labels[i]).append("=\"").append(v.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return sb.toString();
+    }
+
+    // ===================== EXPORT =====================
+    // Every series in the Prometheus text exposition format (version 0.0.4)
+    public static String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (Family f : families.values()) {
+            sb.append("# HELP ").append(f.name).append(' ').append(f.help).append('\n');
+            sb.append("# TYPE ").append(f.name).append(' ').append(f.type).append('\n');
+            for (Map.Entry<String, Object> e : new TreeMap<>(f.series).entrySet()) {
+                String labels = e.getKey();
+                Object s = e.getValue();
+                if (s instanceof Timer) {
+                    Timer t = (Timer) s;
+                    for (double q : QUANTILES) {
+                        String ql = "quantile=\"" + q + "\"";
+                        line(sb, f.name, labels.isEmpty() ? ql : labels + "," + ql, t.quantileSeconds(q));
+                    }
+                    line(sb, f.name + "_sum", labels, t.getSumSeconds());
+                    line(sb, f.name + "_count", labels, t.getCount());
+                } else {
+                    line(sb, f.name, labels, value(s));
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static double value(Object s) {
+        if (s instanceof Counter) return ((Counter) s).get();
+        if (s instanceof Amount) return ((Amount) s).get();
+        if (s instanceof Timer) return ((Timer) s).getCount();
+        try {
+            return ((DoubleSupplier) s).getAsDouble();
+        } catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static void line(StringBuilder sb, String name, String labels, double v) {
+        sb.append(name);
+        if (!labels.isEmpty()) sb.append('{').append(labels).append('}');
+        sb.append(' ');
+        if (Double.isNaN(v)) sb.append("NaN");
+        else if (v == Math.rint(v) && Math.abs(v) < 1e15) sb.append((long) v);
+        else sb.append(String.format(Locale.ROOT, "%.6g", v));
+        sb.append('\n');
+    }
+
+    // Rewrite the file every intervalSeconds (written to a temp file and moved into place)
+    public static synchronized void startFileExport(Path file, int intervalSeconds) {
+        if (writer != null) writer.shutdownNow();
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rydex-metrics-export");
+            t.setDaemon(true);
+            return t;
+        });
+        writer.scheduleAtFixedRate(() -> writeFile(file), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private static void writeFile(Path file) {
+        try {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(tmp, scrape(), StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Log.error("Error writing metrics file", "file", file, "error", e.getMessage());
+        } finally {
+            DatabaseConfig.releaseThreadConnections();   // DB-backed gauges borrow a connection
+        }
+    }
+
+    // ===================== JMX =====================
+    // Attributes are the series, named like the Prometheus lines (timers as _count, _p50, _p99 ...)
+    private static class MetricsMBean implements DynamicMBean {
+        private Map<String, Double> snapshot() {
+            Map<String, Double> values = new TreeMap<>();
+            for (Family f : families.values()) {
+                for (Map.Entry<String, Object> e : f.series.entrySet()) {
+                    String base = e.getKey().isEmpty() ? f.name : f.name + "{" + e.getKey() + "}";
+                    if (e.getValue() instanceof Timer) {
+                        Timer t = (Timer) e.getValue();
+                        values.put(base + "_count", (double) t.getCount());
+                        for (double q : QUANTILES) values.put(base + "_p" + Math.round(q * 100) + "_seconds", t.quantileSeconds(q));
+                    } else {
+                        values.put(base, value(e.getValue()));
+                    }
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) {
+            return snapshot().get(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Double> values = snapshot();
+            AttributeList list = new AttributeList();
+            for (String a : attributes) {
+                if (values.containsKey(a)) list.add(new Attribute(a, values.get(a)));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            if (actionName.equals("scrape")) return scrape();
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attrs = new ArrayList<>();
+            for (String name : snapshot().keySet()) {
+                attrs.add(new MBeanAttributeInfo(name, "java.lang.Double", name, true, false, false));
+            }
+            MBeanOperationInfo scrape = new MBeanOperationInfo("scrape", "All series in Prometheus text format",
+                    new MBeanParameterInfo[0], "java.lang.String", MBeanOperationInfo.INFO);
+            return new MBeanInfo(Metrics.class.getName(), "Rydex runtime metrics",
+                    attrs.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[]{scrape}, null);
+        }
+    }
+
+    private static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(),
+                    new ObjectName("rydex.metrics:type=Metrics"));
+        } catch (Exception e) {
+            Log.error("Error registering metrics MBean", "error", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+// MinCostAssignment.java - Hungarian algorithm for rectangular assignment problems
+//
+// solve(cost) matches every row (ride request) to a distinct column (driver) so that the
+// summed cost is minimal, in O(rows^2 * columns). Pairs that must not be matched get a
+// cost of at least UNMATCHABLE; rows left with such a pair are reported as unmatched (-1).
+// When there are more rows than columns the extra rows are matched to dummy columns and
+// also come back as -1.
+
+import java.util.Arrays;
+
+final class MinCostAssignment {
+
+    static final double UNMATCHABLE = 1e9;
+
+    private MinCostAssignment() {}
+
+    // Column chosen for each row, or -1
+    static int[] solve(double[][] cost) {
+        int rows = cost.length;
+        if (rows == 0) return new int[0];
+        int realCols = cost[0].length;
+        int cols = Math.max(realCols, rows);
+
+        // 1-based potentials/matching as in the classic formulation; column 0 is a sentinel
+        double[] u = new double[rows + 1];
+        double[] v = new double[cols + 1];
+        int[] rowOf = new int[cols + 1];
+        int[] way = new int[cols + 1];
+        double[] minv = new double[cols + 1];
+        boolean[] used = new boolean[cols + 1];
+
+        for (int i = 1; i <= rows; i++) {
+            rowOf[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = rowOf[j0];
+                double delta = Double.POSITIVE_INFINITY;
+                int j1 = -1;
+                for (int j = 1; j <= cols; j++) {
+                    if (used[j]) continue;
+                    double c = (j <= realCols ? Math.min(cost[i0 - 1][j - 1], UNMATCHABLE) : UNMATCHABLE) - u[i0] - v[j];
+                    if (c < minv[j]) {
+                        minv[j] = c;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= cols; j++) {
+                    if (used[j]) {
+                        u[rowOf[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (rowOf[j0] != 0);
+            do {
+                int j1 = way[j0];
+                rowOf[j0] = rowOf[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        int[] match = new int[rows];
+        Arrays.fill(match, -1);
+        for (int j = 1; j <= realCols; j++) {
+            int i = rowOf[j];
+            if (i != 0 && cost[i - 1][j - 1] < UNMATCHABLE) match[i - 1] = j - 1;
+        }
+        return match;
+    }
+}
@@ -0,0 +1,265 @@
+// OutboxRelay.java - Delivers Ride_Outbox rows to local consumers in batches
+//
+// A single thread polls for rows above its high-water mark (the last outbox_id it
+// delivered, kept in Outbox_Offsets under the relay's name), hands up to BATCH of them to
+// every consumer, then advances the mark in the same transaction that locked it. Delivery
+// is at-least-once: if a consumer throws, or the process dies before the commit, the batch
+// is delivered again, so consumers must tolerate repeats. Two relays with the same name
+// (two app instances) take turns on the locked offset row instead of both delivering.
+//
+// Ids are handed out at insert time but become visible at commit, so a lower id can show
+// up after a higher one. The relay therefore stops at a missing id and only skips it once
+// it has stayed missing for GAP_WAIT_MS (a rolled-back insert leaves a permanent hole).
+//
+// The default relay runs in-process with the consumers below; it is started by the apps
+// and the server unless -Drydex.outbox.relay=off, or can run on its own:
+//   java -cp ".;libs/mysql-connector-j-9.5.0.jar;management" OutboxRelay
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class OutboxRelay {
+
+    public interface Consumer {
+        // Events in outbox order; seq is the outbox_id. May see an event more than once.
+        void onBatch(List<RideEvent> batch) throws Exception;
+    }
+
+    private static final int BATCH = 500;
+    private static final long GAP_WAIT_MS = 2000;
+    private static final long PURGE_EVERY_MS = 60 * 60 * 1000;
+
+    private static volatile OutboxRelay instance;
+    private static volatile boolean initialized;
+
+    private final String name;
+    private final long pollMillis;
+    private final Map<String, Consumer> consumers = new ConcurrentHashMap<>();
+    private final List<String> order = new CopyOnWriteArrayList<>();
+    private final Metrics.Counter delivered;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile long highWaterMark = -1;
+
+    // Gap tracking (relay thread only)
+    private long gapId = -1;
+    private long gapSeenAt;
+    private long lastPurge = System.currentTimeMillis();
+
+    // ===================== DEFAULT RELAY =====================
+    // The process-wide relay, started on first call; null when turned off
+    public static OutboxRelay get() {
+        if (!initialized) init();
+        return instance;
+    }
+
+    private static synchronized void init() {
+        if (initialized) return;
+        if (!"off".equalsIgnoreCase(System.getProperty("rydex.outbox.relay", "on"))) {
+            OutboxRelay relay = new OutboxRelay("default", Long.getLong("rydex.outbox.poll.ms", 200));
+            relay.addConsumer("notifications", OutboxRelay::notifyParties);
+            relay.addConsumer("analytics", OutboxRelay::countEvents);
+            relay.addConsumer("cache", batch -> RideDAO.invalidateStatusCounts());
+            relay.start();
+            instance = relay;
+        }
+        initialized = true;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (!DatabaseConfig.testConnection()) System.exit(1);
+        Log.info("Outbox relay running, Ctrl+C to stop");
+        Thread.currentThread().join();
+    }
+
+    // ===================== INSTANCE =====================
+    public OutboxRelay(String name, long pollMillis) {
+        this.name = name;
+        this.pollMillis = pollMillis;
+        this.delivered = Metrics.counter("rydex_outbox_delivered_total", "Outbox events delivered to local consumers", "relay", name);
+        Metrics.gauge("rydex_outbox_high_water_mark", "Last outbox_id delivered by the relay", () -> highWaterMark, "relay", name);
+    }
+
+    public void addConsumer(String consumerName, Consumer consumer) {
+        if (consumers.put(consumerName, consumer) == null) order.add(consumerName);
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this::run, "rydex-outbox-relay-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) thread.interrupt();
+    }
+
+    public long getHighWaterMark() { return highWaterMark; }
+
+    private void run() {
+        while (running) {
+            int n;
+            try {
+                n = pollOnce();
+            } catch (SQLException e) {
+                Log.error("Outbox relay poll failed", "relay", name, "error", e.getMessage());
+                n = 0;
+            } finally {
+                DatabaseConfig.releaseThreadConnections();
+            }
+            if (n < BATCH) {
+                try {
+                    Thread.sleep(pollMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Deliver the next batch; returns how many events were delivered
+    public int pollOnce() throws SQLException {
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) return 0;
+            conn.setAutoCommit(false);
+            try {
+                long last = lockOffset(conn);
+                highWaterMark = last;
+                List<RideEvent> batch = readAfter(conn, last);
+                if (batch.isEmpty()) {
+                    conn.commit();
+                    purgeIfDue(conn);
+                    return 0;
+                }
+                if (!deliver(batch)) {
+                    conn.rollback();
+                    return 0;
+                }
+                long newMark = batch.get(batch.size() - 1).getSeq();
+                try (PreparedStatement ps = conn.prepareStatement("UPDATE Outbox_Offsets SET last_id = ? WHERE relay = ?")) {
+                    ps.setLong(1, newMark);
+                    ps.setString(2, name);
+                    ps.executeUpdate();
+                }
+                conn.commit();
+                highWaterMark = newMark;
+                delivered.add(batch.size());
+                return batch.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private long lockOffset(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT last_id FROM Outbox_Offsets WHERE relay = ? FOR UPDATE")) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return rs.getLong(1);
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO Outbox_Offsets (relay, last_id) VALUES (?, 0)")) {
+            ps.setString(1, name);
+            ps.executeUpdate();
+        }
+        return 0;
+    }
+
+    // Rows after the mark, stopping at a missing id that may still be committing
+    private List<RideEvent> readAfter(Connection conn, long last) throws SQLException {
+        String sql = "SELECT outbox_id, event_type, ride_id, rider_id, driver_id, amount, created_at " +
+                     "FROM Ride_Outbox WHERE outbox_id > ? ORDER BY outbox_id LIMIT " + BATCH;
+        List<RideEvent> batch = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, last);
+            try (ResultSet rs = ps.executeQuery()) {
+                long expected = last + 1;
+                while (rs.next()) {
+                    long id = rs.getLong(1);
+                    if (id != expected && !gapExpired(expected)) break;
+                    Timestamp at = rs.getTimestamp(7);
+                    RideEvent.Type type;
+                    try {
+                        type = RideEvent.Type.valueOf(rs.getString(2));
+                    } catch (IllegalArgumentException e) {
+                        Log.warn("Skipping outbox row with unknown type", "outboxId", id, "type", rs.getString(2));
+                        expected = id + 1;
+                        continue;
+                    }
+                    batch.add(new RideEvent(id, at == null ? System.currentTimeMillis() : at.getTime(), type,
+                            rs.getInt(3), rs.getInt(4), rs.getInt(5), rs.getDouble(6)));
+                    expected = id + 1;
+                }
+            }
+        }
+        return batch;
+    }
+
+    private boolean gapExpired(long missingId) {
+        long now = System.currentTimeMillis();
+        if (gapId != missingId) {
+            gapId = missingId;
+            gapSeenAt = now;
+        }
+        return now - gapSeenAt >= GAP_WAIT_MS;
+    }
+
+    private boolean deliver(List<RideEvent> batch) {
+        for (String consumerName : order) {
+            try {
+                consumers.get(consumerName).onBatch(batch);
+            } catch (Exception e) {
+                Log.error("Outbox consumer failed, batch will be redelivered", "relay", name, "consumer", consumerName,
+                        "from", batch.get(0).getSeq(), "error", e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Drop rows every relay has delivered and that are more than a day old
+    private void purgeIfDue(Connection conn) throws SQLException {
+        long now = System.currentTimeMillis();
+        if (now - lastPurge < PURGE_EVERY_MS) return;
+        lastPurge = now;
+        String sql = "DELETE FROM Ride_Outbox WHERE outbox_id <= (SELECT MIN(last_id) FROM Outbox_Offsets) AND created_at < ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setTimestamp(1, new Timestamp(now - 24L * 60 * 60 * 1000));
+            int n = ps.executeUpdate();
+            conn.commit();
+            if (n > 0) Log.info("Purged delivered outbox rows", "rows", n);
+        }
+    }
+
+    // ===================== DEFAULT CONSUMERS =====================
+    private static void notifyParties(List<RideEvent> batch) {
+        for (RideEvent e : batch) {
+            switch (e.getType()) {
+                case CREATED -> Log.info("Ride booked", "rideId", e.getRideId(), "riderId", e.getRiderId(), "driverId", e.getDriverId());
+                case COMPLETED -> Log.info("Ride completed", "rideId", e.getRideId(), "driverId", e.getDriverId(), "farePkr", e.getAmount());
+                case CANCELLED -> Log.info("Ride cancelled", "rideId", e.getRideId());
+                case PAID -> Log.info("Ride paid", "rideId", e.getRideId());
+                default -> { }
+            }
+        }
+    }
+
+    private static void countEvents(List<RideEvent> batch) {
+        for (RideEvent e : batch) {
+            Metrics.counter("rydex_outbox_events_total", "Ride and payment events relayed from the outbox, by type",
+                    "type", e.getType().name()).increment();
+        }
+    }
+}
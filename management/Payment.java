@@ -23,7 +23,7 @@ class CashPayment implements Payment {
     @Override
     public boolean processPayment(double amount) {
         this.status = "Completed";
-        System.out.println("Cash payment of PKR " + String.format("%.2f", amount) + " received.");
+        Log.info("Cash payment received", "rideId", rideId, "amountPkr", amount);
         return true;
     }
 
@@ -59,9 +59,8 @@ class CardPayment implements Payment {
 
     @Override
     public boolean processPayment(double amount) {
-        System.out.println("Processing card payment...");
         this.status = "Completed";
-        System.out.println("Card payment of PKR " + String.format("%.2f", amount) + " successful.");
+        Log.info("Card payment successful", "rideId", rideId, "amountPkr", amount);
         return true;
     }
 
@@ -101,12 +100,11 @@ class WalletPayment implements Payment {
         if (rider.getBalance() >= amount) {
             rider.deductBalance(amount);
             this.status = "Completed";
-            System.out.println("Wallet payment of PKR " + String.format("%.2f", amount) + " successful.");
-            System.out.println("Remaining balance: PKR " + String.format("%.2f", rider.getBalance()));
+            Log.info("Wallet payment successful", "rideId", rideId, "amountPkr", amount, "balancePkr", rider.getBalance());
             return true;
         } else {
             this.status = "Failed";
-            System.out.println("Insufficient wallet balance!");
+            Log.warn("Insufficient wallet balance!", "rideId", rideId, "amountPkr", amount, "balancePkr", rider.getBalance());
             return false;
         }
     }
@@ -1,9 +1,44 @@
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class PaymentDAO {
 
+    // Counts and times one payment write for the metrics registry
+    private static boolean recordPayment(String operation, boolean ok, long startNanos) {
+        Metrics.timer("rydex_payment_write_seconds", "Time taken by PaymentDAO writes", "operation", operation)
+                .recordSince(startNanos);
+        Metrics.counter("rydex_payment_writes_total", "PaymentDAO writes by operation and outcome",
+                "operation", operation, "result", ok ? "ok" : "failed").increment();
+        return ok;
+    }
+
     // Create a payment record
     public int createPayment(int rideId, double amount, String method, String status) {
+        RydexEvents.Payment event = RydexEvents.Payment.start("create", rideId, 0, method, status, amount);
+        long t0 = System.nanoTime();
+        int paymentId = insertPayment(rideId, amount, method, status);
+        recordPayment("create", paymentId > 0, t0);
+        if (paymentId > 0 && "Completed".equalsIgnoreCase(status)) {
+            RideEventLog.record(RideEvent.Type.PAID, rideId, 0, 0, amount);
+        }
+        if (paymentId > 0) {
+            Metrics.amount("rydex_payment_amount_pkr_total", "Amount recorded in payments, by method and status",
+                    "method", method, "status", status).add(amount);
+        }
+        return event.done(paymentId);
+    }
+
+    // Lifecycle events for a committed payment/ride status update (see RideEventLog)
+    private static void recordEvents(int rideId, String paymentStatus, String rideStatus) {
+        if ("Completed".equalsIgnoreCase(paymentStatus)) RideEventLog.record(RideEvent.Type.PAID, rideId, 0, 0, 0);
+        RideEvent.Type type = RideEvent.Type.forRideStatus(rideStatus);
+        if (type != null && rideId > 0) RideEventLog.record(type, rideId, 0, 0, 0);
+        if (rideId > 0) RideTraces.statusChanged(rideId, rideStatus);
+    }
+
+    private int insertPayment(int rideId, double amount, String method, String status) {
         String sql = "INSERT INTO Payments (ride_id, amount, payment_method, payment_status) VALUES (?, ?, ?, ?)";
         Connection conn = DatabaseConfig.getConnection();
         PreparedStatement stmt = null;
@@ -24,7 +59,7 @@ public class PaymentDAO {
                     return newId;
                 }
             } else {
-                System.err.println("createPayment: no rows affected when inserting payment for ride " + rideId);
+                Log.error("createPayment: no rows affected", "rideId", rideId);
             }
 
         } catch (SQLException e) {
@@ -51,15 +86,15 @@ public class PaymentDAO {
                                     if (urows > 0) return existingId;
                                 }
                             } catch (SQLException ex3) {
-                                System.err.println("Error updating existing payment transactionally: " + ex3.getMessage());
+                                Log.error("Error updating existing payment transactionally", "error", ex3.getMessage());
                             }
                         }
                     }
                 } catch (SQLException ex2) {
-                    System.err.println("Error updating existing payment after duplicate key: " + ex2.getMessage());
+                    Log.error("Error updating existing payment after duplicate key", "error", ex2.getMessage());
                 }
             } else {
-                System.err.println("Error creating payment (rideId=" + rideId + "): " + e.getMessage());
+                Log.error("Error creating payment", "rideId", rideId, "error", e.getMessage());
             }
         } finally {
             try { if (rs != null) rs.close(); } catch (SQLException ignored) {}
@@ -71,6 +106,12 @@ public class PaymentDAO {
 
     // Update payment status
     public boolean updatePaymentStatus(int paymentId, String status) {
+        RydexEvents.Payment event = RydexEvents.Payment.start("updateStatus", 0, paymentId, null, status, 0);
+        long t0 = System.nanoTime();
+        return event.done(recordPayment("updateStatus", writePaymentStatus(paymentId, status), t0));
+    }
+
+    private boolean writePaymentStatus(int paymentId, String status) {
         // Do NOT change ride status automatically when payment completes.
         // Only update the payment row here; ride status changes should be driven by driver actions.
         String sql = "UPDATE Payments SET payment_status = ? WHERE payment_id = ?";
@@ -80,7 +121,7 @@ public class PaymentDAO {
             stmt.setInt(2, paymentId);
             return stmt.executeUpdate() > 0;
         } catch (SQLException e) {
-            System.err.println("Error updating payment: " + e.getMessage());
+            Log.error("Error updating payment", "error", e.getMessage());
             return false;
         }
     }
@@ -88,9 +129,15 @@ public class PaymentDAO {
     // Update payment status and optionally update the associated ride status in one transaction.
     // If rideStatus is null, only the payment row is updated.
     public boolean updatePaymentAndRideStatus(int paymentId, String paymentStatus, String rideStatus) {
+        RydexEvents.Payment event = RydexEvents.Payment.start("updateWithRide", 0, paymentId, null, paymentStatus, 0);
+        long t0 = System.nanoTime();
+        return event.done(recordPayment("updateWithRide", writePaymentAndRideStatus(paymentId, paymentStatus, rideStatus), t0));
+    }
+
+    private boolean writePaymentAndRideStatus(int paymentId, String paymentStatus, String rideStatus) {
         try (Connection conn = DatabaseConfig.getNewConnection()) {
             if (conn == null) {
-                System.err.println("Database connection is NULL!");
+                Log.error("Database connection is NULL!");
                 return false;
             }
             conn.setAutoCommit(false);
@@ -123,21 +170,114 @@ public class PaymentDAO {
                 }
             }
 
+            RideOutbox.writePaymentChange(conn, rideId, paymentStatus, rideStatus);
             conn.commit();
+            recordEvents(rideId, paymentStatus, rideStatus);
             return true;
 
         } catch (SQLException e) {
-            System.err.println("Transaction failed updating payment/ride status: " + e.getMessage());
+            Log.error("Transaction failed updating payment/ride status", "error", e.getMessage());
             return false;
         }
     }
 
+    // ===================== CASH SETTLEMENT =====================
+    // Cash is collected at drop-off, so the Pending payments of completed rides are settled.
+    // Settles those of the given rides in one transaction with their PAID outbox events;
+    // returns the rides whose payment was settled, or null if the write failed (retry).
+    public List<Integer> settleCashPayments(List<Integer> rideIds) {
+        if (rideIds.isEmpty()) return new ArrayList<>();
+        RydexEvents.Payment event = RydexEvents.Payment.start("settle", 0, 0, null, "Completed", 0);
+        long t0 = System.nanoTime();
+        List<Integer> settled = null;
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) {
+                Log.error("Database connection is NULL!");
+            } else {
+                conn.setAutoCommit(false);
+                try {
+                    settled = settlePending(conn, rideIds);
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        } catch (SQLException e) {
+            Log.error("Error settling cash payments, will retry", "rides", rideIds.size(), "error", e.getMessage());
+            settled = null;
+        }
+        event.done(recordPayment("settle", settled != null, t0));
+        if (settled != null) recordSettled(settled);
+        return settled;
+    }
+
+    // Settle the Pending payments of Completed rides booked since `since` that a lost
+    // completion event or failed settlement left behind; returns how many (-1 on error)
+    public int reconcileCashPayments(Timestamp since) {
+        String sql = "SELECT p.ride_id FROM Payments p JOIN Rides r ON r.ride_id = p.ride_id " +
+                     "WHERE p.payment_status = 'Pending' AND r.status = 'Completed' AND r.ride_time >= ?";
+        List<Integer> rideIds = new ArrayList<>();
+        try (Connection conn = DatabaseConfig.getNewConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, since);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) rideIds.add(rs.getInt(1));
+            }
+        } catch (SQLException e) {
+            Log.error("Error finding unsettled cash payments", "error", e.getMessage());
+            return -1;
+        }
+        List<Integer> settled = settleCashPayments(rideIds);
+        return settled == null ? -1 : settled.size();
+    }
+
+    // Settle inside the caller's transaction (locks the payment rows first, so two settlers
+    // never both report the same payment); the caller commits and then calls recordSettled
+    static List<Integer> settlePending(Connection conn, List<Integer> rideIds) throws SQLException {
+        List<Integer> settled = new ArrayList<>();
+        if (rideIds.isEmpty()) return settled;
+        String in = String.join(", ", Collections.nCopies(rideIds.size(), "?"));
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT ride_id FROM Payments WHERE payment_status = 'Pending' AND ride_id IN (" + in + ") FOR UPDATE")) {
+            for (int i = 0; i < rideIds.size(); i++) ps.setInt(i + 1, rideIds.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) settled.add(rs.getInt(1));
+            }
+        }
+        if (settled.isEmpty()) return settled;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE Payments SET payment_status = 'Completed' WHERE payment_status = 'Pending' AND ride_id = ?")) {
+            for (int rideId : settled) {
+                ps.setInt(1, rideId);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        for (int rideId : settled) RideOutbox.writePaymentChange(conn, rideId, "Completed", null);
+        return settled;
+    }
+
+    // Event log entries and metrics for committed settlements
+    static void recordSettled(List<Integer> rideIds) {
+        for (int rideId : rideIds) recordEvents(rideId, "Completed", null);
+        if (!rideIds.isEmpty()) {
+            Metrics.counter("rydex_payment_settled_total", "Pending cash payments settled on ride completion").add(rideIds.size());
+        }
+    }
+
     // Alternative transactional method that targets the payment by ride_id
     // This is useful when the caller already knows the ride_id (safer in create/update flows).
     public boolean updatePaymentAndRideStatusByRideId(int rideId, String paymentStatus, String rideStatus) {
+        RydexEvents.Payment event = RydexEvents.Payment.start("updateWithRide", rideId, 0, null, paymentStatus, 0);
+        long t0 = System.nanoTime();
+        return event.done(recordPayment("updateWithRide", writePaymentAndRideStatusByRideId(rideId, paymentStatus, rideStatus), t0));
+    }
+
+    private boolean writePaymentAndRideStatusByRideId(int rideId, String paymentStatus, String rideStatus) {
         try (Connection conn = DatabaseConfig.getNewConnection()) {
             if (conn == null) {
-                System.err.println("Database connection is NULL!");
+                Log.error("Database connection is NULL!");
                 return false;
             }
             conn.setAutoCommit(false);
@@ -159,10 +299,12 @@ public class PaymentDAO {
                 }
             }
 
+            RideOutbox.writePaymentChange(conn, rideId, paymentStatus, rideStatus);
             conn.commit();
+            recordEvents(rideId, paymentStatus, rideStatus);
             return true;
         } catch (SQLException e) {
-            System.err.println("Transaction failed updating payment/ride by ride_id: " + e.getMessage());
+            Log.error("Transaction failed updating payment/ride by ride_id", "error", e.getMessage());
             return false;
         }
     }
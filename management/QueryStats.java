@@ -0,0 +1,221 @@
+// QueryStats.java - Per-statement JDBC timings, row counts and errors
+//
+// Every SQL string seen by InstrumentedConnection is normalized into a statement shape
+// (whitespace collapsed, literals and IN-lists replaced by ?), and each shape keeps its
+// own execution count, latency histogram, rows returned/affected and error count.
+//
+// The numbers are published over JMX (one MBean per shape under rydex.jdbc:type=Statement,
+// plus rydex.jdbc:type=QueryStats with dump()/reset()) and, if a dump interval is set,
+// written out periodically as a text table sorted by total database time.
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+public class QueryStats {
+
+    // Caps so generated SQL cannot grow the registry without bound
+    private static final int MAX_SHAPES = 500;
+    private static final int MAX_CACHED_SQL = 5000;
+    private static final String OVERFLOW_SHAPE = "<other statements>";
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Map<String, Entry> shapes = new ConcurrentHashMap<>();
+    private static final Map<String, String> normalizedCache = new ConcurrentHashMap<>();
+    private static final AtomicInteger mbeanIds = new AtomicInteger();
+    private static volatile ScheduledExecutorService dumper;
+
+    // JMX view of one statement shape
+    public interface StatementStatsMXBean {
+        String getSql();
+        long getCount();
+        long getErrors();
+        long getRows();
+        double getTotalMillis();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP99Millis();
+        double getMaxMillis();
+    }
+
+    // JMX view of the whole registry
+    public interface QueryStatsMXBean {
+        int getStatementCount();
+        String dump();
+        void reset();
+    }
+
+    // Counters for one statement shape
+    public static class Entry implements StatementStatsMXBean {
+        private final String sql;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+
+        Entry(String sql) {
+            this.sql = sql;
+        }
+
+        void record(long nanos, boolean failed) {
+            latency.recordNanos(nanos);
+            totalNanos.add(nanos);
+            if (failed) errors.increment();
+        }
+
+        void addRows(long n) {
+            if (n > 0) rows.add(n);
+        }
+
+        void reset() {
+            latency.reset();
+            errors.reset();
+            rows.reset();
+            totalNanos.reset();
+        }
+
+        public String getSql() { return sql; }
+        public long getCount() { return latency.getCount(); }
+        public long getErrors() { return errors.sum(); }
+        public long getRows() { return rows.sum(); }
+        public double getTotalMillis() { return totalNanos.sum() / 1e6; }
+        public double getMeanMillis() { return latency.getMeanMicros() / 1000.0; }
+        public double getP50Millis() { return latency.percentileMillis(50); }
+        public double getP99Millis() { return latency.percentileMillis(99); }
+        public double getMaxMillis() { return latency.getMaxMicros() / 1000.0; }
+    }
+
+    // Stats entry for a raw SQL string (creating and registering it on first use)
+    public static Entry forSql(String sql) {
+        String shape = normalize(sql);
+        Entry e = shapes.get(shape);
+        if (e != null) return e;
+        if (shapes.size() >= MAX_SHAPES) shape = OVERFLOW_SHAPE;
+        boolean[] created = new boolean[1];
+        e = shapes.computeIfAbsent(shape, k -> {
+            created[0] = true;
+            return new Entry(k);
+        });
+        if (created[0]) registerMBean(e);
+        return e;
+    }
+
+    // "SELECT * FROM Rides WHERE id = 5 AND status IN (?, ?)" -> "SELECT * FROM Rides WHERE id = ? AND status IN (?)"
+    public static String normalize(String sql) {
+        if (sql == null) return "<null>";
+        String cached = normalizedCache.get(sql);
+        if (cached != null) return cached;
+        String s = STRING_LITERAL.matcher(sql).replaceAll("?");
+        s = NUMBER_LITERAL.matcher(s).replaceAll("?");
+        s = WHITESPACE.matcher(s).replaceAll(" ").trim();
+        s = IN_LIST.matcher(s).replaceAll("IN (?)");
+        if (normalizedCache.size() < MAX_CACHED_SQL) normalizedCache.put(sql, s);
+        return s;
+    }
+
+    public static List<Entry> snapshot() {
+        List<Entry> list = new ArrayList<>(shapes.values());
+        list.sort(Comparator.comparingDouble(Entry::getTotalMillis).reversed());
+        return list;
+    }
+
+    public static void reset() {
+        for (Entry e : shapes.values()) e.reset();
+    }
+
+    // Text table of all statements, most total database time first
+    public static String dump() {
+        List<Entry> entries = snapshot();
+        double grand = 0;
+        for (Entry e : entries) grand += e.getTotalMillis();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-12s %6s %9s %7s %10s %9s %9s %9s %9s  %s%n",
+                "total ms", "%time", "count", "errors", "rows", "mean ms", "p50 ms", "p99 ms", "max ms", "statement"));
+        for (Entry e : entries) {
+            if (e.getCount() == 0) continue;
+            sb.append(String.format("%-12.1f %6.1f %9d %7d %10d %9.3f %9.3f %9.3f %9.3f  %s%n",
+                    e.getTotalMillis(), grand == 0 ? 0 : 100 * e.getTotalMillis() / grand, e.getCount(), e.getErrors(),
+                    e.getRows(), e.getMeanMillis(), e.getP50Millis(), e.getP99Millis(), e.getMaxMillis(), e.getSql()));
+        }
+        return sb.toString();
+    }
+
+    // Write dump() every intervalSeconds to the given file (replaced each time), or stdout if null
+    public static synchronized void startPeriodicDump(int intervalSeconds, Path file) {
+        if (dumper != null || intervalSeconds <= 0) return;
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rydex-query-stats");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> writeDump(file), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopPeriodicDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    private static void writeDump(Path file) {
+        String text = "# Query stats at " + java.time.LocalDateTime.now().withNano(0) + System.lineSeparator() + dump();
+        if (file == null) {
+            Log.info(text.stripTrailing());
+            return;
+        }
+        try {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(tmp, text, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Log.error("Error writing query stats", "error", e.getMessage());
+        }
+    }
+
+    // ===================== JMX =====================
+    private static final QueryStatsMXBean REGISTRY_VIEW = new QueryStatsMXBean() {
+        public int getStatementCount() { return shapes.size(); }
+        public String dump() { return QueryStats.dump(); }
+        public void reset() { QueryStats.reset(); }
+    };
+
+    static {
+        register(REGISTRY_VIEW, QueryStatsMXBean.class, "rydex.jdbc:type=QueryStats");
+    }
+
+    private static void registerMBean(Entry e) {
+        register(e, StatementStatsMXBean.class, "rydex.jdbc:type=Statement,id=" + mbeanIds.incrementAndGet());
+    }
+
+    private static <T> void register(T impl, Class<T> type, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName(name);
+            if (!server.isRegistered(on)) server.registerMBean(new StandardMBean(impl, type, true), on);
+        } catch (Exception ex) {
+            Log.error("Error registering query stats MBean", "error", ex.getMessage());
+        }
+    }
+}
@@ -5,6 +5,8 @@ import java.time.format.DateTimeFormatter;
 
 public class Ride {
 
+    private static final RideDAO RIDE_DAO = new RideDAO();
+
     private int rideId;          // Unique ride ID
     private Rider rider;         // Rider object (aggregation)
     private Driver driver;       // Driver object (aggregation)
@@ -52,9 +54,9 @@ public class Ride {
     public void startRide() {
         if (status.equals("Pending") || status.equals("Confirmed")) {
             status = "In Progress";
-            System.out.println("Ride started!");
+            Log.info("Ride started!", "rideId", rideId);
         } else {
-            System.out.println("Cannot start ride. Current status: " + status);
+            Log.warn("Cannot start ride", "rideId", rideId, "status", status);
         }
     }
 
@@ -64,18 +66,17 @@ public class Ride {
             status = "Completed";
             driver.addEarnings(fare);
 
-            // Use transactional DAO method to persist both ride status and driver earnings
+            // Persist the status change; the driver's earnings are credited by the event bus
             try {
-                RideDAO rideDAO = new RideDAO();
-                boolean ok = rideDAO.completeRideTransaction(this.rideId, driver.getUserId(), this.fare);
-                if (!ok) System.err.println("Warning: failed to complete transaction for ride completion.");
+                boolean ok = RIDE_DAO.completeRide(this.rideId, driver.getUserId(), this.fare);
+                if (!ok) Log.warn("Failed to complete transaction for ride completion", "rideId", rideId);
             } catch (Exception e) {
-                System.err.println("Error persisting ride completion: " + e.getMessage());
+                Log.error("Error persisting ride completion", "error", e.getMessage());
             }
 
-            System.out.println("Ride completed! Driver earned: PKR " + String.format("%.2f", fare));
+            Log.info("Ride completed!", "rideId", rideId, "driverEarnedPkr", fare);
         } else {
-            System.out.println("Cannot complete ride. Current status: " + status);
+            Log.warn("Cannot complete ride", "rideId", rideId, "status", status);
         }
     }
 
@@ -83,9 +84,9 @@ public class Ride {
     public void cancelRide() {
         if (!status.equals("Completed")) {
             status = "Cancelled";
-            System.out.println("Ride cancelled.");
+            Log.info("Ride cancelled.", "rideId", rideId);
         } else {
-            System.out.println("Cannot cancel a completed ride.");
+            Log.warn("Cannot cancel a completed ride", "rideId", rideId);
         }
     }
 
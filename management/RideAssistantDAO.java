@@ -13,7 +13,7 @@ public class RideAssistantDAO {
             stmt.setString(3, assistantName);
             return stmt.executeUpdate() > 0;
         } catch (SQLException e) {
-            System.err.println("Error adding assistant: " + e.getMessage());
+            Log.error("Error adding assistant", "error", e.getMessage());
         }
         return false;
     }
@@ -28,7 +28,7 @@ public class RideAssistantDAO {
                 while (rs.next()) list.add(rs.getString("assistant_name"));
             }
         } catch (SQLException e) {
-            System.err.println("Error reading assistants: " + e.getMessage());
+            Log.error("Error reading assistants", "error", e.getMessage());
         }
         return list;
     }
@@ -1,41 +1,240 @@
 // RideDAO.java - Handles database operations for Ride class
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class RideDAO {
 
+    private static final long STATUS_COUNT_TTL_MS = 5000;
+    private static volatile Map<String, Integer> statusCounts = Map.of();
+    private static volatile long statusCountsAt;
+
+    static {
+        for (String status : new String[]{"Pending", "Confirmed", "In Progress"}) {
+            Metrics.gauge("rydex_rides", "Rides currently in each open status (re-read at most every 5 s)",
+                    () -> cachedStatusCount(status), "status", status);
+        }
+    }
+
+    // Counts and times one status change for the metrics registry
+    private static boolean recordTransition(String status, boolean ok, long startNanos) {
+        Metrics.timer("rydex_ride_transition_seconds", "Time taken by RideDAO status changes", "status", status)
+                .recordSince(startNanos);
+        Metrics.counter("rydex_ride_transitions_total", "RideDAO status changes by target status and outcome",
+                "status", status, "result", ok ? "ok" : "rejected").increment();
+        return ok;
+    }
+
+    private static int recordCreate(int rideId, long startNanos) {
+        recordTransition("Pending", rideId > 0, startNanos);
+        return rideId;
+    }
+
+    // Gauges are read on every scrape; from the event log projections when it is on, otherwise
+    // one GROUP BY serves all statuses for a few seconds
+    private static double cachedStatusCount(String status) {
+        RideProjections projections = RideEventLog.projections();
+        if (projections != null) return projections.countActiveRides(status);
+        long now = System.currentTimeMillis();
+        if (now - statusCountsAt > STATUS_COUNT_TTL_MS) {
+            statusCountsAt = now;
+            statusCounts = new RideDAO().countRidesByStatus();
+        }
+        return statusCounts.getOrDefault(status, 0);
+    }
+
+    // Make the next open-rides gauge read go to the database (the outbox relay calls this
+    // whenever rides change)
+    static void invalidateStatusCounts() {
+        statusCountsAt = 0;
+    }
+
+    // Number of rides in each status; runs on the metrics scrape thread, so it takes its own
+    // connection rather than a lease on the shared one
+    public Map<String, Integer> countRidesByStatus() {
+        String sql = "SELECT status, COUNT(*) FROM Rides GROUP BY status";
+        Map<String, Integer> counts = new HashMap<>();
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) return counts;
+            try (PreparedStatement stmt = conn.prepareStatement(sql);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) counts.put(rs.getString(1), rs.getInt(2));
+            }
+        } catch (SQLException e) {
+            Log.error("Error counting rides by status", "error", e.getMessage());
+        }
+        return counts;
+    }
+
     // Create a new ride in DB and return generated ride ID
     public int createRide(int riderId, int driverId, int routeId, double fare) {
-        String sql = "INSERT INTO Rides (rider_id, driver_id, route_id, fare, status) " +
-                     "VALUES (?, ?, ?, ?, 'Pending')";
+        return createRide(riderId, driverId, routeId, fare, 1);
+    }
 
-        try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+    // Same, for a party of `seats` (the rider plus assistants)
+    public int createRide(int riderId, int driverId, int routeId, double fare, int seats) {
+        RydexEvents.RideTransition event = RydexEvents.RideTransition.start(-1, driverId, "Pending");
+        long t0 = System.nanoTime();
+        int rideId = recordCreate(insertRide(riderId, driverId, routeId, fare, 0, seats), t0);
+        if (rideId > 0) RideEventLog.record(RideEvent.Type.CREATED, rideId, riderId, driverId, fare);
+        return event.done(rideId);
+    }
 
-            stmt.setInt(1, riderId);
-            stmt.setInt(2, driverId);
-            stmt.setInt(3, routeId);
-            stmt.setDouble(4, fare);
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        int rideId = rs.getInt(1);
-                        System.out.println("Ride created with ID: " + rideId);
-                        return rideId;
+    // Create a ride on a pooled trip, taking its seats on the trip in the same transaction;
+    // -1 if the trip is closed or has too few seats left
+    public int createPooledRide(int tripId, int riderId, int driverId, int routeId, double fare, int seats) {
+        RydexEvents.RideTransition event = RydexEvents.RideTransition.start(-1, driverId, "Pending");
+        long t0 = System.nanoTime();
+        int rideId = recordCreate(insertRide(riderId, driverId, routeId, fare, tripId, seats), t0);
+        if (rideId > 0) RideEventLog.record(RideEvent.Type.CREATED, rideId, riderId, driverId, fare);
+        return event.done(rideId);
+    }
+
+    // The ride, its seats on the trip (if pooled) and its CREATED outbox event are committed together
+    private int insertRide(int riderId, int driverId, int routeId, double fare, int tripId, int seats) {
+        String sql = "INSERT INTO Rides (rider_id, driver_id, route_id, fare, status, trip_id, seats) " +
+                     "VALUES (?, ?, ?, ?, 'Pending', ?, ?)";
+        String claim = "UPDATE Trips SET seats_taken = seats_taken + ? " +
+                       "WHERE trip_id = ? AND status = 'Open' AND seats_taken + ? <= capacity";
+
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) {
+                Log.error("Database connection is NULL!");
+                return -1;
+            }
+            conn.setAutoCommit(false);
+            if (tripId > 0) {
+                try (PreparedStatement stmt = conn.prepareStatement(claim)) {
+                    stmt.setInt(1, seats);
+                    stmt.setInt(2, tripId);
+                    stmt.setInt(3, seats);
+                    if (stmt.executeUpdate() == 0) {
+                        conn.rollback();
+                        return -1;
                     }
                 }
             }
+            try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setInt(1, riderId);
+                stmt.setInt(2, driverId);
+                stmt.setInt(3, routeId);
+                stmt.setDouble(4, fare);
+                if (tripId > 0) stmt.setInt(5, tripId);
+                else stmt.setNull(5, Types.INTEGER);
+                stmt.setInt(6, seats);
+
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected > 0) {
+                    try (ResultSet rs = stmt.getGeneratedKeys()) {
+                        if (rs.next()) {
+                            int rideId = rs.getInt(1);
+                            RideOutbox.write(conn, RideEvent.Type.CREATED, rideId, riderId, driverId, fare);
+                            conn.commit();
+                            Log.info("Ride created", "rideId", rideId, "riderId", riderId, "driverId", driverId);
+                            return rideId;
+                        }
+                    }
+                }
+                conn.rollback();
+            }
         } catch (SQLException e) {
-            System.err.println("Error creating ride: " + e.getMessage());
+            Log.error("Error creating ride", "error", e.getMessage());
         }
         return -1; // Failed
     }
 
+    // One ride for createRides
+    public static final class NewRide {
+        final int riderId;
+        final int driverId;
+        final int routeId;
+        final double fare;
+        final int seats;
+
+        public NewRide(int riderId, int driverId, int routeId, double fare, int seats) {
+            this.riderId = riderId;
+            this.driverId = driverId;
+            this.routeId = routeId;
+            this.fare = fare;
+            this.seats = seats;
+        }
+    }
+
+    // Create many rides in one transaction with batched inserts (rides, then their CREATED
+    // outbox events); returns the ride ids in input order, or null if nothing was created
+    public int[] createRides(List<NewRide> rides) {
+        long t0 = System.nanoTime();
+        int[] ids = insertRides(rides);
+        for (int i = 0; i < rides.size(); i++) {
+            recordCreate(ids == null ? -1 : ids[i], t0);
+            if (ids != null) {
+                NewRide r = rides.get(i);
+                RideEventLog.record(RideEvent.Type.CREATED, ids[i], r.riderId, r.driverId, r.fare);
+            }
+        }
+        return ids;
+    }
+
+    private int[] insertRides(List<NewRide> rides) {
+        if (rides.isEmpty()) return new int[0];
+        String sql = "INSERT INTO Rides (rider_id, driver_id, route_id, fare, status, seats) VALUES (?, ?, ?, ?, 'Pending', ?)";
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) {
+                Log.error("Database connection is NULL!");
+                return null;
+            }
+            conn.setAutoCommit(false);
+            try {
+                int[] ids = new int[rides.size()];
+                try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    for (NewRide r : rides) {
+                        stmt.setInt(1, r.riderId);
+                        stmt.setInt(2, r.driverId);
+                        stmt.setInt(3, r.routeId);
+                        stmt.setDouble(4, r.fare);
+                        stmt.setInt(5, r.seats);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                    int n = 0;
+                    try (ResultSet rs = stmt.getGeneratedKeys()) {
+                        while (rs.next() && n < ids.length) ids[n++] = rs.getInt(1);
+                    }
+                    if (n != ids.length) throw new SQLException("Expected " + ids.length + " generated ride ids, got " + n);
+                }
+                List<RideEvent> events = new ArrayList<>(rides.size());
+                for (int i = 0; i < rides.size(); i++) {
+                    NewRide r = rides.get(i);
+                    events.add(new RideEvent(RideEvent.Type.CREATED, ids[i], r.riderId, r.driverId, r.fare));
+                }
+                RideOutbox.writeAll(conn, events);
+                conn.commit();
+                Log.info("Rides created", "count", ids.length, "firstRideId", ids[0]);
+                return ids;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            Log.error("Error creating rides", "error", e.getMessage());
+        }
+        return null;
+    }
+
     // Update ride status (Pending, Confirmed, In Progress, Completed, Cancelled)
     public boolean updateRideStatus(int rideId, String status) {
+        RydexEvents.RideTransition event = RydexEvents.RideTransition.start(rideId, 0, status);
+        long t0 = System.nanoTime();
+        boolean ok = recordTransition(status, writeRideStatus(rideId, status), t0);
+        RideEvent.Type type = RideEvent.Type.forRideStatus(status);
+        if (ok && type != null) RideEventLog.record(type, rideId, 0, 0, 0);
+        if (ok) RideTraces.statusChanged(rideId, status);
+        return event.done(ok);
+    }
+
+    private boolean writeRideStatus(int rideId, String status) {
         String sql = "UPDATE Rides SET status = ? WHERE ride_id = ?";
 
         try (Connection conn = DatabaseConfig.getConnection();
@@ -47,7 +246,7 @@ public class RideDAO {
             return stmt.executeUpdate() > 0;
 
         } catch (SQLException e) {
-            System.err.println("Error updating ride status: " + e.getMessage());
+            Log.error("Error updating ride status", "error", e.getMessage());
         }
         return false;
     }
@@ -83,7 +282,7 @@ public class RideDAO {
             }
 
         } catch (SQLException e) {
-            System.err.println("Error getting rides: " + e.getMessage());
+            Log.error("Error getting rides", "error", e.getMessage());
         }
         return rides;
     }
@@ -119,19 +318,96 @@ public class RideDAO {
             }
 
         } catch (SQLException e) {
-            System.err.println("Error getting rides: " + e.getMessage());
+            Log.error("Error getting rides", "error", e.getMessage());
+        }
+        return rides;
+    }
+
+    // Search ride history with filters, sort and paging pushed down to the database
+    public List<RideSummary> searchRides(RideSearch search) {
+        List<RideSummary> rides = new ArrayList<>();
+        RideQueryBuilder qb = new RideQueryBuilder(search);
+
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(qb.buildSelect())) {
+
+            qb.bind(stmt, true);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rides.add(new RideSummary(
+                        rs.getInt("ride_id"),
+                        rs.getInt("route_id"),
+                        rs.getString("start_location"),
+                        rs.getString("end_location"),
+                        rs.getInt("counterparty_id"),
+                        rs.getString("counterparty_name"),
+                        rs.getDouble("fare"),
+                        rs.getString("status"),
+                        rs.getTimestamp("ride_time")
+                    ));
+                }
+            }
+
+        } catch (SQLException e) {
+            Log.error("Error searching rides", "error", e.getMessage());
         }
         return rides;
     }
 
-    // Complete ride and update driver earnings in a single transaction
+    // Count rides matching a search (ignores sort and paging)
+    public int countRides(RideSearch search) {
+        RideQueryBuilder qb = new RideQueryBuilder(search);
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(qb.buildCount())) {
+            qb.bind(stmt, false);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) return rs.getInt("cnt");
+            }
+        } catch (SQLException e) {
+            Log.error("Error counting rides", "error", e.getMessage());
+        }
+        return 0;
+    }
+
+    // Complete ride, record the driver's earnings and settle a Pending (cash) payment in a
+    // single transaction
     public boolean completeRideTransaction(int rideId, int driverId, double fare) {
+        RydexEvents.RideTransition event = RydexEvents.RideTransition.start(rideId, driverId, "Completed");
+        long t0 = System.nanoTime();
+        List<Integer> settled = new ArrayList<>();
+        boolean ok = recordTransition("Completed", writeCompletion(rideId, driverId, fare, settled), t0);
+        if (ok) {
+            RideEventLog.record(RideEvent.Type.COMPLETED, rideId, 0, driverId, fare);
+            PaymentDAO.recordSettled(settled);
+            RideTraces.finish(rideId, driverId);
+        }
+        return event.done(ok);
+    }
+
+    // Complete ride for the user-facing flows: commits only the status change and publishes
+    // the completion to DomainEvents, whose consumers credit the earnings and do the rest in
+    // batches. Same checks as completeRideTransaction, which it falls back to when the bus is off.
+    public boolean completeRide(int rideId, int driverId, double fare) {
+        if (!DomainEvents.isEnabled()) return completeRideTransaction(rideId, driverId, fare);
+        RydexEvents.RideTransition event = RydexEvents.RideTransition.start(rideId, driverId, "Completed");
+        long t0 = System.nanoTime();
+        boolean ok = recordTransition("Completed", writeCompletion(rideId, driverId, fare, null), t0);
+        if (ok) {
+            RideEventLog.record(RideEvent.Type.COMPLETED, rideId, 0, driverId, fare);
+            RideTraces.finish(rideId, driverId);
+            DomainEvents.publish(new RideEvent(RideEvent.Type.COMPLETED, rideId, 0, driverId, fare));
+        }
+        return event.done(ok);
+    }
+
+    // With settled non-null the earnings and payment settlement go in the same transaction
+    // (and the settled ride is added to it); with null DomainEvents does both afterwards
+    private boolean writeCompletion(int rideId, int driverId, double fare, List<Integer> settled) {
         String updRide = "UPDATE Rides SET status = 'Completed' WHERE ride_id = ?";
-        String updDriver = "UPDATE Drivers SET total_earnings = total_earnings + ? WHERE driver_id = ?";
 
         try (Connection conn = DatabaseConfig.getNewConnection()) {
             if (conn == null) {
-                System.err.println("Database connection is NULL!");
+                Log.error("Database connection is NULL!");
                 return false;
             }
             conn.setAutoCommit(false);
@@ -164,19 +440,22 @@ public class RideDAO {
                 if (r1 == 0) throw new SQLException("No ride updated for ride_id=" + rideId);
             }
 
-            // Update driver earnings
-            try (PreparedStatement pDrv = conn.prepareStatement(updDriver)) {
-                pDrv.setDouble(1, fare);
-                pDrv.setInt(2, driverId);
-                int r2 = pDrv.executeUpdate();
-                if (r2 == 0) throw new SQLException("No driver updated for driver_id=" + driverId);
+            RideOutbox.write(conn, RideEvent.Type.COMPLETED, rideId, 0, driverId, fare);
+
+            // Record the driver's earnings in the ledger (rolled up into Drivers later) and
+            // settle the cash payment collected at drop-off
+            List<Integer> paid = null;
+            if (settled != null) {
+                EarningsDAO.insertRideEarning(conn, driverId, rideId, fare);
+                paid = PaymentDAO.settlePending(conn, List.of(rideId));
             }
 
             conn.commit();
+            if (paid != null) settled.addAll(paid);
             return true;
 
         } catch (SQLException e) {
-            System.err.println("Transaction failed completing ride: " + e.getMessage());
+            Log.error("Transaction failed completing ride", "error", e.getMessage());
             return false;
         }
     }
@@ -191,19 +470,76 @@ public class RideDAO {
                 if (rs.next()) return rs.getDouble("fare");
             }
         } catch (SQLException e) {
-            System.err.println("Error getting fare for ride: " + e.getMessage());
+            Log.error("Error getting fare for ride", "error", e.getMessage());
         }
         return -1;
     }
 
+    // Get the driver assigned to a ride (-1 if not found)
+    public int getDriverIdByRideId(int rideId) {
+        String sql = "SELECT driver_id FROM Rides WHERE ride_id = ?";
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, rideId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) return rs.getInt("driver_id");
+            }
+        } catch (SQLException e) {
+            Log.error("Error getting driver for ride", "error", e.getMessage());
+        }
+        return -1;
+    }
+
+    // Get the rider who booked a ride (-1 if not found)
+    public int getRiderIdByRideId(int rideId) {
+        String sql = "SELECT rider_id FROM Rides WHERE ride_id = ?";
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, rideId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) return rs.getInt("rider_id");
+            }
+        } catch (SQLException e) {
+            Log.error("Error getting rider for ride", "error", e.getMessage());
+        }
+        return -1;
+    }
+
+    // Get the current status of a ride (null if not found)
+    public String getRideStatus(int rideId) {
+        String sql = "SELECT status FROM Rides WHERE ride_id = ?";
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, rideId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) return rs.getString("status");
+            }
+        } catch (SQLException e) {
+            Log.error("Error getting ride status", "error", e.getMessage());
+        }
+        return null;
+    }
+
     // Start a ride transactionally: only the assigned driver can start, and only if not already In Progress/Completed
     public boolean startRideTransaction(int rideId, int driverId) {
+        RydexEvents.RideTransition event = RydexEvents.RideTransition.start(rideId, driverId, "In Progress");
+        long t0 = System.nanoTime();
+        boolean ok = recordTransition("In Progress", startRide(rideId, driverId), t0);
+        if (ok) {
+            RideEventLog.record(RideEvent.Type.STARTED, rideId, 0, driverId, 0);
+            RideTraces.begin(rideId, driverId);
+            RidePool.driverStarted(driverId);
+        }
+        return event.done(ok);
+    }
+
+    private boolean startRide(int rideId, int driverId) {
         String sel = "SELECT status, driver_id FROM Rides WHERE ride_id = ? FOR UPDATE";
         String updRide = "UPDATE Rides SET status = 'In Progress' WHERE ride_id = ?";
 
         try (Connection conn = DatabaseConfig.getNewConnection()) {
             if (conn == null) {
-                System.err.println("Database connection is NULL!");
+                Log.error("Database connection is NULL!");
                 return false;
             }
             conn.setAutoCommit(false);
@@ -236,13 +572,15 @@ public class RideDAO {
             conn.commit();
             return true;
         } catch (SQLException e) {
-            System.err.println("Transaction failed starting ride: " + e.getMessage());
+            Log.error("Transaction failed starting ride", "error", e.getMessage());
             return false;
         }
     }
 
     // Check if driver currently has any ride with status 'In Progress'
     public boolean hasInProgressRideForDriver(int driverId) {
+        RideProjections projections = RideEventLog.projections();
+        if (projections != null) return projections.hasInProgressRide(driverId);
         String sql = "SELECT COUNT(*) as cnt FROM Rides WHERE driver_id = ? AND status = 'In Progress'";
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -251,7 +589,7 @@ public class RideDAO {
                 if (rs.next()) return rs.getInt("cnt") > 0;
             }
         } catch (SQLException e) {
-            System.err.println("Error checking in-progress rides: " + e.getMessage());
+            Log.error("Error checking in-progress rides", "error", e.getMessage());
         }
         return false;
     }
@@ -293,7 +631,7 @@ public class RideDAO {
             }
 
         } catch (SQLException e) {
-            System.err.println("Error getting filtered rides: " + e.getMessage());
+            Log.error("Error getting filtered rides", "error", e.getMessage());
         }
         return rides;
     }
@@ -310,6 +648,14 @@ public class RideDAO {
 
     // Confirm a ride (move from Pending -> Confirmed). Returns true if updated.
     public boolean confirmRide(int rideId) {
+        RydexEvents.RideTransition event = RydexEvents.RideTransition.start(rideId, 0, "Confirmed");
+        long t0 = System.nanoTime();
+        boolean ok = recordTransition("Confirmed", checkAndConfirm(rideId), t0);
+        if (ok) RideEventLog.record(RideEvent.Type.CONFIRMED, rideId, 0, 0, 0);
+        return event.done(ok);
+    }
+
+    private boolean checkAndConfirm(int rideId) {
         String sel = "SELECT status FROM Rides WHERE ride_id = ?";
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement ps = conn.prepareStatement(sel)) {
@@ -325,14 +671,25 @@ public class RideDAO {
                 } else return false;
             }
         } catch (SQLException e) {
-            System.err.println("Error checking ride before confirm: " + e.getMessage());
+            Log.error("Error checking ride before confirm", "error", e.getMessage());
             return false;
         }
-        return updateRideStatus(rideId, "Confirmed");
+        return writeRideStatus(rideId, "Confirmed");
     }
 
     // Cancel a ride (set status to Cancelled) with safety checks.
     public boolean cancelRide(int rideId) {
+        RydexEvents.RideTransition event = RydexEvents.RideTransition.start(rideId, 0, "Cancelled");
+        long t0 = System.nanoTime();
+        boolean ok = recordTransition("Cancelled", checkAndCancel(rideId), t0);
+        if (ok) {
+            RideEventLog.record(RideEvent.Type.CANCELLED, rideId, 0, 0, 0);
+            RidePool.rideCancelled(rideId);
+        }
+        return event.done(ok);
+    }
+
+    private boolean checkAndCancel(int rideId) {
         String sel = "SELECT status FROM Rides WHERE ride_id = ?";
         try (Connection conn = DatabaseConfig.getConnection();
              PreparedStatement ps = conn.prepareStatement(sel)) {
@@ -348,9 +705,9 @@ public class RideDAO {
                 } else return false;
             }
         } catch (SQLException e) {
-            System.err.println("Error checking ride before cancel: " + e.getMessage());
+            Log.error("Error checking ride before cancel", "error", e.getMessage());
             return false;
         }
-        return updateRideStatus(rideId, "Cancelled");
+        return writeRideStatus(rideId, "Cancelled");
     }
 }
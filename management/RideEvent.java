@@ -0,0 +1,92 @@
+// RideEvent.java - One entry in the ride lifecycle event log (see RideEventLog)
+//
+// Events are immutable and stored as fixed-size binary records, so the log can be scanned
+// and replayed without parsing. Fields a given type does not use are 0.
+
+import java.nio.ByteBuffer;
+
+public final class RideEvent {
+
+    public enum Type {
+        CREATED,        // rideId, riderId, driverId, amount = fare
+        CONFIRMED,      // rideId
+        STARTED,        // rideId, driverId
+        COMPLETED,      // rideId, driverId, amount = fare credited to the driver
+        CANCELLED,      // rideId
+        PAID,           // rideId, amount = payment amount
+        RATED,          // rideId, amount = rating (1..5)
+        EARNINGS_SET;   // driverId, amount = new total (manual correction or import of existing totals)
+
+        // Event for a Rides.status value set directly; null for statuses with no event (Pending)
+        public static Type forRideStatus(String status) {
+            if (status == null) return null;
+            switch (status.toLowerCase()) {
+                case "confirmed": return CONFIRMED;
+                case "in progress": return STARTED;
+                case "completed": return COMPLETED;
+                case "cancelled": return CANCELLED;
+                default: return null;
+            }
+        }
+    }
+
+    // seq(8) time(8) type(4) rideId(4) riderId(4) driverId(4) amount(8)
+    static final int RECORD_BYTES = 40;
+
+    private final long seq;
+    private final long timeMillis;
+    private final Type type;
+    private final int rideId;
+    private final int riderId;
+    private final int driverId;
+    private final double amount;
+
+    public RideEvent(Type type, int rideId, int riderId, int driverId, double amount) {
+        this(0, System.currentTimeMillis(), type, rideId, riderId, driverId, amount);
+    }
+
+    RideEvent(long seq, long timeMillis, Type type, int rideId, int riderId, int driverId, double amount) {
+        this.seq = seq;
+        this.timeMillis = timeMillis;
+        this.type = type;
+        this.rideId = rideId;
+        this.riderId = riderId;
+        this.driverId = driverId;
+        this.amount = amount;
+    }
+
+    public long getSeq() { return seq; }
+    public long getTimeMillis() { return timeMillis; }
+    public Type getType() { return type; }
+    public int getRideId() { return rideId; }
+    public int getRiderId() { return riderId; }
+    public int getDriverId() { return driverId; }
+    public double getAmount() { return amount; }
+
+    RideEvent withSeq(long newSeq) {
+        return new RideEvent(newSeq, timeMillis, type, rideId, riderId, driverId, amount);
+    }
+
+    void writeTo(ByteBuffer buf) {
+        buf.putLong(seq).putLong(timeMillis).putInt(type.ordinal())
+           .putInt(rideId).putInt(riderId).putInt(driverId).putDouble(amount);
+    }
+
+    // Null when the bytes at the buffer's position are not the record with the expected sequence
+    static RideEvent readFrom(ByteBuffer buf, long expectedSeq) {
+        long seq = buf.getLong();
+        long time = buf.getLong();
+        int type = buf.getInt();
+        int rideId = buf.getInt();
+        int riderId = buf.getInt();
+        int driverId = buf.getInt();
+        double amount = buf.getDouble();
+        if (seq != expectedSeq || type < 0 || type >= Type.values().length) return null;
+        return new RideEvent(seq, time, Type.values()[type], rideId, riderId, driverId, amount);
+    }
+
+    @Override
+    public String toString() {
+        return "#" + seq + " " + type + " ride=" + rideId + " rider=" + riderId + " driver=" + driverId + " amount=" + amount;
+    }
+}
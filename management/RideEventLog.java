@@ -0,0 +1,363 @@
+// RideEventLog.java - Append-only log of ride lifecycle events, with in-memory projections
+//
+// DAOs record an event after each successful change (created, confirmed, started,
+// completed, cancelled, paid, rated). The event is applied to RideProjections at once, so
+// reads see it immediately, and queued for a single appender thread that writes batches
+// of fixed-size records into memory-mapped segment files and forces each batch to disk.
+// The caller never does file I/O; if the queue is full (disk far behind) it waits.
+//
+// Segments are named seg-<first sequence>.log and hold SEGMENT_RECORDS records each. On
+// open every segment is replayed in order to rebuild the projections; replay stops at the
+// first record whose sequence is not the expected one (a torn write), and appending
+// resumes there. Records after that point are cleared, and later segments are renamed to
+// .torn, so they can never be replayed as if they followed the new records.
+//
+// Other processes (the desktop apps, a second server) change rides without writing here,
+// so on open and every rydex.events.reconcile.ms (60000, 0 for on open only) the open rides
+// and driver totals are read from the database and any difference is appended as
+// correcting events. A new, empty log is filled the same way. Rides and drivers this
+// process changed after the read began are left for the next round.
+//
+// Off unless -Drydex.events.dir=<directory> is set (or open() is called); when off,
+// record() does nothing and the DAOs keep answering reads from the database.
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public final class RideEventLog {
+
+    private static final int SEGMENT_RECORDS = 1 << 20;            // 40 MB per segment
+    private static final int BATCH = 1024;
+
+    private static volatile RideEventLog instance;
+    private static volatile boolean initialized;
+
+    private final Path dir;
+    private final RideProjections projections = new RideProjections();
+    private final BlockingQueue<RideEvent> queue = new ArrayBlockingQueue<>(64 * 1024);
+    private final Thread appender;
+
+    // Appender thread state
+    private long nextSeq = 1;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private volatile long written;      // highest sequence forced to disk
+
+    // ===================== STATIC ACCESS =====================
+    // The configured log, opened on first use; null when event logging is off
+    public static RideEventLog get() {
+        if (!initialized) init();
+        return instance;
+    }
+
+    private static synchronized void init() {
+        if (initialized) return;
+        String dir = System.getProperty("rydex.events.dir");
+        if (dir != null) {
+            try {
+                instance = openLog(Path.of(dir));
+            } catch (IOException e) {
+                Log.error("Cannot open ride event log, continuing without it", "dir", dir, "error", e.getMessage());
+            }
+        }
+        initialized = true;
+    }
+
+    // Open (or create) the log in dir and make it the process-wide one
+    public static synchronized RideEventLog open(Path dir) throws IOException {
+        if (instance != null) return instance;
+        instance = openLog(dir);
+        initialized = true;
+        return instance;
+    }
+
+    // Projections of the current log, or null when event logging is off
+    public static RideProjections projections() {
+        RideEventLog log = get();
+        return log == null ? null : log.projections;
+    }
+
+    public static void record(RideEvent.Type type, int rideId, int riderId, int driverId, double amount) {
+        RideEventLog log = get();
+        if (log != null) log.append(new RideEvent(type, rideId, riderId, driverId, amount));
+    }
+
+    // ===================== INSTANCE =====================
+    private RideEventLog(Path dir) {
+        this.dir = dir;
+        this.appender = new Thread(this::drain, "rydex-ride-event-log");
+        this.appender.setDaemon(true);
+    }
+
+    private static RideEventLog openLog(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        RideEventLog log = new RideEventLog(dir);
+        long t0 = System.nanoTime();
+        log.replay();
+        log.appender.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(log::flush, "rydex-ride-event-log-flush"));
+        Log.info("Ride event log opened", "dir", dir, "events", log.nextSeq - 1,
+                "ms", (System.nanoTime() - t0) / 1_000_000);
+        log.reconcile();
+        long every = Long.getLong("rydex.events.reconcile.ms", 60_000);
+        if (every > 0) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "rydex-ride-event-reconcile");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(log::reconcile, every, every, TimeUnit.MILLISECONDS);
+        } else {
+            log.projections.stopTrackingChanges();
+        }
+        return log;
+    }
+
+    public RideProjections getProjections() { return projections; }
+
+    public void append(RideEvent event) {
+        projections.apply(event);
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.error("Interrupted queuing ride event", "event", event);
+        }
+    }
+
+    // Wait (up to 5 s) until every event appended so far is on disk
+    public void flush() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((!queue.isEmpty() || written < nextSeq - 1) && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Every stored event in order (for tools and audits)
+    public List<RideEvent> readAll() throws IOException {
+        flush();
+        List<RideEvent> events = new ArrayList<>();
+        scan(events::add);
+        return events;
+    }
+
+    // ===================== STORAGE =====================
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().matches("seg-\\d+\\.log")).sorted().toList();
+        }
+    }
+
+    private static Path segmentName(Path dir, long firstSeq) {
+        return dir.resolve(String.format("seg-%020d.log", firstSeq));
+    }
+
+    // Rebuild projections and position the writer after the last valid record
+    private void replay() throws IOException {
+        long last = scan(projections::apply);
+        nextSeq = last + 1;
+        // The segment holding nextSeq; any later one is past a torn write and set aside
+        long first = 1;
+        for (Path seg : segments()) {
+            long segFirst = Long.parseLong(seg.getFileName().toString().replaceAll("\\D", ""));
+            if (segFirst <= nextSeq) {
+                first = segFirst;
+            } else {
+                Path torn = seg.resolveSibling(seg.getFileName() + ".torn");
+                Files.move(seg, torn, StandardCopyOption.REPLACE_EXISTING);
+                Log.warn("Ride event segment follows a torn write, set aside", "segment", torn);
+            }
+        }
+        openSegment(first);
+        segment.position((int) ((nextSeq - first) * RideEvent.RECORD_BYTES));
+        clearTail();
+        written = last;
+    }
+
+    // Zero the records left after the write position by a torn batch (they stop at the
+    // first record never written), so a later scan cannot run on into them
+    private void clearTail() {
+        int pos = segment.position();
+        while (pos + RideEvent.RECORD_BYTES <= segment.limit() && segment.getLong(pos) != 0) {
+            for (int i = 0; i < RideEvent.RECORD_BYTES; i += 8) segment.putLong(pos + i, 0);
+            pos += RideEvent.RECORD_BYTES;
+        }
+        if (pos != segment.position()) segment.force();
+    }
+
+    // Feed every valid record to the consumer; returns the last sequence seen
+    private long scan(java.util.function.Consumer<RideEvent> consumer) throws IOException {
+        long expected = 1;
+        for (Path seg : segments()) {
+            try (FileChannel ch = FileChannel.open(seg, StandardOpenOption.READ)) {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                while (buf.remaining() >= RideEvent.RECORD_BYTES) {
+                    RideEvent e = RideEvent.readFrom(buf, expected);
+                    if (e == null) return expected - 1;
+                    consumer.accept(e);
+                    expected++;
+                }
+            }
+        }
+        return expected - 1;
+    }
+
+    private void openSegment(long firstSeq) throws IOException {
+        if (channel != null) {
+            segment.force();
+            channel.close();
+        }
+        channel = FileChannel.open(segmentName(dir, firstSeq), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) SEGMENT_RECORDS * RideEvent.RECORD_BYTES);
+    }
+
+    // ===================== APPENDER =====================
+    private void drain() {
+        List<RideEvent> batch = new ArrayList<>(BATCH);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, BATCH - 1);
+            try {
+                for (RideEvent e : batch) {
+                    if (!segment.hasRemaining()) openSegment(nextSeq);
+                    e.withSeq(nextSeq).writeTo(segment);
+                    nextSeq++;
+                }
+                segment.force();
+                written = nextSeq - 1;
+            } catch (IOException e) {
+                Log.error("Error writing ride events", "dir", dir, "error", e.getMessage());
+            }
+            batch.clear();
+        }
+    }
+
+    // ===================== RECONCILE =====================
+    // Bring the projections in line with the database: open rides and driver totals
+    void reconcile() {
+        long started = System.currentTimeMillis();
+        Map<Integer, RideProjections.ActiveRide> open = new HashMap<>();
+        Map<Integer, Double> totals = new HashMap<>();
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) return;
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT ride_id, rider_id, driver_id, fare, status FROM Rides WHERE status IN ('Pending', 'Confirmed', 'In Progress')");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    open.put(rs.getInt(1), new RideProjections.ActiveRide(rs.getInt(1), rs.getInt(2), rs.getInt(3),
+                            rs.getDouble(4), rs.getString(5), 0));
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT d.driver_id, " + EarningsDAO.TOTAL_EARNINGS + " AS total FROM Drivers d");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) totals.put(rs.getInt(1), rs.getDouble(2));
+            }
+
+            int rides = 0;
+            for (RideProjections.ActiveRide db : open.values()) {
+                if (projections.rideChangedSince(db.getRideId(), started)) continue;
+                if (reconcileRide(projections.getActiveRide(db.getRideId()), db)) rides++;
+            }
+            List<Integer> gone = new ArrayList<>();
+            for (RideProjections.ActiveRide r : projections.getActiveRides()) {
+                if (!open.containsKey(r.getRideId()) && !projections.rideChangedSince(r.getRideId(), started)) {
+                    gone.add(r.getRideId());
+                }
+            }
+            if (!gone.isEmpty()) rides += closeRides(conn, gone);
+
+            int drivers = 0;
+            Set<Integer> driverIds = new HashSet<>(totals.keySet());
+            driverIds.addAll(projections.getAllDriverEarnings().keySet());
+            for (int driverId : driverIds) {
+                double total = totals.getOrDefault(driverId, 0.0);
+                if (Math.abs(total - projections.getDriverEarnings(driverId)) < 0.005
+                        || projections.earningsChangedSince(driverId, started)) continue;
+                append(new RideEvent(RideEvent.Type.EARNINGS_SET, 0, 0, driverId, total));
+                drivers++;
+            }
+            projections.forgetChangesBefore(started);
+            if (rides > 0 || drivers > 0) {
+                Log.info("Ride event log reconciled with the database", "rides", rides, "drivers", drivers);
+            }
+        } catch (SQLException e) {
+            Log.error("Error reconciling ride event log", "error", e.getMessage());
+        } catch (RuntimeException e) {
+            Log.error("Ride event log reconcile failed", "error", e.getMessage());
+        } finally {
+            DatabaseConfig.releaseThreadConnections();
+        }
+    }
+
+    // Append the events that take the projected ride (null if unknown) to the database's
+    // state; false if they already agree
+    private boolean reconcileRide(RideProjections.ActiveRide have, RideProjections.ActiveRide db) {
+        int from = have == null ? -1 : statusRank(have.getStatus());
+        int to = statusRank(db.getStatus());
+        if (from == to) return false;
+        if (from < 0 || from > to) {
+            append(new RideEvent(RideEvent.Type.CREATED, db.getRideId(), db.getRiderId(), db.getDriverId(), db.getFare()));
+            from = 0;
+        }
+        if (from < 1 && to >= 1) append(new RideEvent(RideEvent.Type.CONFIRMED, db.getRideId(), 0, 0, 0));
+        if (from < 2 && to >= 2) append(new RideEvent(RideEvent.Type.STARTED, db.getRideId(), 0, db.getDriverId(), 0));
+        return true;
+    }
+
+    private static int statusRank(String status) {
+        if (status.equalsIgnoreCase("In Progress")) return 2;
+        if (status.equalsIgnoreCase("Confirmed")) return 1;
+        return 0;
+    }
+
+    // Close projected rides the database no longer has open. COMPLETED carries no amount
+    // here: the driver's total is corrected from the database separately.
+    private int closeRides(Connection conn, List<Integer> rideIds) throws SQLException {
+        int closed = 0;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT status FROM Rides WHERE ride_id = ?")) {
+            for (int rideId : rideIds) {
+                ps.setInt(1, rideId);
+                String status = null;
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) status = rs.getString(1);
+                }
+                boolean completed = "Completed".equalsIgnoreCase(status);
+                append(new RideEvent(completed ? RideEvent.Type.COMPLETED : RideEvent.Type.CANCELLED, rideId, 0, 0, 0));
+                closed++;
+            }
+        }
+        return closed;
+    }
+}
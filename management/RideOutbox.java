@@ -0,0 +1,54 @@
+// RideOutbox.java - Writes ride and payment events into the Ride_Outbox table
+//
+// write() runs on the caller's connection, inside the caller's transaction, so an event
+// exists exactly when the change it describes was committed: a rollback removes both, and
+// a crash after the commit still leaves the event for OutboxRelay to deliver. Rows use the
+// same types and fields as RideEvent.
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+public final class RideOutbox {
+
+    private static final String INSERT = "INSERT INTO Ride_Outbox (event_type, ride_id, rider_id, driver_id, amount) VALUES (?, ?, ?, ?, ?)";
+
+    private RideOutbox() {}
+
+    public static void write(Connection conn, RideEvent.Type type, int rideId, int riderId, int driverId, double amount)
+            throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(INSERT)) {
+            ps.setString(1, type.name());
+            ps.setInt(2, rideId);
+            ps.setInt(3, riderId);
+            ps.setInt(4, driverId);
+            ps.setDouble(5, amount);
+            ps.executeUpdate();
+        }
+    }
+
+    // Many events in one batch (seq and time of the given events are ignored)
+    public static void writeAll(Connection conn, List<RideEvent> events) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(INSERT)) {
+            for (RideEvent e : events) {
+                ps.setString(1, e.getType().name());
+                ps.setInt(2, e.getRideId());
+                ps.setInt(3, e.getRiderId());
+                ps.setInt(4, e.getDriverId());
+                ps.setDouble(5, e.getAmount());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    // The events PaymentDAO.recordEvents records for a payment (and optional ride) status change
+    public static void writePaymentChange(Connection conn, int rideId, String paymentStatus, String rideStatus)
+            throws SQLException {
+        if (rideId <= 0) return;
+        if ("Completed".equalsIgnoreCase(paymentStatus)) write(conn, RideEvent.Type.PAID, rideId, 0, 0, 0);
+        RideEvent.Type type = RideEvent.Type.forRideStatus(rideStatus);
+        if (type != null) write(conn, type, rideId, 0, 0, 0);
+    }
+}
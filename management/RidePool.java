@@ -0,0 +1,210 @@
+// RidePool.java - Groups pooled ride requests into shared vehicle trips
+//
+// A pooled booking first looks for an open trip it can join: same route, or a route whose
+// start and end are both within rydex.pool.overlap.km (1.5) of its own, with enough free
+// seats for the party (the rider plus assistants). Among those it takes the one with the
+// fewest seats left that still fits, so trips fill up instead of every trip getting one
+// rider. With no such trip DispatchEngine assigns a driver and a new trip is opened with
+// the vehicle's capacity. A trip stops taking riders when it is full, when one of its rides
+// starts, or rydex.pool.join.ms (180000) after it opened.
+//
+// Open trips are held here in memory so matching costs no queries; the seat counts are
+// enforced again in the database when each ride is inserted. Trips left open by a previous
+// run are closed on first use. Each pooled rider pays FareCalculator.pooledFare of the solo
+// fare, so the driver earns more per trip from the second rider on.
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class RidePool {
+
+    // A trip still taking riders
+    public static final class Trip {
+        private final int tripId;
+        private final int driverId;
+        private final int routeId;
+        private final int capacity;
+        private final double startLat;
+        private final double startLng;
+        private final double endLat;
+        private final double endLng;
+        private final long openedAt = System.currentTimeMillis();
+        private final Map<Integer, Integer> seatsByRide = new HashMap<>();
+        private int seatsTaken;
+
+        Trip(int tripId, int driverId, Route route, int capacity) {
+            this.tripId = tripId;
+            this.driverId = driverId;
+            this.routeId = route.getRouteId();
+            this.capacity = capacity;
+            this.startLat = route.getStartLat();
+            this.startLng = route.getStartLng();
+            this.endLat = route.getEndLat();
+            this.endLng = route.getEndLng();
+        }
+
+        public int getTripId() { return tripId; }
+        public int getDriverId() { return driverId; }
+        public int getCapacity() { return capacity; }
+
+        int seatsLeft() { return capacity - seatsTaken; }
+    }
+
+    private static final Metrics.Counter JOINED = Metrics.counter("rydex_pool_bookings_total",
+            "Pooled bookings by how they were placed", "result", "joined");
+    private static final Metrics.Counter OPENED = Metrics.counter("rydex_pool_bookings_total",
+            "Pooled bookings by how they were placed", "result", "opened");
+
+    private static volatile RidePool instance;
+
+    private final long joinMillis;
+    private final double overlapKm;
+    private final TripDAO tripDAO = new TripDAO();
+    private final Map<Integer, Trip> byDriver = new HashMap<>();       // guarded by this
+    private final Map<Integer, Trip> byRide = new HashMap<>();         // guarded by this
+
+    // ===================== STATIC ACCESS =====================
+    // The process-wide pool; closes trips a previous run left open on first use
+    public static RidePool get() {
+        RidePool p = instance;
+        if (p != null) return p;
+        synchronized (RidePool.class) {
+            if (instance == null) {
+                RidePool pool = new RidePool(Long.getLong("rydex.pool.join.ms", 180_000),
+                        Double.parseDouble(System.getProperty("rydex.pool.overlap.km", "1.5")));
+                pool.tripDAO.closeOpenTrips();
+                instance = pool;
+            }
+            return instance;
+        }
+    }
+
+    RidePool(long joinMillis, double overlapKm) {
+        this.joinMillis = joinMillis;
+        this.overlapKm = overlapKm;
+        Metrics.gauge("rydex_pool_open_trips", "Pooled trips still taking riders", this::getOpenCount);
+    }
+
+    public synchronized int getOpenCount() {
+        return byDriver.size();
+    }
+
+    // ===================== MATCHING =====================
+    // Hold seats on the best open trip for the party; null if none fits. Pair with joined()
+    // once the ride exists, or unreserve() if creating it failed.
+    public Trip reserve(Route route, int seats) {
+        List<Trip> expired = new ArrayList<>();
+        Trip best = null;
+        synchronized (this) {
+            long oldest = System.currentTimeMillis() - joinMillis;
+            for (Trip t : byDriver.values()) {
+                if (t.openedAt < oldest) {
+                    expired.add(t);
+                } else if (t.seatsLeft() >= seats && overlaps(t, route)
+                        && (best == null || t.seatsLeft() < best.seatsLeft())) {
+                    best = t;
+                }
+            }
+            for (Trip t : expired) forget(t);
+            if (best != null) best.seatsTaken += seats;
+        }
+        for (Trip t : expired) tripDAO.closeTrip(t.tripId);
+        return best;
+    }
+
+    public synchronized void unreserve(Trip trip, int seats) {
+        trip.seatsTaken -= seats;
+    }
+
+    // A ride was created on a reserved trip; closes the trip once it is full
+    public void joined(Trip trip, int rideId, int seats) {
+        JOINED.increment();
+        boolean full;
+        synchronized (this) {
+            if (byDriver.get(trip.driverId) != trip) return;     // closed meanwhile
+            trip.seatsByRide.put(rideId, seats);
+            byRide.put(rideId, trip);
+            full = trip.seatsLeft() <= 0;
+            if (full) forget(trip);
+        }
+        if (full) tripDAO.closeTrip(trip.tripId);
+    }
+
+    // Start taking riders on a trip whose first ride was just created
+    public void opened(int tripId, int driverId, Route route, int capacity, int rideId, int seats) {
+        OPENED.increment();
+        Trip trip = new Trip(tripId, driverId, route, capacity);
+        trip.seatsTaken = seats;
+        if (trip.seatsLeft() <= 0) {
+            tripDAO.closeTrip(tripId);
+            return;
+        }
+        Trip replaced;
+        synchronized (this) {
+            trip.seatsByRide.put(rideId, seats);
+            byRide.put(rideId, trip);
+            replaced = byDriver.put(driverId, trip);
+            if (replaced != null) forgetRides(replaced);
+        }
+        if (replaced != null) tripDAO.closeTrip(replaced.tripId);
+    }
+
+    private boolean overlaps(Trip t, Route route) {
+        if (t.routeId == route.getRouteId()) return true;
+        if (Double.isNaN(t.startLat) || Double.isNaN(t.endLat) || !route.hasCoordinates()) return false;
+        return DriverGrid.distanceKm(t.startLat, t.startLng, route.getStartLat(), route.getStartLng()) <= overlapKm
+                && DriverGrid.distanceKm(t.endLat, t.endLng, route.getEndLat(), route.getEndLng()) <= overlapKm;
+    }
+
+    private void forget(Trip t) {
+        byDriver.remove(t.driverId, t);
+        forgetRides(t);
+    }
+
+    private void forgetRides(Trip t) {
+        for (Integer rideId : t.seatsByRide.keySet()) byRide.remove(rideId, t);
+    }
+
+    // ===================== RIDE LIFECYCLE =====================
+    // The driver started a ride: their open trip (if any) takes nobody else
+    public static void driverStarted(int driverId) {
+        RidePool pool = instance;
+        if (pool == null) return;
+        Trip t;
+        synchronized (pool) {
+            t = pool.byDriver.get(driverId);
+            if (t != null) pool.forget(t);
+        }
+        if (t != null) pool.tripDAO.closeTrip(t.tripId);
+    }
+
+    // A ride was cancelled: its seats on a still-open trip can be taken again
+    public static void rideCancelled(int rideId) {
+        release(rideId, true);
+    }
+
+    // A ride was deleted with its rider; UserDAO already gave its seats back in the database
+    public static void rideDeleted(int rideId) {
+        release(rideId, false);
+    }
+
+    private static void release(int rideId, boolean releaseInDatabase) {
+        RidePool pool = instance;
+        if (pool == null) return;
+        Trip t;
+        int seats;
+        boolean empty;
+        synchronized (pool) {
+            t = pool.byRide.remove(rideId);
+            if (t == null) return;
+            seats = t.seatsByRide.remove(rideId);
+            t.seatsTaken -= seats;
+            empty = t.seatsTaken <= 0;
+            if (empty) pool.forget(t);          // nobody left: the driver goes back to dispatch
+        }
+        if (releaseInDatabase) pool.tripDAO.releaseSeats(t.tripId, seats);
+        if (empty) pool.tripDAO.closeTrip(t.tripId);
+    }
+}
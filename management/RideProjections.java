@@ -0,0 +1,143 @@
+// RideProjections.java - Read models built from the ride event log
+//
+// Kept up to date by RideEventLog (on replay at startup and on every new event), so the
+// questions asked on every booking and dashboard refresh - which rides are open, does this
+// driver have a ride in progress, what has this driver earned - are answered from memory
+// instead of by a query. Safe to read from any thread.
+//
+// While change tracking is on, the time of the last event is kept for every ride that
+// closed and every driver whose earnings changed, so RideEventLog.reconcile() can leave
+// alone anything this process changed after it read the database.
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class RideProjections {
+
+    // A ride that has been created and is not yet completed or cancelled
+    public static final class ActiveRide {
+        private final int rideId;
+        private final int riderId;
+        private final int driverId;
+        private final double fare;
+        private final String status;
+        private final long sinceMillis;
+
+        ActiveRide(int rideId, int riderId, int driverId, double fare, String status, long sinceMillis) {
+            this.rideId = rideId;
+            this.riderId = riderId;
+            this.driverId = driverId;
+            this.fare = fare;
+            this.status = status;
+            this.sinceMillis = sinceMillis;
+        }
+
+        ActiveRide withStatus(String newStatus, long at) {
+            return new ActiveRide(rideId, riderId, driverId, fare, newStatus, at);
+        }
+
+        public int getRideId() { return rideId; }
+        public int getRiderId() { return riderId; }
+        public int getDriverId() { return driverId; }
+        public double getFare() { return fare; }
+        public String getStatus() { return status; }
+        public long getSinceMillis() { return sinceMillis; }
+    }
+
+    private final Map<Integer, ActiveRide> activeRides = new ConcurrentHashMap<>();
+    private final Map<Integer, Double> driverEarnings = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> closedAt = new ConcurrentHashMap<>();       // rideId -> last event time
+    private final Map<Integer, Long> earnedAt = new ConcurrentHashMap<>();       // driverId -> last event time
+    private volatile boolean trackChanges = true;
+
+    void apply(RideEvent e) {
+        switch (e.getType()) {
+            case CREATED -> activeRides.put(e.getRideId(), new ActiveRide(e.getRideId(), e.getRiderId(),
+                    e.getDriverId(), e.getAmount(), "Pending", e.getTimeMillis()));
+            case CONFIRMED -> activeRides.computeIfPresent(e.getRideId(), (id, r) -> r.withStatus("Confirmed", e.getTimeMillis()));
+            case STARTED -> activeRides.computeIfPresent(e.getRideId(), (id, r) -> r.withStatus("In Progress", e.getTimeMillis()));
+            case CANCELLED -> {
+                activeRides.remove(e.getRideId());
+                if (trackChanges) closedAt.put(e.getRideId(), e.getTimeMillis());
+            }
+            case COMPLETED -> {
+                activeRides.remove(e.getRideId());
+                if (trackChanges) closedAt.put(e.getRideId(), e.getTimeMillis());
+                if (e.getDriverId() > 0 && e.getAmount() != 0) {
+                    driverEarnings.merge(e.getDriverId(), e.getAmount(), Double::sum);
+                    if (trackChanges) earnedAt.put(e.getDriverId(), e.getTimeMillis());
+                }
+            }
+            case EARNINGS_SET -> {
+                driverEarnings.put(e.getDriverId(), e.getAmount());
+                if (trackChanges) earnedAt.put(e.getDriverId(), e.getTimeMillis());
+            }
+            case PAID, RATED -> { }
+        }
+    }
+
+    // ===================== CHANGE TRACKING =====================
+    boolean rideChangedSince(int rideId, long millis) {
+        ActiveRide r = activeRides.get(rideId);
+        if (r != null && r.sinceMillis >= millis) return true;
+        return closedAt.getOrDefault(rideId, 0L) >= millis;
+    }
+
+    boolean earningsChangedSince(int driverId, long millis) {
+        return earnedAt.getOrDefault(driverId, 0L) >= millis;
+    }
+
+    // Drop change times older than millis (no later reconcile looks further back)
+    void forgetChangesBefore(long millis) {
+        closedAt.values().removeIf(t -> t < millis);
+        earnedAt.values().removeIf(t -> t < millis);
+    }
+
+    // Stop keeping change times (when nothing will reconcile again)
+    void stopTrackingChanges() {
+        trackChanges = false;
+        closedAt.clear();
+        earnedAt.clear();
+    }
+
+    ActiveRide getActiveRide(int rideId) {
+        return activeRides.get(rideId);
+    }
+
+    Map<Integer, Double> getAllDriverEarnings() {
+        return driverEarnings;
+    }
+
+    public List<ActiveRide> getActiveRides() {
+        return new ArrayList<>(activeRides.values());
+    }
+
+    public List<ActiveRide> getActiveRidesForDriver(int driverId) {
+        List<ActiveRide> list = new ArrayList<>();
+        for (ActiveRide r : activeRides.values()) {
+            if (r.driverId == driverId) list.add(r);
+        }
+        return list;
+    }
+
+    public boolean hasInProgressRide(int driverId) {
+        for (ActiveRide r : activeRides.values()) {
+            if (r.driverId == driverId && r.status.equals("In Progress")) return true;
+        }
+        return false;
+    }
+
+    public int countActiveRides(String status) {
+        int n = 0;
+        for (ActiveRide r : activeRides.values()) {
+            if (r.status.equals(status)) n++;
+        }
+        return n;
+    }
+
+    public double getDriverEarnings(int driverId) {
+        return driverEarnings.getOrDefault(driverId, 0.0);
+    }
+}
@@ -0,0 +1,103 @@
+// RideQueryBuilder.java - Turns a RideSearch into a parameterised SELECT over Rides
+//
+// Only sargable predicates are emitted: equality on the owner/counterparty/route ids,
+// IN on status, and open/closed ranges on ride_time and fare. No functions are applied
+// to columns and no LIKE '%..%' is used, so MySQL can drive the query from an index such
+// as Rides(rider_id, ride_time) or Rides(driver_id, status) instead of scanning.
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RideQueryBuilder {
+
+    private final RideSearch search;
+    private final StringBuilder where = new StringBuilder();
+    private final List<Object> params = new ArrayList<>();
+
+    public RideQueryBuilder(RideSearch search) {
+        if (search.getRiderId() == null && search.getDriverId() == null) {
+            throw new IllegalArgumentException("Ride search needs a rider or driver to scope the history.");
+        }
+        this.search = search;
+        buildWhere();
+    }
+
+    private void buildWhere() {
+        // Leading predicate is always the history owner so the index prefix is usable
+        if (search.isRiderView()) {
+            and("r.rider_id = ?", search.getRiderId());
+            if (search.getCounterpartyId() != null) and("r.driver_id = ?", search.getCounterpartyId());
+        } else {
+            and("r.driver_id = ?", search.getDriverId());
+            if (search.getCounterpartyId() != null) and("r.rider_id = ?", search.getCounterpartyId());
+        }
+
+        if (!search.getStatuses().isEmpty()) {
+            StringBuilder in = new StringBuilder("r.status IN (");
+            int i = 0;
+            for (String s : search.getStatuses()) {
+                if (i++ > 0) in.append(",");
+                in.append("?");
+                params.add(s);
+            }
+            in.append(")");
+            appendClause(in.toString());
+        }
+
+        if (search.getFrom() != null) and("r.ride_time >= ?", search.getFrom());
+        if (search.getTo() != null) and("r.ride_time < ?", search.getTo());
+        if (search.getRouteId() != null) and("r.route_id = ?", search.getRouteId());
+        if (search.getMinFare() != null) and("r.fare >= ?", search.getMinFare());
+        if (search.getMaxFare() != null) and("r.fare <= ?", search.getMaxFare());
+    }
+
+    private void and(String clause, Object value) {
+        appendClause(clause);
+        params.add(value);
+    }
+
+    private void appendClause(String clause) {
+        where.append(where.length() == 0 ? " WHERE " : " AND ").append(clause);
+    }
+
+    // Page of rows joined with route and counterparty name
+    public String buildSelect() {
+        String otherColumn = search.isRiderView() ? "r.driver_id" : "r.rider_id";
+        String dir = search.isAscending() ? " ASC" : " DESC";
+        return "SELECT r.ride_id, r.route_id, r.fare, r.status, r.ride_time, " +
+               otherColumn + " AS counterparty_id, " +
+               "ro.start_location, ro.end_location, u.name AS counterparty_name " +
+               "FROM Rides r " +
+               "JOIN Routes ro ON r.route_id = ro.route_id " +
+               "JOIN Users u ON " + otherColumn + " = u.user_id" +
+               where +
+               // ride_id tiebreaker keeps pages stable when the sort column has duplicates
+               " ORDER BY " + search.getSortKey().getColumn() + dir +
+               (search.getSortKey() == RideSearch.SortKey.RIDE_ID ? "" : ", r.ride_id" + dir) +
+               " LIMIT ? OFFSET ?";
+    }
+
+    // Total matching rows, without the joins (they never filter anything)
+    public String buildCount() {
+        return "SELECT COUNT(*) AS cnt FROM Rides r" + where;
+    }
+
+    // Bind WHERE params; for the SELECT also bind LIMIT/OFFSET
+    public int bind(PreparedStatement stmt, boolean withPaging) throws SQLException {
+        int idx = 1;
+        for (Object p : params) {
+            if (p instanceof Integer) stmt.setInt(idx++, (Integer) p);
+            else if (p instanceof Double) stmt.setDouble(idx++, (Double) p);
+            else if (p instanceof Timestamp) stmt.setTimestamp(idx++, (Timestamp) p);
+            else stmt.setString(idx++, String.valueOf(p));
+        }
+        if (withPaging) {
+            stmt.setInt(idx++, search.getLimit());
+            stmt.setInt(idx++, search.getOffset());
+        }
+        return idx - 1;
+    }
+}
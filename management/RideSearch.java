@@ -0,0 +1,141 @@
+// RideSearch.java - Filter, sort and paging criteria for ride history queries
+// Setters return this so callers can chain: new RideSearch().forRider(7).withStatuses("Completed")
+
+import java.sql.Timestamp;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class RideSearch {
+
+    // Columns a ride history table may be sorted by. Each maps to a plain Rides column
+    // so the ORDER BY can be served from an index on (owner_id, column).
+    public enum SortKey {
+        RIDE_TIME("r.ride_time"),
+        FARE("r.fare"),
+        STATUS("r.status"),
+        RIDE_ID("r.ride_id");
+
+        private final String column;
+
+        SortKey(String column) { this.column = column; }
+
+        public String getColumn() { return column; }
+    }
+
+    public static final int DEFAULT_LIMIT = 200;
+    public static final int MAX_LIMIT = 1000;
+
+    private Integer riderId;            // history owner when searching as a rider
+    private Integer driverId;           // history owner when searching as a driver
+    private Integer counterpartyId;     // the other party (driver for riders, rider for drivers)
+    private final Set<String> statuses = new LinkedHashSet<>();
+    private Timestamp from;             // inclusive
+    private Timestamp to;               // exclusive
+    private Integer routeId;
+    private Double minFare;
+    private Double maxFare;
+    private SortKey sortKey = SortKey.RIDE_TIME;
+    private boolean ascending = false;
+    private int limit = DEFAULT_LIMIT;
+    private int offset = 0;
+
+    public RideSearch forRider(int riderId) {
+        this.riderId = riderId;
+        this.driverId = null;
+        return this;
+    }
+
+    public RideSearch forDriver(int driverId) {
+        this.driverId = driverId;
+        this.riderId = null;
+        return this;
+    }
+
+    public RideSearch withCounterparty(Integer counterpartyId) {
+        this.counterpartyId = counterpartyId;
+        return this;
+    }
+
+    public RideSearch withStatuses(String... statuses) {
+        this.statuses.clear();
+        for (String s : statuses) {
+            if (s != null && !s.isBlank()) this.statuses.add(s.trim());
+        }
+        return this;
+    }
+
+    public RideSearch withStatuses(Iterable<String> statuses) {
+        this.statuses.clear();
+        if (statuses != null) {
+            for (String s : statuses) {
+                if (s != null && !s.isBlank()) this.statuses.add(s.trim());
+            }
+        }
+        return this;
+    }
+
+    // Half-open window [from, to); either end may be null
+    public RideSearch between(Timestamp from, Timestamp to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    public RideSearch onRoute(Integer routeId) {
+        this.routeId = routeId;
+        return this;
+    }
+
+    public RideSearch fareBetween(Double minFare, Double maxFare) {
+        this.minFare = minFare;
+        this.maxFare = maxFare;
+        return this;
+    }
+
+    public RideSearch sortBy(SortKey sortKey, boolean ascending) {
+        this.sortKey = sortKey == null ? SortKey.RIDE_TIME : sortKey;
+        this.ascending = ascending;
+        return this;
+    }
+
+    public RideSearch page(int limit, int offset) {
+        this.limit = Math.max(1, Math.min(limit, MAX_LIMIT));
+        this.offset = Math.max(0, offset);
+        return this;
+    }
+
+    public Integer getRiderId() { return riderId; }
+    public Integer getDriverId() { return driverId; }
+    public Integer getCounterpartyId() { return counterpartyId; }
+    public Set<String> getStatuses() { return statuses; }
+    public Timestamp getFrom() { return from; }
+    public Timestamp getTo() { return to; }
+    public Integer getRouteId() { return routeId; }
+    public Double getMinFare() { return minFare; }
+    public Double getMaxFare() { return maxFare; }
+    public SortKey getSortKey() { return sortKey; }
+    public boolean isAscending() { return ascending; }
+    public int getLimit() { return limit; }
+    public int getOffset() { return offset; }
+
+    public boolean isRiderView() {
+        return riderId != null;
+    }
+
+    @Override
+    public String toString() {
+        return "RideSearch{" +
+                "riderId=" + riderId +
+                ", driverId=" + driverId +
+                ", counterpartyId=" + counterpartyId +
+                ", statuses=" + statuses +
+                ", from=" + from +
+                ", to=" + to +
+                ", routeId=" + routeId +
+                ", fare=[" + minFare + ", " + maxFare + "]" +
+                ", sort=" + sortKey + (ascending ? " ASC" : " DESC") +
+                ", limit=" + limit +
+                ", offset=" + offset +
+                '}';
+    }
+}
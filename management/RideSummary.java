@@ -0,0 +1,48 @@
+// RideSummary.java - One row of a ride history table (read model, not the Ride domain object)
+
+import java.sql.Timestamp;
+
+public class RideSummary {
+    private final int rideId;
+    private final int routeId;
+    private final String startLocation;
+    private final String endLocation;
+    private final int counterpartyId;      // driver for rider history, rider for driver history
+    private final String counterpartyName;
+    private final double fare;
+    private final String status;
+    private final Timestamp rideTime;
+
+    public RideSummary(int rideId, int routeId, String startLocation, String endLocation,
+                       int counterpartyId, String counterpartyName, double fare, String status, Timestamp rideTime) {
+        this.rideId = rideId;
+        this.routeId = routeId;
+        this.startLocation = startLocation;
+        this.endLocation = endLocation;
+        this.counterpartyId = counterpartyId;
+        this.counterpartyName = counterpartyName;
+        this.fare = fare;
+        this.status = status;
+        this.rideTime = rideTime;
+    }
+
+    public int getRideId() { return rideId; }
+    public int getRouteId() { return routeId; }
+    public String getStartLocation() { return startLocation; }
+    public String getEndLocation() { return endLocation; }
+    public int getCounterpartyId() { return counterpartyId; }
+    public String getCounterpartyName() { return counterpartyName; }
+    public double getFare() { return fare; }
+    public String getStatus() { return status; }
+    public Timestamp getRideTime() { return rideTime; }
+
+    public String getRouteLabel() {
+        return startLocation + "→" + endLocation;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Ride#%d | %s | %s | Fare: PKR %.2f | Status: %s | Time: %s",
+                rideId, getRouteLabel(), counterpartyName, fare, status, rideTime);
+    }
+}
@@ -0,0 +1,193 @@
+// RideTraces.java - Records the path driven on each ride and stores it compressed
+//
+// When a ride starts, begin() opens a recording for it; every location ping that
+// LocationIngest accepts for its driver is appended to it at full rate, before the flusher's
+// downsampling, as a GpsTrace. Recordings are per ride, so a driver on a pooled trip with
+// several rides in progress feeds each of them. When the ride completes, finish() writes the encoded trace
+// to Ride_Traces in one row together with its point count and driven distance, so a
+// distance dispute or fare audit reads one blob instead of thousands of position rows.
+// A ride that leaves In Progress any other way (cancelled, reset by a plain status change,
+// deleted with its rider or driver) has its recording dropped by statusChanged()/discard().
+//
+// Recordings live in memory only: a ride that was in progress across a restart keeps the
+// points sent after the restart. At most rydex.trace.max.points (20000) points are kept
+// per ride; later ones are counted and ignored.
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class RideTraces {
+
+    private static final int MAX_POINTS = Integer.getInteger("rydex.trace.max.points", 20_000);
+
+    private static final Metrics.Counter RECORDED = Metrics.counter("rydex_trace_points_total",
+            "Location pings appended to ride traces, by outcome", "result", "recorded");
+    private static final Metrics.Counter SKIPPED = Metrics.counter("rydex_trace_points_total",
+            "Location pings appended to ride traces, by outcome", "result", "skipped");
+    private static final Metrics.Counter STORED_BYTES = Metrics.counter("rydex_trace_stored_bytes_total",
+            "Encoded trace bytes written to Ride_Traces");
+
+    // One in-progress ride and its trace so far
+    private static final class Recording {
+        final int rideId;
+        final GpsTrace.Encoder trace = new GpsTrace.Encoder();
+        final long startedAt = System.currentTimeMillis();
+
+        Recording(int rideId) {
+            this.rideId = rideId;
+        }
+    }
+
+    // A stored trace with its summary columns
+    public static final class Trace {
+        private final int rideId;
+        private final int driverId;
+        private final int pointCount;
+        private final double distanceKm;
+        private final byte[] data;
+
+        Trace(int rideId, int driverId, int pointCount, double distanceKm, byte[] data) {
+            this.rideId = rideId;
+            this.driverId = driverId;
+            this.pointCount = pointCount;
+            this.distanceKm = distanceKm;
+            this.data = data;
+        }
+
+        public int getRideId() { return rideId; }
+        public int getDriverId() { return driverId; }
+        public int getPointCount() { return pointCount; }
+        public double getDistanceKm() { return distanceKm; }
+        public byte[] getData() { return data; }
+        public GpsTrace.Decoder decode() { return new GpsTrace.Decoder(data); }
+    }
+
+    // Copy-on-write arrays so record() reads them without locking; changed under the class lock
+    private static final Map<Integer, Recording[]> byDriver = new ConcurrentHashMap<>();
+    private static final Map<Integer, Integer> driverByRide = new ConcurrentHashMap<>();
+
+    private RideTraces() {}
+
+    // ===================== RECORDING =====================
+    // Start recording the driver's pings for a ride that just started
+    public static synchronized void begin(int rideId, int driverId) {
+        Recording[] current = byDriver.getOrDefault(driverId, new Recording[0]);
+        for (Recording r : current) {
+            if (r.rideId == rideId) return;
+        }
+        Recording[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = new Recording(rideId);
+        byDriver.put(driverId, next);
+        driverByRide.put(rideId, driverId);
+    }
+
+    // Called for every accepted ping; a map lookup when the driver is not on a ride
+    public static void record(int driverId, double lat, double lng, long atMillis) {
+        Recording[] rides = byDriver.get(driverId);
+        if (rides == null) return;
+        for (Recording r : rides) {
+            boolean added;
+            synchronized (r) {
+                added = atMillis >= r.startedAt && r.trace.getCount() < MAX_POINTS && r.trace.add(lat, lng, atMillis);
+            }
+            (added ? RECORDED : SKIPPED).increment();
+        }
+    }
+
+    // Stop recording a ride; null if it was not being recorded
+    private static synchronized Recording remove(int rideId, int driverId) {
+        Recording[] current = byDriver.get(driverId);
+        if (current == null) return null;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].rideId != rideId) continue;
+            Recording r = current[i];
+            driverByRide.remove(rideId, driverId);
+            if (current.length == 1) {
+                byDriver.remove(driverId);
+            } else {
+                Recording[] next = new Recording[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                byDriver.put(driverId, next);
+            }
+            return r;
+        }
+        return null;
+    }
+
+    // A status change that did not go through start/complete, where the driver is not at
+    // hand: a ride that completed is stored, one that left In Progress otherwise is dropped
+    public static void statusChanged(int rideId, String status) {
+        if (status == null || status.equalsIgnoreCase("In Progress")) return;
+        Integer driverId = driverByRide.get(rideId);
+        if (driverId == null) return;
+        if (status.equalsIgnoreCase("Completed")) finish(rideId, driverId);
+        else remove(rideId, driverId);
+    }
+
+    // Drop a ride's recording without storing it (the ride is being deleted)
+    public static void discard(int rideId) {
+        Integer driverId = driverByRide.get(rideId);
+        if (driverId != null) remove(rideId, driverId);
+    }
+
+    // Stop recording and store the trace of a completed ride; false if there was nothing
+    // recorded or the write failed
+    public static boolean finish(int rideId, int driverId) {
+        Recording r = remove(rideId, driverId);
+        if (r == null) return false;
+        byte[] data;
+        int count;
+        long endedAt;
+        synchronized (r) {
+            data = r.trace.toByteArray();
+            count = r.trace.getCount();
+            endedAt = count == 0 ? System.currentTimeMillis() : r.trace.getLastMillis();
+        }
+        if (count == 0) return false;
+        double km = GpsTrace.distanceKm(data);
+
+        String sql = "INSERT INTO Ride_Traces (ride_id, driver_id, point_count, distance_m, started_at, ended_at, trace) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, rideId);
+            ps.setInt(2, driverId);
+            ps.setInt(3, count);
+            ps.setInt(4, (int) Math.round(km * 1000));
+            ps.setTimestamp(5, new Timestamp(r.startedAt));
+            ps.setTimestamp(6, new Timestamp(endedAt));
+            ps.setBytes(7, data);
+            ps.executeUpdate();
+            STORED_BYTES.add(data.length);
+            return true;
+        } catch (SQLException e) {
+            Log.error("Error storing ride trace", "rideId", rideId, "error", e.getMessage());
+            return false;
+        }
+    }
+
+    // ===================== READ =====================
+    // The stored trace of a ride, or null if it has none
+    public static Trace load(int rideId) {
+        String sql = "SELECT driver_id, point_count, distance_m, trace FROM Ride_Traces WHERE ride_id = ?";
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, rideId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return new Trace(rideId, rs.getInt("driver_id"), rs.getInt("point_count"),
+                            rs.getInt("distance_m") / 1000.0, rs.getBytes("trace"));
+                }
+            }
+        } catch (SQLException e) {
+            Log.error("Error loading ride trace", "rideId", rideId, "error", e.getMessage());
+        }
+        return null;
+    }
+}
@@ -19,10 +19,9 @@ public class Rider extends User {
     public void addBalance(double amount) {
         if (amount > 0) {
             this.balance += amount;
-            System.out.println("PKR " + amount + " added to wallet. New balance: PKR " +
-                               String.format("%.2f", balance));
+            Log.info("Added to wallet", "riderId", getUserId(), "amountPkr", amount, "balancePkr", balance);
         } else {
-            System.out.println("Invalid amount!");
+            Log.warn("Invalid amount!", "riderId", getUserId(), "amount", amount);
         }
     }
 
@@ -32,7 +31,7 @@ public class Rider extends User {
             this.balance -= amount;
             return true;
         } else {
-            System.out.println("Insufficient balance or invalid amount!");
+            Log.warn("Insufficient balance or invalid amount!", "riderId", getUserId(), "amount", amount);
             return false;
         }
     }
@@ -54,7 +53,7 @@ public class Rider extends User {
     public void updateProfile(String name, String email) {
         setName(name);
         setEmail(email);
-        System.out.println("Rider profile updated successfully!");
+        Log.info("Rider profile updated", "riderId", getUserId());
     }
 
     // Simple toString for debugging
@@ -3,6 +3,11 @@ public class Route {
     private String startLocation;
     private String endLocation;
     private double distanceKm;
+    // Coordinates of the two ends; NaN when the route has none
+    private double startLat = Double.NaN;
+    private double startLng = Double.NaN;
+    private double endLat = Double.NaN;
+    private double endLng = Double.NaN;
 
     // Constructor
     public Route(int routeId, String startLocation, String endLocation, double distanceKm) {
@@ -30,6 +35,22 @@ public class Route {
         this.distanceKm = distanceKm;
     }
 
+    public double getStartLat() { return startLat; }
+    public double getStartLng() { return startLng; }
+    public double getEndLat() { return endLat; }
+    public double getEndLng() { return endLng; }
+
+    public void setCoordinates(double startLat, double startLng, double endLat, double endLng) {
+        this.startLat = startLat;
+        this.startLng = startLng;
+        this.endLat = endLat;
+        this.endLng = endLng;
+    }
+
+    public boolean hasCoordinates() {
+        return !Double.isNaN(startLat) && !Double.isNaN(startLng);
+    }
+
     // Display route nicely
     public void displayRoute() {
         System.out.println("\n----- Route Info -----");
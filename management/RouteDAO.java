@@ -10,7 +10,7 @@ public class RouteDAO {
 
         Connection conn = DatabaseConfig.getConnection();
         if (conn == null) {
-            System.err.println("Database connection is NULL!");
+            Log.error("Database connection is NULL!");
             return routes; // return empty list if no connection
         }
 
@@ -21,17 +21,11 @@ public class RouteDAO {
 
             while (rs.next()) {
                 // create Route object from database row
-                Route route = new Route(
-                    rs.getInt("route_id"),
-                    rs.getString("start_location"),
-                    rs.getString("end_location"),
-                    rs.getDouble("distance_km")
-                );
-                routes.add(route); // add route to list
+                routes.add(fromRow(rs)); // add route to list
             }
 
         } catch (SQLException e) {
-            System.err.println("Error getting routes: " + e.getMessage());
+            Log.error("Error getting routes", "error", e.getMessage());
         }
 
         return routes;
@@ -41,7 +35,7 @@ public class RouteDAO {
     public int addRoute(String startLocation, String endLocation, double distanceKm) {
         Connection conn = DatabaseConfig.getConnection();
         if (conn == null) {
-            System.err.println("Database connection is NULL!");
+            Log.error("Database connection is NULL!");
             return -1;
         }
 
@@ -63,7 +57,7 @@ public class RouteDAO {
             }
 
         } catch (SQLException e) {
-            System.err.println("Error adding route: " + e.getMessage());
+            Log.error("Error adding route", "error", e.getMessage());
         }
 
         return -1; // return -1 if failed
@@ -73,7 +67,7 @@ public class RouteDAO {
     public Route getRouteById(int routeId) {
         Connection conn = DatabaseConfig.getConnection();
         if (conn == null) {
-            System.err.println("Database connection is NULL!");
+            Log.error("Database connection is NULL!");
             return null;
         }
 
@@ -86,18 +80,48 @@ public class RouteDAO {
 
             if (rs.next()) {
                 // create and return route object
-                return new Route(
-                    rs.getInt("route_id"),
-                    rs.getString("start_location"),
-                    rs.getString("end_location"),
-                    rs.getDouble("distance_km")
-                );
+                return fromRow(rs);
             }
 
         } catch (SQLException e) {
-            System.err.println("Error getting route: " + e.getMessage());
+            Log.error("Error getting route", "error", e.getMessage());
         }
 
         return null; // return null if not found
     }
+
+    // Set the coordinates of a route's start and end points
+    public boolean setRouteCoordinates(int routeId, double startLat, double startLng, double endLat, double endLng) {
+        String sql = "UPDATE Routes SET start_lat = ?, start_lng = ?, end_lat = ?, end_lng = ? WHERE route_id = ?";
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setDouble(1, startLat);
+            stmt.setDouble(2, startLng);
+            stmt.setDouble(3, endLat);
+            stmt.setDouble(4, endLng);
+            stmt.setInt(5, routeId);
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            Log.error("Error setting route coordinates", "error", e.getMessage());
+        }
+        return false;
+    }
+
+    // Route from a SELECT * row; coordinates stay NaN where the columns are NULL
+    private static Route fromRow(ResultSet rs) throws SQLException {
+        Route route = new Route(
+            rs.getInt("route_id"),
+            rs.getString("start_location"),
+            rs.getString("end_location"),
+            rs.getDouble("distance_km")
+        );
+        route.setCoordinates(coordinate(rs, "start_lat"), coordinate(rs, "start_lng"),
+                             coordinate(rs, "end_lat"), coordinate(rs, "end_lng"));
+        return route;
+    }
+
+    private static double coordinate(ResultSet rs, String column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? Double.NaN : value;
+    }
 }
@@ -623,8 +623,7 @@ public class Rydex extends JFrame {
         statsRow.setOpaque(false);
         int ridesCompleted = 0;
         try {
-            List<String> rides = rideDAO.getRidesByDriver(driver.getUserId());
-            ridesCompleted = rides == null ? 0 : rides.size();
+            ridesCompleted = rideDAO.countRides(new RideSearch().forDriver(driver.getUserId()));
         } catch (Exception ignored) {}
         String earnings = String.format("PKR %.2f", driver.getTotalEarnings());
         statsRow.add(createStatCard("Earnings", earnings, PRIMARY_COLOR));
@@ -796,8 +795,7 @@ public class Rydex extends JFrame {
         statsRow.setOpaque(false);
         int ridesCount = 0;
         try {
-            List<String> rides = rideDAO.getRidesByRider(rider.getUserId());
-            ridesCount = rides == null ? 0 : rides.size();
+            ridesCount = rideDAO.countRides(new RideSearch().forRider(rider.getUserId()));
         } catch (Exception ignored) {}
         statsRow.add(createStatCard("Wallet", String.format("PKR %.2f", rider.getBalance()), PRIMARY_COLOR));
         statsRow.add(createStatCard("My Rides", String.valueOf(ridesCount), PRIMARY_LIGHT));
@@ -1025,7 +1023,7 @@ public class Rydex extends JFrame {
                     int idx = routesList.getSelectedIndex();
                     if (idx >= 0 && idx < routes.size()) {
                         selectedRoute = routes.get(idx);
-                        computedFare = calculateFare(selectedRoute.getDistanceKm());
+                        computedFare = calculateFare(selectedRoute);
                         farePreview.setText(String.format("Fare: PKR %.2f", computedFare));
                     } else {
                         selectedRoute = null;
@@ -1098,7 +1096,7 @@ public class Rydex extends JFrame {
                     double a = Double.parseDouble(amt.trim());
                     if (a <= 0) { showMessage("Error", "Invalid amount", PRIMARY_DARK); return; }
                     rider.addBalance(a);
-                    userDAO.updateRiderBalance(rider.getUserId(), rider.getBalance());
+                    userDAO.addRiderBalance(rider.getUserId(), a);
                     walletBalanceLabel.setText("PKR " + String.format("%.2f", rider.getBalance()));
                     showMessage("Success", "Wallet topped up", PRIMARY_COLOR);
                     // refresh rider dashboard if currently visible so overview reflects new balance
@@ -1214,6 +1212,12 @@ public class Rydex extends JFrame {
         }
 
         private void stepNext() {
+            RydexEvents.WizardStep event = RydexEvents.WizardStep.start("Swing", getCurrentStepName());
+            handleNext();
+            event.done(getCurrentStepName());
+        }
+
+        private void handleNext() {
             String step = getCurrentStepName();
             if (step.equals("STEP1")) {
                 // validate driver selection
@@ -1262,7 +1266,7 @@ public class Rydex extends JFrame {
                                 double a = Double.parseDouble(amt.trim());
                                 if (a <= 0) { showMessage("Error", "Invalid amount", PRIMARY_DARK); return; }
                                 rider.addBalance(a);
-                                userDAO.updateRiderBalance(rider.getUserId(), rider.getBalance());
+                                userDAO.addRiderBalance(rider.getUserId(), a);
                                 walletBalanceLabel.setText("PKR " + String.format("%.2f", rider.getBalance()));
                                 walletOk = rider.getBalance() >= computedFare;
                                 if (!walletOk) { showMessage("Error", "Still insufficient balance", PRIMARY_DARK); return; }
@@ -1288,6 +1292,7 @@ public class Rydex extends JFrame {
                 }
                 String assistantName = assistantCheck.isSelected() ? assistantNameField.getText().trim() : null;
 
+                SurgePricing.get().recordRequest(selectedRoute);
                 int rideId = rideDAO.createRide(rider.getUserId(), selectedDriverId, selectedRoute.getRouteId(), computedFare);
                 if (rideId <= 0) {
                     showMessage("Error", "Failed to create ride", PRIMARY_DARK); return;
@@ -1295,8 +1300,8 @@ public class Rydex extends JFrame {
 
                 boolean paymentSuccess = false;
                 if ("Wallet".equals(selectedPaymentMethod)) {
-                    if (walletOk && rider.deductBalance(computedFare)) {
-                        userDAO.updateRiderBalance(rider.getUserId(), rider.getBalance());
+                    if (walletOk && userDAO.deductRiderBalance(rider.getUserId(), computedFare)) {
+                        rider.deductBalance(computedFare);
                         paymentSuccess = true;
                     } else paymentSuccess = false;
                 } else if ("Card".equals(selectedPaymentMethod)) {
@@ -1364,8 +1369,8 @@ public class Rydex extends JFrame {
         }
     }
 
-    private double calculateFare(double km) {
-        return 100 + km * 50;
+    private double calculateFare(Route route) {
+        return SurgePricing.get().fare(route);
     }
 
     // ----------------- Availability helpers -----------------
@@ -1520,7 +1525,7 @@ public class Rydex extends JFrame {
         int rideId = extractDriverIdFromListItem(sel);
         double fare = rideDAO.getFareByRideId(rideId);
         if (fare < 0) { showMessage("Error", "Could not determine fare for ride.", PRIMARY_DARK); return; }
-        boolean ok = rideDAO.completeRideTransaction(rideId, driver.getUserId(), fare);
+        boolean ok = rideDAO.completeRide(rideId, driver.getUserId(), fare);
         if (ok) {
             try { driver.addEarnings(fare); } catch (Exception ignored) {}
             showMessage("Success", "Ride completed and earnings updated.", PRIMARY_COLOR);
@@ -1637,7 +1642,7 @@ public class Rydex extends JFrame {
             double a = Double.parseDouble(amt.trim());
             if (a <= 0) { showMessage("Error", "Invalid amount", PRIMARY_DARK); return; }
             rider.addBalance(a);
-            userDAO.updateRiderBalance(rider.getUserId(), rider.getBalance());
+            userDAO.addRiderBalance(rider.getUserId(), a);
             showMessage("Success", "Added successfully. New balance: PKR " + String.format("%.2f", rider.getBalance()), PRIMARY_COLOR);
             // refresh rider dashboard so overview wallet balance updates
             try { showRiderDashboard(rider); } catch (Exception ignored) {}
@@ -1645,10 +1650,9 @@ public class Rydex extends JFrame {
     }
 
     private void viewRiderRides(Rider rider) {
-        List<String> rides = rideDAO.getRidesByRider(rider.getUserId());
-        if (rides == null || rides.isEmpty()) { showMessage("My Rides", "No rides yet!", PRIMARY_DARK); return; }
+        if (rideDAO.countRides(new RideSearch().forRider(rider.getUserId())) == 0) { showMessage("My Rides", "No rides yet!", PRIMARY_DARK); return; }
 
-        JDialog d = createCenteredDialog("My Rides", 760, 420);
+        JDialog d = createCenteredDialog("My Rides", 760, 470);
         JPanel p = new JPanel(new BorderLayout()); p.setBackground(BACKGROUND_COLOR);
 
         String[] cols = new String[]{"Ride ID", "Route", "Driver/Rider", "Fare", "Status", "Time"};
@@ -1658,27 +1662,17 @@ public class Rydex extends JFrame {
 
         var table = new JTable(model);
         table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        table.setAutoCreateRowSorter(true);
 
-        Runnable populate = () -> {
-            model.setRowCount(0);
-            for (String s : rideDAO.getRidesByRider(rider.getUserId())) {
-                try {
-                    String[] parts = s.split(" \\| ");
-                    if (parts.length < 6) continue;
-                    String id = parts[0].replace("Ride#", "").trim();
-                    String route = parts[1].trim();
-                    String other = parts[2].contains(":") ? parts[2].split(":",2)[1].trim() : parts[2].trim();
-                    String fare = parts[3].replace("Fare: PKR", "").trim();
-                    String status = parts[4].replace("Status:", "").trim();
-                    String time = parts[5].replace("Time:", "").trim();
-                    model.addRow(new Object[]{id, route, other, "PKR " + fare, status, time});
-                } catch (Exception ex) { /* skip malformed */ }
-            }
-        };
+        // Sort and filter run in SQL; the table only ever holds one page of results
+        RideSearch search = new RideSearch().forRider(rider.getUserId());
+        RideFilterBar filters = new RideFilterBar();
+        Runnable populate = () -> populateRideTable(model, filters, search);
+        installServerSort(table, search, () -> { filters.firstPage(); populate.run(); });
+        filters.onApply(populate);
 
         populate.run();
 
+        p.add(filters, BorderLayout.NORTH);
         p.add(new JScrollPane(table), BorderLayout.CENTER);
 
         JPanel btns = new JPanel(new FlowLayout(FlowLayout.RIGHT)); btns.setBackground(BACKGROUND_COLOR);
@@ -1711,10 +1705,9 @@ public class Rydex extends JFrame {
     }
 
     private void viewDriverRides(Driver driver) {
-        List<String> rides = rideDAO.getRidesByDriver(driver.getUserId());
-        if (rides == null || rides.isEmpty()) { showMessage("My Rides", "No rides yet!", PRIMARY_DARK); return; }
+        if (rideDAO.countRides(new RideSearch().forDriver(driver.getUserId())) == 0) { showMessage("My Rides", "No rides yet!", PRIMARY_DARK); return; }
 
-        JDialog d = createCenteredDialog("My Rides", 820, 460);
+        JDialog d = createCenteredDialog("My Rides", 820, 510);
         JPanel p = new JPanel(new BorderLayout()); p.setBackground(BACKGROUND_COLOR);
 
         String[] cols = new String[]{"Ride ID", "Route", "Rider", "Fare", "Status", "Time"};
@@ -1723,27 +1716,17 @@ public class Rydex extends JFrame {
         };
         JTable table = new JTable(model);
         table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        table.setAutoCreateRowSorter(true);
 
-        Runnable populate = () -> {
-            model.setRowCount(0);
-            for (String s : rideDAO.getRidesByDriver(driver.getUserId())) {
-                try {
-                    String[] parts = s.split(" \\| ");
-                    if (parts.length < 6) continue;
-                    String id = parts[0].replace("Ride#", "").trim();
-                    String route = parts[1].trim();
-                    String other = parts[2].contains(":") ? parts[2].split(":",2)[1].trim() : parts[2].trim();
-                    String fare = parts[3].replace("Fare: PKR", "").trim();
-                    String status = parts[4].replace("Status:", "").trim();
-                    String time = parts[5].replace("Time:", "").trim();
-                    model.addRow(new Object[]{id, route, other, "PKR " + fare, status, time});
-                } catch (Exception ex) { /* skip malformed */ }
-            }
-        };
+        // Sort and filter run in SQL; the table only ever holds one page of results
+        RideSearch search = new RideSearch().forDriver(driver.getUserId());
+        RideFilterBar filters = new RideFilterBar();
+        Runnable populate = () -> populateRideTable(model, filters, search);
+        installServerSort(table, search, () -> { filters.firstPage(); populate.run(); });
+        filters.onApply(populate);
 
         populate.run();
 
+        p.add(filters, BorderLayout.NORTH);
         p.add(new JScrollPane(table), BorderLayout.CENTER);
 
         JPanel btns = new JPanel(new FlowLayout(FlowLayout.RIGHT)); btns.setBackground(BACKGROUND_COLOR);
@@ -1791,6 +1774,62 @@ public class Rydex extends JFrame {
         d.add(p); d.setVisible(true);
     }
 
+    // Reload one page of ride history for the current filters and sort
+    private void populateRideTable(javax.swing.table.DefaultTableModel model, RideFilterBar filters, RideSearch search) {
+        try {
+            filters.applyTo(search);
+        } catch (IllegalArgumentException ex) {
+            showMessage("Invalid Filter", ex.getMessage(), PRIMARY_DARK);
+            return;
+        }
+        int total = rideDAO.countRides(search);
+        // Rides cancelled or confirmed out of the filter can leave the page past the end
+        if (search.getOffset() >= total && search.getOffset() > 0) {
+            search.page(search.getLimit(), filters.lastPage(total, search.getLimit()));
+        }
+        List<RideSummary> rides = rideDAO.searchRides(search);
+        model.setRowCount(0);
+        for (RideSummary r : rides) {
+            model.addRow(new Object[]{String.valueOf(r.getRideId()), r.getRouteLabel(), r.getCounterpartyName(),
+                    String.format("PKR %.2f", r.getFare()), r.getStatus(), String.valueOf(r.getRideTime())});
+        }
+        filters.showPage(search.getOffset(), rides.size(), total);
+    }
+
+    // Header clicks change the ORDER BY and re-query instead of sorting rows in memory.
+    // Columns without an index-friendly sort key (Route, Driver/Rider) ignore clicks.
+    private void installServerSort(JTable table, RideSearch search, Runnable populate) {
+        RideSearch.SortKey[] keys = {
+            RideSearch.SortKey.RIDE_ID, null, null,
+            RideSearch.SortKey.FARE, RideSearch.SortKey.STATUS, RideSearch.SortKey.RIDE_TIME
+        };
+        String[] names = new String[table.getColumnCount()];
+        for (int i = 0; i < names.length; i++) names[i] = table.getColumnName(i);
+
+        Runnable showIndicator = () -> {
+            for (int i = 0; i < names.length; i++) {
+                String arrow = keys[i] == search.getSortKey() ? (search.isAscending() ? " ▲" : " ▼") : "";
+                table.getColumnModel().getColumn(i).setHeaderValue(names[i] + arrow);
+            }
+            table.getTableHeader().repaint();
+        };
+        showIndicator.run();
+
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int view = table.columnAtPoint(e.getPoint());
+                if (view < 0) return;
+                RideSearch.SortKey key = keys[table.convertColumnIndexToModel(view)];
+                if (key == null) return;
+                boolean asc = key == search.getSortKey() ? !search.isAscending() : key != RideSearch.SortKey.RIDE_TIME;
+                search.sortBy(key, asc);
+                showIndicator.run();
+                populate.run();
+            }
+        });
+    }
+
     private void submitFeedback(Rider rider) {
         // show rider rides and prompt for ride id, rating and comments
         List<String> rides = rideDAO.getRidesByRider(rider.getUserId());
@@ -1828,6 +1867,125 @@ public class Rydex extends JFrame {
         else showLargeText("All Drivers", String.join("\n", drivers));
     }
 
+    // ----------------- Ride history filter bar -----------------
+
+    private class RideFilterBar extends JPanel {
+        private static final long serialVersionUID = 1L;
+
+        private final JComboBox<String> statusBox = new JComboBox<>(
+                new String[]{"All", "Pending", "Confirmed", "In Progress", "Completed", "Cancelled"});
+        private final JTextField fromField = new JTextField(8);
+        private final JTextField toField = new JTextField(8);
+        private final JTextField minFareField = new JTextField(5);
+        private final JTextField maxFareField = new JTextField(5);
+        private final JButton applyBtn = createModernButton("Apply", PRIMARY_COLOR);
+        private final JButton prevBtn = createModernButton("< Prev", PRIMARY_DARK);
+        private final JButton nextBtn = createModernButton("Next >", PRIMARY_DARK);
+        private final JLabel pageLabel = new JLabel();
+        private int offset;
+
+        // The filter last applied; Prev/Next and sorting page through it, not through
+        // whatever has been typed into the fields since
+        private boolean reread = true;
+        private String appliedStatus;
+        private LocalDate appliedFrom;
+        private LocalDate appliedTo;
+        private Double appliedMinFare;
+        private Double appliedMaxFare;
+
+        RideFilterBar() {
+            super(new FlowLayout(FlowLayout.LEFT, 6, 6));
+            setBackground(BACKGROUND_COLOR);
+            addField("Status", statusBox);
+            addField("From (YYYY-MM-DD)", fromField);
+            addField("To", toField);
+            addField("Fare min", minFareField);
+            addField("max", maxFareField);
+            add(applyBtn);
+            pageLabel.setFont(FONT_SMALL);
+            add(prevBtn);
+            add(pageLabel);
+            add(nextBtn);
+        }
+
+        private void addField(String label, JComponent field) {
+            JLabel l = new JLabel(label);
+            l.setFont(FONT_SMALL);
+            field.setFont(FONT_SMALL);
+            add(l);
+            add(field);
+        }
+
+        // New filters start from the first page; Prev/Next move one page and re-run the action
+        void onApply(Runnable action) {
+            applyBtn.addActionListener(e -> { reread = true; firstPage(); action.run(); });
+            prevBtn.addActionListener(e -> { offset = Math.max(0, offset - RideSearch.DEFAULT_LIMIT); action.run(); });
+            nextBtn.addActionListener(e -> { offset += RideSearch.DEFAULT_LIMIT; action.run(); });
+        }
+
+        void firstPage() {
+            offset = 0;
+        }
+
+        // Move to the last page of total rows; returns its offset
+        int lastPage(int total, int limit) {
+            offset = total <= 0 ? 0 : (total - 1) / limit * limit;
+            return offset;
+        }
+
+        void showPage(int from, int shown, int total) {
+            pageLabel.setText(total == 0 ? "No rides"
+                    : "Rides " + (from + 1) + "-" + (from + shown) + " of " + total);
+            prevBtn.setEnabled(from > 0);
+            nextBtn.setEnabled(from + shown < total);
+        }
+
+        // Copy the applied filter into the search, reading the fields first if Apply was just
+        // pressed; throws on unparsable input and keeps the previous filter
+        void applyTo(RideSearch search) {
+            if (reread) {
+                reread = false;
+                LocalDate from = parseDate(fromField.getText(), "From");
+                LocalDate to = parseDate(toField.getText(), "To");
+                Double minFare = parseFare(minFareField.getText(), "Fare min");
+                Double maxFare = parseFare(maxFareField.getText(), "Fare max");
+                appliedStatus = (String) statusBox.getSelectedItem();
+                appliedFrom = from;
+                appliedTo = to;
+                appliedMinFare = minFare;
+                appliedMaxFare = maxFare;
+            }
+
+            if (appliedStatus == null || appliedStatus.equals("All")) search.withStatuses();
+            else search.withStatuses(appliedStatus);
+
+            // "To" is inclusive for the user, exclusive in SQL
+            search.between(appliedFrom == null ? null : java.sql.Timestamp.valueOf(appliedFrom.atStartOfDay()),
+                           appliedTo == null ? null : java.sql.Timestamp.valueOf(appliedTo.plusDays(1).atStartOfDay()));
+
+            search.fareBetween(appliedMinFare, appliedMaxFare);
+            search.page(RideSearch.DEFAULT_LIMIT, offset);
+        }
+
+        private LocalDate parseDate(String text, String field) {
+            if (text == null || text.isBlank()) return null;
+            try {
+                return LocalDate.parse(text.trim());
+            } catch (Exception e) {
+                throw new IllegalArgumentException(field + " must be a date like 2025-01-31.");
+            }
+        }
+
+        private Double parseFare(String text, String field) {
+            if (text == null || text.isBlank()) return null;
+            try {
+                return Double.parseDouble(text.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(field + " must be a number.");
+            }
+        }
+    }
+
     // ----------------- Small custom rounded panel -----------------
 
     private static class RoundedPanel extends JPanel {
@@ -13,11 +13,25 @@ public class RydexApp {
     private static RideAssistantDAO assistantDAO = new RideAssistantDAO();
 
     public static void main(String[] args) {
+        // Non-interactive replay: RydexApp --batch <script> [--threads N]
+        if (args.length > 0 && args[0].equals("--batch")) {
+            try {
+                BatchRunner.runFromArgs(args);
+            } catch (Exception e) {
+                Log.error("Batch run failed", "error", e.getMessage());
+            }
+            return;
+        }
+
         System.out.println("╔════════════╗");
         System.out.println("║   Rydex    ║");
         System.out.println("╚════════════╝");
 
-        DatabaseConfig.getConnection(); // connect database
+        // connect database, migrate the schema and start the outbox relay and earnings rollup
+        if (!DatabaseConfig.testConnection()) {
+            System.out.println("Database unavailable or schema could not be brought up to date; see the log. Exiting.");
+            return;
+        }
 
         boolean running = true;
         while (running) {
@@ -165,7 +179,7 @@ public class RydexApp {
             System.out.println("Could not determine fare for ride.");
             return;
         }
-        boolean ok = rideDAO.completeRideTransaction(rideId, driver.getUserId(), fare);
+        boolean ok = rideDAO.completeRide(rideId, driver.getUserId(), fare);
         System.out.println(ok ? "Ride completed and earnings updated." : "Failed to complete ride.");
         // If successful, update in-memory driver earnings
         if (ok)
@@ -282,7 +296,7 @@ public class RydexApp {
         double amount = getDoubleInput();
         if (amount > 0) {
             rider.addBalance(amount);
-            userDAO.updateRiderBalance(rider.getUserId(), rider.getBalance());
+            userDAO.addRiderBalance(rider.getUserId(), amount);
 
             // Reload from database to confirm the update and show real-time balance
             Rider updated = userDAO.loginRider(rider.getEmail(), rider.getPassword());
@@ -330,7 +344,7 @@ public class RydexApp {
             return;
         }
         Route selected = routes.get(rIndex);
-        double fare = calculateFare(selected.getDistanceKm());
+        double fare = calculateFare(selected);
 
         System.out.println("\nRoute: " + selected);
         System.out.println("Fare: PKR " + fare);
@@ -366,7 +380,7 @@ public class RydexApp {
                             double amt = getDoubleInput();
                             if (amt > 0) {
                                 rider.addBalance(amt);
-                                userDAO.updateRiderBalance(rider.getUserId(), rider.getBalance());
+                                userDAO.addRiderBalance(rider.getUserId(), amt);
                                 if (rider.getBalance() >= fare)
                                     walletOk = true;
                             } else {
@@ -388,6 +402,7 @@ public class RydexApp {
             return;
         }
 
+        SurgePricing.get().recordRequest(selected);
         int rideId = rideDAO.createRide(rider.getUserId(), driverId, selected.getRouteId(), fare);
         if (rideId <= 0) {
             System.out.println("Failed to create ride.");
@@ -396,8 +411,8 @@ public class RydexApp {
 
         boolean paymentSuccess = false;
         if (method.equals("Wallet")) {
-            if (walletOk && rider.deductBalance(fare)) {
-                userDAO.updateRiderBalance(rider.getUserId(), rider.getBalance());
+            if (walletOk && userDAO.deductRiderBalance(rider.getUserId(), fare)) {
+                rider.deductBalance(fare);
                 paymentSuccess = true;
             } else {
                 paymentSuccess = false;
@@ -443,8 +458,8 @@ public class RydexApp {
         }
     }
 
-    private static double calculateFare(double km) {
-        return 100 + km * 50; // PKR calculation
+    private static double calculateFare(Route route) {
+        return SurgePricing.get().fare(route);
     }
 
     // ===================== VIEW DETAILS =====================
@@ -520,7 +535,7 @@ public class RydexApp {
                 success = payment.processPayment(amount);
                 method = "Wallet";
                 if (success)
-                    userDAO.updateRiderBalance(rider.getUserId(), rider.getBalance());
+                    success = userDAO.deductRiderBalance(rider.getUserId(), amount);
             }
             default -> {
                 System.out.println("Invalid method!");
@@ -0,0 +1,201 @@
+// RydexEvents.java - Java Flight Recorder events for Rydex business operations
+//
+// Each event type is a small jdk.jfr.Event subclass under the "Rydex" category, so a
+// recording shows bookings, DAO statements, ride transitions, payments and pool waits on
+// the same timeline as GC, lock contention and allocation. Start a recording with e.g.
+//   java -XX:StartFlightRecording=filename=rydex.jfr,settings=profile ...
+// When no recording has an event enabled, begin()/commit() do nothing and the JIT
+// removes the allocation, so the calls can stay on hot paths.
+//
+// Call sites use the begin-at-start / done-at-return idiom:
+//   RydexEvents.RideTransition event = RydexEvents.RideTransition.start(rideId, driverId, "Confirmed");
+//   ...
+//   return event.done(rows > 0);
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+public final class RydexEvents {
+
+    private RydexEvents() {}
+
+    @Name("rydex.WizardStep")
+    @Label("Booking Wizard Step")
+    @Category({"Rydex", "Booking"})
+    @Description("Handling of a Next/Confirm click in a booking wizard, including its availability checks")
+    @StackTrace(false)
+    public static class WizardStep extends Event {
+        @Label("UI") String ui;
+        @Label("Step") String step;
+        @Label("Next Step") String nextStep;
+
+        public static WizardStep start(String ui, String step) {
+            WizardStep e = new WizardStep();
+            e.begin();
+            e.ui = ui;
+            e.step = step;
+            return e;
+        }
+
+        public void done(String nextStep) {
+            if (shouldCommit()) {
+                this.nextStep = nextStep;
+                commit();
+            }
+        }
+    }
+
+    @Name("rydex.DaoCall")
+    @Label("DAO Statement")
+    @Category({"Rydex", "Database"})
+    @Description("One JDBC statement execution; for queries the duration runs until the result set is consumed or closed")
+    @StackTrace(false)
+    public static class DaoCall extends Event {
+        @Label("SQL Shape") String sql;
+        @Label("Rows") long rows;
+        @Label("Failed") boolean failed;
+
+        private static final EventType TYPE = EventType.getEventType(DaoCall.class);
+
+        // True while some recording wants these events (used to switch the JDBC proxies on)
+        public static boolean isRecording() {
+            return TYPE.isEnabled();
+        }
+
+        public static DaoCall start(String sql) {
+            DaoCall e = new DaoCall();
+            e.begin();
+            e.sql = sql;
+            return e;
+        }
+
+        public void done(long rows, boolean failed) {
+            if (shouldCommit()) {
+                this.sql = QueryStats.normalize(sql);
+                this.rows = rows;
+                this.failed = failed;
+                commit();
+            }
+        }
+    }
+
+    @Name("rydex.RideTransition")
+    @Label("Ride Transition")
+    @Category({"Rydex", "Rides"})
+    @Description("A ride moving to a new status through RideDAO")
+    @StackTrace(false)
+    public static class RideTransition extends Event {
+        @Label("Ride Id") int rideId;
+        @Label("Driver Id") int driverId;
+        @Label("Target Status") String toStatus;
+        @Label("Succeeded") boolean success;
+
+        public static RideTransition start(int rideId, int driverId, String toStatus) {
+            RideTransition e = new RideTransition();
+            e.begin();
+            e.rideId = rideId;
+            e.driverId = driverId;
+            e.toStatus = toStatus;
+            return e;
+        }
+
+        public boolean done(boolean success) {
+            if (shouldCommit()) {
+                this.success = success;
+                commit();
+            }
+            return success;
+        }
+
+        // For ride creation, where the id is only known at the end (-1 on failure)
+        public int done(int newRideId) {
+            if (shouldCommit()) {
+                this.rideId = newRideId;
+                this.success = newRideId > 0;
+                commit();
+            }
+            return newRideId;
+        }
+    }
+
+    @Name("rydex.Payment")
+    @Label("Payment")
+    @Category({"Rydex", "Payments"})
+    @Description("Recording a payment or updating its status through PaymentDAO")
+    @StackTrace(false)
+    public static class Payment extends Event {
+        @Label("Operation") String operation;
+        @Label("Ride Id") int rideId;
+        @Label("Payment Id") int paymentId;
+        @Label("Method") String method;
+        @Label("Status") String status;
+        @Label("Amount") double amount;
+        @Label("Succeeded") boolean success;
+
+        public static Payment start(String operation, int rideId, int paymentId, String method, String status, double amount) {
+            Payment e = new Payment();
+            e.begin();
+            e.operation = operation;
+            e.rideId = rideId;
+            e.paymentId = paymentId;
+            e.method = method;
+            e.status = status;
+            e.amount = amount;
+            return e;
+        }
+
+        public boolean done(boolean success) {
+            if (shouldCommit()) {
+                this.success = success;
+                commit();
+            }
+            return success;
+        }
+
+        // For operations that return an id (-1 on failure)
+        public int done(int id) {
+            if (shouldCommit()) {
+                if (paymentId <= 0) this.paymentId = id;
+                this.success = id > 0;
+                commit();
+            }
+            return id;
+        }
+    }
+
+    @Name("rydex.ConnectionAcquire")
+    @Label("Connection Acquire")
+    @Category({"Rydex", "Database"})
+    @Description("Borrowing a connection from the pool, including any wait for one to be returned")
+    public static class ConnectionAcquire extends Event {
+        @Label("Opened New Connection") boolean opened;
+        @Label("Waited") boolean waited;
+        @Label("Timed Out") boolean timedOut;
+        @Label("Pool Size") int poolSize;
+        @Label("Connections Open") int open;
+        @Label("Idle Connections") int idle;
+
+        public static ConnectionAcquire start(int poolSize) {
+            ConnectionAcquire e = new ConnectionAcquire();
+            e.begin();
+            e.poolSize = poolSize;
+            return e;
+        }
+
+        public void done(boolean opened, boolean waited, boolean timedOut, int open, int idle) {
+            if (shouldCommit()) {
+                this.opened = opened;
+                this.waited = waited;
+                this.timedOut = timedOut;
+                this.open = open;
+                this.idle = idle;
+                commit();
+            }
+        }
+    }
+}
@@ -313,16 +313,17 @@ public class RydexFx extends Application {
 
     private void showCard(String cardName) {
         Platform.runLater(() -> {
-            System.out.println("[UI] Switching to card: " + cardName);
-            System.out
-                    .println("[UI] mainContainer size: " + mainContainer.getWidth() + "x" + mainContainer.getHeight());
+            Log.debug("[UI] Switching to card", "card", cardName,
+                    "size", mainContainer.getWidth() + "x" + mainContainer.getHeight());
             for (Map.Entry<String, Pane> entry : namedCards.entrySet()) {
                 boolean visible = entry.getKey().equals(cardName);
                 Pane p = entry.getValue();
                 p.setVisible(visible);
 
-                System.out.println("[UI] Card '" + entry.getKey() + "' visible=" + visible + " class="
-                        + p.getClass().getSimpleName() + " style=" + p.getStyle() + " bounds=" + p.getBoundsInParent());
+                if (Log.isEnabled(Log.Level.DEBUG)) {
+                    Log.debug("[UI] Card", "card", entry.getKey(), "visible", visible, "class", p.getClass().getSimpleName(),
+                            "style", p.getStyle(), "bounds", p.getBoundsInParent());
+                }
 
                 if (visible) {
                     p.toFront();
@@ -712,8 +713,7 @@ public class RydexFx extends Application {
 
         int ridesCompleted = 0;
         try {
-            List<String> rides = rideDAO.getRidesByDriver(driver.getUserId());
-            ridesCompleted = rides == null ? 0 : rides.size();
+            ridesCompleted = rideDAO.countRides(new RideSearch().forDriver(driver.getUserId()));
         } catch (Exception ignored) {
         }
 
@@ -886,8 +886,7 @@ public class RydexFx extends Application {
 
         int ridesCount = 0;
         try {
-            List<String> rides = rideDAO.getRidesByRider(rider.getUserId());
-            ridesCount = rides == null ? 0 : rides.size();
+            ridesCount = rideDAO.countRides(new RideSearch().forRider(rider.getUserId()));
         } catch (Exception ignored) {
         }
 
@@ -1143,7 +1142,7 @@ public class RydexFx extends Application {
                 int idx = val.intValue();
                 if (idx >= 0 && idx < routes.size()) {
                     selectedRoute = routes.get(idx);
-                    computedFare = calculateFare(selectedRoute.getDistanceKm());
+                    computedFare = calculateFare(selectedRoute);
                     farePreview.setText(String.format("Fare: PKR %.2f", computedFare));
                 }
             });
@@ -1205,7 +1204,7 @@ public class RydexFx extends Application {
                             return;
                         }
                         rider.addBalance(a);
-                        userDAO.updateRiderBalance(rider.getUserId(), rider.getBalance());
+                        userDAO.addRiderBalance(rider.getUserId(), a);
                         walletBalanceLabel.setText("PKR " + String.format("%. 2f", rider.getBalance()));
                         showMessage("Success", "Wallet topped up", PRIMARY_COLOR);
                     } catch (Exception ex) {
@@ -1298,6 +1297,12 @@ public class RydexFx extends Application {
         }
 
         private void stepNext() {
+            RydexEvents.WizardStep event = RydexEvents.WizardStep.start("JavaFX", "STEP" + (currentStep + 1));
+            handleNext();
+            event.done("STEP" + (currentStep + 1));
+        }
+
+        private void handleNext() {
             if (currentStep == 0) {
                 // validate driver selection
                 if (driversList.getSelectionModel().getSelectedIndex() < 0 || driversModel.isEmpty()
@@ -1362,7 +1367,7 @@ public class RydexFx extends Application {
                                         return;
                                     }
                                     rider.addBalance(a);
-                                    userDAO.updateRiderBalance(rider.getUserId(), rider.getBalance());
+                                    userDAO.addRiderBalance(rider.getUserId(), a);
                                     walletBalanceLabel.setText("PKR " + String.format("%.2f", rider.getBalance()));
                                     walletOk = rider.getBalance() >= computedFare;
                                     if (!walletOk) {
@@ -1401,6 +1406,7 @@ public class RydexFx extends Application {
 
                 String assistantName = assistantCheck.isSelected() ? assistantNameField.getText().trim() : null;
 
+                SurgePricing.get().recordRequest(selectedRoute);
                 int rideId = rideDAO.createRide(rider.getUserId(), selectedDriverId, selectedRoute.getRouteId(),
                         computedFare);
                 if (rideId <= 0) {
@@ -1410,8 +1416,8 @@ public class RydexFx extends Application {
 
                 boolean paymentSuccess = false;
                 if ("Wallet".equals(selectedPaymentMethod)) {
-                    if (walletOk && rider.deductBalance(computedFare)) {
-                        userDAO.updateRiderBalance(rider.getUserId(), rider.getBalance());
+                    if (walletOk && userDAO.deductRiderBalance(rider.getUserId(), computedFare)) {
+                        rider.deductBalance(computedFare);
                         paymentSuccess = true;
                     }
                 } else if ("Card".equals(selectedPaymentMethod)) {
@@ -1463,8 +1469,8 @@ public class RydexFx extends Application {
         }
     }
 
-    private double calculateFare(double km) {
-        return 100 + km * 50;
+    private double calculateFare(Route route) {
+        return SurgePricing.get().fare(route);
     }
 
     // ----------------- Availability helpers -----------------
@@ -1676,7 +1682,7 @@ public class RydexFx extends Application {
                 return;
             }
 
-            boolean ok = rideDAO.completeRideTransaction(rideId, driver.getUserId(), fare);
+            boolean ok = rideDAO.completeRide(rideId, driver.getUserId(), fare);
             if (ok) {
                 driver.addEarnings(fare);
                 showMessage("Success", "Ride completed and earnings updated.", PRIMARY_COLOR);
@@ -1879,7 +1885,7 @@ public class RydexFx extends Application {
                 }
 
                 rider.addBalance(a);
-                userDAO.updateRiderBalance(rider.getUserId(), rider.getBalance());
+                userDAO.addRiderBalance(rider.getUserId(), a);
                 showMessage("Success",
                         "Added successfully.  New balance: PKR " + String.format("%.2f", rider.getBalance()),
                         PRIMARY_COLOR);
@@ -1891,8 +1897,7 @@ public class RydexFx extends Application {
     }
 
     private void viewRiderRides(Rider rider) {
-        List<String> rides = rideDAO.getRidesByRider(rider.getUserId());
-        if (rides == null || rides.isEmpty()) {
+        if (rideDAO.countRides(new RideSearch().forRider(rider.getUserId())) == 0) {
             showMessage("My Rides", "No rides yet!", PRIMARY_DARK);
             return;
         }
@@ -1926,27 +1931,18 @@ public class RydexFx extends Application {
 
         ObservableList<RideTableRow> data = FXCollections.observableArrayList();
 
-        Runnable populate = () -> {
-            data.clear();
-            for (String s : rideDAO.getRidesByRider(rider.getUserId())) {
-                try {
-                    String[] parts = s.split(" \\| ");
-                    if (parts.length < 6)
-                        continue;
-
-                    String id = parts[0].replace("Ride#", "").trim();
-                    String route = parts[1].trim();
-                    String other = parts[2].contains(": ") ? parts[2].split(":", 2)[1].trim() : parts[2].trim();
-                    String fare = parts[3].replace("Fare:  PKR", "").trim();
-                    String status = parts[4].replace("Status:", "").trim();
-                    String time = parts[5].replace("Time:", "").trim();
-
-                    data.add(new RideTableRow(id, route, other, "PKR " + fare, status, time));
-                } catch (Exception ex) {
-                    // skip malformed
-                }
-            }
-        };
+        // Sort and filter run in SQL; the table only ever holds one page of results
+        RideSearch search = new RideSearch().forRider(rider.getUserId());
+        RideFilterBar filters = new RideFilterBar();
+        Runnable populate = () -> populateRideTable(data, filters, search);
+        routeCol.setSortable(false);
+        otherCol.setSortable(false);
+        installServerSort(table, Map.of(
+                idCol, RideSearch.SortKey.RIDE_ID,
+                fareCol, RideSearch.SortKey.FARE,
+                statusCol, RideSearch.SortKey.STATUS,
+                timeCol, RideSearch.SortKey.RIDE_TIME), search, () -> { filters.firstPage(); populate.run(); });
+        filters.onApply(populate);
 
         populate.run();
         table.setItems(data);
@@ -2000,17 +1996,16 @@ public class RydexFx extends Application {
 
         VBox layout = new VBox(10);
         layout.setPadding(new Insets(10));
-        layout.getChildren().addAll(table, btns);
+        layout.getChildren().addAll(filters, table, btns);
         VBox.setVgrow(table, Priority.ALWAYS);
 
-        Scene scene = new Scene(layout, 760, 420);
+        Scene scene = new Scene(layout, 760, 470);
         stage.setScene(scene);
         stage.showAndWait();
     }
 
     private void viewDriverRides(Driver driver) {
-        List<String> rides = rideDAO.getRidesByDriver(driver.getUserId());
-        if (rides == null || rides.isEmpty()) {
+        if (rideDAO.countRides(new RideSearch().forDriver(driver.getUserId())) == 0) {
             showMessage("My Rides", "No rides yet!", PRIMARY_DARK);
             return;
         }
@@ -2044,27 +2039,18 @@ public class RydexFx extends Application {
 
         ObservableList<RideTableRow> data = FXCollections.observableArrayList();
 
-        Runnable populate = () -> {
-            data.clear();
-            for (String s : rideDAO.getRidesByDriver(driver.getUserId())) {
-                try {
-                    String[] parts = s.split(" \\| ");
-                    if (parts.length < 6)
-                        continue;
-
-                    String id = parts[0].replace("Ride#", "").trim();
-                    String route = parts[1].trim();
-                    String other = parts[2].contains(":") ? parts[2].split(":", 2)[1].trim() : parts[2].trim();
-                    String fare = parts[3].replace("Fare: PKR", "").trim();
-                    String status = parts[4].replace("Status:", "").trim();
-                    String time = parts[5].replace("Time:", "").trim();
-
-                    data.add(new RideTableRow(id, route, other, "PKR " + fare, status, time));
-                } catch (Exception ex) {
-                    // skip malformed
-                }
-            }
-        };
+        // Sort and filter run in SQL; the table only ever holds one page of results
+        RideSearch search = new RideSearch().forDriver(driver.getUserId());
+        RideFilterBar filters = new RideFilterBar();
+        Runnable populate = () -> populateRideTable(data, filters, search);
+        routeCol.setSortable(false);
+        otherCol.setSortable(false);
+        installServerSort(table, Map.of(
+                idCol, RideSearch.SortKey.RIDE_ID,
+                fareCol, RideSearch.SortKey.FARE,
+                statusCol, RideSearch.SortKey.STATUS,
+                timeCol, RideSearch.SortKey.RIDE_TIME), search, () -> { filters.firstPage(); populate.run(); });
+        filters.onApply(populate);
 
         populate.run();
         table.setItems(data);
@@ -2146,14 +2132,60 @@ public class RydexFx extends Application {
 
         VBox layout = new VBox(10);
         layout.setPadding(new Insets(10));
-        layout.getChildren().addAll(table, btns);
+        layout.getChildren().addAll(filters, table, btns);
         VBox.setVgrow(table, Priority.ALWAYS);
 
-        Scene scene = new Scene(layout, 820, 460);
+        Scene scene = new Scene(layout, 820, 510);
         stage.setScene(scene);
         stage.showAndWait();
     }
 
+    // Reload one page of ride history for the current filters and sort
+    private void populateRideTable(ObservableList<RideTableRow> data, RideFilterBar filters, RideSearch search) {
+        try {
+            filters.applyTo(search);
+        } catch (IllegalArgumentException ex) {
+            showMessage("Invalid Filter", ex.getMessage(), PRIMARY_DARK);
+            return;
+        }
+        int total = rideDAO.countRides(search);
+        // Rides cancelled or confirmed out of the filter can leave the page past the end
+        if (search.getOffset() >= total && search.getOffset() > 0) {
+            search.page(search.getLimit(), filters.lastPage(total, search.getLimit()));
+        }
+        List<RideSummary> rides = rideDAO.searchRides(search);
+        data.clear();
+        for (RideSummary r : rides) {
+            data.add(new RideTableRow(String.valueOf(r.getRideId()), r.getRouteLabel(), r.getCounterpartyName(),
+                    String.format("PKR %.2f", r.getFare()), r.getStatus(), String.valueOf(r.getRideTime())));
+        }
+        filters.showPage(search.getOffset(), rides.size(), total);
+    }
+
+    // Column header sorting changes the ORDER BY and re-queries instead of sorting rows in
+    // memory. Only re-query when the key or direction actually changed, because TableView
+    // also invokes the sort policy when its items are replaced.
+    private void installServerSort(TableView<RideTableRow> table,
+            Map<TableColumn<RideTableRow, String>, RideSearch.SortKey> keys,
+            RideSearch search, Runnable populate) {
+        table.setSortPolicy(t -> {
+            RideSearch.SortKey key = RideSearch.SortKey.RIDE_TIME;
+            boolean asc = false;
+            if (!t.getSortOrder().isEmpty()) {
+                RideSearch.SortKey mapped = keys.get(t.getSortOrder().get(0));
+                if (mapped != null) {
+                    key = mapped;
+                    asc = t.getSortOrder().get(0).getSortType() == TableColumn.SortType.ASCENDING;
+                }
+            }
+            if (key != search.getSortKey() || asc != search.isAscending()) {
+                search.sortBy(key, asc);
+                populate.run();
+            }
+            return true;
+        });
+    }
+
     private void submitFeedback(Rider rider) {
         List<String> rides = rideDAO.getRidesByRider(rider.getUserId());
         if (rides == null || rides.isEmpty()) {
@@ -2209,6 +2241,136 @@ public class RydexFx extends Application {
         }
     }
 
+    // Filter controls shown above the ride history tables
+    private class RideFilterBar extends FlowPane {
+        private final ComboBox<String> statusBox = new ComboBox<>(FXCollections.observableArrayList(
+                "All", "Pending", "Confirmed", "In Progress", "Completed", "Cancelled"));
+        private final TextField fromField = new TextField();
+        private final TextField toField = new TextField();
+        private final TextField minFareField = new TextField();
+        private final TextField maxFareField = new TextField();
+        private final Button applyBtn = createModernButton("Apply", PRIMARY_COLOR);
+        private final Button prevBtn = createModernButton("< Prev", PRIMARY_DARK);
+        private final Button nextBtn = createModernButton("Next >", PRIMARY_DARK);
+        private final Label pageLabel = new Label();
+        private int offset;
+
+        // The filter last applied; Prev/Next and sorting page through it, not through
+        // whatever has been typed into the fields since
+        private boolean reread = true;
+        private String appliedStatus;
+        private LocalDate appliedFrom;
+        private LocalDate appliedTo;
+        private Double appliedMinFare;
+        private Double appliedMaxFare;
+
+        RideFilterBar() {
+            super(6, 6);
+            setAlignment(Pos.CENTER_LEFT);
+            statusBox.getSelectionModel().selectFirst();
+            fromField.setPromptText("From YYYY-MM-DD");
+            toField.setPromptText("To YYYY-MM-DD");
+            minFareField.setPromptText("Fare min");
+            maxFareField.setPromptText("Fare max");
+            fromField.setPrefColumnCount(8);
+            toField.setPrefColumnCount(8);
+            minFareField.setPrefColumnCount(5);
+            maxFareField.setPrefColumnCount(5);
+            applyBtn.setPrefSize(90, 30);
+
+            Label statusLabel = new Label("Status");
+            statusLabel.setFont(FONT_SMALL);
+            prevBtn.setPrefSize(80, 30);
+            nextBtn.setPrefSize(80, 30);
+            pageLabel.setFont(FONT_SMALL);
+            getChildren().addAll(statusLabel, statusBox, fromField, toField, minFareField, maxFareField, applyBtn,
+                    prevBtn, pageLabel, nextBtn);
+        }
+
+        // New filters start from the first page; Prev/Next move one page and re-run the action
+        void onApply(Runnable action) {
+            applyBtn.setOnAction(e -> {
+                reread = true;
+                firstPage();
+                action.run();
+            });
+            prevBtn.setOnAction(e -> {
+                offset = Math.max(0, offset - RideSearch.DEFAULT_LIMIT);
+                action.run();
+            });
+            nextBtn.setOnAction(e -> {
+                offset += RideSearch.DEFAULT_LIMIT;
+                action.run();
+            });
+        }
+
+        void firstPage() {
+            offset = 0;
+        }
+
+        // Move to the last page of total rows; returns its offset
+        int lastPage(int total, int limit) {
+            offset = total <= 0 ? 0 : (total - 1) / limit * limit;
+            return offset;
+        }
+
+        void showPage(int from, int shown, int total) {
+            pageLabel.setText(total == 0 ? "No rides"
+                    : "Rides " + (from + 1) + "-" + (from + shown) + " of " + total);
+            prevBtn.setDisable(from <= 0);
+            nextBtn.setDisable(from + shown >= total);
+        }
+
+        // Copy the applied filter into the search, reading the fields first if Apply was just
+        // pressed; throws on unparsable input and keeps the previous filter
+        void applyTo(RideSearch search) {
+            if (reread) {
+                reread = false;
+                LocalDate from = parseDate(fromField.getText(), "From");
+                LocalDate to = parseDate(toField.getText(), "To");
+                Double minFare = parseFare(minFareField.getText(), "Fare min");
+                Double maxFare = parseFare(maxFareField.getText(), "Fare max");
+                appliedStatus = statusBox.getValue();
+                appliedFrom = from;
+                appliedTo = to;
+                appliedMinFare = minFare;
+                appliedMaxFare = maxFare;
+            }
+
+            if (appliedStatus == null || appliedStatus.equals("All"))
+                search.withStatuses();
+            else
+                search.withStatuses(appliedStatus);
+
+            // "To" is inclusive for the user, exclusive in SQL
+            search.between(appliedFrom == null ? null : java.sql.Timestamp.valueOf(appliedFrom.atStartOfDay()),
+                    appliedTo == null ? null : java.sql.Timestamp.valueOf(appliedTo.plusDays(1).atStartOfDay()));
+
+            search.fareBetween(appliedMinFare, appliedMaxFare);
+            search.page(RideSearch.DEFAULT_LIMIT, offset);
+        }
+
+        private LocalDate parseDate(String text, String field) {
+            if (text == null || text.isBlank())
+                return null;
+            try {
+                return LocalDate.parse(text.trim());
+            } catch (Exception e) {
+                throw new IllegalArgumentException(field + " must be a date like 2025-01-31.");
+            }
+        }
+
+        private Double parseFare(String text, String field) {
+            if (text == null || text.isBlank())
+                return null;
+            try {
+                return Double.parseDouble(text.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(field + " must be a number.");
+            }
+        }
+    }
+
     // Helper class for TableView
     public static class RideTableRow {
         private final SimpleStringProperty rideId;
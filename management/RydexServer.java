@@ -0,0 +1,637 @@
+//javac -cp "libs/mysql-connector-j-9.5.0.jar" -d out management\*.java
+//java -cp "out;libs/mysql-connector-j-9.5.0.jar" RydexServer 8080 32
+//
+// RydexServer.java - Headless HTTP/JSON entry point (no Swing, JavaFX or Scanner).
+// Built on the JDK's com.sun.net.httpserver with one virtual thread per request (JDK 21+),
+// and a bounded DatabaseConfig pool so thousands of concurrent clients queue for a
+// connection instead of fighting over the single desktop connection.
+//
+// Endpoints (JSON bodies, "Authorization: Bearer <token>" after login):
+//   POST /api/login                 {"role":"rider|driver","email":..,"password":..}
+//   GET  /api/routes
+//   GET  /api/drivers               drivers and their vehicle (null when they have none)
+//   POST /api/drivers/location      {"lat":..,"lng":..,"t":..} or {"points":[{..},..]}; t in epoch ms,
+//                                   default now; 429 when the ingest pipeline is overloaded       (driver)
+//   GET  /api/drivers/nearby?lat=&lng=&k=   nearest drivers with a recent position, in km
+//   GET  /api/quote?routeId=        fare at the current surge multiplier, and the multiplier
+//   POST /api/rides                 {"driverId":..,"routeId":..,"paymentMethod":..,"assistantName":..}   (rider)
+//                                   without driverId the DispatchEngine picks one; "partySize" defaults to
+//                                   the rider plus the assistant, if any; "pool":true shares a trip with
+//                                   other riders on the same or an overlapping route for a lower fare
+//   GET  /api/rides?status=&from=&to=&routeId=&minFare=&maxFare=&sort=&order=&limit=&offset=
+//   POST /api/rides/{id}/confirm|start|complete                                                      (driver)
+//   POST /api/rides/{id}/cancel                                                                     (rider or driver)
+//   GET  /api/rides/{id}/trace?path=true   recorded path: points, driven km and its fare; with path,
+//                                   every [t, lat, lng]                                          (rider or driver)
+//   GET  /api/wallet                balance (rider) or total earnings (driver)
+//   POST /api/wallet/topup          {"amount":..}                                                   (rider)
+//   GET  /api/wallet/earnings?from=&to=   earnings per day, default the last 7 days                (driver)
+//   GET  /metrics                   Prometheus text format (see Metrics)
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class RydexServer {
+
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final long SESSION_TTL_MS = Long.getLong("rydex.session.ttl.ms", 30 * 60_000);
+
+    private final UserDAO userDAO = new UserDAO();
+    private final RideDAO rideDAO = new RideDAO();
+    private final RouteDAO routeDAO = new RouteDAO();
+    private final VehicleDAO vehicleDAO = new VehicleDAO();
+    private final EarningsDAO earningsDAO = new EarningsDAO();
+    private final BookingService bookingService = new BookingService();
+
+    // token -> logged in user; a token expires SESSION_TTL_MS after its last use, and expired
+    // ones are swept on login
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private static class Session {
+        final int userId;
+        final String role;     // "Rider" or "Driver"
+        volatile long lastUsed = System.currentTimeMillis();
+
+        Session(int userId, String role) {
+            this.userId = userId;
+            this.role = role;
+        }
+
+        boolean expired(long now) { return now - lastUsed > SESSION_TTL_MS; }
+
+        boolean isRider() { return role.equals("Rider"); }
+        boolean isDriver() { return role.equals("Driver"); }
+    }
+
+    // Thrown by handlers to produce a JSON error with the given HTTP status
+    private static class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    public void start(int port, int poolSize) throws IOException {
+        DatabaseConfig.enablePooling(poolSize, 5000);
+        // Never serve on a partly migrated schema: queries would hit missing columns
+        if (!SchemaMigrator.migrate()) throw new IOException("Schema migration failed; not starting the server");
+        RideEventLog.get();
+        DomainEvents.bus();
+        OutboxRelay.get();
+        EarningsRollup.start();
+        BalanceCache.get();
+        DispatchEngine.get();   // load the driver queues before the first auto-assigned booking
+        LocationIngest.get();
+        SurgePricing.get();
+
+        server = HttpServer.create(new InetSocketAddress(port), 4096);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+        server.createContext("/metrics", this::metrics);
+        server.start();
+        Log.info("Rydex server listening", "port", port);
+    }
+
+    public void stop() {
+        if (server != null) server.stop(1);
+        if (executor != null) executor.shutdown();
+        DomainEvents.flush();       // credit earnings of the last completions before the pool closes
+        OutboxRelay relay = OutboxRelay.get();
+        if (relay != null) relay.stop();
+        EarningsRollup.stop();
+        BalanceCache cache = BalanceCache.get();
+        if (cache != null) cache.flush();
+        LocationIngest ingest = LocationIngest.get();
+        ingest.stop();
+        ingest.flush();
+        DatabaseConfig.closeConnection();
+    }
+
+    // Unauthenticated, like any scrape target; bind the port to localhost or firewall it
+    private void metrics(HttpExchange ex) throws IOException {
+        try {
+            byte[] bytes = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            ex.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(bytes);
+            }
+        } finally {
+            DatabaseConfig.releaseThreadConnections();
+            ex.close();
+        }
+    }
+
+    // ===================== DISPATCH =====================
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            String method = ex.getRequestMethod();
+            String[] parts = ex.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+            // parts[0] = "", parts[1] = "api"
+            String resource = parts.length > 2 ? parts[2] : "";
+            Object body;
+
+            switch (resource) {
+                case "login" -> body = login(requirePost(ex, method));
+                case "routes" -> body = listRoutes(requireGet(method));
+                case "drivers" -> body = drivers(ex, method, parts);
+                case "quote" -> body = quote(requireGet(method), query(ex));
+                case "rides" -> body = rides(ex, method, parts);
+                case "wallet" -> body = wallet(ex, method, parts);
+                default -> throw new ApiException(404, "Unknown endpoint");
+            }
+            send(ex, 200, body);
+        } catch (ApiException e) {
+            send(ex, e.status, Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            send(ex, 400, Map.of("error", String.valueOf(e.getMessage())));
+        } catch (Exception e) {
+            Log.error("Unhandled server error", "error", e);
+            send(ex, 500, Map.of("error", "Internal server error"));
+        } finally {
+            // UserDAO/RouteDAO/VehicleDAO never close their connection; hand it back here
+            DatabaseConfig.releaseThreadConnections();
+            ex.close();
+        }
+    }
+
+    // ===================== AUTH =====================
+    private Object login(Map<String, Object> req) {
+        String role = Json.getString(req, "role");
+        String email = Json.getString(req, "email");
+        String password = Json.getString(req, "password");
+        if (role == null || email == null || password == null) {
+            throw new ApiException(400, "role, email and password are required");
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        if (role.equalsIgnoreCase("rider")) {
+            Rider rider = userDAO.loginRider(email, password);
+            if (rider == null) throw new ApiException(401, "Invalid credentials");
+            out.put("token", newSession(rider.getUserId(), "Rider"));
+            out.put("userId", rider.getUserId());
+            out.put("name", rider.getName());
+            out.put("balance", rider.getBalance());
+        } else if (role.equalsIgnoreCase("driver")) {
+            Driver driver = userDAO.loginDriver(email, password);
+            if (driver == null) throw new ApiException(401, "Invalid credentials");
+            out.put("token", newSession(driver.getUserId(), "Driver"));
+            out.put("userId", driver.getUserId());
+            out.put("name", driver.getName());
+            out.put("totalEarnings", driver.getTotalEarnings());
+        } else {
+            throw new ApiException(400, "role must be rider or driver");
+        }
+        out.put("role", role.toLowerCase());
+        return out;
+    }
+
+    private String newSession(int userId, String role) {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(s -> s.expired(now));
+        String token = UUID.randomUUID().toString();
+        sessions.put(token, new Session(userId, role));
+        return token;
+    }
+
+    private Session requireSession(HttpExchange ex) {
+        String auth = ex.getRequestHeaders().getFirst("Authorization");
+        if (auth == null || !auth.startsWith("Bearer ")) throw new ApiException(401, "Missing bearer token");
+        String token = auth.substring("Bearer ".length()).trim();
+        Session s = sessions.get(token);
+        long now = System.currentTimeMillis();
+        if (s != null && s.expired(now)) {
+            sessions.remove(token, s);
+            s = null;
+        }
+        if (s == null) throw new ApiException(401, "Unknown or expired token");
+        s.lastUsed = now;
+        return s;
+    }
+
+    // ===================== ROUTES & QUOTES =====================
+    private Object listRoutes(String ignored) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Route r : routeDAO.getAllRoutes()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("routeId", r.getRouteId());
+            m.put("start", r.getStartLocation());
+            m.put("end", r.getEndLocation());
+            m.put("distanceKm", r.getDistanceKm());
+            if (r.hasCoordinates()) {
+                m.put("startLat", r.getStartLat());
+                m.put("startLng", r.getStartLng());
+                m.put("endLat", r.getEndLat());
+                m.put("endLng", r.getEndLng());
+            }
+            out.add(m);
+        }
+        return out;
+    }
+
+    private Object quote(String ignored, Map<String, String> q) {
+        int routeId = intParam(q, "routeId");
+        Route route = routeDAO.getRouteById(routeId);
+        if (route == null) throw new ApiException(404, "Route not found");
+        SurgePricing pricing = SurgePricing.get();
+        return Map.of("routeId", routeId, "fare", pricing.fare(route), "surge", pricing.multiplier(route));
+    }
+
+    // ===================== DRIVERS =====================
+    private Object drivers(HttpExchange ex, String method, String[] parts) throws IOException {
+        Session s = requireSession(ex);
+        if (parts.length == 3) return listDrivers(requireGet(method));
+
+        if (parts.length == 4 && parts[3].equals("location") && method.equals("POST")) {
+            requireDriver(s);
+            Map<String, Object> req = readBody(ex);
+            List<Map<String, Object>> points = new ArrayList<>();
+            if (req.get("points") instanceof List<?> list) {
+                for (Object p : list) {
+                    if (!(p instanceof Map<?, ?>)) throw new ApiException(400, "points must be objects");
+                    @SuppressWarnings("unchecked") Map<String, Object> point = (Map<String, Object>) p;
+                    points.add(point);
+                }
+            } else {
+                points.add(req);
+            }
+            if (points.isEmpty() || points.size() > 1000) throw new ApiException(400, "Send between 1 and 1000 points");
+
+            // Check the whole batch first, so a bad point rejects it without ingesting any of it
+            long now = System.currentTimeMillis();
+            int n = points.size();
+            double[] lat = new double[n];
+            double[] lng = new double[n];
+            long[] at = new long[n];
+            for (int i = 0; i < n; i++) {
+                Map<String, Object> p = points.get(i);
+                lat[i] = Json.getDouble(p, "lat", Double.NaN);
+                lng[i] = Json.getDouble(p, "lng", Double.NaN);
+                if (!(lat[i] >= -90 && lat[i] <= 90 && lng[i] >= -180 && lng[i] <= 180)) {
+                    throw new ApiException(400, "lat and lng are required and must be valid coordinates (point " + i + ")");
+                }
+                at[i] = Math.min((long) Json.getDouble(p, "t", now), now);
+            }
+
+            LocationIngest ingest = LocationIngest.get();
+            int accepted = 0;
+            for (int i = 0; i < n; i++) {
+                if (ingest.offer(s.userId, lat[i], lng[i], at[i])) accepted++;
+            }
+            if (accepted == 0) throw new ApiException(429, "Too many location updates, retry later");
+            return Map.of("accepted", accepted);
+        }
+
+        if (parts.length == 4 && parts[3].equals("nearby") && method.equals("GET")) {
+            Map<String, String> q = query(ex);
+            Double lat = doubleParam(q, "lat");
+            Double lng = doubleParam(q, "lng");
+            if (lat == null || lng == null) throw new ApiException(400, "lat and lng are required");
+            int k = q.containsKey("k") ? Math.min(50, Math.max(1, intParam(q, "k"))) : 5;
+            int[] ids = new int[k];
+            double[] km = new double[k];
+            int n = DriverGrid.get().nearest(lat, lng, k, 25, id -> true, ids, km);
+            List<Map<String, Object>> out = new ArrayList<>();
+            for (int i = 0; i < n; i++) out.add(Map.of("driverId", ids[i], "km", Math.round(km[i] * 100) / 100.0));
+            return out;
+        }
+        throw new ApiException(404, "Unknown driver action");
+    }
+
+    private Object listDrivers(String ignored) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Driver d : vehicleDAO.getDriversWithVehicles()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("driverId", d.getUserId());
+            m.put("name", d.getName());
+            Vehicle v = d.getVehicle();
+            if (v == null) {
+                m.put("vehicle", null);
+            } else {
+                Map<String, Object> vm = new LinkedHashMap<>();
+                vm.put("vehicleId", v.getVehicleId());
+                vm.put("model", v.getModel());
+                vm.put("plateNumber", v.getPlateNumber());
+                vm.put("capacity", v.getCapacity());
+                vm.put("color", v.getColor());
+                m.put("vehicle", vm);
+            }
+            out.add(m);
+        }
+        return out;
+    }
+
+    // ===================== RIDES =====================
+    private Object rides(HttpExchange ex, String method, String[] parts) throws IOException {
+        Session s = requireSession(ex);
+
+        if (parts.length == 3) {
+            if (method.equals("GET")) return history(s, query(ex));
+            if (method.equals("POST")) return book(s, readBody(ex));
+            throw new ApiException(405, "Method not allowed");
+        }
+        if (parts.length != 5) throw new ApiException(404, "Unknown ride action");
+
+        int rideId;
+        try {
+            rideId = Integer.parseInt(parts[3]);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Invalid ride id");
+        }
+        if (parts[4].equals("trace") && method.equals("GET")) return trace(s, rideId, query(ex));
+        if (!method.equals("POST")) throw new ApiException(404, "Unknown ride action");
+
+        String action = parts[4];
+        boolean ok;
+        switch (action) {
+            case "confirm" -> {
+                requireDriverOf(s, rideId);
+                ok = rideDAO.confirmRide(rideId);
+            }
+            case "start" -> {
+                requireDriver(s);
+                ok = rideDAO.startRideTransaction(rideId, s.userId);
+            }
+            case "complete" -> {
+                requireDriver(s);
+                double fare = rideDAO.getFareByRideId(rideId);
+                if (fare < 0) throw new ApiException(404, "Ride not found");
+                ok = rideDAO.completeRide(rideId, s.userId, fare);
+            }
+            case "cancel" -> {
+                int owner = s.isRider() ? rideDAO.getRiderIdByRideId(rideId) : rideDAO.getDriverIdByRideId(rideId);
+                if (owner < 0) throw new ApiException(404, "Ride not found");
+                if (owner != s.userId) throw new ApiException(403, "Not your ride");
+                ok = rideDAO.cancelRide(rideId);
+            }
+            default -> throw new ApiException(404, "Unknown ride action");
+        }
+        if (!ok) throw new ApiException(409, "Ride cannot be moved to that state");
+        return Map.of("rideId", rideId, "action", action, "ok", true);
+    }
+
+    // The recorded path of a ride, with the fare its driven distance would give
+    private Object trace(Session s, int rideId, Map<String, String> q) {
+        int owner = s.isRider() ? rideDAO.getRiderIdByRideId(rideId) : rideDAO.getDriverIdByRideId(rideId);
+        if (owner < 0) throw new ApiException(404, "Ride not found");
+        if (owner != s.userId) throw new ApiException(403, "Not your ride");
+        RideTraces.Trace t = RideTraces.load(rideId);
+        if (t == null) throw new ApiException(404, "No trace recorded for this ride");
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("rideId", rideId);
+        out.put("points", t.getPointCount());
+        out.put("bytes", t.getData().length);
+        out.put("drivenKm", t.getDistanceKm());
+        out.put("fare", rideDAO.getFareByRideId(rideId));
+        out.put("fareForDrivenKm", FareCalculator.calculateFare(t.getDistanceKm()));
+        if ("true".equalsIgnoreCase(q.get("path"))) {
+            List<List<Object>> path = new ArrayList<>(t.getPointCount());
+            GpsTrace.Decoder d = t.decode();
+            while (d.next()) path.add(List.of(d.at(), d.lat(), d.lng()));
+            out.put("path", path);
+        }
+        return out;
+    }
+
+    private Object book(Session s, Map<String, Object> req) {
+        if (!s.isRider()) throw new ApiException(403, "Only riders can book rides");
+        int driverId = Json.getInt(req, "driverId", -1);
+        int routeId = Json.getInt(req, "routeId", -1);
+        String method = Json.getString(req, "paymentMethod");
+        if (routeId <= 0 || method == null) {
+            throw new ApiException(400, "routeId and paymentMethod are required");
+        }
+
+        String assistant = Json.getString(req, "assistantName");
+        BookingService.BookingResult r;
+        if (driverId > 0) {
+            r = bookingService.book(s.userId, driverId, routeId, method, assistant);
+        } else {
+            int partySize = Json.getInt(req, "partySize", assistant == null || assistant.isBlank() ? 1 : 2);
+            if (partySize < 1) throw new ApiException(400, "partySize must be at least 1");
+            r = Boolean.TRUE.equals(req.get("pool"))
+                    ? bookingService.bookPooled(s.userId, routeId, method, assistant, partySize)
+                    : bookingService.bookAuto(s.userId, routeId, method, assistant, partySize);
+        }
+        if (!r.isSuccess()) throw new ApiException(409, r.getMessage());
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("rideId", r.getRideId());
+        out.put("driverId", r.getDriverId());
+        out.put("fare", r.getFare());
+        out.put("paymentId", r.getPaymentId());
+        out.put("paymentStatus", r.getPaymentStatus());
+        out.put("message", r.getMessage());
+        return out;
+    }
+
+    private Object history(Session s, Map<String, String> q) {
+        RideSearch search = s.isRider() ? new RideSearch().forRider(s.userId) : new RideSearch().forDriver(s.userId);
+
+        String statuses = q.get("status");
+        if (statuses != null) search.withStatuses(statuses.split(","));
+        LocalDate from = dateParam(q, "from");
+        LocalDate to = dateParam(q, "to");
+        search.between(from == null ? null : Timestamp.valueOf(from.atStartOfDay()),
+                       to == null ? null : Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+        if (q.containsKey("routeId")) search.onRoute(intParam(q, "routeId"));
+        if (q.containsKey("counterpartyId")) search.withCounterparty(intParam(q, "counterpartyId"));
+        search.fareBetween(doubleParam(q, "minFare"), doubleParam(q, "maxFare"));
+
+        String sort = q.getOrDefault("sort", "ride_time").toUpperCase();
+        RideSearch.SortKey key;
+        try {
+            key = RideSearch.SortKey.valueOf(sort);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "sort must be one of ride_time, fare, status, ride_id");
+        }
+        search.sortBy(key, "asc".equalsIgnoreCase(q.get("order")));
+        search.page(q.containsKey("limit") ? intParam(q, "limit") : RideSearch.DEFAULT_LIMIT,
+                    q.containsKey("offset") ? intParam(q, "offset") : 0);
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (RideSummary r : rideDAO.searchRides(search)) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("rideId", r.getRideId());
+            m.put("routeId", r.getRouteId());
+            m.put("start", r.getStartLocation());
+            m.put("end", r.getEndLocation());
+            m.put("counterpartyId", r.getCounterpartyId());
+            m.put("counterpartyName", r.getCounterpartyName());
+            m.put("fare", r.getFare());
+            m.put("status", r.getStatus());
+            m.put("rideTime", String.valueOf(r.getRideTime()));
+            rows.add(m);
+        }
+        return rows;
+    }
+
+    private void requireDriver(Session s) {
+        if (!s.isDriver()) throw new ApiException(403, "Only drivers can do that");
+    }
+
+    private void requireDriverOf(Session s, int rideId) {
+        requireDriver(s);
+        int driverId = rideDAO.getDriverIdByRideId(rideId);
+        if (driverId < 0) throw new ApiException(404, "Ride not found");
+        if (driverId != s.userId) throw new ApiException(403, "Ride is assigned to another driver");
+    }
+
+    // ===================== WALLET =====================
+    private Object wallet(HttpExchange ex, String method, String[] parts) throws IOException {
+        Session s = requireSession(ex);
+
+        if (parts.length == 3 && method.equals("GET")) {
+            if (s.isRider()) {
+                Rider r = userDAO.getRiderById(s.userId);
+                if (r == null) throw new ApiException(404, "Rider not found");
+                return Map.of("balance", r.getBalance());
+            }
+            RideProjections projections = RideEventLog.projections();
+            if (projections != null) return Map.of("totalEarnings", projections.getDriverEarnings(s.userId));
+            Driver d = userDAO.getDriverById(s.userId);
+            if (d == null) throw new ApiException(404, "Driver not found");
+            return Map.of("totalEarnings", d.getTotalEarnings());
+        }
+
+        if (parts.length == 4 && parts[3].equals("earnings") && method.equals("GET")) {
+            if (s.isRider()) throw new ApiException(403, "Only drivers have earnings");
+            Map<String, String> q = query(ex);
+            LocalDate to = dateParam(q, "to");
+            if (to == null) to = LocalDate.now();
+            LocalDate from = dateParam(q, "from");
+            if (from == null) from = to.minusDays(6);
+            if (from.isAfter(to)) throw new ApiException(400, "from must not be after to");
+            Map<String, Object> daily = new LinkedHashMap<>();
+            double total = 0;
+            for (Map.Entry<LocalDate, Double> e : earningsDAO.getDailyEarnings(s.userId, from, to).entrySet()) {
+                daily.put(e.getKey().toString(), e.getValue());
+                total += e.getValue();
+            }
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("from", from.toString());
+            out.put("to", to.toString());
+            out.put("total", total);
+            out.put("daily", daily);
+            return out;
+        }
+
+        if (parts.length == 4 && parts[3].equals("topup") && method.equals("POST")) {
+            if (!s.isRider()) throw new ApiException(403, "Only riders have a wallet");
+            double amount = Json.getDouble(readBody(ex), "amount", -1);
+            if (amount <= 0) throw new ApiException(400, "amount must be positive");
+            if (!userDAO.addRiderBalance(s.userId, amount)) throw new ApiException(500, "Top-up failed");
+            Rider r = userDAO.getRiderById(s.userId);
+            return Map.of("balance", r == null ? 0 : r.getBalance());
+        }
+        throw new ApiException(404, "Unknown wallet action");
+    }
+
+    // ===================== HTTP HELPERS =====================
+    private Map<String, Object> requirePost(HttpExchange ex, String method) throws IOException {
+        if (!method.equals("POST")) throw new ApiException(405, "Method not allowed");
+        return readBody(ex);
+    }
+
+    private String requireGet(String method) {
+        if (!method.equals("GET")) throw new ApiException(405, "Method not allowed");
+        return method;
+    }
+
+    private Map<String, Object> readBody(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            byte[] data = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (data.length > MAX_BODY_BYTES) throw new ApiException(413, "Request body too large");
+            if (data.length == 0) return new LinkedHashMap<>();
+            return Json.parseObject(new String(data, StandardCharsets.UTF_8));
+        }
+    }
+
+    private Map<String, String> query(HttpExchange ex) {
+        Map<String, String> q = new LinkedHashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) return q;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String k = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String v = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            if (!v.isEmpty()) q.put(k, v);
+        }
+        return q;
+    }
+
+    private int intParam(Map<String, String> q, String key) {
+        String v = q.get(key);
+        if (v == null) throw new ApiException(400, key + " is required");
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, key + " must be an integer");
+        }
+    }
+
+    private Double doubleParam(Map<String, String> q, String key) {
+        String v = q.get(key);
+        if (v == null) return null;
+        try {
+            return Double.parseDouble(v.trim());
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, key + " must be a number");
+        }
+    }
+
+    private LocalDate dateParam(Map<String, String> q, String key) {
+        String v = q.get(key);
+        if (v == null) return null;
+        try {
+            return LocalDate.parse(v.trim());
+        } catch (Exception e) {
+            throw new ApiException(400, key + " must be a date like 2025-01-31");
+        }
+    }
+
+    private void send(HttpExchange ex, int status, Object body) throws IOException {
+        byte[] out = Json.stringify(body).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, out.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(out);
+        }
+    }
+
+    // ===================== MAIN =====================
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int poolSize = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+
+        RydexServer app = new RydexServer();
+        app.start(port, poolSize);
+        Runtime.getRuntime().addShutdownHook(new Thread(app::stop));
+    }
+}
@@ -0,0 +1,299 @@
+// SchemaMigrator.java - Applies the versioned SQL scripts in migrations/ at startup
+//
+// Scripts are named V<version>__<description>.sql and listed in MIGRATIONS in the order
+// they apply. Every run records the outcome in schema_history (version, checksum, time
+// taken, success); versions already applied successfully are skipped, and an applied
+// script whose checksum has changed stops the run, since editing history would leave
+// environments with different schemas. Add a new version instead.
+//
+// MySQL cannot roll DDL back, so scripts must be safe to re-run: tables use
+// CREATE TABLE IF NOT EXISTS, CREATE INDEX is skipped when the index already exists, and
+// ALTER TABLE ... ADD COLUMN / ADD CONSTRAINT is skipped when the column or constraint
+// does (so a script that failed part-way applies the rest when retried).
+// A failed version is simply retried on the next start. On MySQL, CREATE INDEX runs
+// online (ALGORITHM=INPLACE, LOCK=NONE) so reads and writes continue while it builds,
+// and a named lock keeps two instances starting together from migrating at once; an
+// instance that cannot get it within 60 s fails instead of migrating unlocked.
+//
+// Scripts are read from the classpath (/migrations/...) or, failing that, from the
+// directory in -Drydex.migrations.dir, management/migrations or migrations.
+// -Drydex.migrate=false turns the runner off.
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+public class SchemaMigrator {
+
+    // In order of application; append new versions, never edit applied ones
+    private static final String[] MIGRATIONS = {
+        "V1__baseline_schema.sql",
+        "V2__ride_history_indexes.sql",
+        "V3__driver_shift_date_index.sql",
+        "V4__ride_outbox.sql",
+        "V5__driver_earnings_ledger.sql",
+        "V6__balance_journal_checkpoint.sql",
+        "V7__coordinates.sql",
+        "V8__driver_positions.sql",
+        "V9__ride_traces.sql",
+        "V10__pooled_trips.sql",
+        "V11__dispatch_refresh_indexes.sql"
+    };
+
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    private static final Pattern CREATE_INDEX = Pattern.compile("(?is)^CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(\\w+)\\s+ON\\s+(\\w+).*");
+    private static final Pattern ADD_COLUMN = Pattern.compile("(?is)^ALTER\\s+TABLE\\s+(\\w+)\\s+ADD\\s+COLUMN\\s+(\\w+)\\s.*");
+    private static final Pattern ADD_FOREIGN_KEY = Pattern.compile("(?is)^ALTER\\s+TABLE\\s+(\\w+)\\s+ADD\\s+CONSTRAINT\\s+(\\w+)\\s+FOREIGN\\s+KEY.*");
+    private static final String LOCK_NAME = "rydex_schema_migration";
+
+    private static final String HISTORY_DDL =
+        "CREATE TABLE IF NOT EXISTS schema_history (" +
+        "version INT PRIMARY KEY, " +
+        "description VARCHAR(200) NOT NULL, " +
+        "script VARCHAR(200) NOT NULL, " +
+        "checksum BIGINT NOT NULL, " +
+        "success BOOLEAN NOT NULL, " +
+        "execution_ms INT NOT NULL, " +
+        "installed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
+
+    // Migrate using a connection of our own
+    public static boolean migrate() {
+        if ("false".equalsIgnoreCase(System.getProperty("rydex.migrate"))) return true;
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) {
+                Log.error("Schema migration skipped: no database connection");
+                return false;
+            }
+            return migrate(conn);
+        } catch (SQLException e) {
+            Log.error("Error during schema migration", "error", e.getMessage());
+            return false;
+        }
+    }
+
+    // Bring the database behind conn up to the latest version; false if anything failed
+    public static boolean migrate(Connection conn) {
+        if ("false".equalsIgnoreCase(System.getProperty("rydex.migrate"))) return true;
+        boolean mysql = isMySql(conn);
+        boolean locked = mysql && lock(conn);
+        if (mysql && !locked) {
+            // Another instance has been migrating for over a minute (or the lock failed);
+            // running alongside it would apply the same DDL twice
+            Log.error("Schema migration aborted: another instance holds the migration lock");
+            return false;
+        }
+        try {
+            try (Statement st = conn.createStatement()) {
+                st.execute(HISTORY_DDL);
+            }
+            Map<Integer, long[]> applied = appliedVersions(conn);   // version -> {checksum, success}
+
+            for (String script : MIGRATIONS) {
+                Matcher m = FILE_NAME.matcher(script);
+                if (!m.matches()) throw new IllegalStateException("Bad migration name: " + script);
+                int version = Integer.parseInt(m.group(1));
+                String description = m.group(2).replace('_', ' ');
+                String text = load(script);
+                long checksum = checksum(text);
+
+                long[] prev = applied.get(version);
+                if (prev != null && prev[1] == 1) {
+                    if (prev[0] != checksum) {
+                        Log.error("Schema migration was changed after it was applied; add a new migration instead of editing it",
+                                "version", version, "script", script);
+                        return false;
+                    }
+                    continue;
+                }
+                if (!apply(conn, mysql, version, description, script, text, checksum, prev != null)) return false;
+            }
+            return true;
+        } catch (SQLException | IOException e) {
+            Log.error("Error during schema migration", "error", e.getMessage());
+            return false;
+        } finally {
+            if (locked) unlock(conn);
+        }
+    }
+
+    private static boolean apply(Connection conn, boolean mysql, int version, String description, String script,
+                                 String text, long checksum, boolean retry) throws SQLException {
+        long t0 = System.nanoTime();
+        boolean success = false;
+        try {
+            for (String sql : split(text)) execute(conn, mysql, sql);
+            success = true;
+            Log.info("Schema migration applied", "version", version, "description", description,
+                    "ms", (System.nanoTime() - t0) / 1_000_000);
+        } catch (SQLException e) {
+            Log.error("Schema migration failed", "version", version, "description", description, "error", e.getMessage());
+        }
+
+        if (retry) {
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM schema_history WHERE version = ?")) {
+                ps.setInt(1, version);
+                ps.executeUpdate();
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO schema_history (version, description, script, checksum, success, execution_ms) VALUES (?, ?, ?, ?, ?, ?)")) {
+            ps.setInt(1, version);
+            ps.setString(2, description);
+            ps.setString(3, script);
+            ps.setLong(4, checksum);
+            ps.setBoolean(5, success);
+            ps.setInt(6, (int) ((System.nanoTime() - t0) / 1_000_000));
+            ps.executeUpdate();
+        }
+        return success;
+    }
+
+    private static void execute(Connection conn, boolean mysql, String sql) throws SQLException {
+        Matcher idx = CREATE_INDEX.matcher(sql);
+        if (idx.matches()) {
+            if (indexExists(conn, idx.group(2), idx.group(1))) return;
+            if (mysql) sql = sql + " ALGORITHM=INPLACE LOCK=NONE";
+        }
+        Matcher col = ADD_COLUMN.matcher(sql);
+        if (col.matches() && columnExists(conn, col.group(1), col.group(2))) return;
+        Matcher fk = ADD_FOREIGN_KEY.matcher(sql);
+        if (fk.matches() && foreignKeyExists(conn, fk.group(1), fk.group(2))) return;
+        try (Statement st = conn.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    private static boolean indexExists(Connection conn, String table, String index) throws SQLException {
+        DatabaseMetaData md = conn.getMetaData();
+        for (String name : new String[]{table, table.toUpperCase(Locale.ROOT)}) {
+            try (ResultSet rs = md.getIndexInfo(conn.getCatalog(), null, name, false, true)) {
+                while (rs.next()) {
+                    if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        DatabaseMetaData md = conn.getMetaData();
+        for (String name : new String[]{table, table.toUpperCase(Locale.ROOT)}) {
+            try (ResultSet rs = md.getColumns(conn.getCatalog(), null, name, null)) {
+                while (rs.next()) {
+                    if (column.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean foreignKeyExists(Connection conn, String table, String constraint) throws SQLException {
+        DatabaseMetaData md = conn.getMetaData();
+        for (String name : new String[]{table, table.toUpperCase(Locale.ROOT)}) {
+            try (ResultSet rs = md.getImportedKeys(conn.getCatalog(), null, name)) {
+                while (rs.next()) {
+                    if (constraint.equalsIgnoreCase(rs.getString("FK_NAME"))) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Map<Integer, long[]> appliedVersions(Connection conn) throws SQLException {
+        Map<Integer, long[]> applied = new HashMap<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT version, checksum, success FROM schema_history")) {
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), new long[]{rs.getLong("checksum"), rs.getBoolean("success") ? 1 : 0});
+            }
+        }
+        return applied;
+    }
+
+    // Statements end with ';' at the end of a line; '--' comment lines are dropped
+    static List<String> split(String text) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : text.split("\\R")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) continue;
+            current.append(line).append('\n');
+            if (trimmed.endsWith(";")) {
+                String sql = current.toString().trim();
+                statements.add(sql.substring(0, sql.length() - 1).trim());
+                current.setLength(0);
+            }
+        }
+        if (current.toString().trim().length() > 0) statements.add(current.toString().trim());
+        return statements;
+    }
+
+    private static String load(String script) throws IOException {
+        try (InputStream in = SchemaMigrator.class.getResourceAsStream("/migrations/" + script)) {
+            if (in != null) return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        List<Path> dirs = new ArrayList<>();
+        String configured = System.getProperty("rydex.migrations.dir");
+        if (configured != null) dirs.add(Path.of(configured));
+        dirs.add(Path.of("management", "migrations"));
+        dirs.add(Path.of("migrations"));
+        for (Path dir : dirs) {
+            Path p = dir.resolve(script);
+            if (Files.isRegularFile(p)) return Files.readString(p, StandardCharsets.UTF_8);
+        }
+        throw new IOException("Migration script not found: " + script);
+    }
+
+    // Line endings do not count, so a checkout on Windows matches one on Linux
+    private static long checksum(String text) {
+        CRC32 crc = new CRC32();
+        crc.update(text.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static boolean isMySql(Connection conn) {
+        try {
+            String product = conn.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+            return product.contains("mysql") || product.contains("mariadb");
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static boolean lock(Connection conn) {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT GET_LOCK(?, 60)")) {
+            ps.setString(1, LOCK_NAME);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        } catch (SQLException e) {
+            Log.error("Could not take the schema migration lock", "error", e.getMessage());
+            return false;
+        }
+    }
+
+    private static void unlock(Connection conn) {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.executeQuery().close();
+        } catch (SQLException e) {
+            Log.error("Could not release the schema migration lock", "error", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+// SlowQueryLog.java - Log of statements slower than a threshold, with their execution plans
+//
+// InstrumentedConnection reports every execution that takes at least the threshold here,
+// together with its bound parameters. Entries are queued and written by a background
+// thread, so the slow statement's caller pays only for an offer() to a bounded queue.
+//
+// For each statement shape (QueryStats.normalize) the first slow execution, and then at
+// most one every EXPLAIN_INTERVAL, also gets its plan captured by running
+// EXPLAIN FORMAT=JSON with the same parameters on a separate connection (plain EXPLAIN
+// on databases without the JSON format). Logging itself is capped per shape per minute;
+// skipped entries are counted and reported on the next line written for that shape.
+//
+// The file rotates at MAX_FILE_BYTES, keeping MAX_FILES old copies (slow.log.1, .2, ...).
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class SlowQueryLog {
+
+    private static final int MAX_PER_SHAPE_PER_MINUTE = 10;
+    private static final long EXPLAIN_INTERVAL_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final long MAX_FILE_BYTES = 10L * 1024 * 1024;
+    private static final int MAX_FILES = 5;
+    private static final int MAX_PARAM_CHARS = 200;
+
+    private static volatile long thresholdNanos = Long.MAX_VALUE;
+    private static volatile Path file;
+    private static final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(1000);
+    private static final Map<String, ShapeState> shapes = new ConcurrentHashMap<>();
+    private static Thread writer;
+
+    // One slow execution waiting to be written
+    private static class Record {
+        final LocalDateTime at = LocalDateTime.now();
+        final String thread = Thread.currentThread().getName();
+        final String sql;
+        final String shape;
+        final Map<Integer, Object> params;
+        final long nanos;
+        final boolean failed;
+        int suppressed;
+        boolean explain;
+
+        Record(String sql, String shape, Map<Integer, Object> params, long nanos, boolean failed) {
+            this.sql = sql;
+            this.shape = shape;
+            this.params = params;
+            this.nanos = nanos;
+            this.failed = failed;
+        }
+    }
+
+    // Per-shape rate limiting
+    private static class ShapeState {
+        long windowStart;
+        int inWindow;
+        int suppressed;
+        long lastExplain = Long.MIN_VALUE / 2;
+    }
+
+    // Start logging statements that take at least thresholdMs to the given file
+    public static synchronized void enable(long thresholdMs, Path logFile) {
+        file = logFile;
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+        if (writer == null) {
+            writer = new Thread(SlowQueryLog::drain, "rydex-slow-query-log");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    public static boolean isSlow(long nanos) {
+        return nanos >= thresholdNanos;
+    }
+
+    // Called from the executing thread once a statement has crossed the threshold
+    public static void report(String sql, Map<Integer, Object> params, long nanos, boolean failed) {
+        if (sql == null || sql.regionMatches(true, 0, "EXPLAIN", 0, 7)) return;
+        String shape = QueryStats.normalize(sql);
+        ShapeState st = shapes.computeIfAbsent(shape, k -> new ShapeState());
+        Record r = new Record(sql, shape, params == null ? null : new TreeMap<>(params), nanos, failed);
+        long now = System.currentTimeMillis();
+        synchronized (st) {
+            if (now - st.windowStart >= 60_000) {
+                st.windowStart = now;
+                st.inWindow = 0;
+            }
+            if (st.inWindow >= MAX_PER_SHAPE_PER_MINUTE) {
+                st.suppressed++;
+                return;
+            }
+            st.inWindow++;
+            r.suppressed = st.suppressed;
+            st.suppressed = 0;
+            if (now - st.lastExplain >= EXPLAIN_INTERVAL_MS && isExplainable(sql)) {
+                st.lastExplain = now;
+                r.explain = true;
+            }
+        }
+        if (!queue.offer(r)) {
+            synchronized (st) { st.suppressed++; }
+        }
+    }
+
+    private static boolean isExplainable(String sql) {
+        String s = sql.trim().toUpperCase();
+        return s.startsWith("SELECT") || s.startsWith("UPDATE") || s.startsWith("DELETE")
+                || s.startsWith("INSERT") || s.startsWith("REPLACE");
+    }
+
+    // ===================== BACKGROUND WRITER =====================
+    private static void drain() {
+        while (true) {
+            Record r;
+            try {
+                r = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            String plan = r.explain ? explain(r.sql, r.params) : null;
+            write(format(r, plan));
+        }
+    }
+
+    private static String explain(String sql, Map<Integer, Object> params) {
+        try (Connection conn = DatabaseConfig.getNewConnection()) {
+            if (conn == null) return "(no connection for EXPLAIN)";
+            try {
+                return runExplain(conn, "EXPLAIN FORMAT=JSON " + sql, params);
+            } catch (SQLException e) {
+                return runExplain(conn, "EXPLAIN " + sql, params);
+            }
+        } catch (SQLException e) {
+            return "(EXPLAIN failed: " + e.getMessage() + ")";
+        } finally {
+            DatabaseConfig.releaseThreadConnections();
+        }
+    }
+
+    private static String runExplain(Connection conn, String sql, Map<Integer, Object> params) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (params != null) {
+                for (Map.Entry<Integer, Object> p : params.entrySet()) stmt.setObject(p.getKey(), p.getValue());
+            }
+            StringBuilder sb = new StringBuilder();
+            try (ResultSet rs = stmt.executeQuery()) {
+                int cols = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    for (int c = 1; c <= cols; c++) {
+                        if (c > 1) sb.append(" | ");
+                        sb.append(rs.getString(c));
+                    }
+                    sb.append(System.lineSeparator());
+                }
+            }
+            return sb.toString().trim();
+        }
+    }
+
+    private static String format(Record r, String plan) {
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        sb.append(r.at).append(String.format(" slow query %.1f ms", r.nanos / 1e6))
+          .append(r.failed ? " (failed)" : "").append(" thread=").append(r.thread).append(nl);
+        sb.append("  sql: ").append(r.sql.replaceAll("\\s+", " ").trim()).append(nl);
+        if (r.params != null && !r.params.isEmpty()) {
+            sb.append("  params:");
+            for (Map.Entry<Integer, Object> p : r.params.entrySet()) {
+                sb.append(' ').append(p.getKey()).append('=').append(describe(p.getValue()));
+            }
+            sb.append(nl);
+        }
+        if (r.suppressed > 0) sb.append("  (").append(r.suppressed).append(" earlier slow executions of this statement not logged)").append(nl);
+        if (plan != null) {
+            sb.append("  plan:").append(nl);
+            for (String line : plan.split("\\R")) sb.append("    ").append(line).append(nl);
+        }
+        return sb.toString();
+    }
+
+    private static String describe(Object v) {
+        if (v == null) return "NULL";
+        String s = v instanceof Number || v instanceof Boolean ? v.toString() : "'" + v + "'";
+        return s.length() > MAX_PARAM_CHARS ? s.substring(0, MAX_PARAM_CHARS) + "...'" : s;
+    }
+
+    private static void write(String text) {
+        Path f = file;
+        if (f == null) return;
+        try {
+            rotateIfNeeded(f);
+            try (BufferedWriter w = Files.newBufferedWriter(f, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                w.write(text);
+            }
+        } catch (IOException e) {
+            Log.error("Error writing slow query log", "error", e.getMessage());
+        }
+    }
+
+    private static void rotateIfNeeded(Path f) throws IOException {
+        if (!Files.exists(f) || Files.size(f) < MAX_FILE_BYTES) return;
+        for (int i = MAX_FILES - 1; i >= 1; i--) {
+            Path older = f.resolveSibling(f.getFileName() + "." + i);
+            if (Files.exists(older)) {
+                Files.move(older, f.resolveSibling(f.getFileName() + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(f, f.resolveSibling(f.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(f.resolveSibling(f.getFileName() + "." + (MAX_FILES + 1)));
+    }
+}
@@ -0,0 +1,197 @@
+// SurgePricing.java - Fare multiplier per area from sliding-window demand and supply
+//
+// Every booking attempt is counted against its area: the ~5 km cell (AREA_DEG) around the
+// route's start when the route has coordinates, otherwise the route itself. Every
+// rydex.surge.tick.ms (5000) one thread samples the free drivers of each area from
+// DispatchEngine (those within AREA_KM of the cell centre, or all free drivers for an area
+// without coordinates), then rebuilds the multipliers from the last rydex.surge.window.ms
+// (300000): one booking per free driver in the window is normal load, each extra one adds
+// SENSITIVITY, capped at rydex.surge.max (2.0) and rounded to 0.1 so prices do not flicker.
+//
+// Counts live in rings of time buckets updated with CAS, so recording a request takes no
+// lock, and quotes read an immutable snapshot: fare() is a map lookup and never queries the
+// database. Areas with no supply signal (the engine was never started, as in the desktop
+// apps) stay at 1.0, as does everything with rydex.surge.max=1.
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class SurgePricing {
+
+    static final double AREA_DEG = 0.05;
+    private static final double AREA_KM = 4.0;
+    private static final int SUPPLY_LIMIT = 500;          // free drivers counted per area
+    private static final double SENSITIVITY = 0.25;
+    private static final int BUCKETS = 60;
+
+    // Event counts over the last BUCKETS buckets. Each slot holds its bucket number in the
+    // high bits and the count in the low COUNT_BITS, so moving a slot on to a new bucket and
+    // adding to it is a single compare-and-set.
+    static final class SlidingCount {
+        private static final int COUNT_BITS = 24;
+        private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+        private final long bucketMillis;
+        private final AtomicLongArray slots = new AtomicLongArray(BUCKETS);
+
+        SlidingCount(long windowMillis) {
+            this.bucketMillis = Math.max(1, windowMillis / BUCKETS);
+        }
+
+        void add(long nowMillis, long n) {
+            long bucket = nowMillis / bucketMillis;
+            int i = (int) (bucket % BUCKETS);
+            while (true) {
+                long cur = slots.get(i);
+                long next = (cur >>> COUNT_BITS) == bucket
+                        ? (cur & ~COUNT_MASK) | Math.min(COUNT_MASK, (cur & COUNT_MASK) + n)
+                        : (bucket << COUNT_BITS) | Math.min(COUNT_MASK, n);
+                if (slots.compareAndSet(i, cur, next)) return;
+            }
+        }
+
+        long sum(long nowMillis) {
+            long bucket = nowMillis / bucketMillis;
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                long v = slots.get(i);
+                long age = bucket - (v >>> COUNT_BITS);
+                if (age >= 0 && age < BUCKETS) total += v & COUNT_MASK;
+            }
+            return total;
+        }
+    }
+
+    // Demand and sampled supply of one area
+    private static final class Area {
+        final double lat;
+        final double lng;
+        final SlidingCount requests;
+        final SlidingCount freeDrivers;       // sum of the samples
+        final SlidingCount samples;           // number of samples
+
+        Area(double lat, double lng, long windowMillis) {
+            this.lat = lat;
+            this.lng = lng;
+            this.requests = new SlidingCount(windowMillis);
+            this.freeDrivers = new SlidingCount(windowMillis);
+            this.samples = new SlidingCount(windowMillis);
+        }
+
+        boolean hasCoordinates() { return !Double.isNaN(lat); }
+    }
+
+    private static volatile SurgePricing instance;
+
+    private final long windowMillis;
+    private final double maxMultiplier;
+    private final Map<Long, Area> areas = new ConcurrentHashMap<>();
+    private volatile Map<Long, Double> snapshot = Map.of();     // only areas above 1.0
+
+    // ===================== STATIC ACCESS =====================
+    // The process-wide pricing, recomputing in the background once created
+    public static SurgePricing get() {
+        SurgePricing p = instance;
+        if (p != null) return p;
+        synchronized (SurgePricing.class) {
+            if (instance == null) {
+                SurgePricing pricing = new SurgePricing(Long.getLong("rydex.surge.window.ms", 300_000),
+                        Double.parseDouble(System.getProperty("rydex.surge.max", "2.0")));
+                pricing.start(Long.getLong("rydex.surge.tick.ms", 5000));
+                instance = pricing;
+            }
+            return instance;
+        }
+    }
+
+    SurgePricing(long windowMillis, double maxMultiplier) {
+        this.windowMillis = windowMillis;
+        this.maxMultiplier = Math.max(1.0, maxMultiplier);
+        Metrics.gauge("rydex_surge_areas", "Areas currently priced above the base fare", () -> snapshot.size());
+        Metrics.gauge("rydex_surge_max_multiplier", "Highest fare multiplier in effect",
+                () -> snapshot.values().stream().mapToDouble(Double::doubleValue).max().orElse(1.0));
+    }
+
+    private void start(long tickMillis) {
+        if (tickMillis <= 0 || maxMultiplier <= 1.0) return;
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rydex-surge-pricing");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                recompute(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                Log.error("Surge recompute failed", "error", e.getMessage());
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // ===================== RECORD / QUOTE =====================
+    // Count a booking request for the route's area
+    public void recordRequest(Route route) {
+        area(route).requests.add(System.currentTimeMillis(), 1);
+    }
+
+    // Current multiplier for the route's area (1.0 when not surging)
+    public double multiplier(Route route) {
+        return snapshot.getOrDefault(areaKey(route), 1.0);
+    }
+
+    // Fare for the route at the current multiplier
+    public double fare(Route route) {
+        return FareCalculator.calculateFare(route.getDistanceKm(), multiplier(route));
+    }
+
+    private Area area(Route route) {
+        long key = areaKey(route);
+        Area a = areas.get(key);
+        if (a != null) return a;
+        return areas.computeIfAbsent(key, k -> route.hasCoordinates()
+                ? new Area((Math.floor(route.getStartLat() / AREA_DEG) + 0.5) * AREA_DEG,
+                           (Math.floor(route.getStartLng() / AREA_DEG) + 0.5) * AREA_DEG, windowMillis)
+                : new Area(Double.NaN, Double.NaN, windowMillis));
+    }
+
+    // Cell of the route's start, or the negated route id for routes without coordinates
+    static long areaKey(Route route) {
+        if (!route.hasCoordinates()) return -route.getRouteId();
+        long row = (long) Math.floor(route.getStartLat() / AREA_DEG);
+        long col = (long) Math.floor(route.getStartLng() / AREA_DEG);
+        return (row << 32) | (col & 0xffffffffL);
+    }
+
+    // ===================== RECOMPUTE =====================
+    void recompute(long now) {
+        DispatchEngine engine = DispatchEngine.current();
+        Map<Long, Double> next = new HashMap<>();
+        for (Map.Entry<Long, Area> e : areas.entrySet()) {
+            Area a = e.getValue();
+            if (engine != null) {
+                int free = a.hasCoordinates()
+                        ? engine.countFreeNear(a.lat, a.lng, AREA_KM, SUPPLY_LIMIT)
+                        : engine.getAvailableCount();
+                a.freeDrivers.add(now, free);
+                a.samples.add(now, 1);
+            }
+            long samples = a.samples.sum(now);
+            if (samples == 0) continue;                              // no supply signal
+            double supply = Math.max(1.0, a.freeDrivers.sum(now) / (double) samples);
+            double m = multiplierFor(a.requests.sum(now) / supply);
+            if (m > 1.0) next.put(e.getKey(), m);
+        }
+        snapshot = next;
+    }
+
+    // Bookings per free driver in the window -> multiplier
+    double multiplierFor(double load) {
+        double m = 1.0 + SENSITIVITY * Math.max(0, load - 1.0);
+        return Math.min(maxMultiplier, Math.round(m * 10) / 10.0);
+    }
+}
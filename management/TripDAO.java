@@ -0,0 +1,98 @@
+// TripDAO.java - Handles pooled trips (Trips): one driver's run that several rides share
+//
+// Seats are claimed by RideDAO.createPooledRide in the same transaction as the ride, with a
+// check that the trip is still open and has room, so the table never holds more riders than
+// the vehicle seats even if two processes pool into the same trip.
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TripDAO {
+
+    // Open a trip for a driver on a route; returns the trip id or -1
+    public int openTrip(int driverId, int routeId, int capacity) {
+        String sql = "INSERT INTO Trips (driver_id, route_id, capacity, status) VALUES (?, ?, ?, 'Open')";
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, driverId);
+            stmt.setInt(2, routeId);
+            stmt.setInt(3, capacity);
+            if (stmt.executeUpdate() > 0) {
+                try (ResultSet rs = stmt.getGeneratedKeys()) {
+                    if (rs.next()) return rs.getInt(1);
+                }
+            }
+        } catch (SQLException e) {
+            Log.error("Error opening trip", "error", e.getMessage());
+        }
+        return -1;
+    }
+
+    // Stop a trip from taking more riders
+    public boolean closeTrip(int tripId) {
+        String sql = "UPDATE Trips SET status = 'Closed' WHERE trip_id = ?";
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, tripId);
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            Log.error("Error closing trip", "error", e.getMessage());
+            return false;
+        }
+    }
+
+    // Close every open trip (at startup, since the pool of open trips is not restored)
+    public int closeOpenTrips() {
+        String sql = "UPDATE Trips SET status = 'Closed' WHERE status = 'Open'";
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            return stmt.executeUpdate();
+        } catch (SQLException e) {
+            Log.error("Error closing open trips", "error", e.getMessage());
+            return -1;
+        }
+    }
+
+    // Give back the seats a rider holds on trips, on the caller's connection (the rider is
+    // being deleted); returns the rides whose seats were released
+    static List<Integer> releaseSeatsForRider(Connection conn, int riderId) throws SQLException {
+        String sel = "SELECT ride_id, trip_id, seats FROM Rides " +
+                     "WHERE rider_id = ? AND trip_id IS NOT NULL AND status IN ('Pending', 'Confirmed')";
+        List<Integer> rideIds = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sel);
+             PreparedStatement release = conn.prepareStatement(
+                     "UPDATE Trips SET seats_taken = GREATEST(seats_taken - ?, 0) WHERE trip_id = ?")) {
+            ps.setInt(1, riderId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rideIds.add(rs.getInt(1));
+                    release.setInt(1, rs.getInt(3));
+                    release.setInt(2, rs.getInt(2));
+                    release.addBatch();
+                }
+            }
+            if (!rideIds.isEmpty()) release.executeBatch();
+        }
+        return rideIds;
+    }
+
+    // Give back the seats of a cancelled ride
+    public boolean releaseSeats(int tripId, int seats) {
+        String sql = "UPDATE Trips SET seats_taken = seats_taken - ? WHERE trip_id = ? AND seats_taken >= ?";
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, seats);
+            stmt.setInt(2, tripId);
+            stmt.setInt(3, seats);
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            Log.error("Error releasing trip seats", "error", e.getMessage());
+            return false;
+        }
+    }
+}
@@ -2,9 +2,24 @@
 // Handles all database operations related to Drivers and Riders
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 
 public class UserDAO {
 
+    private static final Metrics.Amount WALLET_TOPUPS = Metrics.amount("rydex_wallet_pkr_total",
+            "Money moved through rider wallets", "direction", "topup");
+    private static final Metrics.Amount WALLET_CHARGES = Metrics.amount("rydex_wallet_pkr_total",
+            "Money moved through rider wallets", "direction", "charge");
+
+    // Counts and times one login attempt for the metrics registry
+    private static <T> T recordLogin(String role, T user, long startNanos) {
+        Metrics.timer("rydex_login_seconds", "Time taken by login lookups", "role", role).recordSince(startNanos);
+        Metrics.counter("rydex_logins_total", "Login attempts by role and outcome",
+                "role", role, "result", user != null ? "ok" : "failed").increment();
+        return user;
+    }
+
     // REGISTER NEW DRIVER
     public boolean registerDriver(String name, String email, String password, String licenseNumber) {
         Connection conn = DatabaseConfig.getConnection();
@@ -31,13 +46,13 @@ public class UserDAO {
                     driverStmt.setString(2, licenseNumber);
                     driverStmt.executeUpdate();
 
-                    System.out.println("Driver registered successfully with ID: " + userId);
+                    Log.info("Driver registered", "userId", userId);
                     return true;
                 }
             }
 
         } catch (SQLException e) {
-            System.err.println("Error registering driver: " + e.getMessage());
+            Log.error("Error registering driver", "error", e.getMessage());
         }
 
         return false;
@@ -68,13 +83,13 @@ public class UserDAO {
                     riderStmt.setInt(1, userId);
                     riderStmt.executeUpdate();
 
-                    System.out.println("Rider registered successfully with ID: " + userId);
+                    Log.info("Rider registered", "userId", userId);
                     return true;
                 }
             }
 
         } catch (SQLException e) {
-            System.err.println("Error registering rider: " + e.getMessage());
+            Log.error("Error registering rider", "error", e.getMessage());
         }
 
         return false;
@@ -85,7 +100,8 @@ public class UserDAO {
         Connection conn = DatabaseConfig.getConnection();
 
         try {
-            String sql = "SELECT u.user_id, u.name, u.email, u.password, d.license_number, d.total_earnings " +
+            String sql = "SELECT u.user_id, u.name, u.email, u.password, d.license_number, " +
+                    EarningsDAO.TOTAL_EARNINGS + " AS total_earnings " +
                     "FROM Users u JOIN Drivers d ON u.user_id = d.driver_id " +
                     "WHERE u.user_id = ? AND u.user_type = 'Driver'";
             PreparedStatement stmt = conn.prepareStatement(sql);
@@ -105,7 +121,37 @@ public class UserDAO {
             }
 
         } catch (SQLException e) {
-            System.err.println("Error fetching driver by ID: " + e.getMessage());
+            Log.error("Error fetching driver by ID", "error", e.getMessage());
+        }
+
+        return null;
+    }
+
+    // Get rider by ID (to refresh rider data from DB)
+    public Rider getRiderById(int riderId) {
+        Connection conn = DatabaseConfig.getConnection();
+
+        try {
+            String sql = "SELECT u.user_id, u.name, u.email, u.password, r.balance " +
+                    "FROM Users u JOIN Riders r ON u.user_id = r.rider_id " +
+                    "WHERE u.user_id = ? AND u.user_type = 'Rider'";
+            PreparedStatement stmt = conn.prepareStatement(sql);
+            stmt.setInt(1, riderId);
+
+            ResultSet rs = stmt.executeQuery();
+
+            if (rs.next()) {
+                Rider rider = new Rider(
+                        rs.getInt("user_id"),
+                        rs.getString("name"),
+                        rs.getString("email"),
+                        rs.getString("password"));
+                rider.setBalance(BalanceCache.currentBalance(rider.getUserId(), rs.getDouble("balance")));
+                return rider;
+            }
+
+        } catch (SQLException e) {
+            Log.error("Error fetching rider by ID", "error", e.getMessage());
         }
 
         return null;
@@ -113,10 +159,16 @@ public class UserDAO {
 
     // DRIVER LOGIN
     public Driver loginDriver(String email, String password) {
+        long t0 = System.nanoTime();
+        return recordLogin("driver", findDriverByCredentials(email, password), t0);
+    }
+
+    private Driver findDriverByCredentials(String email, String password) {
         Connection conn = DatabaseConfig.getConnection();
 
         try {
-            String sql = "SELECT u.user_id, u.name, u.email, u.password, d.license_number, d.total_earnings " +
+            String sql = "SELECT u.user_id, u.name, u.email, u.password, d.license_number, " +
+                    EarningsDAO.TOTAL_EARNINGS + " AS total_earnings " +
                     "FROM Users u JOIN Drivers d ON u.user_id = d.driver_id " +
                     "WHERE u.email = ? AND u.password = ? AND u.user_type = 'Driver'";
             PreparedStatement stmt = conn.prepareStatement(sql);
@@ -137,7 +189,7 @@ public class UserDAO {
             }
 
         } catch (SQLException e) {
-            System.err.println("Error logging in driver: " + e.getMessage());
+            Log.error("Error logging in driver", "error", e.getMessage());
         }
 
         return null;
@@ -145,6 +197,11 @@ public class UserDAO {
 
     // RIDER LOGIN
     public Rider loginRider(String email, String password) {
+        long t0 = System.nanoTime();
+        return recordLogin("rider", findRiderByCredentials(email, password), t0);
+    }
+
+    private Rider findRiderByCredentials(String email, String password) {
         Connection conn = DatabaseConfig.getConnection();
 
         try {
@@ -163,12 +220,12 @@ public class UserDAO {
                         rs.getString("name"),
                         rs.getString("email"),
                         rs.getString("password"));
-                rider.setBalance(rs.getDouble("balance"));
+                rider.setBalance(BalanceCache.currentBalance(rider.getUserId(), rs.getDouble("balance")));
                 return rider;
             }
 
         } catch (SQLException e) {
-            System.err.println("Error logging in rider: " + e.getMessage());
+            Log.error("Error logging in rider", "error", e.getMessage());
         }
 
         return null;
@@ -176,6 +233,8 @@ public class UserDAO {
 
     // UPDATE RIDER BALANCE
     public boolean updateRiderBalance(int riderId, double balance) {
+        BalanceCache cache = BalanceCache.get();
+        if (cache != null) return cache.setBalance(riderId, balance);
         Connection conn = DatabaseConfig.getConnection();
 
         try {
@@ -187,31 +246,91 @@ public class UserDAO {
             return stmt.executeUpdate() > 0;
 
         } catch (SQLException e) {
-            System.err.println("Error updating rider balance: " + e.getMessage());
+            Log.error("Error updating rider balance", "error", e.getMessage());
         }
 
         return false;
     }
 
-    // UPDATE DRIVER EARNINGS
-    public boolean updateDriverEarnings(int driverId, double totalEarnings) {
+    // ADD TO RIDER BALANCE (relative update, safe against concurrent top-ups)
+    public boolean addRiderBalance(int riderId, double amount) {
+        if (amount <= 0) return false;
+        BalanceCache cache = BalanceCache.get();
+        if (cache != null) {
+            boolean ok = cache.credit(riderId, amount);
+            if (ok) WALLET_TOPUPS.add(amount);
+            return ok;
+        }
         Connection conn = DatabaseConfig.getConnection();
 
         try {
-            String sql = "UPDATE Drivers SET total_earnings = ? WHERE driver_id = ?";
+            String sql = "UPDATE Riders SET balance = balance + ? WHERE rider_id = ?";
             PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setDouble(1, totalEarnings);
-            stmt.setInt(2, driverId);
+            stmt.setDouble(1, amount);
+            stmt.setInt(2, riderId);
 
-            return stmt.executeUpdate() > 0;
+            boolean ok = stmt.executeUpdate() > 0;
+            if (ok) WALLET_TOPUPS.add(amount);
+            return ok;
 
         } catch (SQLException e) {
-            System.err.println("Error updating driver earnings: " + e.getMessage());
+            Log.error("Error adding rider balance", "error", e.getMessage());
         }
 
         return false;
     }
 
+    // DEDUCT FROM RIDER BALANCE only if enough funds remain (no read-modify-write race)
+    public boolean deductRiderBalance(int riderId, double amount) {
+        if (amount <= 0) return false;
+        BalanceCache cache = BalanceCache.get();
+        if (cache != null) {
+            boolean ok = cache.debit(riderId, amount);
+            if (ok) WALLET_CHARGES.add(amount);
+            return ok;
+        }
+        Connection conn = DatabaseConfig.getConnection();
+
+        try {
+            String sql = "UPDATE Riders SET balance = balance - ? WHERE rider_id = ? AND balance >= ?";
+            PreparedStatement stmt = conn.prepareStatement(sql);
+            stmt.setDouble(1, amount);
+            stmt.setInt(2, riderId);
+            stmt.setDouble(3, amount);
+
+            boolean ok = stmt.executeUpdate() > 0;
+            if (ok) WALLET_CHARGES.add(amount);
+            return ok;
+
+        } catch (SQLException e) {
+            Log.error("Error deducting rider balance", "error", e.getMessage());
+        }
+
+        return false;
+    }
+
+    // UPDATE DRIVER EARNINGS
+    // Sets an absolute total; recorded as a ledger adjustment so it never blocks completions
+    public boolean updateDriverEarnings(int driverId, double totalEarnings) {
+        boolean ok = new EarningsDAO().adjustTotalEarnings(driverId, totalEarnings);
+        if (ok) RideEventLog.record(RideEvent.Type.EARNINGS_SET, 0, 0, driverId, totalEarnings);
+        return ok;
+    }
+
+    // The user's open rides are gone with it; close them in the event log projections too
+    private static void forgetInEventLog(int userId) {
+        RideProjections projections = RideEventLog.projections();
+        if (projections == null) return;
+        for (RideProjections.ActiveRide r : projections.getActiveRides()) {
+            if (r.getRiderId() == userId || r.getDriverId() == userId) {
+                RideEventLog.record(RideEvent.Type.CANCELLED, r.getRideId(), 0, 0, 0);
+            }
+        }
+        if (projections.getDriverEarnings(userId) != 0) {
+            RideEventLog.record(RideEvent.Type.EARNINGS_SET, 0, 0, userId, 0);
+        }
+    }
+
     // Delete user and related data (rides, payments, feedback, vehicles, shifts,
     // driver/rider records)
     public boolean deleteUser(int userId) {
@@ -245,6 +364,28 @@ public class UserDAO {
                 ps.executeUpdate();
             }
 
+            // Delete recorded GPS traces of those rides
+            String delTraces = "DELETE t FROM Ride_Traces t JOIN Rides r ON t.ride_id = r.ride_id WHERE r.rider_id = ? OR r.driver_id = ?";
+            try (PreparedStatement ps = conn.prepareStatement(delTraces)) {
+                ps.setInt(1, userId);
+                ps.setInt(2, userId);
+                ps.executeUpdate();
+            }
+
+            // Give back the seats the rider holds on pooled trips other riders share
+            List<Integer> pooledRides = TripDAO.releaseSeatsForRider(conn, userId);
+
+            // Rides in progress whose path is being recorded
+            List<Integer> recordedRides = new ArrayList<>();
+            String selInProgress = "SELECT ride_id FROM Rides WHERE (rider_id = ? OR driver_id = ?) AND status = 'In Progress'";
+            try (PreparedStatement ps = conn.prepareStatement(selInProgress)) {
+                ps.setInt(1, userId);
+                ps.setInt(2, userId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) recordedRides.add(rs.getInt(1));
+                }
+            }
+
             // Delete rides where this user is rider or driver
             String delRides = "DELETE FROM Rides WHERE rider_id = ? OR driver_id = ?";
             try (PreparedStatement ps = conn.prepareStatement(delRides)) {
@@ -253,6 +394,18 @@ public class UserDAO {
                 ps.executeUpdate();
             }
 
+            // Delete the driver's pooled trips (their rides are gone by now)
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM Trips WHERE driver_id = ?")) {
+                ps.setInt(1, userId);
+                ps.executeUpdate();
+            }
+
+            // Delete the driver's position history
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM Driver_Positions WHERE driver_id = ?")) {
+                ps.setInt(1, userId);
+                ps.executeUpdate();
+            }
+
             // Delete driver shifts
             String delShifts = "DELETE FROM Driver_Shifts WHERE driver_id = ?";
             try (PreparedStatement ps = conn.prepareStatement(delShifts)) {
@@ -278,6 +431,7 @@ public class UserDAO {
             }
 
             // Delete driver/rider records
+            EarningsDAO.deleteForDriver(conn, userId);
             try (PreparedStatement psd = conn.prepareStatement("DELETE FROM Drivers WHERE driver_id = ?")) {
                 psd.setInt(1, userId);
                 psd.executeUpdate();
@@ -294,13 +448,16 @@ public class UserDAO {
             }
 
             conn.commit();
+            for (int rideId : pooledRides) RidePool.rideDeleted(rideId);
+            for (int rideId : recordedRides) RideTraces.discard(rideId);
+            forgetInEventLog(userId);
             return true;
         } catch (SQLException e) {
             try {
                 conn.rollback();
             } catch (SQLException ignored) {
             }
-            System.err.println("Error deleting user and related data: " + e.getMessage());
+            Log.error("Error deleting user and related data", "error", e.getMessage());
             return false;
         } finally {
             try {
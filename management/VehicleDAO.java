@@ -30,12 +30,12 @@ public class VehicleDAO {
                     driverStmt.setInt(2, driverId);
                     driverStmt.executeUpdate();
 
-                    System.out.println("Vehicle added successfully with ID: " + vehicleId);
+                    Log.info("Vehicle added", "vehicleId", vehicleId);
                     return vehicleId;
                 }
             }
         } catch (SQLException e) {
-            System.err.println("Error adding vehicle: " + e.getMessage());
+            Log.error("Error adding vehicle", "error", e.getMessage());
         }
         return -1;
     }
@@ -59,7 +59,7 @@ public class VehicleDAO {
                 );
             }
         } catch (SQLException e) {
-            System.err.println("Error getting vehicle: " + e.getMessage());
+            Log.error("Error getting vehicle", "error", e.getMessage());
         }
         return null;
     }
@@ -89,7 +89,36 @@ public class VehicleDAO {
                 drivers.add(driver);
             }
         } catch (SQLException e) {
-            System.err.println("Error getting drivers: " + e.getMessage());
+            Log.error("Error getting drivers", "error", e.getMessage());
+        }
+        return drivers;
+    }
+
+    // Get all drivers with their vehicle (null when they have none), as objects rather than
+    // display strings; email and password are left out
+    public List<Driver> getDriversWithVehicles() {
+        List<Driver> drivers = new ArrayList<>();
+        Connection conn = DatabaseConfig.getConnection();
+        try {
+            String sql = "SELECT u.user_id, u.name, v.vehicle_id, v.model, v.plate_number, v.capacity, v.color " +
+                    "FROM Users u " +
+                    "JOIN Drivers d ON u.user_id = d.driver_id " +
+                    "LEFT JOIN Vehicles v ON d.vehicle_id = v.vehicle_id " +
+                    "WHERE u.user_type = 'Driver'";
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    Driver driver = new Driver(rs.getInt("user_id"), rs.getString("name"), null, null, null);
+                    int vehicleId = rs.getInt("vehicle_id");
+                    if (!rs.wasNull()) {
+                        driver.setVehicle(new Vehicle(vehicleId, rs.getString("model"), rs.getString("plate_number"),
+                                rs.getInt("capacity"), rs.getString("color")));
+                    }
+                    drivers.add(driver);
+                }
+            }
+        } catch (SQLException e) {
+            Log.error("Error getting drivers", "error", e.getMessage());
         }
         return drivers;
     }
@@ -108,7 +137,7 @@ public class VehicleDAO {
 
             return stmt.executeUpdate() > 0;
         } catch (SQLException e) {
-            System.err.println("Error updating vehicle: " + e.getMessage());
+            Log.error("Error updating vehicle", "error", e.getMessage());
         }
         return false;
     }
@@ -0,0 +1,18 @@
+-- V10: pooled rides (RidePool). A trip is one driver's run along a route that several riders
+-- can join; each rider still has their own Rides row (own fare, payment and status), linked
+-- to the trip and counting the seats it takes (the rider plus any assistants).
+CREATE TABLE IF NOT EXISTS Trips (
+trip_id INT AUTO_INCREMENT PRIMARY KEY,
+driver_id INT NOT NULL,
+route_id INT NOT NULL,
+capacity INT NOT NULL,
+seats_taken INT NOT NULL DEFAULT 0,
+status ENUM('Open', 'Closed') NOT NULL DEFAULT 'Open',
+created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+FOREIGN KEY (driver_id) REFERENCES Drivers(driver_id),
+FOREIGN KEY (route_id) REFERENCES Routes(route_id)
+);
+
+ALTER TABLE Rides ADD COLUMN trip_id INT NULL;
+ALTER TABLE Rides ADD COLUMN seats INT NOT NULL DEFAULT 1;
+ALTER TABLE Rides ADD CONSTRAINT fk_rides_trip FOREIGN KEY (trip_id) REFERENCES Trips(trip_id);
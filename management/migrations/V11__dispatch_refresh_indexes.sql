@@ -0,0 +1,6 @@
+-- V11: DispatchEngine.refresh runs every few seconds
+-- Today's shifts (shift_date = ?); V3's index leads with driver_id and cannot serve it
+CREATE INDEX idx_driver_shifts_date_driver ON Driver_Shifts (shift_date, driver_id);
+
+-- Drivers with an open ride (status IN (...)); V2's status indexes lead with rider/driver id
+CREATE INDEX idx_rides_status_driver ON Rides (status, driver_id);
@@ -0,0 +1,9 @@
+-- V2: composite indexes for RideDAO access paths
+-- Rider/driver history (getRidesByRider/Driver, searchRides): owner id, newest first
+CREATE INDEX idx_rides_rider_time ON Rides (rider_id, ride_time);
+CREATE INDEX idx_rides_driver_time ON Rides (driver_id, ride_time);
+
+-- Status filters (searchRides with statuses, getRidesByDriverWithStatuses,
+-- hasInProgressRideForDriver / getInProgressRidesForDriver)
+CREATE INDEX idx_rides_driver_status_time ON Rides (driver_id, status, ride_time);
+CREATE INDEX idx_rides_rider_status_time ON Rides (rider_id, status, ride_time);
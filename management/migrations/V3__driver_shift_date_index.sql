@@ -0,0 +1,3 @@
+-- V3: DriverShiftDAO.getShiftsByDriver (driver_id = ? ORDER BY shift_date DESC) and
+-- the availability checks that look for today's shift
+CREATE INDEX idx_driver_shifts_driver_date ON Driver_Shifts (driver_id, shift_date);
@@ -0,0 +1,17 @@
+-- V4: transactional outbox for ride and payment events (RideOutbox, OutboxRelay).
+-- Rows are inserted in the same transaction as the change they describe; each relay
+-- remembers the last outbox_id it delivered in Outbox_Offsets.
+CREATE TABLE IF NOT EXISTS Ride_Outbox (
+outbox_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+event_type VARCHAR(20) NOT NULL,
+ride_id INT NOT NULL DEFAULT 0,
+rider_id INT NOT NULL DEFAULT 0,
+driver_id INT NOT NULL DEFAULT 0,
+amount DECIMAL(10,2) NOT NULL DEFAULT 0,
+created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS Outbox_Offsets (
+relay VARCHAR(50) PRIMARY KEY,
+last_id BIGINT NOT NULL DEFAULT 0
+);
@@ -0,0 +1,19 @@
+-- V5: driver earnings ledger (EarningsDAO). One row per completed ride or manual
+-- adjustment; EarningsRollup folds rows into Drivers.total_earnings and marks them
+-- rolled_up, so a driver's total is total_earnings plus their rows not yet rolled up.
+-- No foreign keys: the check would lock the driver row the ledger exists to keep cold.
+CREATE TABLE IF NOT EXISTS Driver_Earnings (
+entry_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+driver_id INT NOT NULL,
+ride_id INT UNIQUE,
+amount DECIMAL(10,2) NOT NULL,
+entry_type ENUM('Ride', 'Adjustment') NOT NULL DEFAULT 'Ride',
+earned_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+rolled_up BOOLEAN NOT NULL DEFAULT FALSE
+);
+
+-- Period earnings (range scan per driver)
+CREATE INDEX idx_driver_earnings_driver_time ON Driver_Earnings (driver_id, earned_at);
+-- A driver's entries not yet in total_earnings, and the rollup's work queue
+CREATE INDEX idx_driver_earnings_driver_pending ON Driver_Earnings (driver_id, rolled_up);
+CREATE INDEX idx_driver_earnings_pending ON Driver_Earnings (rolled_up);
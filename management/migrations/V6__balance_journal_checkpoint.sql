@@ -0,0 +1,6 @@
+-- V6: last write-behind journal record applied to Riders.balance (BalanceCache), updated
+-- in the same transaction as each flush so a crash never replays a record twice
+CREATE TABLE IF NOT EXISTS Balance_Checkpoints (
+journal VARCHAR(100) PRIMARY KEY,
+last_seq BIGINT NOT NULL DEFAULT 0
+);
@@ -0,0 +1,10 @@
+-- V7: coordinates for route end points and drivers' last reported position (DriverGrid).
+-- All nullable: routes and drivers without coordinates are dispatched as before.
+ALTER TABLE Routes ADD COLUMN start_lat DECIMAL(9,6) NULL;
+ALTER TABLE Routes ADD COLUMN start_lng DECIMAL(9,6) NULL;
+ALTER TABLE Routes ADD COLUMN end_lat DECIMAL(9,6) NULL;
+ALTER TABLE Routes ADD COLUMN end_lng DECIMAL(9,6) NULL;
+
+ALTER TABLE Drivers ADD COLUMN last_lat DECIMAL(9,6) NULL;
+ALTER TABLE Drivers ADD COLUMN last_lng DECIMAL(9,6) NULL;
+ALTER TABLE Drivers ADD COLUMN position_at TIMESTAMP NULL;
@@ -0,0 +1,12 @@
+-- V8: downsampled driver position history written in batches by LocationIngest.
+-- No foreign key, so the batched inserts never touch Drivers rows.
+CREATE TABLE IF NOT EXISTS Driver_Positions (
+position_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+driver_id INT NOT NULL,
+recorded_at TIMESTAMP(3) NOT NULL,
+lat DECIMAL(9,6) NOT NULL,
+lng DECIMAL(9,6) NOT NULL
+);
+
+-- A driver's trail over a period
+CREATE INDEX idx_driver_positions_driver_time ON Driver_Positions (driver_id, recorded_at);
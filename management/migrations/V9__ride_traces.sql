@@ -0,0 +1,12 @@
+-- V9: the path driven on each completed ride, delta/varint encoded by GpsTrace (RideTraces).
+-- point_count and distance_m are kept beside the blob so audits can filter without decoding.
+CREATE TABLE IF NOT EXISTS Ride_Traces (
+ride_id INT PRIMARY KEY,
+driver_id INT NOT NULL,
+point_count INT NOT NULL,
+distance_m INT NOT NULL,
+started_at TIMESTAMP(3) NOT NULL,
+ended_at TIMESTAMP(3) NOT NULL,
+trace MEDIUMBLOB NOT NULL,
+FOREIGN KEY (ride_id) REFERENCES Rides(ride_id)
+);